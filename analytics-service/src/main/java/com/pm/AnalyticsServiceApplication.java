@@ -2,8 +2,10 @@ package com.pm;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling // periodic flush of the event archive
 public class AnalyticsServiceApplication {
 
     public static void main(String[] args) {
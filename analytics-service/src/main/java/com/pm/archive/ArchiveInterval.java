@@ -0,0 +1,31 @@
+package com.pm.archive;
+
+import java.time.LocalDate;
+
+// Bucket size used when counting archived events, buckets are calendar based and in UTC
+public enum ArchiveInterval {
+    DAY,
+    MONTH,
+    YEAR;
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    // numeric bucket key, cheap enough to compute for every scanned row
+    public long bucketOf(long epochMillis) {
+        long epochDay = Math.floorDiv(epochMillis, MILLIS_PER_DAY);
+        if (this == DAY) {
+            return epochDay;
+        }
+
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        return this == MONTH ? date.getYear() * 100L + date.getMonthValue() : date.getYear();
+    }
+
+    public String format(long bucket) {
+        return switch (this) {
+            case DAY -> LocalDate.ofEpochDay(bucket).toString();
+            case MONTH -> "%04d-%02d".formatted(bucket / 100, bucket % 100);
+            case YEAR -> Long.toString(bucket);
+        };
+    }
+}
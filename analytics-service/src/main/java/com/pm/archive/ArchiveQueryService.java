@@ -0,0 +1,90 @@
+package com.pm.archive;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Service
+public class ArchiveQueryService {
+    private final EventArchive eventArchive;
+
+    // column reads only, they never wait on each other so a fixed pool cannot deadlock
+    private final ExecutorService columnScanExecutor =
+            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+    public ArchiveQueryService(EventArchive eventArchive) {
+        this.eventArchive = eventArchive;
+    }
+
+    /*
+     Counts events with from <= timestamp < to, grouped by interval.
+     Segments whose min/max time is outside the range, or whose dictionary does not contain the event type,
+     are skipped without reading any column. The remaining segments are scanned in parallel and inside a
+     segment the time and event type columns are inflated concurrently.
+    */
+    public Map<String, Long> countEvents(long from, long to, String eventType, ArchiveInterval interval) {
+        EventArchive.Snapshot snapshot = eventArchive.snapshot();
+        Map<Long, Long> counts = snapshot.segments()
+                .parallelStream()
+                .filter(segment -> !segment.isOutside(from, to))
+                .filter(segment -> eventType == null || segment.getDictionary().contains(eventType))
+                .map(segment -> scanSegment(segment, from, to, eventType, interval))
+                .reduce(new HashMap<>(), ArchiveQueryService::merge, ArchiveQueryService::merge);
+
+        for (ArchivedEvent event : snapshot.unwrittenEvents()) {
+            if (event.timestamp() >= from && event.timestamp() < to
+                    && (eventType == null || eventType.equals(event.eventType()))) {
+                counts.merge(interval.bucketOf(event.timestamp()), 1L, Long::sum);
+            }
+        }
+
+        Map<String, Long> result = new LinkedHashMap<>();
+        new TreeMap<>(counts).forEach((bucket, count) -> result.put(interval.format(bucket), count));
+        return result;
+    }
+
+    private Map<Long, Long> scanSegment(Segment segment, long from, long to, String eventType, ArchiveInterval interval) {
+        CompletableFuture<long[]> timestampsFuture =
+                CompletableFuture.supplyAsync(segment::readTimestamps, columnScanExecutor);
+        CompletableFuture<int[]> codesFuture = eventType == null
+                ? CompletableFuture.completedFuture(null)
+                : CompletableFuture.supplyAsync(segment::readEventTypeCodes, columnScanExecutor);
+
+        long[] timestamps = timestampsFuture.join();
+        int[] codes = codesFuture.join();
+        int wantedCode = eventType == null ? -1 : segment.getDictionary().indexOf(eventType);
+
+        Map<Long, Long> counts = new HashMap<>();
+        for (int row = 0; row < timestamps.length; row++) {
+            long timestamp = timestamps[row];
+            if (timestamp < from) {
+                continue;
+            }
+            if (timestamp >= to) {
+                break; // rows are sorted by time inside a segment
+            }
+            if (codes == null || codes[row] == wantedCode) {
+                counts.merge(interval.bucketOf(timestamp), 1L, Long::sum);
+            }
+        }
+        return counts;
+    }
+
+    private static Map<Long, Long> merge(Map<Long, Long> left, Map<Long, Long> right) {
+        Map<Long, Long> merged = new HashMap<>(left);
+        right.forEach((bucket, count) -> merged.merge(bucket, count, Long::sum));
+        return merged;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        columnScanExecutor.shutdown();
+    }
+}
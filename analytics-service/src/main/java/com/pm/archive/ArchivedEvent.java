@@ -0,0 +1,17 @@
+package com.pm.archive;
+
+import patient.events.PatientEvent;
+
+// One row of the archive: the consumed PatientEvent plus the time kafka recorded for it
+public record ArchivedEvent(long timestamp, String patientId, String name, String email, String eventType) {
+
+    public static ArchivedEvent from(PatientEvent patientEvent, long timestamp) {
+        return new ArchivedEvent(
+                timestamp,
+                patientEvent.getPatientId(),
+                patientEvent.getName(),
+                patientEvent.getEmail(),
+                patientEvent.getEventType()
+        );
+    }
+}
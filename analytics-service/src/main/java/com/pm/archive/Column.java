@@ -0,0 +1,10 @@
+package com.pm.archive;
+
+// Order of the columns inside a segment file, the ordinal is the position of the column in the segment header
+public enum Column {
+    TIMESTAMP,  // delta encoded varints, rows are sorted by time inside a segment
+    EVENT_TYPE, // dictionary codes, the dictionary itself lives in the segment header
+    PATIENT_ID,
+    NAME,
+    EMAIL
+}
@@ -0,0 +1,189 @@
+package com.pm.archive;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import patient.events.PatientEvent;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+/*
+ Append only archive of every consumed PatientEvent.
+ Events are buffered in memory and written out as immutable, compressed columnar segment files
+ once the buffer is full or the flush interval passes. Kafka retention is short, this is our history.
+
+ Buffered events are lost on a crash, so the consumers may only commit their offsets once the events are in a
+ segment: every buffer handed to writeSegment closes a generation, the consumers note the current generation
+ with the offsets they processed and commit them once isWritten(generation) says every event up to it is on disk.
+
+ A batch stays readable from memory while its segment is written: queries take a snapshot(), which has every
+ event exactly once, either in a segment or unwritten, because a segment is added and its batch dropped together.
+*/
+@Service
+public class EventArchive {
+    private static final Logger log = LoggerFactory.getLogger(EventArchive.class);
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+    private final int maxRowsPerSegment;
+
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private List<ArchivedEvent> buffer = new ArrayList<>();
+    private long generation;
+    private long bufferGeneration; // oldest generation with rows in the buffer, older after a failed write
+    private final List<Batch> writing = new ArrayList<>(); // handed to writeSegment, not in a segment yet
+
+    public EventArchive(@Value("${archive.directory:./data/archive}") String directory,
+                        @Value("${archive.segment.max-rows:10000}") int maxRowsPerSegment) {
+        this.directory = Path.of(directory);
+        this.maxRowsPerSegment = maxRowsPerSegment;
+    }
+
+    @PostConstruct
+    void loadSegments() throws IOException {
+        Files.createDirectories(directory);
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(SEGMENT_SUFFIX)).toList()) {
+                try {
+                    segments.add(Segment.open(file));
+                } catch (IOException e) {
+                    log.error("Skipping unreadable archive segment {}: {}", file, e.getMessage());
+                }
+            }
+        }
+
+        log.info("Loaded {} archive segments from {}", segments.size(), directory.toAbsolutePath());
+    }
+
+    public void append(PatientEvent patientEvent, long timestamp) {
+        Batch full = null;
+
+        synchronized (this) {
+            if (buffer.isEmpty()) {
+                bufferGeneration = generation;
+            }
+            buffer.add(ArchivedEvent.from(patientEvent, timestamp));
+            if (buffer.size() >= maxRowsPerSegment) {
+                full = takeBuffer();
+            }
+        }
+
+        if (full != null) {
+            writeSegment(full);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${archive.flush-interval-ms:60000}")
+    public void flush() {
+        Batch pending;
+        synchronized (this) {
+            if (buffer.isEmpty()) {
+                return;
+            }
+            pending = takeBuffer();
+        }
+        writeSegment(pending);
+    }
+
+    // generation the events appended so far belong to
+    public synchronized long currentGeneration() {
+        return generation;
+    }
+
+    // true once every event appended up to the given generation is in a written segment
+    public synchronized boolean isWritten(long generation) {
+        long oldestUnwritten = buffer.isEmpty() ? this.generation + 1 : bufferGeneration;
+        for (Batch batch : writing) {
+            oldestUnwritten = Math.min(oldestUnwritten, batch.generation());
+        }
+        return generation < oldestUnwritten;
+    }
+
+    @PreDestroy
+    void close() {
+        flush();
+    }
+
+    public List<Segment> getSegments() {
+        return List.copyOf(segments);
+    }
+
+    // events not yet written to a segment, so queries also see the last few minutes
+    public synchronized List<ArchivedEvent> getBufferedEvents() {
+        List<ArchivedEvent> unwritten = new ArrayList<>();
+        writing.forEach(batch -> unwritten.addAll(batch.events()));
+        unwritten.addAll(buffer);
+        return unwritten;
+    }
+
+    // the segments and the events not in any of them yet, taken together so no event is missed or seen twice
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(getSegments(), getBufferedEvents());
+    }
+
+    private Batch takeBuffer() {
+        Batch batch = new Batch(bufferGeneration, buffer);
+        buffer = new ArrayList<>();
+        writing.add(batch);
+        generation++;
+        return batch;
+    }
+
+    private void writeSegment(Batch batch) {
+        String fileName = "segment-%d-%s%s".formatted(System.currentTimeMillis(), UUID.randomUUID(), SEGMENT_SUFFIX);
+
+        try {
+            Path file = SegmentWriter.write(directory, fileName, batch.events());
+            Segment segment = Segment.open(file);
+            synchronized (this) {
+                segments.add(segment);
+                writing.remove(batch);
+            }
+            log.info("Archived {} patient events into {}", batch.events().size(), file.getFileName());
+        } catch (IOException e) {
+            // put the rows back, the next flush will retry them, their generation stays unwritten until then
+            log.error("Error while writing archive segment {}: {}", fileName, e.getMessage());
+            synchronized (this) {
+                if (buffer.isEmpty() || batch.generation() < bufferGeneration) {
+                    bufferGeneration = batch.generation();
+                }
+                buffer.addAll(0, batch.events());
+                writing.remove(batch);
+            }
+        }
+    }
+
+    public record Snapshot(List<Segment> segments, List<ArchivedEvent> unwrittenEvents) {
+    }
+
+    // compared by identity, two batches may hold equal events
+    private static final class Batch {
+        private final long generation;
+        private final List<ArchivedEvent> events;
+
+        private Batch(long generation, List<ArchivedEvent> events) {
+            this.generation = generation;
+            this.events = events;
+        }
+
+        long generation() {
+            return generation;
+        }
+
+        List<ArchivedEvent> events() {
+            return events;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.pm.archive;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// Read side of a segment file written by SegmentWriter. Only the header is kept in memory, columns are read on demand.
+public final class Segment {
+    private final Path file;
+    private final int rowCount;
+    private final long minTimestamp;
+    private final long maxTimestamp;
+    private final List<String> dictionary;
+    private final long dataStart;
+    private final long[] columnOffsets;
+    private final int[] compressedLengths;
+    private final int[] rawLengths;
+
+    private Segment(Path file, int rowCount, long minTimestamp, long maxTimestamp, List<String> dictionary,
+                    long dataStart, long[] columnOffsets, int[] compressedLengths, int[] rawLengths) {
+        this.file = file;
+        this.rowCount = rowCount;
+        this.minTimestamp = minTimestamp;
+        this.maxTimestamp = maxTimestamp;
+        this.dictionary = dictionary;
+        this.dataStart = dataStart;
+        this.columnOffsets = columnOffsets;
+        this.compressedLengths = compressedLengths;
+        this.rawLengths = rawLengths;
+    }
+
+    public static Segment open(Path file) throws IOException {
+        try (InputStream fileIn = Files.newInputStream(file);
+             CountingInputStream counting = new CountingInputStream(new BufferedInputStream(fileIn));
+             DataInputStream in = new DataInputStream(counting)) {
+
+            if (in.readInt() != SegmentWriter.MAGIC) {
+                throw new IOException("Not an archive segment: " + file);
+            }
+            short version = in.readShort();
+            if (version != SegmentWriter.VERSION) {
+                throw new IOException("Unsupported segment version " + version + ": " + file);
+            }
+
+            int rowCount = in.readInt();
+            long minTimestamp = in.readLong();
+            long maxTimestamp = in.readLong();
+
+            int dictionarySize = in.readInt();
+            List<String> dictionary = new ArrayList<>(dictionarySize);
+            for (int i = 0; i < dictionarySize; i++) {
+                dictionary.add(in.readUTF());
+            }
+
+            int columnCount = in.readInt();
+            long[] columnOffsets = new long[columnCount];
+            int[] compressedLengths = new int[columnCount];
+            int[] rawLengths = new int[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                columnOffsets[i] = in.readLong();
+                compressedLengths[i] = in.readInt();
+                rawLengths[i] = in.readInt();
+            }
+
+            return new Segment(file, rowCount, minTimestamp, maxTimestamp, List.copyOf(dictionary),
+                    counting.count, columnOffsets, compressedLengths, rawLengths);
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public long getMinTimestamp() {
+        return minTimestamp;
+    }
+
+    public long getMaxTimestamp() {
+        return maxTimestamp;
+    }
+
+    public List<String> getDictionary() {
+        return dictionary;
+    }
+
+    // true when no row of this segment can fall into [from, to)
+    public boolean isOutside(long from, long to) {
+        return maxTimestamp < from || minTimestamp >= to;
+    }
+
+    public long[] readTimestamps() {
+        ByteBuffer column = readColumn(Column.TIMESTAMP);
+        long[] timestamps = new long[rowCount];
+        long previous = 0;
+        for (int i = 0; i < rowCount; i++) {
+            previous += Varints.readSigned(column);
+            timestamps[i] = previous;
+        }
+        return timestamps;
+    }
+
+    public int[] readEventTypeCodes() {
+        ByteBuffer column = readColumn(Column.EVENT_TYPE);
+        int[] codes = new int[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            codes[i] = (int) Varints.readUnsigned(column);
+        }
+        return codes;
+    }
+
+    public String[] readStrings(Column stringColumn) {
+        if (stringColumn == Column.TIMESTAMP || stringColumn == Column.EVENT_TYPE) {
+            throw new IllegalArgumentException(stringColumn + " is not a string column");
+        }
+
+        ByteBuffer column = readColumn(stringColumn);
+        String[] values = new String[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            int length = (int) Varints.readUnsigned(column);
+            values[i] = new String(column.array(), column.position(), length, StandardCharsets.UTF_8);
+            column.position(column.position() + length);
+        }
+        return values;
+    }
+
+    private ByteBuffer readColumn(Column column) {
+        int index = column.ordinal();
+        ByteBuffer compressed = ByteBuffer.allocate(compressedLengths[index]);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = dataStart + columnOffsets[index];
+            while (compressed.hasRemaining()) {
+                int read = channel.read(compressed, position + compressed.position());
+                if (read < 0) {
+                    throw new IOException("Truncated column " + column + " in " + file);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed.array());
+            byte[] raw = new byte[rawLengths[index]];
+            int inflated = 0;
+            while (inflated < raw.length && !inflater.finished()) {
+                int read = inflater.inflate(raw, inflated, raw.length - inflated);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Column ended early");
+                }
+                inflated += read;
+            }
+            return ByteBuffer.wrap(raw);
+        } catch (DataFormatException e) {
+            throw new UncheckedIOException(new IOException("Corrupt column " + column + " in " + file, e));
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // needed to know where the header ends, column offsets are relative to it
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
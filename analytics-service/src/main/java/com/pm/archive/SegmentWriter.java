@@ -0,0 +1,155 @@
+package com.pm.archive;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.zip.Deflater;
+
+/*
+ Segment file layout (all numbers big endian):
+
+   int    magic
+   short  version
+   int    row count
+   long   min timestamp, long max timestamp   -> used to prune whole segments on time range queries
+   int    dictionary size, then the event types (UTF)
+   int    column count, then per column: long offset, int compressed length, int raw length
+   ...    deflated column blocks, offsets are relative to the end of the header
+
+ Every column is compressed on its own so a query only inflates the columns it actually needs.
+*/
+public final class SegmentWriter {
+    static final int MAGIC = 0x504D5347; // "PMSG"
+    static final short VERSION = 1;
+
+    private SegmentWriter() {
+    }
+
+    public static Path write(Path directory, String fileName, List<ArchivedEvent> events) throws IOException {
+        if (events.isEmpty()) {
+            throw new IllegalArgumentException("Cannot write an empty segment");
+        }
+
+        List<ArchivedEvent> rows = new ArrayList<>(events);
+        rows.sort(Comparator.comparingLong(ArchivedEvent::timestamp));
+
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        rows.forEach(row -> dictionary.computeIfAbsent(row.eventType(), type -> dictionary.size()));
+
+        byte[][] rawColumns = new byte[Column.values().length][];
+        rawColumns[Column.TIMESTAMP.ordinal()] = encodeTimestamps(rows);
+        rawColumns[Column.EVENT_TYPE.ordinal()] = encodeEventTypes(rows, dictionary);
+        rawColumns[Column.PATIENT_ID.ordinal()] = encodeStrings(rows, ArchivedEvent::patientId);
+        rawColumns[Column.NAME.ordinal()] = encodeStrings(rows, ArchivedEvent::name);
+        rawColumns[Column.EMAIL.ordinal()] = encodeStrings(rows, ArchivedEvent::email);
+
+        byte[][] compressedColumns = new byte[rawColumns.length][];
+        for (int i = 0; i < rawColumns.length; i++) {
+            compressedColumns[i] = deflate(rawColumns[i]);
+        }
+
+        Path target = directory.resolve(fileName);
+        Path temp = directory.resolve(fileName + ".tmp");
+
+        try (OutputStream fileOut = Files.newOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(rows.size());
+            out.writeLong(rows.get(0).timestamp());
+            out.writeLong(rows.get(rows.size() - 1).timestamp());
+
+            out.writeInt(dictionary.size());
+            for (String eventType : dictionary.keySet()) {
+                out.writeUTF(eventType);
+            }
+
+            out.writeInt(compressedColumns.length);
+            long offset = 0;
+            for (int i = 0; i < compressedColumns.length; i++) {
+                out.writeLong(offset);
+                out.writeInt(compressedColumns[i].length);
+                out.writeInt(rawColumns[i].length);
+                offset += compressedColumns[i].length;
+            }
+
+            for (byte[] column : compressedColumns) {
+                out.write(column);
+            }
+        }
+
+        // on disk before it becomes visible, otherwise a crash can keep the rename but lose the contents
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+
+        // segments are immutable once visible, so readers never see a half written file
+        Path segment = Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+
+        // the rename is only durable once the directory entry is, offsets are committed right after this returns
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+        return segment;
+    }
+
+    private static byte[] encodeTimestamps(List<ArchivedEvent> rows) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(rows.size() * 2);
+        long previous = 0;
+        for (ArchivedEvent row : rows) {
+            Varints.writeSigned(out, row.timestamp() - previous);
+            previous = row.timestamp();
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] encodeEventTypes(List<ArchivedEvent> rows, Map<String, Integer> dictionary) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(rows.size());
+        for (ArchivedEvent row : rows) {
+            Varints.writeUnsigned(out, dictionary.get(row.eventType()));
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] encodeStrings(List<ArchivedEvent> rows, Function<ArchivedEvent, String> column) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(rows.size() * 16);
+        for (ArchivedEvent row : rows) {
+            byte[] value = column.apply(row).getBytes(StandardCharsets.UTF_8);
+            Varints.writeUnsigned(out, value.length);
+            out.writeBytes(value);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 2));
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(chunk);
+                out.write(chunk, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.pm.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+// LEB128 style variable length integers, small numbers (time deltas, dictionary codes, string lengths) take 1-2 bytes
+final class Varints {
+    private Varints() {
+    }
+
+    static void writeUnsigned(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readUnsigned(ByteBuffer buffer) {
+        long result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            result |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return result;
+    }
+
+    // zig-zag keeps negative deltas small
+    static void writeSigned(ByteArrayOutputStream out, long value) {
+        writeUnsigned(out, (value << 1) ^ (value >> 63));
+    }
+
+    static long readSigned(ByteBuffer buffer) {
+        long raw = readUnsigned(buffer);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+}
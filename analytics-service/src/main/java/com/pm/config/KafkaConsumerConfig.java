@@ -0,0 +1,89 @@
+package com.pm.config;
+
+import com.pm.kafka.KafkaConsumer;
+import com.pm.kafka.ParallelKafkaConsumer;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+
+import java.util.Collection;
+import java.util.function.BiConsumer;
+
+@Configuration
+public class KafkaConsumerConfig {
+
+    // replaces Boot's default factory: record listener whose offsets are committed by KafkaConsumer once the archive
+    // has written their events, never by the container
+    @Bean
+    @ConditionalOnProperty(name = "analytics.consumer.mode", havingValue = "sequential", matchIfMissing = true)
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> kafkaListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> consumerFactory,
+            ObjectProvider<KafkaConsumer> kafkaConsumer) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, consumerFactory);
+
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setConsumerRebalanceListener(rebalanceListener(
+                (consumer, partitions) -> kafkaConsumer.getObject().onPartitionsRevokedBeforeCommit(consumer, partitions),
+                (consumer, partitions) -> kafkaConsumer.getObject().onPartitionsLost(consumer, partitions)));
+        factory.getContainerProperties().setIdleEventInterval(5000L);
+
+        // a record skipped after its retries must not commit past the ones still buffered in the archive
+        DefaultErrorHandler errorHandler = new DefaultErrorHandler();
+        errorHandler.setAckAfterHandle(false);
+        factory.setCommonErrorHandler(errorHandler);
+
+        return factory;
+    }
+
+    // batch listener whose offsets are committed by ParallelKafkaConsumer itself, never by the container
+    @Bean
+    @ConditionalOnProperty(name = "analytics.consumer.mode", havingValue = "parallel")
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> keyOrderedListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> consumerFactory,
+            ObjectProvider<ParallelKafkaConsumer> parallelKafkaConsumer) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, consumerFactory);
+
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setConsumerRebalanceListener(rebalanceListener(
+                (consumer, partitions) -> parallelKafkaConsumer.getObject().onPartitionsRevokedBeforeCommit(consumer, partitions),
+                (consumer, partitions) -> parallelKafkaConsumer.getObject().onPartitionsLost(consumer, partitions)));
+        factory.getContainerProperties().setIdleEventInterval(5000L);
+
+        return factory;
+    }
+
+    /*
+     The consumers are looked up on the first rebalance, not when the factory is built: their @KafkaListener needs
+     the factory while they are created. For the same reason they are not ConsumerAwareRebalanceListener beans
+     themselves, Boot's configurer would pull the single one of those into every factory it configures.
+    */
+    private static ConsumerAwareRebalanceListener rebalanceListener(
+            BiConsumer<Consumer<?, ?>, Collection<TopicPartition>> revoked,
+            BiConsumer<Consumer<?, ?>, Collection<TopicPartition>> lost) {
+        return new ConsumerAwareRebalanceListener() {
+            @Override
+            public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                revoked.accept(consumer, partitions);
+            }
+
+            @Override
+            public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                lost.accept(consumer, partitions);
+            }
+        };
+    }
+}
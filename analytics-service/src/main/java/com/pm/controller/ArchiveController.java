@@ -0,0 +1,43 @@
+package com.pm.controller;
+
+import com.pm.archive.ArchiveInterval;
+import com.pm.archive.ArchiveQueryService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/archive")
+public class ArchiveController {
+    private final ArchiveQueryService archiveQueryService;
+
+    public ArchiveController(ArchiveQueryService archiveQueryService) {
+        this.archiveQueryService = archiveQueryService;
+    }
+
+    // e.g. registrations per month over two years:
+    // GET /archive/events/counts?from=2024-01-01&to=2026-01-01&interval=MONTH&eventType=PATIENT_CREATED
+    @GetMapping("/events/counts")
+    public ResponseEntity<Map<String, Long>> countEvents(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String eventType,
+            @RequestParam(defaultValue = "MONTH") ArchiveInterval interval
+    ) {
+        long fromMillis = from == null ? Long.MIN_VALUE : from.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        long toMillis = to == null ? Long.MAX_VALUE : to.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+
+        if (fromMillis >= toMillis) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return ResponseEntity.ok(archiveQueryService.countEvents(fromMillis, toMillis, eventType, interval));
+    }
+}
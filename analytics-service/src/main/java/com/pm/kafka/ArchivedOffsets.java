@@ -0,0 +1,54 @@
+package com.pm.kafka;
+
+import com.pm.archive.EventArchive;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ Holds back processed offsets until the archive has written their events to a segment. Committing them right
+ away loses up to archive.flush-interval-ms / archive.segment.max-rows of buffered events on a crash, kafka would
+ never deliver them again. Offsets are parked under the archive generation that was open when they were processed
+ and handed out once EventArchive.isWritten says that generation is on disk.
+*/
+class ArchivedOffsets {
+    private final EventArchive eventArchive;
+    private final TreeMap<Long, Map<TopicPartition, OffsetAndMetadata>> pending = new TreeMap<>();
+
+    ArchivedOffsets(EventArchive eventArchive) {
+        this.eventArchive = eventArchive;
+    }
+
+    // the events below these offsets must have been appended to the archive already
+    synchronized void processed(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        if (!offsets.isEmpty()) {
+            pending.computeIfAbsent(eventArchive.currentGeneration(), generation -> new HashMap<>()).putAll(offsets);
+        }
+    }
+
+    // the offsets that are safe to commit now, each one is handed out once
+    synchronized Map<TopicPartition, OffsetAndMetadata> drainWritten() {
+        Map<TopicPartition, OffsetAndMetadata> written = new HashMap<>();
+        Iterator<Map.Entry<Long, Map<TopicPartition, OffsetAndMetadata>>> generations = pending.entrySet().iterator();
+        while (generations.hasNext()) {
+            Map.Entry<Long, Map<TopicPartition, OffsetAndMetadata>> entry = generations.next();
+            if (!eventArchive.isWritten(entry.getKey())) {
+                break;
+            }
+            // later generations hold the later offsets of a partition
+            written.putAll(entry.getValue());
+            generations.remove();
+        }
+        return written;
+    }
+
+    synchronized void forget(Collection<TopicPartition> partitions) {
+        pending.values().forEach(offsets -> offsets.keySet().removeAll(partitions));
+        pending.values().removeIf(Map::isEmpty);
+    }
+}
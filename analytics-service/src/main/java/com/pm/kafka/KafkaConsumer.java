@@ -1,32 +1,93 @@
 package com.pm.kafka;
 
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.pm.service.PatientEventProcessor;
+import com.pm.archive.EventArchive;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
 import org.springframework.stereotype.Service;
 import patient.events.PatientEvent;
 
+import java.util.Collection;
+import java.util.Map;
+
+/*
+ Default mode: one record at a time per partition, see ParallelKafkaConsumer for the key-ordered parallel mode.
+ The container does not commit (AckMode.MANUAL, see KafkaConsumerConfig), offsets are committed here once the
+ archive has written their events to a segment (see ArchivedOffsets).
+*/
 @Service
+@ConditionalOnProperty(name = "analytics.consumer.mode", havingValue = "sequential", matchIfMissing = true)
 public class KafkaConsumer {
     private static final Logger log = LoggerFactory.getLogger(KafkaConsumer.class);
+    private static final String LISTENER_ID = "patient-events";
 
-    @KafkaListener(topics = "patient", groupId = "analytics-service")
-    public void consumeEvent(byte[] event) {
-        try {
-            PatientEvent patientEvent = PatientEvent.parseFrom(event);
+    private final PatientEventProcessor patientEventProcessor;
+    private final EventArchive eventArchive;
+    private final ArchivedOffsets archivedOffsets;
+
+    public KafkaConsumer(PatientEventProcessor patientEventProcessor, EventArchive eventArchive) {
+        this.patientEventProcessor = patientEventProcessor;
+        this.eventArchive = eventArchive;
+        this.archivedOffsets = new ArchivedOffsets(eventArchive);
+    }
 
-            //...perform any business logic regarding analytics here
+    @KafkaListener(id = LISTENER_ID, idIsGroup = false, topics = "patient", groupId = "analytics-service")
+    public void consumeEvent(ConsumerRecord<String, byte[]> record, Consumer<?, ?> consumer) {
+        try {
+            PatientEvent patientEvent = PatientEvent.parseFrom(record.value());
 
-            log.info("Received Patient event: [PatientId = {}, PatientName = {}, PatientEmail = {}]",
-                    patientEvent.getPatientId(),
-                    patientEvent.getName(),
-                    patientEvent.getEmail()
-            );
+            patientEventProcessor.process(patientEvent, record.timestamp());
         }
         catch (InvalidProtocolBufferException e) {
             log.error("Error while desrializing the message: {}", e.getMessage());
         }
+
+        archivedOffsets.processed(Map.of(new TopicPartition(record.topic(), record.partition()),
+                new OffsetAndMetadata(record.offset() + 1)));
+        commitWritten(consumer, false);
+    }
+
+    // the listener is not called without records, so offsets written by the scheduled flush are committed when idle
+    @EventListener(condition = "event.listenerId.startsWith('" + LISTENER_ID + "')")
+    public void onIdle(ListenerContainerIdleEvent event) {
+        commitWritten(event.getConsumer(), false);
     }
 
+    // rebalance listener (see KafkaConsumerConfig): write out what was consumed so the offsets are committed before
+    // another consumer takes over
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        eventArchive.flush();
+        commitWritten(consumer, true);
+        archivedOffsets.forget(partitions);
+    }
+
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        archivedOffsets.forget(partitions);
+    }
+
+    private void commitWritten(Consumer<?, ?> consumer, boolean sync) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = archivedOffsets.drainWritten();
+        if (offsets.isEmpty()) {
+            return;
+        }
+
+        if (sync) {
+            consumer.commitSync(offsets);
+        } else {
+            consumer.commitAsync(offsets, (committed, exception) -> {
+                if (exception != null) {
+                    log.warn("Error while committing offsets {}: {}", committed, exception.getMessage());
+                }
+            });
+        }
+    }
 }
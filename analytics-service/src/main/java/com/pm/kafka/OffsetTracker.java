@@ -0,0 +1,49 @@
+package com.pm.kafka;
+
+import java.util.HashSet;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.TreeSet;
+
+/*
+ Tracks the offsets of one partition while its records are processed out of order by different workers.
+ Only the contiguous completed prefix may be committed: if 10, 11 and 13 are done but 12 is still running
+ the committable offset is 12 (kafka commits the next offset to read), so a crash never skips record 12.
+*/
+class OffsetTracker {
+    private final TreeSet<Long> inFlight = new TreeSet<>();
+    private final Set<Long> completed = new HashSet<>();
+    private long nextOffset = -1;
+    private long committedOffset = -1;
+
+    synchronized void dispatched(long offset) {
+        inFlight.add(offset);
+    }
+
+    synchronized void completed(long offset) {
+        completed.add(offset);
+    }
+
+    // advances the watermark, returns the offset to commit if it moved since the last call
+    synchronized OptionalLong drainCommittable() {
+        while (!inFlight.isEmpty() && completed.remove(inFlight.first())) {
+            nextOffset = inFlight.pollFirst() + 1;
+        }
+
+        if (nextOffset > committedOffset) {
+            committedOffset = nextOffset;
+            return OptionalLong.of(nextOffset);
+        }
+        return OptionalLong.empty();
+    }
+
+    // current watermark even if it was handed out before, used for the final synchronous commit on revocation
+    synchronized OptionalLong committable() {
+        drainCommittable();
+        return nextOffset < 0 ? OptionalLong.empty() : OptionalLong.of(nextOffset);
+    }
+
+    synchronized boolean hasInFlight() {
+        return !inFlight.isEmpty();
+    }
+}
@@ -0,0 +1,197 @@
+package com.pm.kafka;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.pm.archive.EventArchive;
+import com.pm.service.PatientEventProcessor;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.stereotype.Service;
+import patient.events.PatientEvent;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ Key-ordered parallel mode (analytics.consumer.mode=parallel).
+
+ A partition is normally processed by one thread, so throughput is capped by the partition count of the topic.
+ Here every polled batch is fanned out to a fixed set of single threaded worker lanes, the lane is picked by
+ patientId hash so events of the same patient are still processed in order, but different patients of the
+ same partition run in parallel. Offsets are committed from the consumer thread as the contiguous completed
+ watermark of each partition (see OffsetTracker), once the archive has written those events to a segment
+ (see ArchivedOffsets), so a crash re-delivers at most the unfinished or still buffered records.
+*/
+@Service
+@ConditionalOnProperty(name = "analytics.consumer.mode", havingValue = "parallel")
+public class ParallelKafkaConsumer {
+    private static final Logger log = LoggerFactory.getLogger(ParallelKafkaConsumer.class);
+    private static final String LISTENER_ID = "patient-events-parallel";
+
+    private final PatientEventProcessor patientEventProcessor;
+    private final EventArchive eventArchive;
+    private final ArchivedOffsets archivedOffsets;
+    private final ExecutorService[] lanes;
+    private final Semaphore inFlightPermits;
+    private final Duration revokeTimeout;
+    private final Map<TopicPartition, OffsetTracker> trackers = new ConcurrentHashMap<>();
+
+    public ParallelKafkaConsumer(PatientEventProcessor patientEventProcessor,
+                                 EventArchive eventArchive,
+                                 @Value("${analytics.consumer.workers:0}") int workers,
+                                 @Value("${analytics.consumer.max-in-flight:10000}") int maxInFlight,
+                                 @Value("${analytics.consumer.revoke-timeout-ms:10000}") long revokeTimeoutMs) {
+        this.patientEventProcessor = patientEventProcessor;
+        this.eventArchive = eventArchive;
+        this.archivedOffsets = new ArchivedOffsets(eventArchive);
+        this.inFlightPermits = new Semaphore(maxInFlight);
+        this.revokeTimeout = Duration.ofMillis(revokeTimeoutMs);
+
+        int laneCount = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.lanes = new ExecutorService[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = Executors.newSingleThreadExecutor(runnable ->
+                    new Thread(runnable, "patient-event-worker-" + threadNumber.incrementAndGet()));
+        }
+
+        log.info("Key-ordered parallel consumer started with {} worker lanes", laneCount);
+    }
+
+    @KafkaListener(id = LISTENER_ID, idIsGroup = false, topics = "patient", groupId = "analytics-service",
+            containerFactory = "keyOrderedListenerContainerFactory")
+    public void consumeEvents(List<ConsumerRecord<String, byte[]>> records, Consumer<?, ?> consumer) throws InterruptedException {
+        for (ConsumerRecord<String, byte[]> record : records) {
+            TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+            OffsetTracker tracker = trackers.computeIfAbsent(partition, p -> new OffsetTracker());
+            tracker.dispatched(record.offset());
+
+            PatientEvent patientEvent;
+            try {
+                patientEvent = PatientEvent.parseFrom(record.value());
+            } catch (InvalidProtocolBufferException e) {
+                log.error("Error while desrializing the message: {}", e.getMessage());
+                tracker.completed(record.offset());
+                continue;
+            }
+
+            // bounds the records buffered in the lanes, blocks the poll loop when the workers fall behind
+            inFlightPermits.acquire();
+
+            lanes[Math.floorMod(patientEvent.getPatientId().hashCode(), lanes.length)].execute(() -> {
+                try {
+                    patientEventProcessor.process(patientEvent, record.timestamp());
+                } catch (RuntimeException e) {
+                    log.error("Error while processing patient event at {}-{}: {}", partition, record.offset(), e.getMessage());
+                } finally {
+                    tracker.completed(record.offset());
+                    inFlightPermits.release();
+                }
+            });
+        }
+
+        watermarksProcessed(trackers.keySet(), false);
+        commitWritten(consumer, false);
+    }
+
+    // batch listeners are not called without records, so the last watermarks are committed when the container goes idle
+    @EventListener(condition = "event.listenerId.startsWith('" + LISTENER_ID + "')")
+    public void onIdle(ListenerContainerIdleEvent event) {
+        watermarksProcessed(trackers.keySet(), false);
+        commitWritten(event.getConsumer(), false);
+    }
+
+    // rebalance listener (see KafkaConsumerConfig): let in-flight records of revoked partitions finish and write them
+    // out so their offsets are committed before another consumer takes over
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        long deadline = System.nanoTime() + revokeTimeout.toNanos();
+
+        for (TopicPartition partition : partitions) {
+            OffsetTracker tracker = trackers.get(partition);
+            while (tracker != null && tracker.hasInFlight() && System.nanoTime() < deadline) {
+                tracker.drainCommittable();
+                if (tracker.hasInFlight()) {
+                    sleepBriefly();
+                }
+            }
+        }
+
+        // noted before the flush, so the segment it writes covers them
+        watermarksProcessed(partitions, true);
+        eventArchive.flush();
+        commitWritten(consumer, true);
+        archivedOffsets.forget(partitions);
+        partitions.forEach(trackers::remove);
+    }
+
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        archivedOffsets.forget(partitions);
+        partitions.forEach(trackers::remove);
+    }
+
+    private void watermarksProcessed(Collection<TopicPartition> partitions, boolean sync) {
+        Map<TopicPartition, OffsetAndMetadata> processed = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            OffsetTracker tracker = trackers.get(partition);
+            if (tracker != null) {
+                OptionalLong offset = sync ? tracker.committable() : tracker.drainCommittable();
+                offset.ifPresent(next -> processed.put(partition, new OffsetAndMetadata(next)));
+            }
+        }
+        archivedOffsets.processed(processed);
+    }
+
+    private void commitWritten(Consumer<?, ?> consumer, boolean sync) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = archivedOffsets.drainWritten();
+        if (offsets.isEmpty()) {
+            return;
+        }
+
+        if (sync) {
+            consumer.commitSync(offsets);
+        } else {
+            consumer.commitAsync(offsets, (committed, exception) -> {
+                if (exception != null) {
+                    log.warn("Error while committing offsets {}: {}", committed, exception.getMessage());
+                }
+            });
+        }
+    }
+
+    private static void sleepBriefly() {
+        try {
+            TimeUnit.MILLISECONDS.sleep(5);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        for (ExecutorService lane : lanes) {
+            lane.awaitTermination(revokeTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+}
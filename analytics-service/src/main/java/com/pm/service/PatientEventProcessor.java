@@ -0,0 +1,30 @@
+package com.pm.service;
+
+import com.pm.archive.EventArchive;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import patient.events.PatientEvent;
+
+// Business logic for a single PatientEvent, shared by the sequential and the key-ordered parallel consumer
+@Service
+public class PatientEventProcessor {
+    private static final Logger log = LoggerFactory.getLogger(PatientEventProcessor.class);
+
+    private final EventArchive eventArchive;
+
+    public PatientEventProcessor(EventArchive eventArchive) {
+        this.eventArchive = eventArchive;
+    }
+
+    public void process(PatientEvent patientEvent, long timestamp) {
+        // keep history beyond kafka retention, record timestamp is when the event was produced
+        eventArchive.append(patientEvent, timestamp);
+
+        log.info("Received Patient event: [PatientId = {}, PatientName = {}, PatientEmail = {}]",
+                patientEvent.getPatientId(),
+                patientEvent.getName(),
+                patientEvent.getEmail()
+        );
+    }
+}
@@ -0,0 +1,151 @@
+package com.pm.archive;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import patient.events.PatientEvent;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ArchiveQueryServiceTest {
+    private static final long JAN_1 = day(2024, 1, 1);
+    private static final long JAN_2 = day(2024, 1, 2);
+    private static final long FEB_1 = day(2024, 2, 1);
+
+    @TempDir
+    Path directory;
+
+    private EventArchive archive;
+    private ArchiveQueryService queryService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        archive = new EventArchive(directory.toString(), 1000);
+        archive.loadSegments();
+        queryService = new ArchiveQueryService(archive);
+    }
+
+    @AfterEach
+    void tearDown() {
+        queryService.shutdown();
+    }
+
+    @Test
+    void countsSegmentsAndBufferedEventsByInterval() {
+        archive.append(event("PATIENT_CREATED"), JAN_1 + 10);
+        archive.append(event("PATIENT_UPDATED"), JAN_1 + 20);
+        archive.flush();
+        archive.append(event("PATIENT_CREATED"), JAN_2);
+        archive.append(event("PATIENT_CREATED"), FEB_1);
+
+        assertEquals(Map.of("2024-01-01", 2L, "2024-01-02", 1L),
+                queryService.countEvents(JAN_1, FEB_1, null, ArchiveInterval.DAY));
+        assertEquals(Map.of("2024-01", 2L, "2024-02", 1L),
+                queryService.countEvents(JAN_1, FEB_1 + 1, "PATIENT_CREATED", ArchiveInterval.MONTH));
+        assertEquals(Map.of("2024", 4L), queryService.countEvents(0, Long.MAX_VALUE, null, ArchiveInterval.YEAR));
+    }
+
+    @Test
+    void segmentsOutsideTheTimeRangeAreNotRead() throws Exception {
+        archive.append(event("PATIENT_CREATED"), JAN_1);
+        archive.flush();
+        archive.append(event("PATIENT_CREATED"), FEB_1);
+        archive.flush();
+
+        // reading the columns of the January segment would fail now
+        Files.delete(archive.getSegments().stream().filter(s -> s.getMinTimestamp() == JAN_1).findFirst().orElseThrow().getFile());
+
+        assertEquals(Map.of("2024-02-01", 1L), queryService.countEvents(FEB_1, FEB_1 + 1, null, ArchiveInterval.DAY));
+    }
+
+    @Test
+    void segmentsWithoutTheEventTypeInTheirDictionaryAreNotRead() throws Exception {
+        archive.append(event("PATIENT_CREATED"), JAN_1);
+        archive.flush();
+        archive.append(event("PATIENT_DELETED"), JAN_2);
+        archive.flush();
+
+        Files.delete(archive.getSegments().stream().filter(s -> s.getMinTimestamp() == JAN_1).findFirst().orElseThrow().getFile());
+
+        assertEquals(Map.of("2024-01-02", 1L), queryService.countEvents(JAN_1, FEB_1, "PATIENT_DELETED", ArchiveInterval.DAY));
+    }
+
+    @Test
+    void theParallelScanOfManySegmentsMatchesAPlainCount() {
+        Random random = new Random(42);
+        String[] types = {"PATIENT_CREATED", "PATIENT_UPDATED", "PATIENT_DELETED"};
+        Map<String, Long> expected = new HashMap<>();
+        for (int segment = 0; segment < 20; segment++) {
+            for (int row = 0; row < 50; row++) {
+                long timestamp = JAN_1 + random.nextInt(40) * 86_400_000L + random.nextInt(86_400_000);
+                String type = types[random.nextInt(types.length)];
+                archive.append(event(type), timestamp);
+                if (type.equals("PATIENT_UPDATED") && timestamp >= JAN_2 && timestamp < FEB_1) {
+                    expected.merge(ArchiveInterval.DAY.format(ArchiveInterval.DAY.bucketOf(timestamp)), 1L, Long::sum);
+                }
+            }
+            archive.flush();
+        }
+
+        assertEquals(expected, queryService.countEvents(JAN_2, FEB_1, "PATIENT_UPDATED", ArchiveInterval.DAY));
+    }
+
+    @Test
+    void eventsStayVisibleWhileTheirSegmentIsWritten() throws Exception {
+        EventArchive smallSegments = new EventArchive(directory.resolve("small").toString(), 5);
+        smallSegments.loadSegments();
+        ArchiveQueryService smallQueries = new ArchiveQueryService(smallSegments);
+        AtomicLong appended = new AtomicLong();
+        AtomicReference<String> violation = new AtomicReference<>();
+
+        // every fifth append writes a segment on the appending thread, queries run meanwhile
+        Thread appender = new Thread(() -> {
+            for (int i = 0; i < 200; i++) {
+                smallSegments.append(event("PATIENT_CREATED"), JAN_1 + i);
+                appended.incrementAndGet();
+            }
+        });
+        appender.start();
+        try {
+            while (appender.isAlive()) {
+                long before = appended.get();
+                long counted = smallQueries.countEvents(0, Long.MAX_VALUE, null, ArchiveInterval.YEAR)
+                        .values().stream().mapToLong(Long::longValue).sum();
+                long after = appended.get() + 1; // an append may be under way
+                if (counted < before || counted > after) {
+                    violation.compareAndSet(null, "counted " + counted + " with " + before + ".." + after + " appended");
+                }
+            }
+            assertNull(violation.get());
+            assertEquals(Map.of("2024", 200L), smallQueries.countEvents(0, Long.MAX_VALUE, null, ArchiveInterval.YEAR));
+        } finally {
+            appender.join();
+            smallQueries.shutdown();
+        }
+    }
+
+    private static long day(int year, int month, int day) {
+        return LocalDate.of(year, month, day).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static PatientEvent event(String eventType) {
+        return PatientEvent.newBuilder()
+                .setPatientId("patient-1")
+                .setName("Ann")
+                .setEmail("ann@test.com")
+                .setEventType(eventType)
+                .build();
+    }
+}
@@ -0,0 +1,80 @@
+package com.pm.archive;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import patient.events.PatientEvent;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventArchiveTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void bufferedEventsAreNotWrittenUntilFlushed() throws Exception {
+        EventArchive archive = open(100);
+
+        archive.append(event("patient-1"), 1L);
+        long generation = archive.currentGeneration();
+        assertFalse(archive.isWritten(generation));
+
+        archive.flush();
+        assertTrue(archive.isWritten(generation));
+        assertEquals(1, archive.getSegments().size());
+        assertEquals(1, open(100).getSegments().size());
+    }
+
+    @Test
+    void fullBufferIsWrittenWithoutFlush() throws Exception {
+        EventArchive archive = open(2);
+
+        archive.append(event("patient-1"), 1L);
+        long generation = archive.currentGeneration();
+        archive.append(event("patient-2"), 2L);
+
+        assertTrue(archive.isWritten(generation));
+        assertEquals(1, archive.getSegments().size());
+    }
+
+    @Test
+    void failedWriteKeepsItsGenerationUnwrittenUntilTheRetry() throws Exception {
+        EventArchive archive = open(100);
+        archive.append(event("patient-1"), 1L);
+        long failed = archive.currentGeneration();
+
+        Files.delete(directory);
+        archive.flush();
+        archive.append(event("patient-2"), 2L);
+        long next = archive.currentGeneration();
+
+        assertFalse(archive.isWritten(failed));
+        assertEquals(2, archive.getBufferedEvents().size());
+
+        Files.createDirectories(directory);
+        archive.flush();
+        assertTrue(archive.isWritten(failed));
+        assertTrue(archive.isWritten(next));
+        assertEquals(2, archive.getSegments().get(0).getRowCount());
+    }
+
+    private EventArchive open(int maxRowsPerSegment) throws Exception {
+        EventArchive archive = new EventArchive(directory.toString(), maxRowsPerSegment);
+        archive.loadSegments();
+        return archive;
+    }
+
+    private static PatientEvent event(String patientId) {
+        return PatientEvent.newBuilder()
+                .setPatientId(patientId)
+                .setName("Ann")
+                .setEmail(patientId + "@test.com")
+                .setEventType("PATIENT_CREATED")
+                .build();
+    }
+}
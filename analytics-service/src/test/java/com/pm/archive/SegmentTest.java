@@ -0,0 +1,105 @@
+package com.pm.archive;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void rowsRoundTripSortedByTime() throws Exception {
+        Segment segment = write(List.of(
+                new ArchivedEvent(1_700_000_300_000L, "patient-3", "Zoë Ünal", "zoe@test.com", "PATIENT_UPDATED"),
+                new ArchivedEvent(1_700_000_100_000L, "patient-1", "Ann", "ann@test.com", "PATIENT_CREATED"),
+                new ArchivedEvent(1_700_000_200_000L, "patient-2", "", "bob@test.com", "PATIENT_CREATED")));
+
+        assertEquals(3, segment.getRowCount());
+        assertArrayEquals(new long[]{1_700_000_100_000L, 1_700_000_200_000L, 1_700_000_300_000L}, segment.readTimestamps());
+        assertArrayEquals(new String[]{"patient-1", "patient-2", "patient-3"}, segment.readStrings(Column.PATIENT_ID));
+        assertArrayEquals(new String[]{"Ann", "", "Zoë Ünal"}, segment.readStrings(Column.NAME));
+        assertArrayEquals(new String[]{"ann@test.com", "bob@test.com", "zoe@test.com"}, segment.readStrings(Column.EMAIL));
+    }
+
+    @Test
+    void eventTypesAreStoredAsCodesIntoTheHeaderDictionary() throws Exception {
+        Segment segment = write(List.of(
+                event(1, "PATIENT_CREATED"),
+                event(2, "PATIENT_UPDATED"),
+                event(3, "PATIENT_CREATED"),
+                event(4, "PATIENT_DELETED")));
+
+        assertEquals(List.of("PATIENT_CREATED", "PATIENT_UPDATED", "PATIENT_DELETED"), segment.getDictionary());
+        assertArrayEquals(new int[]{0, 1, 0, 2}, segment.readEventTypeCodes());
+    }
+
+    @Test
+    void timeDeltasMayBeLargeOrZero() throws Exception {
+        Segment segment = write(List.of(event(0, "A"), event(0, "A"), event(Long.MAX_VALUE / 2, "A"), event(-5, "A")));
+
+        assertArrayEquals(new long[]{-5, 0, 0, Long.MAX_VALUE / 2}, segment.readTimestamps());
+    }
+
+    @Test
+    void theHeaderMinAndMaxTimestampPruneRangesOutsideTheSegment() throws Exception {
+        Segment segment = write(List.of(event(100, "A"), event(200, "A")));
+
+        assertEquals(100, segment.getMinTimestamp());
+        assertEquals(200, segment.getMaxTimestamp());
+        assertTrue(segment.isOutside(0, 100));   // to is exclusive
+        assertFalse(segment.isOutside(0, 101));
+        assertFalse(segment.isOutside(200, 300)); // from is inclusive
+        assertTrue(segment.isOutside(201, 300));
+    }
+
+    @Test
+    void aReopenedSegmentReadsTheSameRows() throws Exception {
+        Segment written = write(List.of(event(1, "A"), event(2, "B")));
+        Segment reopened = Segment.open(written.getFile());
+
+        assertEquals(written.getDictionary(), reopened.getDictionary());
+        assertArrayEquals(written.readTimestamps(), reopened.readTimestamps());
+        assertArrayEquals(written.readEventTypeCodes(), reopened.readEventTypeCodes());
+    }
+
+    @Test
+    void onlyStringColumnsCanBeReadAsStrings() throws Exception {
+        Segment segment = write(List.of(event(1, "A")));
+
+        assertThrows(IllegalArgumentException.class, () -> segment.readStrings(Column.TIMESTAMP));
+        assertThrows(IllegalArgumentException.class, () -> segment.readStrings(Column.EVENT_TYPE));
+    }
+
+    @Test
+    void anEmptySegmentIsRefused() {
+        assertThrows(IllegalArgumentException.class, () -> SegmentWriter.write(directory, "empty.seg", List.of()));
+    }
+
+    @Test
+    void aSegmentIsOnlyVisibleUnderItsNameOnceCompletelyWritten() throws Exception {
+        Segment segment = write(List.of(event(1, "A")));
+
+        try (var files = Files.list(directory)) {
+            assertEquals(List.of(segment.getFile()), files.toList());
+        }
+    }
+
+    private Segment write(List<ArchivedEvent> events) throws Exception {
+        return Segment.open(SegmentWriter.write(directory, "test.seg", events));
+    }
+
+    private static ArchivedEvent event(long timestamp, String eventType) {
+        return new ArchivedEvent(timestamp, "patient-" + timestamp, "Ann", "ann@test.com", eventType);
+    }
+}
@@ -0,0 +1,47 @@
+package com.pm.archive;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VarintsTest {
+
+    @Test
+    void unsignedValuesRoundTripInAsFewBytesAsTheyNeed() {
+        assertUnsigned(0, 1);
+        assertUnsigned(127, 1);
+        assertUnsigned(128, 2);
+        assertUnsigned(16_383, 2);
+        assertUnsigned(16_384, 3);
+        assertUnsigned(Long.MAX_VALUE, 9);
+        assertUnsigned(-1, 10);
+    }
+
+    @Test
+    void signedValuesAreZigZagEncodedSoSmallNegativesStaySmall() {
+        assertSigned(0, 1);
+        assertSigned(-1, 1);
+        assertSigned(63, 1);
+        assertSigned(-64, 1);
+        assertSigned(64, 2);
+        assertSigned(Long.MAX_VALUE, 10);
+        assertSigned(Long.MIN_VALUE, 10);
+    }
+
+    private static void assertUnsigned(long value, int bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Varints.writeUnsigned(out, value);
+        assertEquals(bytes, out.size());
+        assertEquals(value, Varints.readUnsigned(ByteBuffer.wrap(out.toByteArray())));
+    }
+
+    private static void assertSigned(long value, int bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Varints.writeSigned(out, value);
+        assertEquals(bytes, out.size());
+        assertEquals(value, Varints.readSigned(ByteBuffer.wrap(out.toByteArray())));
+    }
+}
@@ -0,0 +1,64 @@
+package com.pm.kafka;
+
+import com.pm.archive.EventArchive;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import patient.events.PatientEvent;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ArchivedOffsetsTest {
+    private static final TopicPartition PARTITION = new TopicPartition("patient", 0);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void offsetsAreHeldBackUntilTheirEventsAreWritten() throws Exception {
+        EventArchive archive = new EventArchive(directory.toString(), 100);
+        ArchivedOffsets offsets = new ArchivedOffsets(archive);
+
+        archive.append(event(), 1L);
+        offsets.processed(Map.of(PARTITION, new OffsetAndMetadata(1)));
+        assertEquals(Map.of(), offsets.drainWritten());
+
+        archive.flush();
+        archive.append(event(), 2L);
+        offsets.processed(Map.of(PARTITION, new OffsetAndMetadata(2)));
+
+        // only the first event is in a segment, the second one is still buffered
+        assertEquals(Map.of(PARTITION, new OffsetAndMetadata(1)), offsets.drainWritten());
+        assertEquals(Map.of(), offsets.drainWritten());
+
+        archive.flush();
+        assertEquals(Map.of(PARTITION, new OffsetAndMetadata(2)), offsets.drainWritten());
+    }
+
+    @Test
+    void revokedPartitionsAreForgotten() throws Exception {
+        EventArchive archive = new EventArchive(directory.toString(), 100);
+        ArchivedOffsets offsets = new ArchivedOffsets(archive);
+
+        archive.append(event(), 1L);
+        offsets.processed(Map.of(PARTITION, new OffsetAndMetadata(1)));
+        offsets.forget(List.of(PARTITION));
+        archive.flush();
+
+        assertEquals(Map.of(), offsets.drainWritten());
+    }
+
+    private static PatientEvent event() {
+        return PatientEvent.newBuilder()
+                .setPatientId("patient-1")
+                .setName("Ann")
+                .setEmail("ann@test.com")
+                .setEventType("PATIENT_CREATED")
+                .build();
+    }
+}
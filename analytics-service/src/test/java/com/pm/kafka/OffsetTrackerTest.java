@@ -0,0 +1,89 @@
+package com.pm.kafka;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.OptionalLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffsetTrackerTest {
+
+    @Test
+    void onlyTheContiguousCompletedPrefixIsCommittable() {
+        OffsetTracker tracker = dispatched(10, 11, 12, 13);
+
+        tracker.completed(10);
+        tracker.completed(11);
+        tracker.completed(13);
+        assertEquals(OptionalLong.of(12), tracker.drainCommittable());
+        assertTrue(tracker.hasInFlight());
+
+        tracker.completed(12);
+        assertEquals(OptionalLong.of(14), tracker.drainCommittable());
+        assertFalse(tracker.hasInFlight());
+    }
+
+    @Test
+    void nothingIsCommittableWhileTheFirstRecordIsRunning() {
+        OffsetTracker tracker = dispatched(10, 11, 12);
+
+        tracker.completed(12);
+        tracker.completed(11);
+
+        assertEquals(OptionalLong.empty(), tracker.drainCommittable());
+        assertEquals(OptionalLong.empty(), tracker.committable());
+    }
+
+    @Test
+    void gapsInTheOffsetsDoNotHoldBackTheWatermark() {
+        // compaction and transaction markers leave offsets that are never delivered
+        OffsetTracker tracker = dispatched(10, 13, 20);
+
+        tracker.completed(20);
+        tracker.completed(10);
+        assertEquals(OptionalLong.of(11), tracker.drainCommittable());
+
+        tracker.completed(13);
+        assertEquals(OptionalLong.of(21), tracker.drainCommittable());
+    }
+
+    @Test
+    void aWatermarkIsHandedOutOnceButStaysAvailableForTheRevokeCommit() {
+        OffsetTracker tracker = dispatched(10, 11);
+        tracker.completed(10);
+        tracker.completed(11);
+
+        assertEquals(OptionalLong.of(12), tracker.drainCommittable());
+        assertEquals(OptionalLong.empty(), tracker.drainCommittable());
+        assertEquals(OptionalLong.of(12), tracker.committable());
+    }
+
+    @Test
+    void aRedeliveredOffsetBelowTheWatermarkDoesNotMoveItBack() {
+        // the container seeks back after a failed batch and the same records come again
+        OffsetTracker tracker = dispatched(10, 11);
+        tracker.completed(10);
+        tracker.completed(11);
+        assertEquals(OptionalLong.of(12), tracker.drainCommittable());
+
+        tracker.dispatched(10);
+        tracker.dispatched(11);
+        tracker.dispatched(12);
+        tracker.completed(10);
+        tracker.completed(11);
+        assertEquals(OptionalLong.empty(), tracker.drainCommittable());
+
+        tracker.completed(12);
+        assertEquals(OptionalLong.of(13), tracker.drainCommittable());
+    }
+
+    private static OffsetTracker dispatched(long... offsets) {
+        OffsetTracker tracker = new OffsetTracker();
+        for (long offset : offsets) {
+            tracker.dispatched(offset);
+        }
+        return tracker;
+    }
+}
@@ -0,0 +1,95 @@
+package com.pm.kafka;
+
+import com.pm.archive.EventArchive;
+import com.pm.service.PatientEventProcessor;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import patient.events.PatientEvent;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class ParallelKafkaConsumerTest {
+    private static final TopicPartition PARTITION = new TopicPartition("patient", 0);
+
+    @TempDir
+    Path directory;
+
+    private final Consumer<?, ?> consumer = mock(Consumer.class);
+    private ParallelKafkaConsumer parallelKafkaConsumer;
+
+    @BeforeEach
+    void setUp() {
+        EventArchive archive = new EventArchive(directory.toString(), 100);
+        parallelKafkaConsumer = new ParallelKafkaConsumer(new PatientEventProcessor(archive), archive, 4, 100, 5000);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        parallelKafkaConsumer.shutdown();
+    }
+
+    @Test
+    void revokingWaitsForTheRecordsInFlightAndCommitsTheirWatermark() throws Exception {
+        parallelKafkaConsumer.consumeEvents(records(10, 11, 12, 13), consumer);
+
+        parallelKafkaConsumer.onPartitionsRevokedBeforeCommit(consumer, List.of(PARTITION));
+
+        verify(consumer).commitSync(Map.of(PARTITION, new OffsetAndMetadata(14)));
+    }
+
+    @Test
+    void aReassignedPartitionStartsOverFromTheResetPosition() throws Exception {
+        parallelKafkaConsumer.consumeEvents(records(10, 11), consumer);
+        parallelKafkaConsumer.onPartitionsRevokedBeforeCommit(consumer, List.of(PARTITION));
+        clearInvocations(consumer);
+
+        // assigned again, kafka resets the position to the committed offset or an earlier one
+        parallelKafkaConsumer.consumeEvents(records(5, 6), consumer);
+        parallelKafkaConsumer.onPartitionsRevokedBeforeCommit(consumer, List.of(PARTITION));
+
+        verify(consumer).commitSync(Map.of(PARTITION, new OffsetAndMetadata(7)));
+    }
+
+    @Test
+    void aLostPartitionCommitsNothing() throws Exception {
+        parallelKafkaConsumer.consumeEvents(records(10, 11), consumer);
+        clearInvocations(consumer);
+
+        parallelKafkaConsumer.onPartitionsLost(consumer, List.of(PARTITION));
+        parallelKafkaConsumer.onPartitionsRevokedBeforeCommit(consumer, List.of(PARTITION));
+
+        verify(consumer, never()).commitSync(anyMap());
+        verify(consumer, never()).commitAsync(anyMap(), any());
+    }
+
+    private static List<ConsumerRecord<String, byte[]>> records(long... offsets) {
+        List<ConsumerRecord<String, byte[]>> records = new ArrayList<>();
+        for (long offset : offsets) {
+            PatientEvent event = PatientEvent.newBuilder()
+                    .setPatientId("patient-" + offset)
+                    .setName("Ann")
+                    .setEmail("ann@test.com")
+                    .setEventType("PATIENT_CREATED")
+                    .build();
+            records.add(new ConsumerRecord<>(PARTITION.topic(), PARTITION.partition(), offset, "patient-" + offset,
+                    event.toByteArray()));
+        }
+        return records;
+    }
+}
@@ -3,8 +3,10 @@ package com.pm;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling // refreshes the token signing keys (JwksKeySet) and revoked tokens, sweeps idle rate limit buckets
 public class ApiGatewayApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,168 @@
+package com.pm.batch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.pm.jwt.TokenValidator;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+
+/*
+ POST /api/batch: many small calls in one round trip, e.g. everything one mobile screen needs.
+
+ - the token is checked once for the whole batch, an invalid token fails the batch with 401
+ - the sub-requests are sent concurrently (at most gateway.batch.concurrency at a time) to this gateway's own
+   routes over loopback, so they go through the same filters as single calls: rate limit, response cache,
+   concurrency limit; their token check is a hit in the validated token cache
+ - at most gateway.batch.max-requests sub-requests, only /api/ paths, no nested batches; paths must already be
+   normalized (no empty, . or .. segments, also not percent-encoded), or /api/../actuator would pass the prefix check
+ - a sub-request that takes longer than gateway.batch.timeout-ms gets status 504 in the batch response, the other
+   sub-requests are not affected; the batch itself is always 200 once it was accepted
+*/
+@RestController
+public class BatchController {
+    private static final Logger log = LoggerFactory.getLogger(BatchController.class);
+
+    private static final Set<HttpMethod> METHODS = Set.of(HttpMethod.GET, HttpMethod.POST, HttpMethod.PUT, HttpMethod.DELETE);
+    private static final String BATCH_PATH = "/api/batch";
+
+    private final TokenValidator tokenValidator;
+    private final WebClient gateway;
+    private final ObjectMapper objectMapper;
+    private final int maxRequests;
+    private final int concurrency;
+    private final Duration timeout;
+    private final DistributionSummary batchSizes;
+
+    public BatchController(TokenValidator tokenValidator,
+                           WebClient.Builder webClientBuilder,
+                           ObjectMapper objectMapper,
+                           MeterRegistry meterRegistry,
+                           @Value("${server.port:8080}") int port,
+                           @Value("${gateway.batch.max-requests:30}") int maxRequests,
+                           @Value("${gateway.batch.concurrency:10}") int concurrency,
+                           @Value("${gateway.batch.timeout-ms:5000}") long timeoutMs) {
+        this.tokenValidator = tokenValidator;
+        this.gateway = webClientBuilder.baseUrl("http://localhost:" + port).build();
+        this.objectMapper = objectMapper;
+        this.maxRequests = maxRequests;
+        this.concurrency = concurrency;
+        this.timeout = Duration.ofMillis(timeoutMs);
+        this.batchSizes = DistributionSummary.builder("gateway.batch.size").register(meterRegistry);
+    }
+
+    @PostMapping(path = BATCH_PATH, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<Object>> batch(@RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+                                              @RequestBody BatchRequest batch) {
+        String invalid = invalid(batch);
+        if (invalid != null) {
+            return Mono.just(ResponseEntity.badRequest().body(Map.of("message", invalid)));
+        }
+
+        return tokenValidator.validate(authorization)
+                .map(valid -> {
+                    batchSizes.record(batch.requests().size());
+                    return batch.requests();
+                })
+                .flatMap(requests -> Flux.range(0, requests.size())
+                        // sent concurrently, answered in the order of the request
+                        .flatMapSequential(i -> send(id(requests.get(i), i), requests.get(i), authorization), concurrency)
+                        .collectList()
+                        .map(responses -> ResponseEntity.ok().<Object>body(new BatchResponse(responses))))
+                .defaultIfEmpty(ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
+    }
+
+    private String invalid(BatchRequest batch) {
+        if (batch == null || batch.requests() == null || batch.requests().isEmpty()) {
+            return "No requests in batch";
+        }
+        if (batch.requests().size() > maxRequests) {
+            return "At most " + maxRequests + " requests per batch";
+        }
+        for (BatchRequest.SubRequest request : batch.requests()) {
+            String path = request.path();
+            if (path == null || !path.startsWith("/api/") || path.startsWith(BATCH_PATH) || !isNormalized(path)) {
+                return "Invalid path: " + path;
+            }
+            if (request.method() == null || !METHODS.contains(HttpMethod.valueOf(request.method().toUpperCase()))) {
+                return "Invalid method: " + request.method();
+            }
+        }
+        return null;
+    }
+
+    // every segment before the query is non-empty and, decoded, neither . nor .. nor contains a separator
+    static boolean isNormalized(String path) {
+        int queryStart = path.indexOf('?');
+        String rawPath = queryStart < 0 ? path : path.substring(0, queryStart);
+        for (String segment : rawPath.substring(1).split("/", -1)) {
+            String decoded;
+            try {
+                decoded = UriUtils.decode(segment, StandardCharsets.UTF_8);
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+            if (decoded.isEmpty() || decoded.equals(".") || decoded.equals("..")
+                    || decoded.contains("/") || decoded.contains("\\") || decoded.contains("#")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Mono<BatchResponse.SubResponse> send(String id, BatchRequest.SubRequest request, String authorization) {
+        WebClient.RequestBodySpec spec = gateway.method(HttpMethod.valueOf(request.method().toUpperCase()))
+                .uri(request.path())
+                .header(HttpHeaders.AUTHORIZATION, authorization)
+                .accept(MediaType.APPLICATION_JSON);
+        WebClient.RequestHeadersSpec<?> call = request.body() == null || request.body().isNull()
+                ? spec
+                : spec.contentType(MediaType.APPLICATION_JSON).bodyValue(request.body());
+
+        return call.exchangeToMono(response -> response.bodyToMono(String.class)
+                        .map(body -> new BatchResponse.SubResponse(id, response.statusCode().value(), json(body)))
+                        .defaultIfEmpty(new BatchResponse.SubResponse(id, response.statusCode().value(), null)))
+                .timeout(timeout)
+                .onErrorResume(e -> {
+                    boolean timedOut = e instanceof TimeoutException;
+                    log.warn("Batch sub-request {} {} failed: {}", request.method(), request.path(), e.toString());
+                    HttpStatus status = timedOut ? HttpStatus.GATEWAY_TIMEOUT : HttpStatus.BAD_GATEWAY;
+                    return Mono.just(new BatchResponse.SubResponse(id, status.value(), null));
+                });
+    }
+
+    private JsonNode json(String body) {
+        try {
+            return objectMapper.readTree(body);
+        } catch (IOException e) {
+            return TextNode.valueOf(body); // not JSON, passed on as text
+        }
+    }
+
+    private static String id(BatchRequest.SubRequest request, int index) {
+        return request.id() != null ? request.id() : String.valueOf(index);
+    }
+}
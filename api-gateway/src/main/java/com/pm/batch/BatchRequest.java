@@ -0,0 +1,17 @@
+package com.pm.batch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.List;
+
+/*
+ {"requests": [{"id": "patients", "method": "GET", "path": "/api/patients"}, ...]}
+
+ path is a gateway path (/api/...), body is sent as JSON for POST and PUT; id is echoed back in the response
+ (defaults to the position in the list).
+*/
+public record BatchRequest(List<SubRequest> requests) {
+
+    public record SubRequest(String id, String method, String path, JsonNode body) {
+    }
+}
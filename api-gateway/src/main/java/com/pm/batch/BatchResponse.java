@@ -0,0 +1,12 @@
+package com.pm.batch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.List;
+
+// one response per sub-request, in the order of the request; body is the JSON (or text) the service returned
+public record BatchResponse(List<SubResponse> responses) {
+
+    public record SubResponse(String id, int status, JsonNode body) {
+    }
+}
@@ -0,0 +1,140 @@
+package com.pm.cache;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/*
+ A ConcurrentHashMap bounded by the total weight of its values, the one eviction policy of every in-memory cache
+ of this gateway (validated tokens, rate limit buckets, cached responses). No bookkeeping on reads:
+
+ - a value weighs 1 unless a weigher is given (CachedResponses weighs the body bytes)
+ - when a new value would go over maxWeight, expired values are dropped first, then arbitrary ones until an
+   eighth of maxWeight is free again, and at least the new value fits
+ - put skips a value that can never fit, with a weight of 1 per value maxWeight <= 0 disables the cache
+ - computeIfAbsentWithoutEviction is for values that must not be dropped while in use (rate limit buckets,
+   evicting one would hand its client a fresh limit): it only ever takes free room, null when there is none
+*/
+public class BoundedCache<K, V> {
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final Predicate<V> expired;
+    private final Map<K, V> values = new ConcurrentHashMap<>();
+    private final AtomicLong weight = new AtomicLong();
+
+    public BoundedCache(long maxWeight, Predicate<V> expired) {
+        this(maxWeight, value -> 1, expired);
+    }
+
+    public BoundedCache(long maxWeight, ToLongFunction<V> weigher, Predicate<V> expired) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.expired = expired;
+    }
+
+    public V get(K key) {
+        return values.get(key);
+    }
+
+    public void put(K key, V value) {
+        long needed = weigher.applyAsLong(value);
+        if (needed > maxWeight) {
+            return;
+        }
+        if (weight.get() + needed > maxWeight) {
+            makeRoom(needed);
+        }
+        V previous = values.put(key, value);
+        weight.addAndGet(needed - (previous == null ? 0 : weigher.applyAsLong(previous)));
+    }
+
+    // stores the new value even if it is over maxWeight on its own, the caller relies on getting the stored one
+    public V computeIfAbsent(K key, Function<K, V> create) {
+        V value = values.get(key);
+        if (value != null) {
+            return value;
+        }
+
+        V created = create.apply(key);
+        long needed = weigher.applyAsLong(created);
+        if (weight.get() + needed > maxWeight) {
+            makeRoom(needed);
+        }
+        V previous = values.putIfAbsent(key, created);
+        if (previous != null) {
+            return previous;
+        }
+        weight.addAndGet(needed);
+        return created;
+    }
+
+    // never evicts anything, null if the value does not fit, drop expired values first (removeIf) to make room
+    public V computeIfAbsentWithoutEviction(K key, Function<K, V> create) {
+        V value = values.get(key);
+        if (value != null) {
+            return value;
+        }
+
+        V created = create.apply(key);
+        long needed = weigher.applyAsLong(created);
+        if (weight.get() + needed > maxWeight) {
+            return null;
+        }
+        V previous = values.putIfAbsent(key, created);
+        if (previous != null) {
+            return previous;
+        }
+        weight.addAndGet(needed);
+        return created;
+    }
+
+    public void remove(K key) {
+        V value = values.remove(key);
+        if (value != null) {
+            weight.addAndGet(-weigher.applyAsLong(value));
+        }
+    }
+
+    public boolean remove(K key, V value) {
+        if (values.remove(key, value)) {
+            weight.addAndGet(-weigher.applyAsLong(value));
+            return true;
+        }
+        return false;
+    }
+
+    public void removeIf(Predicate<V> condition) {
+        values.forEach((key, value) -> {
+            if (condition.test(value)) {
+                remove(key, value);
+            }
+        });
+    }
+
+    public void clear() {
+        removeIf(value -> true);
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    public long weight() {
+        return weight.get();
+    }
+
+    private void makeRoom(long needed) {
+        removeIf(expired);
+
+        long target = Math.min(maxWeight - needed, maxWeight - maxWeight / 8);
+        Iterator<Map.Entry<K, V>> entries = values.entrySet().iterator();
+        while (weight.get() > target && entries.hasNext()) {
+            Map.Entry<K, V> entry = entries.next();
+            remove(entry.getKey(), entry.getValue());
+        }
+    }
+}
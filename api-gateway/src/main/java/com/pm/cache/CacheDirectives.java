@@ -0,0 +1,47 @@
+package com.pm.cache;
+
+// The parts of a Cache-Control header (request or response) the gateway cache acts on
+public record CacheDirectives(boolean noStore, boolean noCache, long maxAgeSeconds) {
+    private static final CacheDirectives NONE = new CacheDirectives(false, false, -1);
+
+    public static CacheDirectives of(String cacheControl) {
+        if (cacheControl == null || cacheControl.isBlank()) {
+            return NONE;
+        }
+
+        boolean noStore = false;
+        boolean noCache = false;
+        long maxAge = -1;
+        long sharedMaxAge = -1;
+        for (String directive : cacheControl.split(",")) {
+            String name = directive.trim().toLowerCase();
+            if (name.equals("no-store")) {
+                noStore = true;
+            } else if (name.equals("no-cache")) {
+                noCache = true;
+            } else if (name.startsWith("max-age=")) {
+                maxAge = parseSeconds(name.substring(8));
+            } else if (name.startsWith("s-maxage=")) {
+                sharedMaxAge = parseSeconds(name.substring(9));
+            }
+        }
+        // we are a shared cache: s-maxage wins over max-age
+        return new CacheDirectives(noStore, noCache, sharedMaxAge >= 0 ? sharedMaxAge : maxAge);
+    }
+
+    // how long a response with these directives may be cached, at most defaultTtlMillis; 0 = not at all
+    public long ttlMillis(long defaultTtlMillis) {
+        if (noStore || noCache) {
+            return 0;
+        }
+        return maxAgeSeconds < 0 ? defaultTtlMillis : Math.min(defaultTtlMillis, maxAgeSeconds * 1000);
+    }
+
+    private static long parseSeconds(String value) {
+        try {
+            return Long.parseLong(value.replace("\"", ""));
+        } catch (NumberFormatException e) {
+            return 0; // unreadable: treat as already stale
+        }
+    }
+}
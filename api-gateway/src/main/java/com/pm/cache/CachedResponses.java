@@ -0,0 +1,52 @@
+package com.pm.cache;
+
+import org.springframework.http.HttpHeaders;
+
+import java.util.Optional;
+
+/*
+ Responses of one route, keyed by whatever the filter puts in the key (path, query, subject...).
+
+ - an entry is served until its expiry, then dropped on the next lookup
+ - bounded by the total size of the bodies (maxBytes), see BoundedCache
+ - clear() drops everything, used when a write on the route may have changed what was cached
+*/
+public class CachedResponses {
+    private final BoundedCache<String, CachedResponse> responsesByKey;
+
+    public record CachedResponse(int status, HttpHeaders headers, byte[] body, long storedAt, long expiresAt) {
+    }
+
+    public CachedResponses(long maxBytes) {
+        this.responsesByKey = new BoundedCache<>(maxBytes, response -> response.body().length,
+                response -> response.expiresAt() <= System.currentTimeMillis());
+    }
+
+    public Optional<CachedResponse> get(String key) {
+        CachedResponse response = responsesByKey.get(key);
+        if (response == null) {
+            return Optional.empty();
+        }
+        if (response.expiresAt() <= System.currentTimeMillis()) {
+            responsesByKey.remove(key, response);
+            return Optional.empty();
+        }
+        return Optional.of(response);
+    }
+
+    public void put(String key, CachedResponse response) {
+        responsesByKey.put(key, response);
+    }
+
+    public void clear() {
+        responsesByKey.clear();
+    }
+
+    public long bytes() {
+        return responsesByKey.weight();
+    }
+
+    public int size() {
+        return responsesByKey.size();
+    }
+}
@@ -0,0 +1,52 @@
+package com.pm.cache;
+
+import com.pm.coalesce.SingleFlight;
+import org.springframework.http.HttpHeaders;
+
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+/*
+ Put on the exchange (ATTRIBUTE) by ResponseCacheGatewayFilterFactory on a cache miss: ResponseCaptureFilter then
+ copies the response body as it is written and hands it to captured(), or calls finish() if there was nothing
+ to copy (not a 200, too large, an error).
+
+ The copy is handed to the requests coalesced onto this one (flight) and stored in the cache, unless the response
+ is not cacheable or stillValid says a write on the route happened in the meantime.
+*/
+public record ResponseCapture(CachedResponses cache, String key, long ttlMillis, int maxEntryBytes, BooleanSupplier stillValid,
+                              SingleFlight<String, CachedResponses.CachedResponse>.Flight flight) {
+    public static final String ATTRIBUTE = ResponseCapture.class.getName();
+
+    // response headers that belong to one response only and are not replayed from the cache
+    private static final Set<String> NOT_CACHED_HEADERS = Set.of(
+            HttpHeaders.SET_COOKIE.toLowerCase(), HttpHeaders.CONTENT_LENGTH.toLowerCase(),
+            HttpHeaders.TRANSFER_ENCODING.toLowerCase(), HttpHeaders.CONNECTION.toLowerCase(),
+            HttpHeaders.DATE.toLowerCase(), "x-ratelimit-remaining", "x-cache");
+
+    public void captured(int status, HttpHeaders responseHeaders, byte[] body) {
+        HttpHeaders headers = new HttpHeaders();
+        responseHeaders.forEach((name, values) -> {
+            if (!NOT_CACHED_HEADERS.contains(name.toLowerCase())) {
+                headers.put(name, values);
+            }
+        });
+
+        long now = System.currentTimeMillis();
+        long ttl = CacheDirectives.of(responseHeaders.getCacheControl()).ttlMillis(ttlMillis);
+        CachedResponses.CachedResponse response = new CachedResponses.CachedResponse(
+                status, HttpHeaders.readOnlyHttpHeaders(headers), body, now, now + ttl);
+
+        // stored before the flight ends, so a request arriving in between finds it in the cache
+        if (ttl > 0 && stillValid.getAsBoolean()) {
+            cache.put(key, response);
+        }
+        // requests that arrived while this one was in flight get this response even if it may not be cached
+        flight.done(response);
+    }
+
+    // nothing to share: requests waiting on this one make their own call
+    public void finish() {
+        flight.abandon();
+    }
+}
@@ -0,0 +1,94 @@
+package com.pm.cache;
+
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+
+/*
+ The write half of the response cache. The response body is written by NettyWriteResponseFilter with the
+ exchange it was given, so the response has to be wrapped before that filter runs, i.e. before any route
+ filter (and before JwtValidation has told us who the user is). The wrapper therefore only copies the body when
+ ResponseCacheGatewayFilterFactory, which runs later at its place in the route, left a ResponseCapture on the
+ exchange; otherwise it writes straight through.
+
+ The body is copied while it streams to the client, nothing is held back; a body larger than maxEntryBytes is
+ simply not cached. However the exchange ends, the capture is finished, so requests coalesced onto this one
+ never wait for a response that is not coming.
+*/
+@Component
+public class ResponseCaptureFilter implements GlobalFilter, Ordered {
+
+    @Override
+    public int getOrder() {
+        return NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (exchange.getRequest().getMethod() != HttpMethod.GET) {
+            return chain.filter(exchange);
+        }
+        return chain.filter(exchange.mutate().response(new CapturingResponse(exchange)).build())
+                .doFinally(signal -> {
+                    ResponseCapture capture = exchange.getAttribute(ResponseCapture.ATTRIBUTE);
+                    if (capture != null) {
+                        capture.finish(); // no-op if the body was captured
+                    }
+                });
+    }
+
+    private static final class CapturingResponse extends ServerHttpResponseDecorator {
+        private final ServerWebExchange exchange;
+
+        private CapturingResponse(ServerWebExchange exchange) {
+            super(exchange.getResponse());
+            this.exchange = exchange;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            ResponseCapture capture = exchange.getAttribute(ResponseCapture.ATTRIBUTE);
+            HttpStatusCode status = getStatusCode();
+            if (capture == null || status == null || status.value() != 200) {
+                return super.writeWith(body);
+            }
+
+            ByteArrayOutputStream copy = new ByteArrayOutputStream();
+            boolean[] tooLarge = {false};
+            Flux<DataBuffer> copying = Flux.<DataBuffer>from(body)
+                    .doOnNext(buffer -> {
+                        int readable = buffer.readableByteCount();
+                        if (tooLarge[0] || copy.size() + readable > capture.maxEntryBytes()) {
+                            tooLarge[0] = true;
+                            return;
+                        }
+                        // read the bytes and rewind, the buffer still has to go out to the client
+                        int readPosition = buffer.readPosition();
+                        byte[] bytes = new byte[readable];
+                        buffer.read(bytes);
+                        buffer.readPosition(readPosition);
+                        copy.writeBytes(bytes);
+                    })
+                    .doOnComplete(() -> {
+                        if (tooLarge[0]) {
+                            capture.finish();
+                        } else {
+                            capture.captured(status.value(), getHeaders(), copy.toByteArray());
+                        }
+                    });
+            return super.writeWith(copying);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.pm.coalesce;
+
+import io.micrometer.core.instrument.Counter;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/*
+ Coalesces identical calls that are in flight at the same time: the first caller of a key (the leader) makes
+ the call, everyone arriving with the same key before it finishes (followers) gets the leader's result instead
+ of making their own. Nothing is kept once the call is done, this is not a cache.
+
+ Every follower counts as one saved call in the given counter.
+*/
+public class SingleFlight<K, V> {
+    private final Map<K, Sinks.One<V>> flights = new ConcurrentHashMap<>();
+    private final Counter saved;
+
+    public SingleFlight(Counter saved) {
+        this.saved = saved;
+    }
+
+    /*
+     A leader must end its flight with done or abandon, whatever happens (both can be called more than once,
+     the first one counts). A follower subscribes to result(): the leader's value, or empty if the leader had
+     nothing to share and the follower has to make the call itself.
+    */
+    public final class Flight {
+        private final K key;
+        private final Sinks.One<V> sink;
+        private final boolean leader;
+
+        private Flight(K key, Sinks.One<V> sink, boolean leader) {
+            this.key = key;
+            this.sink = sink;
+            this.leader = leader;
+        }
+
+        public boolean leader() {
+            return leader;
+        }
+
+        public Mono<V> result() {
+            return sink.asMono();
+        }
+
+        public void done(V value) {
+            flights.remove(key, sink);
+            sink.tryEmitValue(value);
+        }
+
+        public void abandon() {
+            flights.remove(key, sink);
+            sink.tryEmitEmpty();
+        }
+    }
+
+    public Flight begin(K key) {
+        Sinks.One<V> sink = Sinks.one();
+        Sinks.One<V> running = flights.putIfAbsent(key, sink);
+        if (running != null) {
+            saved.increment();
+            return new Flight(key, running, false);
+        }
+        return new Flight(key, sink, true);
+    }
+
+    // for calls that produce their value themselves: runs call as the leader, or shares the running leader's result
+    public Mono<V> execute(K key, Supplier<Mono<V>> call) {
+        return Mono.defer(() -> {
+            Flight flight = begin(key);
+            if (!flight.leader()) {
+                return flight.result().switchIfEmpty(Mono.defer(call));
+            }
+            return call.get()
+                    .doOnNext(flight::done)
+                    .doFinally(signal -> flight.abandon());
+        });
+    }
+
+    public int inFlight() {
+        return flights.size();
+    }
+}
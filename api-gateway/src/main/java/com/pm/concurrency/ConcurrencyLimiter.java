@@ -0,0 +1,127 @@
+package com.pm.concurrency;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ Admits requests while fewer than GradientLimit.limit() are in flight. A request over the limit waits in a
+ short queue (at most maxQueue requests, each for at most queueTimeout) for a slot to free up, then it is
+ rejected: a fast rejection the client can retry elsewhere or later, instead of a request that piles onto an
+ overloaded service and times out.
+*/
+public class ConcurrencyLimiter {
+    private static final int WAITING = 0;
+    private static final int GRANTED = 1;
+    private static final int TAKEN = 2;
+    private static final int GONE = 3;
+
+    private final GradientLimit limit;
+    private final int maxQueue;
+    private final Duration queueTimeout;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+
+    public ConcurrencyLimiter(GradientLimit limit, int maxQueue, Duration queueTimeout) {
+        this.limit = limit;
+        this.maxQueue = maxQueue;
+        this.queueTimeout = queueTimeout;
+    }
+
+    // true once the request holds a slot (it must call release), false if it was rejected
+    public Mono<Boolean> acquire() {
+        if (tryAcquire()) {
+            return Mono.just(true);
+        }
+        if (queued.incrementAndGet() > maxQueue) {
+            queued.decrementAndGet();
+            return Mono.just(false);
+        }
+
+        Waiter waiter = new Waiter();
+        waiters.add(waiter);
+        drain(); // a slot may have been released between tryAcquire and add
+
+        return waiter.granted.asMono()
+                // the timer can win against a slot that was just handed over: the request then keeps the slot
+                .timeout(queueTimeout, Mono.fromSupplier(() -> !leave(waiter)))
+                // the request owns the slot from here on, it has to call release
+                .map(granted -> granted && waiter.state.compareAndSet(GRANTED, TAKEN))
+                .doOnCancel(() -> {
+                    if (!leave(waiter) && waiter.state.compareAndSet(GRANTED, GONE)) {
+                        release(0, false); // handed over, but nobody took it
+                    }
+                });
+    }
+
+    public void release(long rttNanos, boolean recordSample) {
+        int current = inFlight.getAndDecrement();
+        if (recordSample) {
+            limit.onSample(rttNanos, current);
+        }
+        drain();
+    }
+
+    public int limit() {
+        return limit.limit();
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public int queued() {
+        return queued.get();
+    }
+
+    private boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit.limit()) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // hands free slots to waiting requests, oldest first
+    private void drain() {
+        while (!waiters.isEmpty() && tryAcquire()) {
+            Waiter waiter = waiters.poll();
+            if (waiter != null && waiter.state.compareAndSet(WAITING, GRANTED)) {
+                queued.decrementAndGet();
+                waiter.granted.tryEmitValue(true); // cancelled in the meantime: doOnCancel gives the slot back
+            } else {
+                inFlight.decrementAndGet(); // nobody waiting anymore (timed out, cancelled or taken by another drain)
+            }
+        }
+    }
+
+    // true if the waiter was still waiting: it is out of the queue now and will not get a slot
+    private boolean leave(Waiter waiter) {
+        if (!waiter.state.compareAndSet(WAITING, GONE)) {
+            return false;
+        }
+        waiters.remove(waiter);
+        queued.decrementAndGet();
+        return true;
+    }
+
+    /*
+     A queued request. Its state only moves forward, so the slot is settled exactly once whatever races:
+     WAITING -> GRANTED (drain handed it a slot) -> TAKEN (the request got it) or GONE (cancelled first, released)
+     WAITING -> GONE (timed out or cancelled while waiting)
+    */
+    private static final class Waiter {
+        final Sinks.One<Boolean> granted = Sinks.one();
+        final AtomicInteger state = new AtomicInteger(WAITING);
+    }
+}
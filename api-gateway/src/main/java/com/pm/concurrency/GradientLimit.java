@@ -0,0 +1,97 @@
+package com.pm.concurrency;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ How many requests may be in flight, adjusted from the latency they see (gradient algorithm, in the spirit of
+ Netflix's concurrency-limits Gradient):
+
+ - noLoadRtt is the lowest latency seen recently (over the last one to two RTT_PERIODs): the service without
+   any queueing. Single requests get lucky even under load, so it stays close to that
+ - every window the average latency of the window (shortRtt) is compared to it:
+   gradient = tolerance * noLoadRtt / shortRtt, clamped to [0.5, 1]
+ - newLimit = limit * gradient + sqrt(limit): while latency stays within tolerance the limit keeps growing,
+   once requests queue up in the service (latency goes up) it shrinks proportionally. It settles where the
+   latency is a bit over tolerance times the no-load latency
+ - the step is smoothed, and the limit stays within [minLimit, maxLimit]
+ - the limit is not grown while less than half of it is used, a quiet period must not leave a huge limit behind
+
+ Samples are added lock-free; at the end of a window one thread (tryLock) computes the new limit.
+*/
+public class GradientLimit {
+    private static final long WINDOW_NANOS = 100_000_000L; // 100 ms
+    private static final int MIN_WINDOW_SAMPLES = 10;
+    private static final long RTT_PERIOD_NANOS = 30_000_000_000L; // 30 s
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+
+    private volatile double limit;
+
+    private final LongAdder windowRttNanos = new LongAdder();
+    private final LongAdder windowSamples = new LongAdder();
+    private final AtomicLong windowStartNanos = new AtomicLong(System.nanoTime());
+    private final AtomicLong periodMinRttNanos = new AtomicLong(Long.MAX_VALUE);
+    private final ReentrantLock updateLock = new ReentrantLock();
+
+    // guarded by updateLock
+    private long previousPeriodMinRttNanos = Long.MAX_VALUE;
+    private long periodStartNanos = System.nanoTime();
+
+    public GradientLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, double smoothing) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    public int limit() {
+        return (int) limit;
+    }
+
+    // rttNanos of a completed request, inFlight: requests in flight when it completed
+    public void onSample(long rttNanos, int inFlight) {
+        windowRttNanos.add(rttNanos);
+        windowSamples.increment();
+        periodMinRttNanos.accumulateAndGet(rttNanos, Math::min);
+
+        long now = System.nanoTime();
+        if (now - windowStartNanos.get() < WINDOW_NANOS || windowSamples.sum() < MIN_WINDOW_SAMPLES || !updateLock.tryLock()) {
+            return;
+        }
+        try {
+            long samples = windowSamples.sumThenReset();
+            long totalRtt = windowRttNanos.sumThenReset();
+            windowStartNanos.set(now);
+            if (samples > 0) {
+                update((double) totalRtt / samples, inFlight, now);
+            }
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    private void update(double shortRttNanos, int inFlight, long now) {
+        long noLoadRttNanos = Math.min(previousPeriodMinRttNanos, periodMinRttNanos.get());
+        // a new period starts from scratch, so a service that got faster or slower for good is picked up
+        if (now - periodStartNanos >= RTT_PERIOD_NANOS) {
+            previousPeriodMinRttNanos = periodMinRttNanos.getAndSet(Long.MAX_VALUE);
+            periodStartNanos = now;
+        }
+
+        double current = limit;
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * noLoadRttNanos / shortRttNanos));
+        double newLimit = current * gradient + Math.sqrt(current);
+        newLimit = current * (1 - smoothing) + newLimit * smoothing;
+
+        if (newLimit > current && inFlight < current / 2) {
+            return;
+        }
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+}
@@ -0,0 +1,151 @@
+package com.pm.filter;
+
+import com.pm.concurrency.ConcurrencyLimiter;
+import com.pm.concurrency.GradientLimit;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+
+/* Caps the requests in flight to the service behind a route, with a limit that follows the service's latency
+   (see GradientLimit): when the service slows down (slow database, slow billing) fewer requests are let through
+   and the rest get a fast 503 after a short wait in the queue, instead of every request timing out.
+
+     - name: AdaptiveConcurrencyLimit
+       args:
+         initialLimit: 20
+         maxQueue: 50
+         queueTimeoutMs: 100
+
+   Metrics: gateway.concurrency.limit / in-flight / queued (gauges), gateway.concurrency.rejected, tagged route.
+ */
+@Component
+public class AdaptiveConcurrencyLimitGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<AdaptiveConcurrencyLimitGatewayFilterFactory.Config> {
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveConcurrencyLimitGatewayFilterFactory.class);
+
+    private final MeterRegistry meterRegistry;
+
+    public AdaptiveConcurrencyLimitGatewayFilterFactory(MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+    }
+
+    public static class Config implements HasRouteId {
+        private String routeId;
+        private int initialLimit = 20;
+        private int minLimit = 4;
+        private int maxLimit = 500;
+        private double tolerance = 2.0; // latency may grow by this factor over the no-load latency before the limit shrinks
+        private double smoothing = 0.2;
+        private int maxQueue = 50;
+        private long queueTimeoutMs = 100;
+
+        @Override
+        public void setRouteId(String routeId) {
+            this.routeId = routeId;
+        }
+
+        @Override
+        public String getRouteId() {
+            return routeId;
+        }
+
+        public int getInitialLimit() {
+            return initialLimit;
+        }
+
+        public void setInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+        }
+
+        public int getMinLimit() {
+            return minLimit;
+        }
+
+        public void setMinLimit(int minLimit) {
+            this.minLimit = minLimit;
+        }
+
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+
+        public void setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+        }
+
+        public double getTolerance() {
+            return tolerance;
+        }
+
+        public void setTolerance(double tolerance) {
+            this.tolerance = tolerance;
+        }
+
+        public double getSmoothing() {
+            return smoothing;
+        }
+
+        public void setSmoothing(double smoothing) {
+            this.smoothing = smoothing;
+        }
+
+        public int getMaxQueue() {
+            return maxQueue;
+        }
+
+        public void setMaxQueue(int maxQueue) {
+            this.maxQueue = maxQueue;
+        }
+
+        public long getQueueTimeoutMs() {
+            return queueTimeoutMs;
+        }
+
+        public void setQueueTimeoutMs(long queueTimeoutMs) {
+            this.queueTimeoutMs = queueTimeoutMs;
+        }
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(
+                new GradientLimit(config.getInitialLimit(), config.getMinLimit(), config.getMaxLimit(),
+                        config.getTolerance(), config.getSmoothing()),
+                config.getMaxQueue(), Duration.ofMillis(config.getQueueTimeoutMs()));
+
+        String route = config.getRouteId() == null ? "unknown" : config.getRouteId();
+        Gauge.builder("gateway.concurrency.limit", limiter, ConcurrencyLimiter::limit).tag("route", route).register(meterRegistry);
+        Gauge.builder("gateway.concurrency.in-flight", limiter, ConcurrencyLimiter::inFlight).tag("route", route).register(meterRegistry);
+        Gauge.builder("gateway.concurrency.queued", limiter, ConcurrencyLimiter::queued).tag("route", route).register(meterRegistry);
+        Counter rejected = meterRegistry.counter("gateway.concurrency.rejected", "route", route);
+
+        return (exchange, chain) -> limiter.acquire().flatMap(acquired -> {
+            if (!acquired) {
+                rejected.increment();
+                log.debug("Concurrency limit {} reached for route {}, rejecting", limiter.limit(), route);
+                exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+                exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, "1");
+                return exchange.getResponse().setComplete();
+            }
+
+            long start = System.nanoTime();
+            // errors count too (a timeout is the strongest overload signal there is), but a cancelled request
+            // (client went away) says nothing about the service's latency
+            return chain.filter(exchange).doFinally(signal ->
+                    limiter.release(System.nanoTime() - start, signal != SignalType.CANCEL));
+        });
+    }
+}
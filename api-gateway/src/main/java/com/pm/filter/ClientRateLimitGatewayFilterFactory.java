@@ -0,0 +1,129 @@
+package com.pm.filter;
+
+import com.pm.ratelimit.RateLimit;
+import com.pm.ratelimit.RateLimitResult;
+import com.pm.ratelimit.RateLimitStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ipresolver.RemoteAddressResolver;
+import org.springframework.cloud.gateway.support.ipresolver.XForwardedRemoteAddressResolver;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+
+/* Limits how fast each client can call a route, so a single misbehaving client cannot saturate the service
+   behind it. Configured per route:
+
+     - name: ClientRateLimit
+       args:
+         replenishRate: 20   # requests per second, sustained
+         burstCapacity: 40   # requests allowed at once after being idle
+
+   The client is the token's subject when JwtValidation ran before this filter on the route, its IP address
+   otherwise. Behind a load balancer that address is the one the balancer appended to X-Forwarded-For
+   (rate-limit.trusted-proxy-hops from the right), entries further left were sent by the client and are ignored,
+   anyone can set them. Every route has its own buckets.
+   Over the limit: 429 with Retry-After, the X-RateLimit-* headers are on every response.
+ */
+@Component
+public class ClientRateLimitGatewayFilterFactory extends AbstractGatewayFilterFactory<ClientRateLimitGatewayFilterFactory.Config> {
+    private static final Logger log = LoggerFactory.getLogger(ClientRateLimitGatewayFilterFactory.class);
+
+    private final RateLimitStore rateLimitStore;
+    private final RemoteAddressResolver clientAddressResolver;
+
+    public ClientRateLimitGatewayFilterFactory(RateLimitStore rateLimitStore,
+                                               @Value("${rate-limit.trusted-proxy-hops:0}") int trustedProxyHops) {
+        super(Config.class);
+        this.rateLimitStore = rateLimitStore;
+        // without X-Forwarded-For (or with fewer entries than hops) this falls back to the connection's address
+        this.clientAddressResolver = trustedProxyHops > 0
+                ? XForwardedRemoteAddressResolver.maxTrustedIndex(trustedProxyHops)
+                : new RemoteAddressResolver() {
+                };
+    }
+
+    public static class Config {
+        private double replenishRate = 10;
+        private int burstCapacity = 20;
+        private int requestedTokens = 1; // cost of one request
+
+        public double getReplenishRate() {
+            return replenishRate;
+        }
+
+        public void setReplenishRate(double replenishRate) {
+            this.replenishRate = replenishRate;
+        }
+
+        public int getBurstCapacity() {
+            return burstCapacity;
+        }
+
+        public void setBurstCapacity(int burstCapacity) {
+            this.burstCapacity = burstCapacity;
+        }
+
+        public int getRequestedTokens() {
+            return requestedTokens;
+        }
+
+        public void setRequestedTokens(int requestedTokens) {
+            this.requestedTokens = requestedTokens;
+        }
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        RateLimit limit = new RateLimit(config.getReplenishRate(), config.getBurstCapacity());
+
+        return (exchange, chain) -> {
+            String client = clientOf(exchange);
+            Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+            String key = (route == null ? "" : route.getId()) + ":" + client;
+
+            return rateLimitStore.tryAcquire(key, limit, config.getRequestedTokens()).flatMap(result -> {
+                HttpHeaders headers = exchange.getResponse().getHeaders();
+                headers.set("X-RateLimit-Remaining", Long.toString(result.remaining()));
+                headers.set("X-RateLimit-Replenish-Rate", Double.toString(limit.replenishRate()));
+                headers.set("X-RateLimit-Burst-Capacity", Integer.toString(limit.burstCapacity()));
+
+                if (result.allowed()) {
+                    return chain.filter(exchange);
+                }
+                return tooManyRequests(exchange, key, result);
+            });
+        };
+    }
+
+    String clientOf(ServerWebExchange exchange) {
+        String subject = exchange.getAttribute(JwtValidationGatewayFilterFactory.SUBJECT_ATTRIBUTE);
+        if (subject != null) {
+            return "sub:" + subject;
+        }
+        InetSocketAddress clientAddress = clientAddressResolver.resolve(exchange);
+        if (clientAddress == null) {
+            return "ip:unknown";
+        }
+        return "ip:" + (clientAddress.getAddress() == null ? clientAddress.getHostString() : clientAddress.getAddress().getHostAddress());
+    }
+
+    private static Mono<Void> tooManyRequests(ServerWebExchange exchange, String key, RateLimitResult result) {
+        log.debug("Rate limit exceeded for {}, retry in {} ms", key, result.retryAfterMillis());
+
+        exchange.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        // Retry-After is in whole seconds, rounded up so a client that waits that long gets through
+        exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, Long.toString((result.retryAfterMillis() + 999) / 1000));
+        return exchange.getResponse().setComplete();
+    }
+}
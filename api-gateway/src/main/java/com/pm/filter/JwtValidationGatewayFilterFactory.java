@@ -1,15 +1,17 @@
 package com.pm.filter;
 
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
+import com.pm.jwt.TokenValidator;
+import com.pm.latency.RequestTimings;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
-import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
 
-import java.util.Objects;
+import java.util.Optional;
 
 
 /* Class that will intercept all the incoming http requests, apply filter to them and will decide
@@ -17,28 +19,49 @@ import java.util.Objects;
  */
 @Component
 public class JwtValidationGatewayFilterFactory extends AbstractGatewayFilterFactory {
-    private final WebClient webClient;
+    // exchange attribute with the subject (user) of a valid token, for filters further down the chain
+    public static final String SUBJECT_ATTRIBUTE = JwtValidationGatewayFilterFactory.class.getName() + ".subject";
 
-    public JwtValidationGatewayFilterFactory(WebClient.Builder webClientBuilder,
-                                             @Value("${auth.service.url}") String authServiceUrl){
-        this.webClient = webClientBuilder.baseUrl(authServiceUrl).build();
+    // verification, caching, revocation: see TokenValidator
+    private final TokenValidator tokenValidator;
+
+    public JwtValidationGatewayFilterFactory(TokenValidator tokenValidator){
+        this.tokenValidator = tokenValidator;
     }
     @Override
     public GatewayFilter apply(Object config) { // to apply the filter on http request
         return (exchange, chain) -> { // exchange: holds all the property of current request, chain: manages the chain of filters
+            long start = System.nanoTime(); // the auth part of the route's latency, see RouteLatencies
             String token = exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
 
-            if(Objects.isNull(token) || !token.startsWith("Bearer ")){
-                exchange.getResponse().setStatusCode(HttpStatus.UNAUTHORIZED);
-                return exchange.getResponse().setComplete();
-            }
-
-            return webClient.get()
-                    .uri("/validate")
-                    .header(HttpHeaders.AUTHORIZATION, token)
-                    .retrieve()
-                    .toBodilessEntity()
-                    .then(chain.filter(exchange));
+            // not flatMap + switchIfEmpty: the rest of the chain completes empty too
+            return tokenValidator.validate(token)
+                    .map(Optional::of)
+                    .defaultIfEmpty(Optional.empty())
+                    .flatMap(valid -> valid.isPresent()
+                            ? authenticated(exchange, chain, valid.get().subject(), start)
+                            : unauthorized(exchange, start));
         };
     }
+
+    private static Mono<Void> authenticated(ServerWebExchange exchange, GatewayFilterChain chain, String subject, long start){
+        authChecked(exchange, start);
+        if(subject != null){
+            exchange.getAttributes().put(SUBJECT_ATTRIBUTE, subject);
+        }
+        return chain.filter(exchange);
+    }
+
+    private static Mono<Void> unauthorized(ServerWebExchange exchange, long start){
+        authChecked(exchange, start);
+        exchange.getResponse().setStatusCode(HttpStatus.UNAUTHORIZED);
+        return exchange.getResponse().setComplete();
+    }
+
+    private static void authChecked(ServerWebExchange exchange, long start){
+        RequestTimings timings = RequestTimings.of(exchange);
+        if(timings != null){
+            timings.authChecked(start);
+        }
+    }
 }
@@ -0,0 +1,172 @@
+package com.pm.filter;
+
+import com.pm.cache.CacheDirectives;
+import com.pm.cache.CachedResponses;
+import com.pm.cache.ResponseCapture;
+import com.pm.coalesce.SingleFlight;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/* Answers repeated GETs on a route from gateway memory for a few seconds (dashboards polling the patient list),
+   without calling the service behind it.
+
+     - name: ResponseCache
+       args:
+         ttlSeconds: 5
+         maxBytes: 16777216      # all cached bodies of the route together
+         maxEntryBytes: 262144   # larger bodies are not cached
+
+   - key: path + query + Accept + the token's subject, so users never see each other's responses. Must come after
+     JwtValidation on the route, without a subject nothing is cached
+   - only 200 responses are cached, for min(ttlSeconds, max-age / s-maxage); no-store / no-cache responses are not
+   - a request with Cache-Control no-cache skips the cache (and refreshes it), no-store skips it entirely
+   - any other method than GET/HEAD/OPTIONS on the route clears the route's cache, before and after the write
+   - misses with the same key arriving while the first one is still in flight wait for its response instead of
+     going upstream themselves (coalescing), if it has none to share (error, not a 200) they make their own call
+   Responses come with X-Cache: HIT|MISS|COALESCED and, for hits, Age.
+   Metrics: gateway.response-cache{route, result=hit|miss|bypass}, gateway.response-cache.bytes{route},
+   gateway.coalesced{type=upstream, route} (upstream calls saved).
+ */
+@Component
+public class ResponseCacheGatewayFilterFactory extends AbstractGatewayFilterFactory<ResponseCacheGatewayFilterFactory.Config> {
+    private static final String X_CACHE = "X-Cache";
+
+    private final MeterRegistry meterRegistry;
+
+    public ResponseCacheGatewayFilterFactory(MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+    }
+
+    public static class Config implements HasRouteId {
+        private String routeId;
+        private long ttlSeconds = 5;
+        private long maxBytes = 16 * 1024 * 1024;
+        private int maxEntryBytes = 256 * 1024;
+
+        @Override
+        public void setRouteId(String routeId) {
+            this.routeId = routeId;
+        }
+
+        @Override
+        public String getRouteId() {
+            return routeId;
+        }
+
+        public long getTtlSeconds() {
+            return ttlSeconds;
+        }
+
+        public void setTtlSeconds(long ttlSeconds) {
+            this.ttlSeconds = ttlSeconds;
+        }
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        public void setMaxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        public int getMaxEntryBytes() {
+            return maxEntryBytes;
+        }
+
+        public void setMaxEntryBytes(int maxEntryBytes) {
+            this.maxEntryBytes = maxEntryBytes;
+        }
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        CachedResponses cache = new CachedResponses(config.getMaxBytes());
+        long ttlMillis = config.getTtlSeconds() * 1000;
+        // bumped by every write on the route, a read that started before a write must not store its response
+        AtomicLong writes = new AtomicLong();
+
+        String route = config.getRouteId() == null ? "unknown" : config.getRouteId();
+        Gauge.builder("gateway.response-cache.bytes", cache, CachedResponses::bytes).tag("route", route).register(meterRegistry);
+        Counter hits = meterRegistry.counter("gateway.response-cache", "route", route, "result", "hit");
+        Counter misses = meterRegistry.counter("gateway.response-cache", "route", route, "result", "miss");
+        Counter bypasses = meterRegistry.counter("gateway.response-cache", "route", route, "result", "bypass");
+        SingleFlight<String, CachedResponses.CachedResponse> upstreamCalls =
+                new SingleFlight<>(meterRegistry.counter("gateway.coalesced", "type", "upstream", "route", route));
+
+        return (exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            HttpMethod method = request.getMethod();
+
+            if (method != HttpMethod.GET && method != HttpMethod.HEAD && method != HttpMethod.OPTIONS) {
+                writes.incrementAndGet();
+                cache.clear();
+                return chain.filter(exchange).doFinally(signal -> {
+                    writes.incrementAndGet();
+                    cache.clear();
+                });
+            }
+
+            String subject = exchange.getAttribute(JwtValidationGatewayFilterFactory.SUBJECT_ATTRIBUTE);
+            CacheDirectives requestDirectives = CacheDirectives.of(request.getHeaders().getCacheControl());
+            if (method != HttpMethod.GET || subject == null || requestDirectives.noStore()) {
+                bypasses.increment();
+                return chain.filter(exchange);
+            }
+
+            String query = request.getURI().getRawQuery();
+            String key = subject + " " + request.getURI().getRawPath() + (query == null ? "" : "?" + query)
+                    + " " + request.getHeaders().getFirst(HttpHeaders.ACCEPT);
+
+            if (!requestDirectives.noCache()) {
+                Optional<CachedResponses.CachedResponse> cached = cache.get(key);
+                if (cached.isPresent()) {
+                    hits.increment();
+                    return write(exchange.getResponse(), cached.get(), "HIT");
+                }
+            }
+
+            misses.increment();
+            long writesBefore = writes.get();
+            SingleFlight<String, CachedResponses.CachedResponse>.Flight flight = upstreamCalls.begin(key);
+            if (!flight.leader()) {
+                // write() completes empty too, so only an empty result() may fall back to the own call
+                return flight.result()
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())
+                        .flatMap(shared -> shared.isPresent()
+                                ? write(exchange.getResponse(), shared.get(), "COALESCED")
+                                : chain.filter(exchange));
+            }
+
+            exchange.getAttributes().put(ResponseCapture.ATTRIBUTE, new ResponseCapture(
+                    cache, key, ttlMillis, config.getMaxEntryBytes(), () -> writes.get() == writesBefore, flight));
+            exchange.getResponse().getHeaders().set(X_CACHE, "MISS");
+            return chain.filter(exchange);
+        };
+    }
+
+    private static Mono<Void> write(ServerHttpResponse response, CachedResponses.CachedResponse cached, String cacheStatus) {
+        response.setStatusCode(HttpStatusCode.valueOf(cached.status()));
+        response.getHeaders().putAll(cached.headers());
+        response.getHeaders().set(X_CACHE, cacheStatus);
+        response.getHeaders().set(HttpHeaders.AGE, Long.toString((System.currentTimeMillis() - cached.storedAt()) / 1000));
+        response.getHeaders().setContentLength(cached.body().length);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(cached.body())));
+    }
+}
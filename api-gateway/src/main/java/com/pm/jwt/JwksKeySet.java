@@ -0,0 +1,119 @@
+package com.pm.jwt;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ The public keys auth-service signs tokens with, fetched from its /.well-known/jwks.json.
+
+ - refreshed every auth.jwks.refresh-interval-ms, so keys added or removed by a rotation show up on their own
+ - a token with an unknown kid triggers an extra refresh right away (a freshly rotated key), at most once
+   per auth.jwks.min-refresh-interval-ms so garbage kids cannot make us hammer auth-service; requests arriving
+   while that refresh runs wait for it instead of failing with the old keys
+ - if auth-service is unreachable, or answers with no usable key (an empty or broken jwks.json during a deploy),
+   the last known keys stay in use: dropping them would fail every request until the next refresh
+*/
+@Component
+public class JwksKeySet {
+    private static final Logger log = LoggerFactory.getLogger(JwksKeySet.class);
+
+    private final WebClient webClient;
+    private final long minRefreshIntervalMs;
+    // the running or last refresh, done completes at once when it is over
+    private final AtomicReference<Refresh> lastRefresh = new AtomicReference<>(new Refresh(0, Mono.empty()));
+
+    private record Refresh(long startedAt, Mono<Void> done) {
+    }
+
+    private volatile Map<String, PublicKey> keysById = Map.of();
+
+    public JwksKeySet(WebClient.Builder webClientBuilder,
+                      @Value("${auth.service.url}") String authServiceUrl,
+                      @Value("${auth.jwks.min-refresh-interval-ms:5000}") long minRefreshIntervalMs) {
+        this.webClient = webClientBuilder.baseUrl(authServiceUrl).build();
+        this.minRefreshIntervalMs = minRefreshIntervalMs;
+    }
+
+    public PublicKey get(String keyId) {
+        return keyId == null ? null : keysById.get(keyId);
+    }
+
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${auth.jwks.refresh-interval-ms:60000}", initialDelayString = "${auth.jwks.refresh-interval-ms:60000}")
+    void scheduledRefresh() {
+        refresh().subscribe();
+    }
+
+    // for a kid we do not know yet; joins the last refresh if it started only a moment ago
+    public Mono<Void> refreshForUnknownKey() {
+        Refresh last = lastRefresh.get();
+        if (System.currentTimeMillis() - last.startedAt() < minRefreshIntervalMs) {
+            return last.done();
+        }
+        Refresh next = new Refresh(System.currentTimeMillis(), load().cache());
+        return lastRefresh.compareAndSet(last, next) ? next.done() : lastRefresh.get().done();
+    }
+
+    private Mono<Void> refresh() {
+        Refresh next = new Refresh(System.currentTimeMillis(), load().cache());
+        lastRefresh.set(next);
+        return next.done();
+    }
+
+    private Mono<Void> load() {
+        return webClient.get()
+                .uri("/.well-known/jwks.json")
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .timeout(Duration.ofSeconds(5))
+                .doOnNext(this::update)
+                .doOnError(e -> log.warn("Could not refresh token signing keys, keeping {}: {}", keysById.keySet(), e.getMessage()))
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    void update(JsonNode jwks) {
+        Map<String, PublicKey> keys = parse(jwks);
+        if (keys.isEmpty()) {
+            log.warn("auth-service returned no usable signing key, keeping {}", keysById.keySet());
+            return;
+        }
+        keysById = keys;
+        log.info("Loaded token signing keys {}", keys.keySet());
+    }
+
+    private static Map<String, PublicKey> parse(JsonNode jwks) {
+        Map<String, PublicKey> keys = new HashMap<>();
+        for (JsonNode jwk : jwks.path("keys")) {
+            if (!"RSA".equals(jwk.path("kty").asText()) || !jwk.hasNonNull("kid")) {
+                continue;
+            }
+            try {
+                BigInteger modulus = new BigInteger(1, Base64.getUrlDecoder().decode(jwk.path("n").asText()));
+                BigInteger exponent = new BigInteger(1, Base64.getUrlDecoder().decode(jwk.path("e").asText()));
+                keys.put(jwk.get("kid").asText(), KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(modulus, exponent)));
+            } catch (IllegalArgumentException | GeneralSecurityException e) {
+                log.warn("Skipping unreadable signing key {}: {}", jwk.path("kid").asText(), e.getMessage());
+            }
+        }
+        return Map.copyOf(keys);
+    }
+}
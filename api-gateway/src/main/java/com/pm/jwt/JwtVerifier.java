@@ -0,0 +1,79 @@
+package com.pm.jwt;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Base64;
+
+/*
+ Verifies RS256 tokens issued by auth-service locally, with the keys of JwksKeySet:
+ signature with the key named by the kid header, then exp (required) and nbf. Revocation (jti) is checked by the caller.
+ Only RS256 is accepted, whatever the header claims, so a token cannot pick a weaker algorithm (or "none").
+*/
+@Component
+public class JwtVerifier {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final long CLOCK_SKEW_MS = 30_000;
+
+    public enum Status { VALID, INVALID, UNKNOWN_KEY }
+
+    // tokenId is the jti claim, "" if the token has none
+    public record Verification(Status status, String tokenId, String subject, long expiresAtMillis) {
+        static final Verification INVALID = new Verification(Status.INVALID, "", null, 0);
+        static final Verification UNKNOWN_KEY = new Verification(Status.UNKNOWN_KEY, "", null, 0);
+    }
+
+    private final JwksKeySet keySet;
+
+    public JwtVerifier(JwksKeySet keySet) {
+        this.keySet = keySet;
+    }
+
+    public Verification verify(String token) {
+        int firstDot = token.indexOf('.');
+        int secondDot = token.indexOf('.', firstDot + 1);
+        if (firstDot < 0 || secondDot < 0 || token.indexOf('.', secondDot + 1) >= 0) {
+            return Verification.INVALID;
+        }
+
+        try {
+            Base64.Decoder decoder = Base64.getUrlDecoder();
+            JsonNode header = objectMapper.readTree(decoder.decode(token.substring(0, firstDot)));
+            if (!"RS256".equals(header.path("alg").asText())) {
+                return Verification.INVALID;
+            }
+
+            PublicKey key = keySet.get(header.path("kid").asText(null));
+            if (key == null) {
+                return Verification.UNKNOWN_KEY;
+            }
+
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initVerify(key);
+            signature.update(token.substring(0, secondDot).getBytes(StandardCharsets.US_ASCII));
+            if (!signature.verify(decoder.decode(token.substring(secondDot + 1)))) {
+                return Verification.INVALID;
+            }
+
+            JsonNode claims = objectMapper.readTree(decoder.decode(token.substring(firstDot + 1, secondDot)));
+            long now = System.currentTimeMillis();
+            if (!claims.path("exp").canConvertToLong() || claims.get("exp").asLong() * 1000 + CLOCK_SKEW_MS <= now) {
+                return Verification.INVALID;
+            }
+            if (claims.path("nbf").canConvertToLong() && claims.get("nbf").asLong() * 1000 - CLOCK_SKEW_MS > now) {
+                return Verification.INVALID;
+            }
+
+            return new Verification(Status.VALID, claims.path("jti").asText(""), claims.path("sub").asText(null),
+                    claims.get("exp").asLong() * 1000);
+        } catch (IllegalArgumentException | IOException | GeneralSecurityException e) {
+            return Verification.INVALID;
+        }
+    }
+}
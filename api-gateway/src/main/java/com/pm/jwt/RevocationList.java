@@ -0,0 +1,116 @@
+package com.pm.jwt;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ Ids (jti) of revoked tokens that have not expired yet, checked on every token validation.
+
+ - a Bloom filter of the revoked ids answers "not revoked" for almost every token with a few bit lookups in a
+   small array, the exact map is only consulted when the filter says "maybe" (a revoked token, or ~1% false positives)
+ - revocations are rare and reads are constant, so every change builds a new immutable snapshot (copy on write)
+   and readers never lock
+ - an entry is only needed until the token itself expires, expired ones are dropped on every change
+   (an empty addAll just drops the expired ones)
+*/
+public class RevocationList {
+    // ~10 bits per entry and 7 probes keep false positives around 1%
+    private static final int BITS_PER_ENTRY = 10;
+    private static final int PROBES = 7;
+    private static final int MIN_BITS = 1024;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.of(Map.of()));
+
+    public boolean isRevoked(String tokenId) {
+        if (tokenId == null) {
+            return false;
+        }
+        Snapshot current = snapshot.get();
+        return current.mightContain(tokenId) && current.expiresAtById.containsKey(tokenId);
+    }
+
+    public void add(String tokenId, long expiresAtMillis) {
+        addAll(Map.of(tokenId, expiresAtMillis));
+    }
+
+    /*
+     Merges the list of the source of truth (database, auth-service) into this one. A revocation is never undone,
+     entries only leave when their token expires, so merging cannot lose one added concurrently.
+    */
+    public void addAll(Map<String, Long> expiresAtById) {
+        snapshot.updateAndGet(current -> {
+            Map<String, Long> entries = new HashMap<>(current.expiresAtById);
+            entries.putAll(expiresAtById);
+            return Snapshot.of(entries);
+        });
+    }
+
+    // tokenId -> expiry (epoch millis) of the revoked tokens that are not expired
+    public Map<String, Long> entries() {
+        return snapshot.get().expiresAtById;
+    }
+
+    public int size() {
+        return snapshot.get().expiresAtById.size();
+    }
+
+    private record Snapshot(Map<String, Long> expiresAtById, long[] bloomBits, int bitMask) {
+
+        static Snapshot of(Map<String, Long> entries) {
+            long now = System.currentTimeMillis();
+            Map<String, Long> live = new HashMap<>();
+            entries.forEach((tokenId, expiresAt) -> {
+                if (expiresAt > now) {
+                    live.put(tokenId, expiresAt);
+                }
+            });
+
+            // power of two bits, so a probe is a mask instead of a modulo
+            int bits = Integer.highestOneBit(Math.max(MIN_BITS, live.size() * BITS_PER_ENTRY) - 1) << 1;
+            long[] bloomBits = new long[bits >>> 6];
+            Snapshot snapshot = new Snapshot(Map.copyOf(live), bloomBits, bits - 1);
+            live.keySet().forEach(snapshot::set);
+            return snapshot;
+        }
+
+        // double hashing: probe i is h1 + i * h2, both halves of one 64 bit hash
+        private void set(String tokenId) {
+            long hash = hash(tokenId);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32) | 1;
+            for (int i = 0; i < PROBES; i++) {
+                int bit = (h1 + i * h2) & bitMask;
+                bloomBits[bit >>> 6] |= 1L << bit;
+            }
+        }
+
+        boolean mightContain(String tokenId) {
+            long hash = hash(tokenId);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32) | 1;
+            for (int i = 0; i < PROBES; i++) {
+                int bit = (h1 + i * h2) & bitMask;
+                if ((bloomBits[bit >>> 6] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // FNV-1a over the chars, finished with the murmur3 mix so both 32 bit halves are well spread
+        private static long hash(String tokenId) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < tokenId.length(); i++) {
+                hash ^= tokenId.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            hash *= 0xc4ceb9fe1a85ec53L;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.pm.jwt;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ Ids of the access tokens auth-service revoked before their expiry, fetched from its /revocations.
+
+ - polled every auth.revocations.refresh-interval-ms, that is how long a revoked token can still get through here
+ - the list only holds tokens revoked within the last access token lifetime, so fetching all of it is cheap
+ - checking a token is a Bloom filter lookup in memory (RevocationList), no call to auth-service
+ - if auth-service is unreachable the last known list stays in use
+*/
+@Component
+public class RevokedTokens {
+    private static final Logger log = LoggerFactory.getLogger(RevokedTokens.class);
+
+    private final WebClient webClient;
+    private final RevocationList revocationList = new RevocationList();
+
+    public RevokedTokens(WebClient.Builder webClientBuilder,
+                         @Value("${auth.service.url}") String authServiceUrl) {
+        this.webClient = webClientBuilder.baseUrl(authServiceUrl).build();
+    }
+
+    public boolean isRevoked(String tokenId) {
+        return revocationList.isRevoked(tokenId);
+    }
+
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${auth.revocations.refresh-interval-ms:5000}", initialDelayString = "${auth.revocations.refresh-interval-ms:5000}")
+    void refresh() {
+        webClient.get()
+                .uri("/revocations")
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .timeout(Duration.ofSeconds(5))
+                .subscribe(body -> {
+                    Map<String, Long> revoked = new HashMap<>();
+                    body.path("revoked").fields().forEachRemaining(entry -> revoked.put(entry.getKey(), entry.getValue().asLong()));
+
+                    int before = revocationList.size();
+                    revocationList.addAll(revoked);
+                    if (revocationList.size() != before) {
+                        log.info("Revocation list now holds {} tokens", revocationList.size());
+                    }
+                }, e -> log.warn("Could not refresh revoked tokens, keeping {}: {}", revocationList.size(), e.getMessage()));
+    }
+}
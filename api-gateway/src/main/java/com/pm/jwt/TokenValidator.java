@@ -0,0 +1,99 @@
+package com.pm.jwt;
+
+import com.pm.coalesce.SingleFlight;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/*
+ Checks the Authorization header of a request, for the JwtValidation filter and for /api/batch.
+
+ - tokens are verified here with auth-service's public keys, auth-service itself is not called per request
+ - a token verified before skips the RSA signature check until it expires (at most max-ttl-seconds)
+ - revoked tokens (logout) are rejected whether cached or not
+ - a burst of requests with the same new token shares one verification (and one key reload),
+   gateway.coalesced{type=token} counts the ones saved
+ - every check is a gateway.token.validation span (and timer) inside the request's trace, outcome=valid|invalid
+*/
+@Component
+public class TokenValidator {
+    private final JwtVerifier jwtVerifier;
+    private final JwksKeySet jwksKeySet;
+    private final RevokedTokens revokedTokens;
+    private final ValidatedTokenCache validatedTokens;
+    private final long maxCacheMillis;
+    private final SingleFlight<String, JwtVerifier.Verification> verifications;
+    private final ObservationRegistry observationRegistry;
+
+    public TokenValidator(JwtVerifier jwtVerifier,
+                          JwksKeySet jwksKeySet,
+                          RevokedTokens revokedTokens,
+                          MeterRegistry meterRegistry,
+                          ObservationRegistry observationRegistry,
+                          @Value("${auth.token-cache.max-size:10000}") int tokenCacheMaxSize,
+                          @Value("${auth.token-cache.max-ttl-seconds:300}") long tokenCacheMaxTtlSeconds) {
+        this.jwtVerifier = jwtVerifier;
+        this.jwksKeySet = jwksKeySet;
+        this.revokedTokens = revokedTokens;
+        this.validatedTokens = new ValidatedTokenCache(tokenCacheMaxSize);
+        this.maxCacheMillis = TimeUnit.SECONDS.toMillis(tokenCacheMaxTtlSeconds);
+        this.verifications = new SingleFlight<>(meterRegistry.counter("gateway.coalesced", "type", "token"));
+        this.observationRegistry = observationRegistry;
+    }
+
+    // the token's id and subject, empty if the header holds no valid, unrevoked bearer token
+    public Mono<ValidatedTokenCache.CachedToken> validate(String authorization) {
+        // the request's observation is in the Reactor context (there is no thread local to rely on here)
+        return Mono.deferContextual(context -> {
+            Observation validation = Observation.createNotStarted("gateway.token.validation", observationRegistry)
+                    .parentObservation(context.getOrDefault(ObservationThreadLocalAccessor.KEY, null))
+                    .start();
+            // doOnSuccess runs before the token is handed on, so the span ends before the request is routed
+            return check(authorization)
+                    .doOnSuccess(token -> validation
+                            .lowCardinalityKeyValue("outcome", token != null ? "valid" : "invalid")
+                            .stop())
+                    .doOnError(error -> validation.error(error).stop())
+                    .doOnCancel(validation::stop);
+        });
+    }
+
+    private Mono<ValidatedTokenCache.CachedToken> check(String authorization) {
+        if (Objects.isNull(authorization) || !authorization.startsWith("Bearer ")) {
+            return Mono.empty();
+        }
+
+        Optional<ValidatedTokenCache.CachedToken> cached = validatedTokens.valid(authorization);
+        if (cached.isPresent()) {
+            return revokedTokens.isRevoked(cached.get().tokenId()) ? Mono.empty() : Mono.just(cached.get());
+        }
+
+        return verifications.execute(authorization, () -> verify(authorization.substring(7)))
+                .flatMap(checked -> {
+                    if (checked.status() != JwtVerifier.Status.VALID || revokedTokens.isRevoked(checked.tokenId())) {
+                        return Mono.empty();
+                    }
+                    // cached until the token expires, but at most maxCacheMillis
+                    validatedTokens.put(authorization, checked.tokenId(), checked.subject(),
+                            Math.min(checked.expiresAtMillis(), System.currentTimeMillis() + maxCacheMillis));
+                    return Mono.just(new ValidatedTokenCache.CachedToken(checked.tokenId(), checked.subject()));
+                });
+    }
+
+    private Mono<JwtVerifier.Verification> verify(String jwt) {
+        JwtVerifier.Verification verification = jwtVerifier.verify(jwt);
+
+        // signed with a key we have not seen yet (rotation): reload the keys once and try again
+        return verification.status() == JwtVerifier.Status.UNKNOWN_KEY
+                ? jwksKeySet.refreshForUnknownKey().then(Mono.fromSupplier(() -> jwtVerifier.verify(jwt)))
+                : Mono.just(verification);
+    }
+}
@@ -0,0 +1,146 @@
+package com.pm.latency;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ Latency of the requests through each route, in HdrHistograms (microsecond values, 3 significant digits),
+ split into where the time went:
+
+ - total:    request in until the response is written
+ - auth:     the token check (JwtValidation), only on routes that have it
+ - upstream: the proxied call, until the service's response headers are in; not recorded when the service was
+             not called (rejected, answered from the cache)
+ - overhead: total - auth - upstream, i.e. the gateway's own filters, queueing and writing the response
+
+ Recording is a wait-free Recorder per route and phase, nothing is allocated per value. Percentiles are
+ computed when read (RouteLatencyEndpoint) over the current and the previous window of gateway.latency.window-ms.
+*/
+@Component
+public class RouteLatencies {
+    public static final String[] PHASES = {"total", "auth", "upstream", "overhead"};
+    private static final int TOTAL = 0, AUTH = 1, UPSTREAM = 2, OVERHEAD = 3;
+
+    private final Map<String, RouteHistograms> routes = new ConcurrentHashMap<>();
+
+    public void record(String routeId, RequestTimings timings) {
+        long total = System.nanoTime() - timings.startNanos;
+        long auth = Math.max(timings.authNanos, 0);
+        long upstream = Math.max(timings.upstreamNanos, 0);
+
+        RouteHistograms histograms = routes.get(routeId);
+        if (histograms == null) {
+            histograms = routes.computeIfAbsent(routeId, id -> new RouteHistograms());
+        }
+        histograms.record(TOTAL, total);
+        if (timings.authNanos >= 0) {
+            histograms.record(AUTH, auth);
+        }
+        if (timings.upstreamNanos >= 0) {
+            histograms.record(UPSTREAM, upstream);
+        }
+        histograms.record(OVERHEAD, Math.max(total - auth - upstream, 0));
+    }
+
+    // route -> phase -> count, p50, p90, p99, p999, max (milliseconds)
+    public Map<String, Map<String, Map<String, Number>>> snapshot() {
+        Map<String, Map<String, Map<String, Number>>> snapshot = new TreeMap<>();
+        routes.forEach((routeId, histograms) -> snapshot.put(routeId, histograms.snapshot()));
+        return snapshot;
+    }
+
+    public Map<String, Map<String, Number>> snapshot(String routeId) {
+        RouteHistograms histograms = routes.get(routeId);
+        return histograms == null ? null : histograms.snapshot();
+    }
+
+    public void reset() {
+        routes.values().forEach(RouteHistograms::reset);
+    }
+
+    @Scheduled(fixedDelayString = "${gateway.latency.window-ms:60000}", initialDelayString = "${gateway.latency.window-ms:60000}")
+    void rotate() {
+        routes.values().forEach(RouteHistograms::rotate);
+    }
+
+    private static final class RouteHistograms {
+        private final Recorder[] recorders = new Recorder[PHASES.length];
+        // what the recorders held so far, moved over on every read; guarded by this
+        private final Histogram[] current = new Histogram[PHASES.length];
+        private final Histogram[] previous = new Histogram[PHASES.length];
+        private final Histogram[] interval = new Histogram[PHASES.length];
+
+        RouteHistograms() {
+            for (int phase = 0; phase < PHASES.length; phase++) {
+                recorders[phase] = new Recorder(3);
+                current[phase] = new Histogram(3);
+                previous[phase] = new Histogram(3);
+            }
+        }
+
+        void record(int phase, long nanos) {
+            recorders[phase].recordValue(Math.max(nanos / 1000, 1));
+        }
+
+        synchronized Map<String, Map<String, Number>> snapshot() {
+            drain();
+            Map<String, Map<String, Number>> phases = new LinkedHashMap<>();
+            for (int phase = 0; phase < PHASES.length; phase++) {
+                Histogram window = current[phase].copy();
+                window.add(previous[phase]);
+                if (window.getTotalCount() > 0) {
+                    phases.put(PHASES[phase], percentiles(window));
+                }
+            }
+            return phases;
+        }
+
+        synchronized void rotate() {
+            drain();
+            for (int phase = 0; phase < PHASES.length; phase++) {
+                Histogram oldest = previous[phase];
+                previous[phase] = current[phase];
+                oldest.reset();
+                current[phase] = oldest;
+            }
+        }
+
+        synchronized void reset() {
+            drain();
+            for (int phase = 0; phase < PHASES.length; phase++) {
+                current[phase].reset();
+                previous[phase].reset();
+            }
+        }
+
+        private void drain() {
+            for (int phase = 0; phase < PHASES.length; phase++) {
+                // the returned interval histogram is handed back next time, so draining allocates nothing either
+                interval[phase] = recorders[phase].getIntervalHistogram(interval[phase]);
+                current[phase].add(interval[phase]);
+            }
+        }
+
+        private static Map<String, Number> percentiles(Histogram histogram) {
+            Map<String, Number> values = new LinkedHashMap<>();
+            values.put("count", histogram.getTotalCount());
+            values.put("p50", millis(histogram.getValueAtPercentile(50)));
+            values.put("p90", millis(histogram.getValueAtPercentile(90)));
+            values.put("p99", millis(histogram.getValueAtPercentile(99)));
+            values.put("p999", millis(histogram.getValueAtPercentile(99.9)));
+            values.put("max", millis(histogram.getMaxValue()));
+            return values;
+        }
+
+        private static double millis(long micros) {
+            return micros / 1000.0;
+        }
+    }
+}
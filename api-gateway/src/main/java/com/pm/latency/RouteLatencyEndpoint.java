@@ -0,0 +1,38 @@
+package com.pm.latency;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/*
+ /actuator/latency: p50/p90/p99/p999/max in milliseconds per route and phase (total, auth, upstream, overhead),
+ /actuator/latency/{routeId} for one route, DELETE /actuator/latency to start over (e.g. between load test runs).
+*/
+@Component
+@Endpoint(id = "latency")
+public class RouteLatencyEndpoint {
+    private final RouteLatencies routeLatencies;
+
+    public RouteLatencyEndpoint(RouteLatencies routeLatencies) {
+        this.routeLatencies = routeLatencies;
+    }
+
+    @ReadOperation
+    public Map<String, Map<String, Map<String, Number>>> routes() {
+        return routeLatencies.snapshot();
+    }
+
+    @ReadOperation
+    public Map<String, Map<String, Number>> route(@Selector String routeId) {
+        return routeLatencies.snapshot(routeId);
+    }
+
+    @DeleteOperation
+    public void reset() {
+        routeLatencies.reset();
+    }
+}
@@ -0,0 +1,39 @@
+package com.pm.latency;
+
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/*
+ Times every routed request into RouteLatencies. Runs first, so the time of all other filters is in the total,
+ and records when the exchange is done, so writing the response to the client is too.
+*/
+@Component
+public class RouteLatencyFilter implements GlobalFilter, Ordered {
+    private final RouteLatencies routeLatencies;
+
+    public RouteLatencyFilter(RouteLatencies routeLatencies) {
+        this.routeLatencies = routeLatencies;
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (route == null) {
+            return chain.filter(exchange);
+        }
+        RequestTimings timings = new RequestTimings();
+        exchange.getAttributes().put(RequestTimings.ATTRIBUTE, timings);
+        return chain.filter(exchange).doFinally(signal -> routeLatencies.record(route.getId(), timings));
+    }
+}
@@ -0,0 +1,32 @@
+package com.pm.latency;
+
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/*
+ Times the proxied call: runs right before NettyRoutingFilter, after every route filter, so only requests that
+ actually go to the service are timed. NettyRoutingFilter completes once the service's response headers are in.
+*/
+@Component
+public class UpstreamTimingFilter implements GlobalFilter, Ordered {
+
+    @Override
+    public int getOrder() {
+        return NettyRoutingFilter.ORDER - 1;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        RequestTimings timings = RequestTimings.of(exchange);
+        if (timings == null) {
+            return chain.filter(exchange);
+        }
+        timings.upstreamStarted();
+        return chain.filter(exchange).doFinally(signal -> timings.upstreamResponded());
+    }
+}
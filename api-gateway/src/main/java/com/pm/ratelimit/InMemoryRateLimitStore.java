@@ -0,0 +1,90 @@
+package com.pm.ratelimit;
+
+import com.pm.cache.BoundedCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ Token buckets in this gateway instance, without locks.
+
+ A bucket is stored as one long, its "theoretical arrival time" (GCRA, the token bucket expressed as a time):
+ the moment the bucket will be full again. Taking n tokens pushes it n * (1s / replenishRate) further, and is
+ allowed as long as it stays within burstCapacity tokens' worth of time from now. One compareAndSet per request.
+
+ - a bucket whose time is in the past is full, exactly like a bucket that does not exist: idle buckets are
+   removed every rate-limit.store.sweep-interval-ms without changing any client's limit
+ - at most rate-limit.store.max-clients buckets. A bucket in use is never evicted, that would give its client a
+   full one again and a client cycling through many keys could reset its own limit that way. When all of them
+   are in use, idle ones are swept right away (at most once per second), and a new client is refused (429)
+   until a bucket goes idle
+*/
+@Component
+public class InMemoryRateLimitStore implements RateLimitStore {
+    private static final long FULL_SWEEP_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final BoundedCache<String, AtomicLong> fullAtNanosByKey;
+    private final AtomicLong lastFullSweepNanos = new AtomicLong(System.nanoTime() - FULL_SWEEP_INTERVAL_NANOS);
+
+    public InMemoryRateLimitStore(@Value("${rate-limit.store.max-clients:100000}") int maxClients) {
+        this.fullAtNanosByKey = new BoundedCache<>(maxClients, InMemoryRateLimitStore::idle);
+    }
+
+    @Override
+    public Mono<RateLimitResult> tryAcquire(String key, RateLimit limit, int tokens) {
+        return Mono.just(acquire(key, limit, tokens, System.nanoTime()));
+    }
+
+    RateLimitResult acquire(String key, RateLimit limit, int tokens, long now) {
+        long nanosPerToken = (long) (1_000_000_000L / limit.replenishRate());
+        long burstNanos = nanosPerToken * limit.burstCapacity();
+
+        AtomicLong fullAt = fullAtNanosByKey.computeIfAbsentWithoutEviction(key, k -> new AtomicLong(now));
+        if (fullAt == null && sweepWhenFull(now)) {
+            fullAt = fullAtNanosByKey.computeIfAbsentWithoutEviction(key, k -> new AtomicLong(now));
+        }
+        if (fullAt == null) {
+            return new RateLimitResult(false, 0, FULL_SWEEP_INTERVAL_NANOS / 1_000_000);
+        }
+
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, now) + nanosPerToken * tokens;
+            long ahead = next - now;
+            if (ahead > burstNanos) {
+                long retryAfterNanos = ahead - burstNanos;
+                long remaining = Math.max(0, (burstNanos - (Math.max(current, now) - now)) / nanosPerToken);
+                return new RateLimitResult(false, remaining, Math.max(1, retryAfterNanos / 1_000_000));
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return new RateLimitResult(true, (burstNanos - ahead) / nanosPerToken, 0);
+            }
+        }
+    }
+
+    public int size() {
+        return fullAtNanosByKey.size();
+    }
+
+    @Scheduled(fixedDelayString = "${rate-limit.store.sweep-interval-ms:60000}")
+    void removeIdle() {
+        fullAtNanosByKey.removeIf(InMemoryRateLimitStore::idle);
+    }
+
+    // one caller sweeps, the others are refused right away instead of scanning all buckets again
+    private boolean sweepWhenFull(long now) {
+        long last = lastFullSweepNanos.get();
+        if (now - last < FULL_SWEEP_INTERVAL_NANOS || !lastFullSweepNanos.compareAndSet(last, now)) {
+            return false;
+        }
+        removeIdle();
+        return true;
+    }
+
+    private static boolean idle(AtomicLong fullAt) {
+        return fullAt.get() - System.nanoTime() <= 0;
+    }
+}
@@ -0,0 +1,10 @@
+package com.pm.ratelimit;
+
+// replenishRate tokens per second, up to burstCapacity saved up; a request costs one token (or requestedTokens)
+public record RateLimit(double replenishRate, int burstCapacity) {
+    public RateLimit {
+        if (replenishRate <= 0 || burstCapacity <= 0) {
+            throw new IllegalArgumentException("replenishRate and burstCapacity must be positive");
+        }
+    }
+}
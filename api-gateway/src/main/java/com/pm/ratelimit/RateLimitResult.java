@@ -0,0 +1,5 @@
+package com.pm.ratelimit;
+
+// remaining: tokens left after this request, retryAfterMillis: when a rejected request would be allowed
+public record RateLimitResult(boolean allowed, long remaining, long retryAfterMillis) {
+}
@@ -0,0 +1,14 @@
+package com.pm.ratelimit;
+
+import reactor.core.publisher.Mono;
+
+/*
+ Where the token buckets live. InMemoryRateLimitStore keeps them in this gateway instance, so with several
+ replicas each one enforces the limit on its own; a store shared by all of them (e.g. Redis) only has to
+ implement this interface and replace the InMemoryRateLimitStore bean.
+*/
+public interface RateLimitStore {
+
+    // takes `tokens` from the bucket of `key` if it has them; Mono because a shared store answers over the network
+    Mono<RateLimitResult> tryAcquire(String key, RateLimit limit, int tokens);
+}
@@ -0,0 +1,161 @@
+package com.pm.batch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.pm.jwt.TokenValidator;
+import com.pm.jwt.ValidatedTokenCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BatchControllerTest {
+    private static final String TOKEN = "Bearer token";
+
+    private final TokenValidator tokenValidator = mock(TokenValidator.class);
+    private final List<ClientRequest> sent = new CopyOnWriteArrayList<>();
+
+    @Test
+    void subRequestsAreAnsweredInOrderWithTheirIds() {
+        BatchController controller = controller(request -> Mono.just(ok("{\"path\":\"" + request.url().getPath() + "\"}")));
+
+        BatchResponse response = batchResponse(controller.batch(TOKEN, batch(
+                new BatchRequest.SubRequest("patients", "GET", "/api/patients", null),
+                new BatchRequest.SubRequest(null, "get", "/api/patients/1?fields=name", null))));
+
+        assertEquals("patients", response.responses().get(0).id());
+        assertEquals("1", response.responses().get(1).id());
+        assertEquals("/api/patients", response.responses().get(0).body().get("path").asText());
+        assertEquals("/api/patients/1", response.responses().get(1).body().get("path").asText());
+        sent.forEach(request -> assertEquals(TOKEN, request.headers().getFirst(HttpHeaders.AUTHORIZATION)));
+    }
+
+    @Test
+    void aBodyThatIsNotJsonIsPassedOnAsText() {
+        BatchController controller = controller(request -> Mono.just(ok("plain text")));
+
+        BatchResponse response = batchResponse(controller.batch(TOKEN, batch(get("/api/patients"))));
+
+        assertEquals(TextNode.valueOf("plain text"), response.responses().get(0).body());
+    }
+
+    @Test
+    void anInvalidTokenFailsTheWholeBatchWithoutSendingAnything() {
+        BatchController controller = controller(request -> Mono.just(ok("{}")));
+        when(tokenValidator.validate(any())).thenReturn(Mono.empty());
+
+        ResponseEntity<Object> response = controller.batch("Bearer expired", batch(get("/api/patients"))).block();
+
+        assertEquals(HttpStatus.UNAUTHORIZED, response.getStatusCode());
+        assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    void batchesOverTheLimitOrEmptyAreRejected() {
+        BatchController controller = controller(request -> Mono.just(ok("{}")));
+
+        BatchRequest.SubRequest[] tooMany = IntStream.range(0, 4).mapToObj(i -> get("/api/patients")).toArray(BatchRequest.SubRequest[]::new);
+        assertEquals(HttpStatus.BAD_REQUEST, controller.batch(TOKEN, batch(tooMany)).block().getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, controller.batch(TOKEN, batch()).block().getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, controller.batch(TOKEN, new BatchRequest(null)).block().getStatusCode());
+        assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    void pathsOutsideTheApiOrNotNormalizedAreRejected() {
+        BatchController controller = controller(request -> Mono.just(ok("{}")));
+
+        for (String path : List.of("/actuator/latency", "/api/batch", "/api//batch", "/api/./batch",
+                "/api/../actuator/latency", "/api/%2e%2e/actuator/latency", "/api/patients/%2E/1",
+                "/api/patients%2F..%2F..%2Factuator", "/api/patients/", "/api/%zz", "api/patients")) {
+            ResponseEntity<Object> response = controller.batch(TOKEN, batch(get(path))).block();
+            assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode(), path);
+        }
+        assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    void normalizedPathsMayCarryAQuery() {
+        assertTrue(BatchController.isNormalized("/api/patients"));
+        assertTrue(BatchController.isNormalized("/api/patients?page=1&next=/api/../x"));
+        assertTrue(BatchController.isNormalized("/api/patients/a%20b"));
+        assertFalse(BatchController.isNormalized("/api/patients/.."));
+    }
+
+    @Test
+    void unknownMethodsAreRejected() {
+        BatchController controller = controller(request -> Mono.just(ok("{}")));
+
+        ResponseEntity<Object> response = controller.batch(TOKEN,
+                batch(new BatchRequest.SubRequest(null, "TRACE", "/api/patients", null))).block();
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    @Test
+    void aSlowSubRequestTimesOutAloneWith504() {
+        BatchController controller = controller(request -> request.url().getPath().endsWith("/slow")
+                ? Mono.never()
+                : Mono.just(ok("{}")));
+
+        BatchResponse response = batchResponse(controller.batch(TOKEN, batch(get("/api/slow"), get("/api/patients"))));
+
+        assertEquals(504, response.responses().get(0).status());
+        assertEquals(200, response.responses().get(1).status());
+    }
+
+    @Test
+    void aFailedSubRequestIs502() {
+        BatchController controller = controller(request -> Mono.error(new IOException("connection refused")));
+
+        BatchResponse response = batchResponse(controller.batch(TOKEN, batch(get("/api/patients"))));
+
+        assertEquals(502, response.responses().get(0).status());
+    }
+
+    private BatchController controller(Function<ClientRequest, Mono<ClientResponse>> gateway) {
+        when(tokenValidator.validate(TOKEN)).thenReturn(Mono.just(new ValidatedTokenCache.CachedToken("jti", "ann@test.com")));
+        WebClient.Builder webClient = WebClient.builder().exchangeFunction(request -> {
+            sent.add(request);
+            return gateway.apply(request);
+        });
+        // at most 3 sub-requests, each gets one second
+        return new BatchController(tokenValidator, webClient, new ObjectMapper(), new SimpleMeterRegistry(), 8080, 3, 2, 1000);
+    }
+
+    private static BatchResponse batchResponse(Mono<ResponseEntity<Object>> response) {
+        ResponseEntity<Object> entity = response.block();
+        assertEquals(HttpStatus.OK, entity.getStatusCode());
+        return (BatchResponse) entity.getBody();
+    }
+
+    private static BatchRequest batch(BatchRequest.SubRequest... requests) {
+        return new BatchRequest(List.of(requests));
+    }
+
+    private static BatchRequest.SubRequest get(String path) {
+        return new BatchRequest.SubRequest(null, "GET", path, null);
+    }
+
+    private static ClientResponse ok(String body) {
+        return ClientResponse.create(HttpStatus.OK).header(HttpHeaders.CONTENT_TYPE, "application/json").body(body).build();
+    }
+}
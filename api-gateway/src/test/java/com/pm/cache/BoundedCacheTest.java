@@ -0,0 +1,95 @@
+package com.pm.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class BoundedCacheTest {
+
+    @Test
+    void fullCacheDropsExpiredValuesFirst() {
+        BoundedCache<String, Integer> cache = new BoundedCache<>(4, value -> value < 0);
+        cache.put("a", 1);
+        cache.put("b", -1);
+        cache.put("c", 3);
+        cache.put("d", -1);
+
+        cache.put("e", 5);
+
+        assertEquals(3, cache.size());
+        assertNull(cache.get("b"));
+        assertNull(cache.get("d"));
+        assertEquals(5, cache.get("e"));
+    }
+
+    @Test
+    void fullCacheWithoutExpiredValuesFreesAnEighth() {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(16, value -> false);
+        for (int i = 0; i < 16; i++) {
+            cache.put(i, i);
+        }
+
+        cache.put(16, 16);
+
+        assertEquals(15, cache.size());
+        assertEquals(15, cache.weight());
+        assertEquals(16, cache.get(16));
+    }
+
+    @Test
+    void weightedValuesMakeRoomForTheNewOne() {
+        BoundedCache<String, String> cache = new BoundedCache<>(10, String::length, value -> false);
+        cache.put("a", "xxxx");
+        cache.put("b", "xxxx");
+
+        cache.put("c", "xxxxxx");
+
+        assertEquals(2, cache.size());
+        assertEquals(10, cache.weight());
+        assertEquals("xxxxxx", cache.get("c"));
+    }
+
+    @Test
+    void valuesThatCanNeverFitAreNotStored() {
+        BoundedCache<String, String> cache = new BoundedCache<>(3, String::length, value -> false);
+        cache.put("a", "xxxx");
+        assertEquals(0, cache.size());
+
+        BoundedCache<String, String> disabled = new BoundedCache<>(0, value -> false);
+        disabled.put("a", "x");
+        assertEquals(0, disabled.size());
+    }
+
+    @Test
+    void clearAndRemoveKeepTheWeight() {
+        BoundedCache<String, String> cache = new BoundedCache<>(100, String::length, value -> false);
+        cache.put("a", "xxx");
+        cache.put("b", "xx");
+
+        cache.remove("a", "xxx");
+        assertEquals(2, cache.weight());
+        cache.remove("b");
+        assertEquals(0, cache.weight());
+        cache.put("b", "xx");
+
+        cache.clear();
+        assertEquals(0, cache.weight());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void computeWithoutEvictionOnlyTakesFreeRoom() {
+        BoundedCache<String, Integer> cache = new BoundedCache<>(2, value -> value < 0);
+        cache.computeIfAbsentWithoutEviction("a", key -> 1);
+        cache.computeIfAbsentWithoutEviction("b", key -> -1);
+
+        assertNull(cache.computeIfAbsentWithoutEviction("c", key -> 3));
+        assertEquals(1, cache.computeIfAbsentWithoutEviction("a", key -> 9));
+        assertEquals(2, cache.size());
+
+        cache.removeIf(value -> value < 0);
+        assertEquals(3, cache.computeIfAbsentWithoutEviction("c", key -> 3));
+        assertEquals(1, cache.get("a"));
+    }
+}
@@ -0,0 +1,48 @@
+package com.pm.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheDirectivesTest {
+
+    @Test
+    void withoutCacheControlTheRouteTtlApplies() {
+        assertEquals(5000, CacheDirectives.of(null).ttlMillis(5000));
+        assertEquals(5000, CacheDirectives.of(" ").ttlMillis(5000));
+        assertEquals(5000, CacheDirectives.of("public, must-revalidate").ttlMillis(5000));
+    }
+
+    @Test
+    void maxAgeShortensButNeverExtendsTheRouteTtl() {
+        assertEquals(2000, CacheDirectives.of("max-age=2").ttlMillis(5000));
+        assertEquals(5000, CacheDirectives.of("max-age=60").ttlMillis(5000));
+        assertEquals(0, CacheDirectives.of("max-age=0").ttlMillis(5000));
+    }
+
+    @Test
+    void sMaxAgeWinsOverMaxAgeForASharedCache() {
+        assertEquals(1000, CacheDirectives.of("max-age=4, s-maxage=1").ttlMillis(5000));
+        assertEquals(1000, CacheDirectives.of("S-MAXAGE=1, Max-Age=4").ttlMillis(5000));
+    }
+
+    @Test
+    void noStoreAndNoCacheAreNeverCached() {
+        CacheDirectives noStore = CacheDirectives.of("private, no-store");
+        CacheDirectives noCache = CacheDirectives.of("no-cache, max-age=4");
+
+        assertTrue(noStore.noStore());
+        assertFalse(noStore.noCache());
+        assertTrue(noCache.noCache());
+        assertEquals(0, noStore.ttlMillis(5000));
+        assertEquals(0, noCache.ttlMillis(5000));
+    }
+
+    @Test
+    void anUnreadableMaxAgeIsAlreadyStale() {
+        assertEquals(2000, CacheDirectives.of("max-age=\"2\"").ttlMillis(5000));
+        assertEquals(0, CacheDirectives.of("max-age=soon").ttlMillis(5000));
+    }
+}
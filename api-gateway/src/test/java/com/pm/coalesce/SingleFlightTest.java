@@ -0,0 +1,112 @@
+package com.pm.coalesce;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+    private final Counter saved = new SimpleMeterRegistry().counter("gateway.coalesced");
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>(saved);
+
+    @Test
+    void everyFollowerGetsTheLeadersValue() {
+        SingleFlight<String, String>.Flight leader = singleFlight.begin("key");
+        List<SingleFlight<String, String>.Flight> followers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            followers.add(singleFlight.begin("key"));
+        }
+
+        assertTrue(leader.leader());
+        followers.forEach(follower -> assertFalse(follower.leader()));
+        leader.done("value");
+
+        followers.forEach(follower -> StepVerifier.create(follower.result()).expectNext("value").verifyComplete());
+        assertEquals(10, saved.count());
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    void aFinishedFlightIsNotACache() {
+        singleFlight.begin("key").done("value");
+
+        assertTrue(singleFlight.begin("key").leader());
+    }
+
+    @Test
+    void anAbandonedFlightLeavesTheFollowersEmpty() {
+        SingleFlight<String, String>.Flight leader = singleFlight.begin("key");
+        SingleFlight<String, String>.Flight follower = singleFlight.begin("key");
+
+        leader.abandon();
+        leader.done("too late");
+
+        StepVerifier.create(follower.result()).verifyComplete();
+    }
+
+    @Test
+    void executeMakesOneCallForAllConcurrentCallers() {
+        Sinks.One<String> upstream = Sinks.one();
+        AtomicInteger calls = new AtomicInteger();
+        List<String> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            singleFlight.execute("key", () -> {
+                calls.incrementAndGet();
+                return upstream.asMono();
+            }).subscribe(results::add);
+        }
+
+        upstream.tryEmitValue("value");
+
+        assertEquals(1, calls.get());
+        assertEquals(List.of("value", "value", "value", "value", "value"), results);
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    void theLeadersErrorReachesOnlyTheLeaderTheFollowersMakeTheirOwnCall() {
+        Sinks.One<String> failing = Sinks.one();
+        AtomicInteger calls = new AtomicInteger();
+        List<Throwable> leaderErrors = new ArrayList<>();
+        List<String> followerResults = new ArrayList<>();
+
+        singleFlight.execute("key", () -> {
+            calls.incrementAndGet();
+            return failing.asMono();
+        }).subscribe(value -> { }, leaderErrors::add);
+        singleFlight.execute("key", () -> {
+            calls.incrementAndGet();
+            return Mono.just("own call");
+        }).subscribe(followerResults::add);
+
+        failing.tryEmitError(new IllegalStateException("upstream down"));
+
+        assertEquals(1, leaderErrors.size());
+        assertEquals("upstream down", leaderErrors.get(0).getMessage());
+        assertEquals(List.of("own call"), followerResults);
+        assertEquals(2, calls.get());
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    void aCancelledLeaderDoesNotStrandItsFollowers() {
+        Sinks.One<String> never = Sinks.one();
+        List<String> followerResults = new ArrayList<>();
+
+        var leader = singleFlight.execute("key", never::asMono).subscribe();
+        singleFlight.execute("key", () -> Mono.just("own call")).subscribe(followerResults::add);
+        leader.dispose();
+
+        assertEquals(List.of("own call"), followerResults);
+    }
+}
@@ -0,0 +1,130 @@
+package com.pm.concurrency;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrencyLimiterTest {
+
+    // a limit that stays put, the gradient has its own test
+    private static ConcurrencyLimiter limiter(int limit, int maxQueue, Duration queueTimeout) {
+        return new ConcurrencyLimiter(new GradientLimit(limit, limit, limit, 2.0, 0.2), maxQueue, queueTimeout);
+    }
+
+    @Test
+    void admitsUpToTheLimitQueuesUpToMaxQueueAndRejectsTheRest() {
+        ConcurrencyLimiter limiter = limiter(1, 1, Duration.ofSeconds(10));
+
+        StepVerifier.create(limiter.acquire()).expectNext(true).verifyComplete();
+        Disposable queued = limiter.acquire().subscribe();
+        StepVerifier.create(limiter.acquire()).expectNext(false).verifyComplete();
+
+        assertEquals(1, limiter.inFlight());
+        assertEquals(1, limiter.queued());
+        queued.dispose();
+    }
+
+    @Test
+    void queuedRequestIsRejectedAfterTheQueueTimeout() {
+        ConcurrencyLimiter limiter = limiter(1, 10, Duration.ofMillis(50));
+        StepVerifier.create(limiter.acquire()).expectNext(true).verifyComplete();
+
+        StepVerifier.create(limiter.acquire()).expectNext(false).verifyComplete();
+
+        assertEquals(1, limiter.inFlight());
+        assertEquals(0, limiter.queued());
+        limiter.release(0, false);
+        assertEquals(0, limiter.inFlight());
+    }
+
+    @Test
+    void releaseHandsTheSlotToTheOldestWaiter() {
+        ConcurrencyLimiter limiter = limiter(1, 10, Duration.ofSeconds(10));
+        StepVerifier.create(limiter.acquire()).expectNext(true).verifyComplete();
+
+        StepVerifier.create(limiter.acquire())
+                .then(() -> limiter.release(0, false))
+                .expectNext(true)
+                .verifyComplete();
+
+        assertEquals(1, limiter.inFlight());
+        assertEquals(0, limiter.queued());
+    }
+
+    @Test
+    void cancelledWaiterLeavesTheQueueAndTakesNoSlot() {
+        ConcurrencyLimiter limiter = limiter(1, 10, Duration.ofSeconds(10));
+        StepVerifier.create(limiter.acquire()).expectNext(true).verifyComplete();
+
+        limiter.acquire().subscribe().dispose(); // client went away while queued
+        assertEquals(0, limiter.queued());
+
+        limiter.release(0, false);
+        assertEquals(0, limiter.inFlight());
+        StepVerifier.create(limiter.acquire()).expectNext(true).verifyComplete();
+    }
+
+    @Test
+    void slotHandedToAWaiterThatCancelsBeforeTakingItIsReleased() {
+        ConcurrencyLimiter limiter = limiter(1, 10, Duration.ofSeconds(10));
+        StepVerifier.create(limiter.acquire()).expectNext(true).verifyComplete();
+
+        // the waiter is subscribed but has not requested the value yet when release hands it the slot
+        StepVerifier.create(limiter.acquire(), 0)
+                .then(() -> limiter.release(0, false))
+                .thenCancel()
+                .verify();
+
+        assertEquals(0, limiter.inFlight());
+        assertEquals(0, limiter.queued());
+    }
+
+    @Test
+    void racingReleasesTimeoutsAndCancelsLeaveNoSlotBehind() throws Exception {
+        ConcurrencyLimiter limiter = limiter(4, 20, Duration.ofMillis(2));
+        List<Disposable> requests = new ArrayList<>();
+        List<AtomicBoolean> done = new ArrayList<>();
+
+        for (int i = 0; i < 2_000; i++) {
+            AtomicBoolean finished = new AtomicBoolean();
+            done.add(finished);
+            Disposable request = limiter.acquire()
+                    .subscribeOn(Schedulers.parallel())
+                    .flatMap(acquired -> acquired
+                            ? Mono.delay(Duration.ofNanos(ThreadLocalRandom.current().nextLong(2_000_000)))
+                                    .doFinally(signal -> limiter.release(1_000_000, false))
+                                    .thenReturn(true)
+                            : Mono.just(false))
+                    .doFinally(signal -> finished.set(true))
+                    .subscribe();
+            requests.add(request);
+            if (ThreadLocalRandom.current().nextInt(3) == 0) {
+                Schedulers.parallel().schedule(request::dispose,
+                        ThreadLocalRandom.current().nextLong(3_000), TimeUnit.MICROSECONDS);
+            }
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (done.stream().anyMatch(finished -> !finished.get()) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertTrue(done.stream().allMatch(AtomicBoolean::get), "requests still pending");
+        assertEquals(0, limiter.queued());
+        assertEquals(0, limiter.inFlight());
+        assertFalse(requests.isEmpty());
+    }
+}
@@ -0,0 +1,64 @@
+package com.pm.concurrency;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GradientLimitTest {
+    private static final long WINDOW_MS = 110; // a bit over GradientLimit's 100 ms window
+
+    // a window's worth of samples, the first sample of the next window computes the new limit
+    private static void window(GradientLimit limit, long rttMillis, int inFlight) throws InterruptedException {
+        for (int i = 0; i < 10; i++) {
+            limit.onSample(TimeUnit.MILLISECONDS.toNanos(rttMillis), inFlight);
+        }
+        Thread.sleep(WINDOW_MS);
+    }
+
+    @Test
+    void growsWhileLatencyStaysNearNoLoadAndShrinksOnceItRises() throws Exception {
+        GradientLimit limit = new GradientLimit(10, 1, 100, 2.0, 1.0);
+
+        window(limit, 10, 10);
+        window(limit, 10, 10);
+        window(limit, 10, 20);
+        int grown = limit.limit();
+        assertTrue(grown > 10, "limit " + grown + " should grow at no-load latency");
+
+        window(limit, 200, grown);
+        window(limit, 200, grown);
+        window(limit, 200, grown);
+        assertTrue(limit.limit() < grown, "limit " + limit.limit() + " should shrink below " + grown);
+    }
+
+    @Test
+    void doesNotGrowWhileMostOfTheLimitIsUnused() throws Exception {
+        GradientLimit limit = new GradientLimit(10, 1, 100, 2.0, 1.0);
+
+        window(limit, 10, 1);
+        window(limit, 10, 1);
+        window(limit, 10, 1);
+
+        assertEquals(10, limit.limit());
+    }
+
+    @Test
+    void staysWithinMinAndMax() throws Exception {
+        // at half the latency tolerance limit * 0.5 + sqrt(limit) settles at 4, the minimum is above that
+        GradientLimit shrinking = new GradientLimit(8, 6, 100, 1.0, 1.0);
+        window(shrinking, 1, 8);
+        for (int i = 0; i < 4; i++) {
+            window(shrinking, 1_000, 8);
+        }
+        assertEquals(6, shrinking.limit());
+
+        GradientLimit growing = new GradientLimit(10, 1, 12, 2.0, 1.0);
+        for (int i = 0; i < 4; i++) {
+            window(growing, 10, 12);
+        }
+        assertEquals(12, growing.limit());
+    }
+}
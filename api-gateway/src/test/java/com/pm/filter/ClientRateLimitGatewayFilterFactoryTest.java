@@ -0,0 +1,48 @@
+package com.pm.filter;
+
+import com.pm.ratelimit.InMemoryRateLimitStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import java.net.InetSocketAddress;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ClientRateLimitGatewayFilterFactoryTest {
+    private static final InetSocketAddress LOAD_BALANCER = new InetSocketAddress("10.0.0.5", 41000);
+
+    @Test
+    void withoutTrustedProxiesTheConnectionIsTheClient() {
+        ClientRateLimitGatewayFilterFactory factory = new ClientRateLimitGatewayFilterFactory(new InMemoryRateLimitStore(10), 0);
+
+        assertEquals("ip:10.0.0.5", factory.clientOf(exchange("203.0.113.7")));
+    }
+
+    @Test
+    void behindTheLoadBalancerTheClientIsTheAddressItAppended() {
+        ClientRateLimitGatewayFilterFactory factory = new ClientRateLimitGatewayFilterFactory(new InMemoryRateLimitStore(10), 1);
+
+        assertEquals("ip:203.0.113.7", factory.clientOf(exchange("203.0.113.7")));
+        // whatever the client put in front of it is ignored, so it cannot pick its own bucket
+        assertEquals("ip:203.0.113.7", factory.clientOf(exchange("198.51.100.1, 198.51.100.2, 203.0.113.7")));
+        assertEquals("ip:10.0.0.5", factory.clientOf(exchange(null)));
+    }
+
+    @Test
+    void anAuthenticatedClientIsItsSubject() {
+        ClientRateLimitGatewayFilterFactory factory = new ClientRateLimitGatewayFilterFactory(new InMemoryRateLimitStore(10), 1);
+        MockServerWebExchange exchange = exchange("203.0.113.7");
+        exchange.getAttributes().put(JwtValidationGatewayFilterFactory.SUBJECT_ATTRIBUTE, "ann@test.com");
+
+        assertEquals("sub:ann@test.com", factory.clientOf(exchange));
+    }
+
+    private static MockServerWebExchange exchange(String forwardedFor) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get("/auth/login").remoteAddress(LOAD_BALANCER);
+        if (forwardedFor != null) {
+            request.header("X-Forwarded-For", forwardedFor);
+        }
+        return MockServerWebExchange.from(request);
+    }
+}
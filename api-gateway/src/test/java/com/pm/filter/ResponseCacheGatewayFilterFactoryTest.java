@@ -0,0 +1,280 @@
+package com.pm.filter;
+
+import com.pm.cache.ResponseCaptureFilter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResponseCacheGatewayFilterFactoryTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ResponseCaptureFilter captureFilter = new ResponseCaptureFilter();
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+    @Test
+    void aRepeatedGetIsAnsweredFromTheCache() {
+        GatewayFilter cache = cache(1024, 1024);
+
+        MockServerWebExchange first = get("/api/patients", "ann");
+        run(cache, first, upstream("[ann]", null));
+        MockServerWebExchange second = get("/api/patients", "ann");
+        run(cache, second, upstream("[changed]", null));
+
+        assertEquals("MISS", xCache(first));
+        assertEquals("HIT", xCache(second));
+        assertEquals("[ann]", body(second));
+        assertNotNull(second.getResponse().getHeaders().getFirst(HttpHeaders.AGE));
+        assertEquals(1, upstreamCalls.get());
+    }
+
+    @Test
+    void aRequestWithoutQueryDoesNotShareItsEntryWithAnyQuery() {
+        GatewayFilter cache = cache(1024, 1024);
+
+        run(cache, get("/api/patients", "ann"), upstream("all", null));
+        MockServerWebExchange literalNull = get("/api/patients?null", "ann");
+        run(cache, literalNull, upstream("query null", null));
+        MockServerWebExchange page2 = get("/api/patients?page=2", "ann");
+        run(cache, page2, upstream("page 2", null));
+
+        assertEquals("query null", body(literalNull));
+        assertEquals("page 2", body(page2));
+        assertEquals(3, upstreamCalls.get());
+    }
+
+    @Test
+    void usersNeverSeeEachOthersResponses() {
+        GatewayFilter cache = cache(1024, 1024);
+
+        run(cache, get("/api/patients", "ann"), upstream("ann's", null));
+        MockServerWebExchange bob = get("/api/patients", "bob");
+        run(cache, bob, upstream("bob's", null));
+
+        assertEquals("bob's", body(bob));
+    }
+
+    @Test
+    void nothingIsCachedWithoutASubject() {
+        GatewayFilter cache = cache(1024, 1024);
+
+        run(cache, get("/api/patients", null), upstream("a", null));
+        run(cache, get("/api/patients", null), upstream("b", null));
+
+        assertEquals(2, upstreamCalls.get());
+        assertEquals(2, meterRegistry.get("gateway.response-cache").tag("result", "bypass").counter().count());
+    }
+
+    @Test
+    void responsesMarkedNoStoreNoCacheOrMaxAgeZeroAreNotCached() {
+        GatewayFilter cache = cache(1024, 1024);
+
+        for (String cacheControl : new String[]{"no-store", "no-cache", "max-age=0"}) {
+            run(cache, get("/api/patients", "ann"), upstream("fresh", cacheControl));
+            MockServerWebExchange again = get("/api/patients", "ann");
+            run(cache, again, upstream("fresh", cacheControl));
+            assertEquals("MISS", xCache(again), cacheControl);
+        }
+    }
+
+    @Test
+    void aNoCacheRequestGoesUpstreamAndRefreshesTheEntry() {
+        GatewayFilter cache = cache(1024, 1024);
+        run(cache, get("/api/patients", "ann"), upstream("old", null));
+
+        MockServerWebExchange refresh = exchange(MockServerHttpRequest.get("/api/patients")
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache"), "ann");
+        run(cache, refresh, upstream("new", null));
+        MockServerWebExchange after = get("/api/patients", "ann");
+        run(cache, after, upstream("newer", null));
+
+        assertEquals("new", body(refresh));
+        assertEquals("new", body(after));
+        assertEquals("HIT", xCache(after));
+    }
+
+    @Test
+    void aNoStoreRequestBypassesTheCache() {
+        GatewayFilter cache = cache(1024, 1024);
+        run(cache, get("/api/patients", "ann"), upstream("cached", null));
+
+        MockServerWebExchange noStore = exchange(MockServerHttpRequest.get("/api/patients")
+                .header(HttpHeaders.CACHE_CONTROL, "no-store"), "ann");
+        run(cache, noStore, upstream("direct", null));
+
+        assertEquals("direct", body(noStore));
+    }
+
+    @Test
+    void aWriteOnTheRouteDropsTheCachedResponses() {
+        GatewayFilter cache = cache(1024, 1024);
+        run(cache, get("/api/patients", "ann"), upstream("before", null));
+
+        run(cache, exchange(MockServerHttpRequest.post("/api/patients"), "ann"), upstream("created", null));
+        MockServerWebExchange after = get("/api/patients", "ann");
+        run(cache, after, upstream("after", null));
+
+        assertEquals("MISS", xCache(after));
+        assertEquals("after", body(after));
+    }
+
+    @Test
+    void aReadThatOverlapsAWriteIsNotStored() {
+        GatewayFilter cache = cache(1024, 1024);
+        Sinks.Empty<Void> readUpstream = Sinks.empty();
+
+        MockServerWebExchange read = get("/api/patients", "ann");
+        Mono<Void> pendingRead = captureFilter.filter(read, exchange -> cache.filter(exchange,
+                forwarded -> readUpstream.asMono().then(upstream("stale", null).filter(forwarded))));
+        pendingRead.subscribe();
+        run(cache, exchange(MockServerHttpRequest.delete("/api/patients/1"), "ann"), upstream("", null));
+        readUpstream.tryEmitEmpty();
+
+        MockServerWebExchange after = get("/api/patients", "ann");
+        run(cache, after, upstream("fresh", null));
+        assertEquals("fresh", body(after));
+    }
+
+    @Test
+    void theCacheIsBoundedByTheBodyBytes() {
+        GatewayFilter cache = cache(100, 40);
+
+        run(cache, get("/api/patients?large", "ann"), upstream("x".repeat(41), null));
+        MockServerWebExchange large = get("/api/patients?large", "ann");
+        run(cache, large, upstream("x".repeat(41), null));
+        assertEquals("MISS", xCache(large));
+
+        for (int i = 0; i < 10; i++) {
+            run(cache, get("/api/patients?page=" + i, "ann"), upstream("y".repeat(30), null));
+            assertTrue(meterRegistry.get("gateway.response-cache.bytes").gauge().value() <= 100);
+        }
+        MockServerWebExchange latest = get("/api/patients?page=9", "ann");
+        run(cache, latest, upstream("z", null));
+        assertEquals("HIT", xCache(latest));
+    }
+
+    @Test
+    void concurrentMissesShareOneUpstreamCall() {
+        GatewayFilter cache = cache(1024, 1024);
+        Sinks.Empty<Void> slowUpstream = Sinks.empty();
+
+        MockServerWebExchange first = get("/api/patients", "ann");
+        captureFilter.filter(first, exchange -> cache.filter(exchange,
+                forwarded -> slowUpstream.asMono().then(upstream("shared", null).filter(forwarded)))).subscribe();
+        MockServerWebExchange second = get("/api/patients", "ann");
+        MockServerWebExchange third = get("/api/patients", "ann");
+        captureFilter.filter(second, exchange -> cache.filter(exchange, upstream("own", null))).subscribe();
+        captureFilter.filter(third, exchange -> cache.filter(exchange, upstream("own", null))).subscribe();
+        slowUpstream.tryEmitEmpty();
+
+        assertEquals("shared", body(second));
+        assertEquals("shared", body(third));
+        assertEquals("COALESCED", xCache(second));
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(2, meterRegistry.get("gateway.coalesced").counter().count());
+    }
+
+    @Test
+    void aFailedLeaderPropagatesItsErrorAndTheWaitingRequestsCallUpstreamThemselves() {
+        GatewayFilter cache = cache(1024, 1024);
+        Sinks.Empty<Void> failingUpstream = Sinks.empty();
+
+        MockServerWebExchange first = get("/api/patients", "ann");
+        Throwable[] firstError = new Throwable[1];
+        captureFilter.filter(first, exchange -> cache.filter(exchange, forwarded -> failingUpstream.asMono()))
+                .subscribe(done -> { }, error -> firstError[0] = error);
+        MockServerWebExchange second = get("/api/patients", "ann");
+        captureFilter.filter(second, exchange -> cache.filter(exchange, upstream("own", null))).subscribe();
+        failingUpstream.tryEmitError(new IllegalStateException("connection reset"));
+
+        assertEquals("connection reset", firstError[0].getMessage());
+        assertEquals("own", body(second));
+        assertEquals(1, upstreamCalls.get());
+    }
+
+    @Test
+    void aNon200ResponseIsNotCachedOrShared() {
+        GatewayFilter cache = cache(1024, 1024);
+
+        run(cache, get("/api/patients", "ann"), exchange -> {
+            upstreamCalls.incrementAndGet();
+            exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            return exchange.getResponse().setComplete();
+        });
+        MockServerWebExchange again = get("/api/patients", "ann");
+        run(cache, again, upstream("ok", null));
+
+        assertEquals("ok", body(again));
+        assertEquals(2, upstreamCalls.get());
+    }
+
+    @Test
+    void optionsNeitherUsesNorClearsTheCache() {
+        GatewayFilter cache = cache(1024, 1024);
+        run(cache, get("/api/patients", "ann"), upstream("cached", null));
+        run(cache, exchange(MockServerHttpRequest.options("/api/patients"), "ann"), upstream("", null));
+
+        MockServerWebExchange after = get("/api/patients", "ann");
+        run(cache, after, upstream("again", null));
+        assertEquals("HIT", xCache(after));
+    }
+
+    private GatewayFilter cache(long maxBytes, int maxEntryBytes) {
+        ResponseCacheGatewayFilterFactory.Config config = new ResponseCacheGatewayFilterFactory.Config();
+        config.setRouteId("patients");
+        config.setMaxBytes(maxBytes);
+        config.setMaxEntryBytes(maxEntryBytes);
+        return new ResponseCacheGatewayFilterFactory(meterRegistry).apply(config);
+    }
+
+    // ResponseCaptureFilter runs ahead of the route filters, like in the gateway
+    private void run(GatewayFilter cache, MockServerWebExchange exchange, GatewayFilterChain upstream) {
+        captureFilter.filter(exchange, wrapped -> cache.filter(wrapped, upstream)).block();
+    }
+
+    private GatewayFilterChain upstream(String body, String cacheControl) {
+        return exchange -> {
+            upstreamCalls.incrementAndGet();
+            exchange.getResponse().setStatusCode(HttpStatus.OK);
+            if (cacheControl != null) {
+                exchange.getResponse().getHeaders().setCacheControl(cacheControl);
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            return exchange.getResponse().writeWith(Mono.fromSupplier(() -> exchange.getResponse().bufferFactory().wrap(bytes)));
+        };
+    }
+
+    private static MockServerWebExchange get(String uri, String subject) {
+        return exchange(MockServerHttpRequest.get(uri), subject);
+    }
+
+    private static MockServerWebExchange exchange(MockServerHttpRequest.BaseBuilder<?> request, String subject) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        if (subject != null) {
+            exchange.getAttributes().put(JwtValidationGatewayFilterFactory.SUBJECT_ATTRIBUTE, subject);
+        }
+        return exchange;
+    }
+
+    private static String xCache(MockServerWebExchange exchange) {
+        return exchange.getResponse().getHeaders().getFirst("X-Cache");
+    }
+
+    private static String body(MockServerWebExchange exchange) {
+        MockServerHttpResponse response = exchange.getResponse();
+        return response.getBodyAsString().block();
+    }
+}
@@ -0,0 +1,199 @@
+package com.pm.jwt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class JwtVerifierTest {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+
+    private final KeyPair key = rsaKeyPair();
+    private final KeyPair otherKey = rsaKeyPair();
+    private final JwksKeySet keySet = new JwksKeySet(WebClient.builder(), "http://localhost:1", 5_000);
+    private final JwtVerifier verifier = new JwtVerifier(keySet);
+
+    JwtVerifierTest() {
+        keySet.update(jwks(Map.of("key-1", key)));
+    }
+
+    @Test
+    void validTokenCarriesItsClaims() {
+        long exp = nowSeconds() + 600;
+        JwtVerifier.Verification verification = verifier.verify(token("RS256", "key-1", claims(exp), key));
+
+        assertEquals(JwtVerifier.Status.VALID, verification.status());
+        assertEquals("jti-1", verification.tokenId());
+        assertEquals("ann@test.com", verification.subject());
+        assertEquals(exp * 1000, verification.expiresAtMillis());
+    }
+
+    @Test
+    void onlyRs256IsAccepted() {
+        Map<String, Object> claims = claims(nowSeconds() + 600);
+
+        assertEquals(JwtVerifier.Status.INVALID, verifier.verify(token("HS256", "key-1", claims, key)).status());
+        assertEquals(JwtVerifier.Status.INVALID, verifier.verify(token("none", "key-1", claims, key)).status());
+        assertEquals(JwtVerifier.Status.INVALID, verifier.verify(unsigned("none", "key-1", claims)).status());
+    }
+
+    @Test
+    void unknownKidAsksForARefreshAndTheWrongKeysSignatureIsInvalid() {
+        Map<String, Object> claims = claims(nowSeconds() + 600);
+
+        assertEquals(JwtVerifier.Status.UNKNOWN_KEY, verifier.verify(token("RS256", "key-2", claims, key)).status());
+        assertEquals(JwtVerifier.Status.UNKNOWN_KEY, verifier.verify(token("RS256", null, claims, key)).status());
+        // signed with another key but naming ours
+        assertEquals(JwtVerifier.Status.INVALID, verifier.verify(token("RS256", "key-1", claims, otherKey)).status());
+    }
+
+    @Test
+    void tamperedTokensAreInvalid() {
+        String token = token("RS256", "key-1", claims(nowSeconds() + 600), key);
+        String[] parts = token.split("\\.");
+        Map<String, Object> forged = claims(nowSeconds() + 600);
+        forged.put("sub", "admin@test.com");
+        String forgedPayload = encoder.encodeToString(json(forged));
+
+        assertEquals(JwtVerifier.Status.INVALID, verifier.verify(parts[0] + "." + forgedPayload + "." + parts[2]).status());
+        assertEquals(JwtVerifier.Status.INVALID, verifier.verify(parts[0] + "." + parts[1] + "." + flipAChar(parts[2])).status());
+        assertEquals(JwtVerifier.Status.INVALID, verifier.verify(parts[0] + "." + parts[1]).status());
+        assertEquals(JwtVerifier.Status.INVALID, verifier.verify(token + ".extra").status());
+        assertEquals(JwtVerifier.Status.INVALID, verifier.verify("not a token").status());
+    }
+
+    @Test
+    void expIsRequiredAndChecked() {
+        Map<String, Object> withoutExp = claims(0);
+        withoutExp.remove("exp");
+        Map<String, Object> textExp = claims(0);
+        textExp.put("exp", "tomorrow");
+
+        assertEquals(JwtVerifier.Status.INVALID, verifier.verify(token("RS256", "key-1", withoutExp, key)).status());
+        assertEquals(JwtVerifier.Status.INVALID, verifier.verify(token("RS256", "key-1", textExp, key)).status());
+        assertEquals(JwtVerifier.Status.INVALID, verifier.verify(token("RS256", "key-1", claims(nowSeconds() - 3600), key)).status());
+    }
+
+    @Test
+    void clocksThatAreAFewSecondsApartAreTolerated() {
+        Map<String, Object> notYetValid = claims(nowSeconds() + 600);
+        notYetValid.put("nbf", nowSeconds() + 10);
+        Map<String, Object> farFromValid = claims(nowSeconds() + 600);
+        farFromValid.put("nbf", nowSeconds() + 120);
+
+        assertEquals(JwtVerifier.Status.VALID, verifier.verify(token("RS256", "key-1", claims(nowSeconds() - 10), key)).status());
+        assertEquals(JwtVerifier.Status.INVALID, verifier.verify(token("RS256", "key-1", claims(nowSeconds() - 120), key)).status());
+        assertEquals(JwtVerifier.Status.VALID, verifier.verify(token("RS256", "key-1", notYetValid, key)).status());
+        assertEquals(JwtVerifier.Status.INVALID, verifier.verify(token("RS256", "key-1", farFromValid, key)).status());
+    }
+
+    @Test
+    void anEmptyOrUnreadableJwksKeepsTheKnownKeys() {
+        keySet.update(objectMapper.createObjectNode().putArray("keys").removeAll());
+        ObjectNode broken = objectMapper.createObjectNode();
+        broken.putArray("keys").addObject().put("kty", "RSA").put("kid", "key-9").put("n", "***").put("e", "AQAB");
+        keySet.update(broken);
+        keySet.update(objectMapper.createObjectNode());
+
+        assertNotNull(keySet.get("key-1"));
+        assertEquals(JwtVerifier.Status.VALID, verifier.verify(token("RS256", "key-1", claims(nowSeconds() + 600), key)).status());
+    }
+
+    @Test
+    void aRotationReplacesTheKeys() {
+        keySet.update(jwks(Map.of("key-2", otherKey)));
+        Map<String, Object> claims = claims(nowSeconds() + 600);
+
+        assertEquals(JwtVerifier.Status.UNKNOWN_KEY, verifier.verify(token("RS256", "key-1", claims, key)).status());
+        assertEquals(JwtVerifier.Status.VALID, verifier.verify(token("RS256", "key-2", claims, otherKey)).status());
+    }
+
+    private static Map<String, Object> claims(long exp) {
+        Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put("sub", "ann@test.com");
+        claims.put("jti", "jti-1");
+        claims.put("exp", exp);
+        return claims;
+    }
+
+    private static String token(String alg, String kid, Map<String, Object> claims, KeyPair signingKey) {
+        String signingInput = signingInput(alg, kid, claims);
+        try {
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(signingKey.getPrivate());
+            signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+            return signingInput + "." + encoder.encodeToString(signature.sign());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String unsigned(String alg, String kid, Map<String, Object> claims) {
+        return signingInput(alg, kid, claims) + ".";
+    }
+
+    private static String signingInput(String alg, String kid, Map<String, Object> claims) {
+        Map<String, Object> header = new LinkedHashMap<>();
+        header.put("alg", alg);
+        if (kid != null) {
+            header.put("kid", kid);
+        }
+        return encoder.encodeToString(json(header)) + "." + encoder.encodeToString(json(claims));
+    }
+
+    private static ObjectNode jwks(Map<String, KeyPair> keys) {
+        ObjectNode jwks = objectMapper.createObjectNode();
+        ArrayNode array = jwks.putArray("keys");
+        keys.forEach((kid, keyPair) -> {
+            RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
+            array.addObject()
+                    .put("kty", "RSA")
+                    .put("kid", kid)
+                    .put("n", encoder.encodeToString(publicKey.getModulus().toByteArray()))
+                    .put("e", encoder.encodeToString(publicKey.getPublicExponent().toByteArray()));
+        });
+        return jwks;
+    }
+
+    private static byte[] json(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // a character in the middle, the last one may only carry padding bits
+    private static String flipAChar(String value) {
+        int middle = value.length() / 2;
+        return value.substring(0, middle) + (value.charAt(middle) == 'A' ? 'B' : 'A') + value.substring(middle + 1);
+    }
+
+    private static long nowSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    private static KeyPair rsaKeyPair() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return generator.generateKeyPair();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.pm.jwt;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ValidatedTokenCacheTest {
+
+    @Test
+    void aCachedTokenKeepsItsIdAndSubjectUntilItExpires() throws Exception {
+        ValidatedTokenCache cache = new ValidatedTokenCache(10);
+        cache.put("token-1", "jti-1", "ann@test.com", System.currentTimeMillis() + 60_000);
+        cache.put("token-2", "jti-2", "bob@test.com", System.currentTimeMillis() + 50);
+
+        assertEquals(new ValidatedTokenCache.CachedToken("jti-1", "ann@test.com"), cache.valid("token-1").orElseThrow());
+        assertTrue(cache.valid("token-3").isEmpty());
+
+        Thread.sleep(60);
+        assertTrue(cache.valid("token-2").isEmpty());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void anExpiredTokenIsNeverCached() {
+        ValidatedTokenCache cache = new ValidatedTokenCache(10);
+
+        cache.put("token-1", "jti-1", "ann@test.com", System.currentTimeMillis() - 1);
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void atMostMaxSizeTokensAreKept() {
+        ValidatedTokenCache cache = new ValidatedTokenCache(8);
+        for (int i = 0; i < 100; i++) {
+            cache.put("token-" + i, "jti-" + i, "user-" + i, System.currentTimeMillis() + 60_000);
+        }
+
+        assertTrue(cache.size() <= 8);
+        assertTrue(cache.valid("token-99").isPresent());
+    }
+}
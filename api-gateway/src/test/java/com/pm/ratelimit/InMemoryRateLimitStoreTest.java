@@ -0,0 +1,108 @@
+package com.pm.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InMemoryRateLimitStoreTest {
+    private static final long MS = 1_000_000L;
+
+    // 5 per second: one token every 200 ms, 20 saved up at most
+    private final RateLimit limit = new RateLimit(5, 20);
+
+    @Test
+    void aFullBucketAllowsTheBurstThenOneRequestPerReplenishInterval() {
+        InMemoryRateLimitStore store = new InMemoryRateLimitStore(100);
+        long now = System.nanoTime();
+
+        for (int i = 0; i < 20; i++) {
+            RateLimitResult result = store.acquire("client", limit, 1, now);
+            assertTrue(result.allowed());
+            assertEquals(19 - i, result.remaining());
+        }
+        RateLimitResult rejected = store.acquire("client", limit, 1, now);
+        assertFalse(rejected.allowed());
+        assertEquals(0, rejected.remaining());
+        assertEquals(200, rejected.retryAfterMillis());
+
+        assertFalse(store.acquire("client", limit, 1, now + 199 * MS).allowed());
+        assertTrue(store.acquire("client", limit, 1, now + 200 * MS).allowed());
+        assertFalse(store.acquire("client", limit, 1, now + 200 * MS).allowed());
+    }
+
+    @Test
+    void anIdleBucketRefillsAtTheReplenishRateUpToTheBurst() {
+        InMemoryRateLimitStore store = new InMemoryRateLimitStore(100);
+        long now = System.nanoTime();
+        for (int i = 0; i < 20; i++) {
+            store.acquire("client", limit, 1, now);
+        }
+
+        // one second later 5 tokens are back
+        RateLimitResult afterOneSecond = store.acquire("client", limit, 1, now + 1_000 * MS);
+        assertTrue(afterOneSecond.allowed());
+        assertEquals(4, afterOneSecond.remaining());
+
+        // a minute later the bucket is full again, not fuller
+        RateLimitResult afterAMinute = store.acquire("client", limit, 1, now + 60_000 * MS);
+        assertEquals(19, afterAMinute.remaining());
+    }
+
+    @Test
+    void aRequestCanCostSeveralTokens() {
+        InMemoryRateLimitStore store = new InMemoryRateLimitStore(100);
+        long now = System.nanoTime();
+
+        assertEquals(10, store.acquire("client", limit, 10, now).remaining());
+        assertTrue(store.acquire("client", limit, 10, now).allowed());
+        RateLimitResult rejected = store.acquire("client", limit, 10, now);
+        assertFalse(rejected.allowed());
+        assertEquals(2_000, rejected.retryAfterMillis());
+    }
+
+    @Test
+    void clientsHaveTheirOwnBuckets() {
+        InMemoryRateLimitStore store = new InMemoryRateLimitStore(100);
+        long now = System.nanoTime();
+        for (int i = 0; i < 20; i++) {
+            store.acquire("client-1", limit, 1, now);
+        }
+
+        assertFalse(store.acquire("client-1", limit, 1, now).allowed());
+        assertTrue(store.acquire("client-2", limit, 1, now).allowed());
+    }
+
+    @Test
+    void aFullStoreRefusesNewClientsInsteadOfResettingBucketsInUse() {
+        InMemoryRateLimitStore store = new InMemoryRateLimitStore(2);
+        long now = System.nanoTime();
+        for (int i = 0; i < 20; i++) {
+            store.acquire("client-1", limit, 1, now);
+        }
+        store.acquire("client-2", limit, 1, now);
+
+        RateLimitResult newcomer = store.acquire("client-3", limit, 1, now);
+        assertFalse(newcomer.allowed());
+        assertTrue(newcomer.retryAfterMillis() > 0);
+
+        // client-1 is still limited, its bucket was not evicted to make room
+        assertFalse(store.acquire("client-1", limit, 1, now).allowed());
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void idleBucketsAreSweptAndMakeRoomAgain() throws Exception {
+        InMemoryRateLimitStore store = new InMemoryRateLimitStore(1);
+        // taking one token keeps the bucket busy for 200 ms
+        store.acquire("client-1", limit, 1, System.nanoTime());
+        assertFalse(store.acquire("client-2", limit, 1, System.nanoTime()).allowed());
+
+        Thread.sleep(250);
+        store.removeIdle();
+
+        assertEquals(0, store.size());
+        assertTrue(store.acquire("client-2", limit, 1, System.nanoTime()).allowed());
+    }
+}
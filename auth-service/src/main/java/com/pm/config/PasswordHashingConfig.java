@@ -0,0 +1,43 @@
+package com.pm.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ BCrypt is deliberately slow (tens of ms of CPU per check), so password checks get their own pool instead of
+ running on the Tomcat request threads: a login storm can then only fill this pool and its short queue, at most
+ threads + queue-capacity request threads wait for it, the others stay free for /validate and the JWKS endpoint.
+ Only the hashing runs here, the database work of a login stays on its request thread (AuthService).
+
+ threads: BCrypt is pure CPU, more threads than cores only make every login slower
+ queue-capacity: logins waiting beyond it are rejected right away (429) instead of timing out later
+*/
+@Configuration
+public class PasswordHashingConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public ThreadPoolExecutor passwordHashingExecutor(@Value("${auth.password-hashing.threads:0}") int threads,
+                                                      @Value("${auth.password-hashing.queue-capacity:64}") int queueCapacity,
+                                                      MeterRegistry meterRegistry) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> new Thread(runnable, "password-hashing-" + threadNumber.getAndIncrement()),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        // executor.queued, executor.active, executor.pool.size ... tagged name=password-hashing
+        new ExecutorServiceMetrics(executor, "password-hashing", Tags.empty()).bindTo(meterRegistry);
+        return executor;
+    }
+}
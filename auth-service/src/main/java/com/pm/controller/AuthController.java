@@ -2,20 +2,29 @@ package com.pm.controller;
 
 import com.pm.dto.LoginRequestDto;
 import com.pm.dto.LoginResponseDto;
+import com.pm.dto.RefreshRequestDto;
+import com.pm.exceptions.LoginThrottledException;
 import com.pm.model.User;
 import com.pm.repository.UserRepository;
 import com.pm.service.AuthService;
+import com.pm.service.RevocationService;
 import com.pm.service.UserService;
+import com.pm.util.SigningKeys;
 import io.swagger.v3.oas.annotations.Operation;
 import jakarta.persistence.GeneratedValue;
+import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
@@ -27,6 +36,12 @@ public class AuthController {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private SigningKeys signingKeys;
+
+    @Autowired
+    private RevocationService revocationService;
+
     @GetMapping("/user") // just for testing purposes
     public ResponseEntity<List<User>> getUsers(){
         return ResponseEntity.ok(userRepository.findAll());
@@ -38,14 +53,19 @@ public class AuthController {
             @RequestBody LoginRequestDto loginRequestDTO) {
         System.out.println("Login Request came");
 
-        Optional<String> tokenOptional = authService.authenticate(loginRequestDTO);
-
-        if (tokenOptional.isEmpty()) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        // the password check runs on its own pool, a full pool is answered right away
+        Optional<LoginResponseDto> tokenOptional;
+        try {
+            tokenOptional = authService.authenticate(loginRequestDTO);
+        } catch (LoginThrottledException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .build();
         }
 
-        String token = tokenOptional.get();
-        return ResponseEntity.ok(new LoginResponseDto(token));
+        return tokenOptional
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
     }
 
     @Operation(summary = "Validate Token")
@@ -62,4 +82,48 @@ public class AuthController {
                 ? ResponseEntity.ok().build()
                 : ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
     }
+
+    // a new access token (and a new refresh token, the one sent is used up) without the password
+    @Operation(summary = "Refresh the access token")
+    @PostMapping("/refresh")
+    public ResponseEntity<LoginResponseDto> refresh(@Valid @RequestBody RefreshRequestDto refreshRequestDTO) {
+        return authService.refresh(refreshRequestDTO.getRefreshToken())
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
+    }
+
+    // revokes the access token in the header and the refresh token in the body (optional)
+    @Operation(summary = "Logout: revoke the tokens")
+    @PostMapping("/logout")
+    public ResponseEntity<Void> logout(
+            @RequestHeader("Authorization") String authHeader,
+            @RequestBody(required = false) RefreshRequestDto refreshRequestDTO) {
+
+        if(authHeader == null || !authHeader.startsWith("Bearer ")) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        String refreshToken = refreshRequestDTO == null ? null : refreshRequestDTO.getRefreshToken();
+        return authService.logout(authHeader.substring(7), refreshToken)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+    }
+
+    // ids of revoked, not yet expired access tokens (jti -> expiry in epoch millis), polled by the gateway
+    @Operation(summary = "Revoked access tokens")
+    @GetMapping("/revocations")
+    public ResponseEntity<Map<String, Object>> revocations() {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .body(Map.of("revoked", revocationService.revoked()));
+    }
+
+    // public keys the tokens are signed with, the gateway verifies tokens with them instead of calling /validate
+    @Operation(summary = "Public token signing keys (JWKS)")
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<Map<String, Object>> jwks() {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(Duration.ofMinutes(5)).cachePublic())
+                .body(Map.of("keys", signingKeys.publicJwks()));
+    }
 }
\ No newline at end of file
@@ -2,12 +2,24 @@ package com.pm.dto;
 
 public class LoginResponseDto {
     private final String token;
+    private final String refreshToken;
+    private final long expiresIn; // seconds until the access token expires
 
-    public LoginResponseDto(String token) {
+    public LoginResponseDto(String token, String refreshToken, long expiresIn) {
         this.token = token;
+        this.refreshToken = refreshToken;
+        this.expiresIn = expiresIn;
     }
 
     public String getToken() {
         return token;
     }
+
+    public String getRefreshToken() {
+        return refreshToken;
+    }
+
+    public long getExpiresIn() {
+        return expiresIn;
+    }
 }
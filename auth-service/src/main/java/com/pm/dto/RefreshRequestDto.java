@@ -0,0 +1,16 @@
+package com.pm.dto;
+
+import jakarta.validation.constraints.NotBlank;
+
+public class RefreshRequestDto {
+    @NotBlank(message = "Refresh token is required")
+    private String refreshToken;
+
+    public String getRefreshToken() {
+        return refreshToken;
+    }
+
+    public void setRefreshToken(String refreshToken) {
+        this.refreshToken = refreshToken;
+    }
+}
@@ -0,0 +1,8 @@
+package com.pm.exceptions;
+
+// the password hashing pool and its queue are full, the client should retry the login a bit later
+public class LoginThrottledException extends RuntimeException{
+    public LoginThrottledException(String message){
+        super(message);
+    }
+}
@@ -0,0 +1,67 @@
+package com.pm.model;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+import java.util.UUID;
+
+// Only the SHA-256 digest of a refresh token is stored, a leaked table cannot be used to refresh
+@Entity
+@Table(name = "refresh_token")
+public class RefreshToken {
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private UUID id;
+
+    @Column(unique = true, nullable = false)
+    private String tokenHash;
+
+    @Column(nullable = false)
+    private UUID userId;
+
+    @Column(nullable = false)
+    private Instant expiresAt;
+
+    // set when the token is used (rotated) or logged out, a revoked token is never accepted again
+    private boolean revoked;
+
+    // why it was revoked, only a token that was rotated away means a copy of it is being reused (null before)
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    private RevocationReason revokedReason;
+
+    public enum RevocationReason { ROTATED, LOGOUT, REUSE_DETECTED }
+
+    protected RefreshToken() {
+    }
+
+    public RefreshToken(String tokenHash, UUID userId, Instant expiresAt) {
+        this.tokenHash = tokenHash;
+        this.userId = userId;
+        this.expiresAt = expiresAt;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String getTokenHash() {
+        return tokenHash;
+    }
+
+    public UUID getUserId() {
+        return userId;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    public boolean isRevoked() {
+        return revoked;
+    }
+
+    public RevocationReason getRevokedReason() {
+        return revokedReason;
+    }
+}
@@ -0,0 +1,32 @@
+package com.pm.model;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+// An access token revoked before its expiry, identified by its jti. Deleted once the token would have expired anyway
+@Entity
+@Table(name = "revoked_token")
+public class RevokedToken {
+    @Id
+    private String tokenId;
+
+    @Column(nullable = false)
+    private Instant expiresAt;
+
+    protected RevokedToken() {
+    }
+
+    public RevokedToken(String tokenId, Instant expiresAt) {
+        this.tokenId = tokenId;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getTokenId() {
+        return tokenId;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+}
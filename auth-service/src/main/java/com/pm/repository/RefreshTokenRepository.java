@@ -0,0 +1,28 @@
+package com.pm.repository;
+
+import com.pm.model.RefreshToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, UUID> {
+    Optional<RefreshToken> findByTokenHash(String tokenHash);
+
+    // 0 when the token was revoked in the meantime, e.g. by a concurrent refresh with the same token
+    @Modifying
+    @Query("update RefreshToken t set t.revoked = true, t.revokedReason = :reason where t.id = :id and t.revoked = false")
+    int revokeIfActive(@Param("id") UUID id, @Param("reason") RefreshToken.RevocationReason reason);
+
+    @Modifying
+    @Query("update RefreshToken t set t.revoked = true, t.revokedReason = :reason where t.userId = :userId and t.revoked = false")
+    int revokeAllByUserId(@Param("userId") UUID userId, @Param("reason") RefreshToken.RevocationReason reason);
+
+    @Modifying
+    @Query("delete from RefreshToken t where t.expiresAt < :now")
+    int deleteExpired(@Param("now") Instant now);
+}
@@ -1,40 +1,165 @@
 package com.pm.service;
 
 import com.pm.dto.LoginRequestDto;
+import com.pm.dto.LoginResponseDto;
+import com.pm.exceptions.LoginThrottledException;
 import com.pm.model.User;
 import com.pm.util.JwtUtil;
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.JwtException;
-import org.springframework.beans.factory .annotation.Autowired;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 
 @Service
 public class AuthService {
+    private static final Logger log = LoggerFactory.getLogger(AuthService.class);
+
     @Autowired
     private UserService userService;
 
     @Autowired
-    private PasswordEncoder passwordEncoder;
+    private BCryptPasswordEncoder passwordEncoder;
 
     @Autowired
     private JwtUtil jwtUtil;
 
-    // password in request -> encode -> compare with db pwd
-    public Optional<String> authenticate(LoginRequestDto loginRequestDto){
-        return userService
-                .findByEmail(loginRequestDto.getEmail())
-                .filter(u -> passwordEncoder.matches(loginRequestDto.getPassword(), u.getPassword()))
-                .map(u -> jwtUtil.generateToken(u.getEmail(), u.getRole()));
+    @Autowired
+    private TokenService tokenService;
+
+    @Autowired
+    private RevocationService revocationService;
+
+    @Autowired
+    private ThreadPoolExecutor passwordHashingExecutor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${auth.bcrypt.strength:12}")
+    private int bcryptStrength;
+
+    /*
+     password in request -> encode -> compare with db pwd. Only the BCrypt work runs on the password hashing pool
+     (see PasswordHashingConfig), the caller waits for it and then does the database writes (rehash, refresh token)
+     on its own thread, so a slow database never holds up the pool the other logins are queued for.
+     Throws LoginThrottledException right away when that pool is saturated.
+    */
+    public Optional<LoginResponseDto> authenticate(LoginRequestDto loginRequestDto){
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Optional<User> user = userService.findByEmail(loginRequestDto.getEmail());
+
+        CompletableFuture<PasswordCheck> check;
+        try {
+            check = CompletableFuture.supplyAsync(() -> user
+                    .map(u -> checkPassword(u, loginRequestDto.getPassword()))
+                    .orElse(PasswordCheck.MISMATCH), passwordHashingExecutor);
+        } catch (RejectedExecutionException e) {
+            stopTimer(sample, "rejected");
+            throw new LoginThrottledException("Too many logins in progress, try again shortly");
+        }
+
+        try {
+            PasswordCheck result = check.join();
+            if (!result.matches()) {
+                stopTimer(sample, "failure");
+                return Optional.empty();
+            }
+            if (result.rehashed() != null) {
+                saveRehashed(user.get(), result.rehashed());
+            }
+            LoginResponseDto token = tokenService.issue(user.get());
+            stopTimer(sample, "success");
+            return Optional.of(token);
+        } catch (CompletionException e) {
+            stopTimer(sample, "error");
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        } catch (RuntimeException e) {
+            stopTimer(sample, "error");
+            throw e;
+        }
+    }
+
+    // rehashed: the password hashed with auth.bcrypt.strength, when the stored hash has another work factor
+    private record PasswordCheck(boolean matches, String rehashed) {
+        static final PasswordCheck MISMATCH = new PasswordCheck(false, null);
+    }
+
+    /*
+     The password is only known in clear text during a login, so that is when a hash made with another work
+     factor (auth.bcrypt.strength was changed) is replaced. Raising the factor this way needs no password reset.
+    */
+    private PasswordCheck checkPassword(User user, String rawPassword){
+        if (!passwordEncoder.matches(rawPassword, user.getPassword())) {
+            return PasswordCheck.MISMATCH;
+        }
+        return new PasswordCheck(true,
+                costOf(user.getPassword()) == bcryptStrength ? null : passwordEncoder.encode(rawPassword));
+    }
+
+    private void saveRehashed(User user, String rehashed){
+        try {
+            userService.updatePassword(user, rehashed);
+            log.info("Rehashed password of user {} with BCrypt strength {}", user.getId(), bcryptStrength);
+        } catch (RuntimeException e) {
+            // the login itself succeeded, the rehash is retried on the next one
+            log.warn("Could not rehash password of user {}: {}", user.getId(), e.getMessage());
+        }
+    }
+
+    // $2a$10$... -> 10, -1 if the hash cannot be read
+    private static int costOf(String hash){
+        if (hash == null || hash.length() < 7 || hash.charAt(0) != '$' || hash.charAt(3) != '$') {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(hash.substring(4, 6));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
+    // auth.login.latency{outcome=success|failure|rejected|error}, including the time waiting for the pool
+    private void stopTimer(Timer.Sample sample, String outcome){
+        sample.stop(Timer.builder("auth.login.latency")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    // signature and expiry, then the revocation list (in memory, no database lookup)
     public boolean validateToken(String token) {
         try {
-            jwtUtil.validateToken(token);
-            return true;
+            return !revocationService.isRevoked(jwtUtil.validateToken(token));
+        } catch (JwtException e){
+            return false;
+        }
+    }
+
+    public Optional<LoginResponseDto> refresh(String refreshToken){
+        return tokenService.refresh(refreshToken);
+    }
+
+    // false if the access token is not valid (anymore), nothing is revoked then
+    public boolean logout(String accessToken, String refreshToken){
+        Claims claims;
+        try {
+            claims = jwtUtil.parseClaims(accessToken);
         } catch (JwtException e){
             return false;
         }
+        tokenService.logout(claims, refreshToken);
+        return true;
     }
 }
@@ -0,0 +1,66 @@
+package com.pm.service;
+
+import com.pm.model.RevokedToken;
+import com.pm.repository.RevokedTokenRepository;
+import com.pm.util.RevocationList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/*
+ Revoked access tokens. The database is the source of truth (shared by all auth-service instances), validation
+ only ever looks at the in-memory RevocationList:
+ - a revocation made here is visible right away, one made by another instance after the next sync
+ - rows are deleted once their token has expired, so the list only ever holds tokens revoked within the last
+   access token lifetime (jwt.access-token.ttl-seconds) and stays small
+ - validators elsewhere (the gateway) fetch the same list from GET /revocations
+*/
+@Service
+public class RevocationService {
+    private static final Logger log = LoggerFactory.getLogger(RevocationService.class);
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final RevocationList revocationList = new RevocationList();
+
+    public RevocationService(RevokedTokenRepository revokedTokenRepository) {
+        this.revokedTokenRepository = revokedTokenRepository;
+    }
+
+    public boolean isRevoked(String tokenId) {
+        return revocationList.isRevoked(tokenId);
+    }
+
+    public void revoke(String tokenId, long expiresAtMillis) {
+        if (tokenId == null || tokenId.isEmpty() || expiresAtMillis <= System.currentTimeMillis()) {
+            return; // nothing to revoke: no id to refer to, or already expired
+        }
+        revokedTokenRepository.save(new RevokedToken(tokenId, Instant.ofEpochMilli(expiresAtMillis)));
+        revocationList.add(tokenId, expiresAtMillis);
+    }
+
+    // tokenId -> expiry (epoch millis)
+    public Map<String, Long> revoked() {
+        return revocationList.entries();
+    }
+
+    @Transactional
+    @Scheduled(fixedDelayString = "${jwt.revocations.sync-interval-ms:5000}")
+    public void sync() {
+        Instant now = Instant.now();
+        revokedTokenRepository.deleteExpired(now);
+
+        Map<String, Long> revoked = revokedTokenRepository.findByExpiresAtAfter(now).stream()
+                .collect(Collectors.toMap(RevokedToken::getTokenId, token -> token.getExpiresAt().toEpochMilli()));
+        int before = revocationList.size();
+        revocationList.addAll(revoked);
+        if (revocationList.size() != before) {
+            log.info("Revocation list now holds {} tokens", revocationList.size());
+        }
+    }
+}
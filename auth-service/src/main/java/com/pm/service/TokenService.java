@@ -0,0 +1,122 @@
+package com.pm.service;
+
+import com.pm.dto.LoginResponseDto;
+import com.pm.model.RefreshToken;
+import com.pm.model.RefreshToken.RevocationReason;
+import com.pm.model.User;
+import com.pm.repository.RefreshTokenRepository;
+import com.pm.repository.UserRepository;
+import com.pm.util.JwtUtil;
+import io.jsonwebtoken.Claims;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Optional;
+
+/*
+ Access token + refresh token pairs.
+
+ - the access token is a short lived JWT, verified without any lookup (plus the revocation list)
+ - the refresh token is an opaque random string, only its digest is stored; each use rotates it (the old one is
+   revoked and a new pair issued), so a stolen refresh token is only good until the legitimate client refreshes
+ - a rotated refresh token presented again means one of the two copies was stolen: all refresh tokens of that
+   user are revoked and the user has to log in again. A token revoked by logout (or by that reuse detection)
+   is only refused, replaying it after logging out is no sign of theft and must not end the user's other sessions
+*/
+@Service
+public class TokenService {
+    private static final Logger log = LoggerFactory.getLogger(TokenService.class);
+
+    private final JwtUtil jwtUtil;
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final UserRepository userRepository;
+    private final RevocationService revocationService;
+    private final long refreshTokenTtlSeconds;
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    public TokenService(JwtUtil jwtUtil,
+                        RefreshTokenRepository refreshTokenRepository,
+                        UserRepository userRepository,
+                        RevocationService revocationService,
+                        @Value("${jwt.refresh-token.ttl-seconds:1209600}") long refreshTokenTtlSeconds) {
+        this.jwtUtil = jwtUtil;
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.userRepository = userRepository;
+        this.revocationService = revocationService;
+        this.refreshTokenTtlSeconds = refreshTokenTtlSeconds;
+    }
+
+    public LoginResponseDto issue(User user) {
+        byte[] random = new byte[32];
+        secureRandom.nextBytes(random);
+        String refreshToken = Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+
+        refreshTokenRepository.save(new RefreshToken(digest(refreshToken), user.getId(),
+                Instant.now().plusSeconds(refreshTokenTtlSeconds)));
+
+        return new LoginResponseDto(jwtUtil.generateToken(user.getEmail(), user.getRole()),
+                refreshToken, jwtUtil.accessTokenTtlSeconds());
+    }
+
+    // a new access + refresh token pair, empty if the refresh token is unknown, expired or already used
+    @Transactional
+    public Optional<LoginResponseDto> refresh(String refreshToken) {
+        Optional<RefreshToken> stored = refreshTokenRepository.findByTokenHash(digest(refreshToken));
+        if (stored.isEmpty() || stored.get().getExpiresAt().isBefore(Instant.now())) {
+            return Optional.empty();
+        }
+
+        RefreshToken token = stored.get();
+        if (token.isRevoked()) {
+            if (token.getRevokedReason() == RevocationReason.ROTATED) {
+                int revoked = refreshTokenRepository.revokeAllByUserId(token.getUserId(), RevocationReason.REUSE_DETECTED);
+                log.warn("Rotated refresh token reused for user {}, revoked its {} other refresh tokens", token.getUserId(), revoked);
+            }
+            return Optional.empty();
+        }
+        if (refreshTokenRepository.revokeIfActive(token.getId(), RevocationReason.ROTATED) == 0) {
+            return Optional.empty(); // a concurrent refresh with the same token won
+        }
+
+        return userRepository.findById(token.getUserId()).map(this::issue);
+    }
+
+    // revokes the access token (until its expiry) and, if given, the refresh token of the session
+    @Transactional
+    public void logout(Claims accessToken, String refreshToken) {
+        revocationService.revoke(accessToken.getId(), accessToken.getExpiration().getTime());
+
+        if (refreshToken != null) {
+            refreshTokenRepository.findByTokenHash(digest(refreshToken))
+                    .ifPresent(token -> refreshTokenRepository.revokeIfActive(token.getId(), RevocationReason.LOGOUT));
+        }
+    }
+
+    @Transactional
+    @Scheduled(fixedDelayString = "${jwt.refresh-token.cleanup-interval-ms:3600000}")
+    public void deleteExpiredRefreshTokens() {
+        int deleted = refreshTokenRepository.deleteExpired(Instant.now());
+        if (deleted > 0) {
+            log.info("Deleted {} expired refresh tokens", deleted);
+        }
+    }
+
+    private static String digest(String refreshToken) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(refreshToken.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e); // required in every JRE
+        }
+    }
+}
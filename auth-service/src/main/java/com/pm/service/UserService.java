@@ -2,18 +2,106 @@ package com.pm.service;
 
 import com.pm.model.User;
 import com.pm.repository.UserRepository;
-import org.springframework.beans.factory.annotation.Autowired;
+import com.pm.util.BoundedCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
+/*
+ User lookups by email go through a small in-memory cache, so a burst of logins (or of credential stuffing
+ with emails that do not exist) does not turn into one database query per attempt.
+
+ - known users are kept for ttl-seconds, unknown emails for the much shorter negative-ttl-seconds
+ - the two are bounded separately (see BoundedCache): a flood of made-up emails can only evict other made-up emails
+ - a change made through this service (password rehash) invalidates the entry right away, a change made
+   elsewhere (another instance, the database directly) shows up after the ttl at the latest
+*/
 @Service
 public class UserService {
 
-    @Autowired
-    private UserRepository userRepository;
+    private final UserRepository userRepository;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+
+    private final BoundedCache<String, CachedUser> usersByEmail;
+    private final BoundedCache<String, Long> unknownEmails; // email -> expiresAt
+
+    private final Counter hits;
+    private final Counter negativeHits;
+    private final Counter misses;
+
+    // the cached fields, every lookup gets its own User so callers never share (and mutate) one entity
+    private record CachedUser(UUID id, String email, String password, String role, long expiresAt) {
+        User toUser() {
+            User user = new User();
+            user.setId(id);
+            user.setEmail(email);
+            user.setPassword(password);
+            user.setRole(role);
+            return user;
+        }
+    }
+
+    public UserService(UserRepository userRepository,
+                       MeterRegistry meterRegistry,
+                       @Value("${auth.user-cache.max-size:10000}") int maxSize,
+                       @Value("${auth.user-cache.ttl-seconds:300}") long ttlSeconds,
+                       @Value("${auth.user-cache.negative-ttl-seconds:30}") long negativeTtlSeconds) {
+        this.userRepository = userRepository;
+        this.usersByEmail = new BoundedCache<>(maxSize, user -> user.expiresAt() <= System.currentTimeMillis());
+        this.unknownEmails = new BoundedCache<>(maxSize, expiresAt -> expiresAt <= System.currentTimeMillis());
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.negativeTtlMillis = TimeUnit.SECONDS.toMillis(negativeTtlSeconds);
+
+        // auth.user.cache{result=hit|negative-hit|miss}, the hit rate is (hit + negative-hit) / total
+        this.hits = meterRegistry.counter("auth.user.cache", "result", "hit");
+        this.negativeHits = meterRegistry.counter("auth.user.cache", "result", "negative-hit");
+        this.misses = meterRegistry.counter("auth.user.cache", "result", "miss");
+        meterRegistry.gauge("auth.user.cache.size", Tags.empty(), usersByEmail, BoundedCache::size);
+        meterRegistry.gauge("auth.user.cache.negative.size", Tags.empty(), unknownEmails, BoundedCache::size);
+    }
 
     public Optional<User> findByEmail(String email){
-        return userRepository.findByEmail(email);
+        long now = System.currentTimeMillis();
+
+        CachedUser cached = usersByEmail.get(email);
+        if (cached != null && cached.expiresAt() > now) {
+            hits.increment();
+            return Optional.of(cached.toUser());
+        }
+        Long unknownUntil = unknownEmails.get(email);
+        if (unknownUntil != null && unknownUntil > now) {
+            negativeHits.increment();
+            return Optional.empty();
+        }
+
+        misses.increment();
+        Optional<User> user = userRepository.findByEmail(email);
+        if (user.isPresent()) {
+            User found = user.get();
+            usersByEmail.put(email, new CachedUser(found.getId(), found.getEmail(), found.getPassword(),
+                    found.getRole(), now + ttlMillis));
+            unknownEmails.remove(email);
+        } else {
+            unknownEmails.put(email, now + negativeTtlMillis);
+        }
+        return user;
+    }
+
+    public void updatePassword(User user, String encodedPassword){
+        user.setPassword(encodedPassword);
+        userRepository.save(user);
+        invalidate(user.getEmail());
+    }
+
+    public void invalidate(String email){
+        usersByEmail.remove(email);
+        unknownEmails.remove(email);
     }
 }
@@ -1,48 +1,90 @@
 package com.pm.util;
 
-import io.jsonwebtoken.Jwt;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.LocatorAdapter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import javax.crypto.SecretKey;
-import java.nio.charset.StandardCharsets;
 import java.security.Key;
-import java.security.SignatureException;
-import java.util.Base64;
 import java.util.Date;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class JwtUtil {
-    // IMP:: we will use this secret key to generate the token and to verify that the token is coming from our servers
+    // IMP:: tokens are signed with the private RSA key, anyone with the public key (e.g. the gateway) can verify
+    // that the token is coming from our servers without asking us
 
-    private final Key secretKey;
+    private final SigningKeys signingKeys;
 
-    public JwtUtil(@Value("${jwt.secret}") String secret){
-        byte[] keyBytes = Base64.getDecoder().decode(secret.getBytes(StandardCharsets.UTF_8));
+    // built once: the parser is immutable and thread safe, building it per request only costs time
+    private final JwtParser parser;
 
-        this.secretKey = Keys.hmacShaKeyFor(keyBytes);
+    private final ValidatedTokenCache validatedTokens;
+
+    // access tokens are short lived, a client keeps its session with a refresh token (see TokenService)
+    private final long accessTokenTtlMillis;
+
+    public JwtUtil(SigningKeys signingKeys,
+                   @Value("${jwt.validated-cache.max-size:10000}") int validatedCacheMaxSize,
+                   @Value("${jwt.access-token.ttl-seconds:900}") long accessTokenTtlSeconds){
+        this.signingKeys = signingKeys;
+        this.accessTokenTtlMillis = TimeUnit.SECONDS.toMillis(accessTokenTtlSeconds);
+        this.parser = Jwts.parser()
+                .keyLocator(new LocatorAdapter<Key>() {
+                    @Override
+                    protected Key locate(JwsHeader header) { // the kid header says which of our keys signed it
+                        return signingKeys.publicKey(header.getKeyId()).orElseThrow(() -> new JwtException("Unknown key id"));
+                    }
+                })
+                .build();
+        this.validatedTokens = new ValidatedTokenCache(validatedCacheMaxSize);
     }
 
     public String generateToken(String email, String role){
+        SigningKeys.SigningKey signingKey = signingKeys.active();
+
         return Jwts.builder()
+                .header().keyId(signingKey.keyId()).and()
+                .id(UUID.randomUUID().toString()) // jti, what a revocation refers to
                 .subject(email)
                 .claim("role", role)
                 .issuedAt(new Date())
-                .expiration(new Date(System.currentTimeMillis() + 1000 * 60 * 60 * 10)) // 10 hours for easy testing purposed
-                .signWith(secretKey)
+                .expiration(new Date(System.currentTimeMillis() + accessTokenTtlMillis))
+                .signWith(signingKey.privateKey(), Jwts.SIG.RS256)
                 .compact();
     }
 
-    public void validateToken(String token) {
+    public long accessTokenTtlSeconds(){
+        return TimeUnit.MILLISECONDS.toSeconds(accessTokenTtlMillis);
+    }
+
+    // returns the id (jti) of the token, "" for tokens issued without one; revocation is checked by the caller
+    public String validateToken(String token) {
+        Optional<String> cachedTokenId = validatedTokens.validTokenId(token);
+        if (cachedTokenId.isPresent()) { // same token verified before and not expired yet
+            return cachedTokenId.get();
+        }
+
+        Claims claims = parseClaims(token);
+        String tokenId = claims.getId() == null ? "" : claims.getId();
+        if (claims.getExpiration() != null) {
+            validatedTokens.put(token, tokenId, claims.getExpiration().getTime());
+        }
+        return tokenId;
+    }
+
+    // verifies the token and returns all its claims, without the cache
+    public Claims parseClaims(String token) {
         try {
-            Jwts.parser().verifyWith((SecretKey) secretKey)
-                    .build()
-                    .parseSignedClaims(token);
+            return parser.parseSignedClaims(token).getPayload();
         }
-        catch (JwtException e) {
+        catch (JwtException | IllegalArgumentException e) {
             throw new JwtException("Invalid JWT");
         }
     }
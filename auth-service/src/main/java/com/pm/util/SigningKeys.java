@@ -0,0 +1,105 @@
+package com.pm.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/*
+ RSA keys the tokens are signed with, each identified by a key id (the kid header of the token).
+
+ jwt.signing-keys=<kid>:<base64 PKCS#8 private key>,<kid>:<...>
+   - the first key signs new tokens, all of them are accepted and published on /.well-known/jwks.json
+   - rotation: put the new key first and keep the old one until the last token signed with it expired
+   - generate a key: openssl genpkey -algorithm RSA -pkeyopt rsa_keygen_bits:2048 | openssl pkcs8 -topk8 -nocrypt -outform DER | base64 -w0
+
+ Without configured keys a temporary key is generated at startup (local development only: tokens do not
+ survive a restart and every auth-service replica would sign with a different key).
+*/
+@Component
+public class SigningKeys {
+    private static final Logger log = LoggerFactory.getLogger(SigningKeys.class);
+
+    public record SigningKey(String keyId, RSAPrivateCrtKey privateKey, RSAPublicKey publicKey) {
+    }
+
+    private final List<SigningKey> keys = new ArrayList<>();
+
+    public SigningKeys(@Value("${jwt.signing-keys:}") String configuredKeys) throws GeneralSecurityException {
+        KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+
+        for (String entry : configuredKeys.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            int colon = entry.indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("jwt.signing-keys entries must look like <kid>:<base64 PKCS#8 key>");
+            }
+            byte[] der = Base64.getDecoder().decode(entry.substring(colon + 1).trim());
+            RSAPrivateCrtKey privateKey = (RSAPrivateCrtKey) keyFactory.generatePrivate(new PKCS8EncodedKeySpec(der));
+            RSAPublicKey publicKey = (RSAPublicKey) keyFactory.generatePublic(
+                    new RSAPublicKeySpec(privateKey.getModulus(), privateKey.getPublicExponent()));
+
+            keys.add(new SigningKey(entry.substring(0, colon).trim(), privateKey, publicKey));
+        }
+
+        if (keys.isEmpty()) {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            KeyPair keyPair = generator.generateKeyPair();
+            String keyId = "generated-" + System.currentTimeMillis();
+
+            keys.add(new SigningKey(keyId, (RSAPrivateCrtKey) keyPair.getPrivate(), (RSAPublicKey) keyPair.getPublic()));
+            log.warn("No jwt.signing-keys configured, signing with the temporary key {}", keyId);
+        }
+    }
+
+    public SigningKey active() {
+        return keys.get(0);
+    }
+
+    public Optional<RSAPublicKey> publicKey(String keyId) {
+        return keys.stream().filter(key -> key.keyId().equals(keyId)).map(SigningKey::publicKey).findFirst();
+    }
+
+    // public halves of all keys as JWKs (RFC 7517), what the gateway verifies tokens with
+    public List<Map<String, String>> publicJwks() {
+        return keys.stream().map(key -> {
+            Map<String, String> jwk = new LinkedHashMap<>();
+            jwk.put("kty", "RSA");
+            jwk.put("kid", key.keyId());
+            jwk.put("use", "sig");
+            jwk.put("alg", "RS256");
+            jwk.put("n", base64UrlUnsigned(key.publicKey().getModulus()));
+            jwk.put("e", base64UrlUnsigned(key.publicKey().getPublicExponent()));
+            return jwk;
+        }).toList();
+    }
+
+    // JWK numbers are unsigned big endian, BigInteger adds a leading 0 byte for the sign when the top bit is set
+    private static String base64UrlUnsigned(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
@@ -0,0 +1,61 @@
+package com.pm.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Optional;
+
+/*
+ Tokens whose signature was already verified, so the next request with the same token skips the verification.
+
+ - keyed by the SHA-256 digest of the token, the tokens themselves are never kept in memory
+ - an entry is only valid until the token's own expiry (exp claim)
+ - the entry keeps the token id (jti), a cached token must still be checked against the revocation list
+ - at most maxSize entries, see BoundedCache
+*/
+public class ValidatedTokenCache {
+    private final BoundedCache<String, Entry> entriesByDigest;
+
+    private record Entry(String tokenId, long expiresAt) {
+    }
+
+    public ValidatedTokenCache(int maxSize) {
+        this.entriesByDigest = new BoundedCache<>(maxSize, entry -> entry.expiresAt() <= System.currentTimeMillis());
+    }
+
+    // the id of the token if it is cached and not expired
+    public Optional<String> validTokenId(String token) {
+        String digest = digest(token);
+        Entry entry = entriesByDigest.get(digest);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        if (entry.expiresAt() <= System.currentTimeMillis()) {
+            entriesByDigest.remove(digest, entry);
+            return Optional.empty();
+        }
+        return Optional.of(entry.tokenId());
+    }
+
+    // tokenId is "" for tokens without a jti (issued before tokens had one)
+    public void put(String token, String tokenId, long expiresAtMillis) {
+        if (expiresAtMillis <= System.currentTimeMillis()) {
+            return;
+        }
+        entriesByDigest.put(digest(token), new Entry(tokenId, expiresAtMillis));
+    }
+
+    public int size() {
+        return entriesByDigest.size();
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e); // required in every JRE
+        }
+    }
+}
@@ -6,6 +6,23 @@ CREATE TABLE IF NOT EXISTS "users" (
     role VARCHAR(50) NOT NULL
 );
 
+CREATE TABLE IF NOT EXISTS refresh_token (
+    id UUID PRIMARY KEY,
+    token_hash VARCHAR(255) UNIQUE NOT NULL,
+    user_id UUID NOT NULL,
+    expires_at TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    revoked BOOLEAN NOT NULL,
+    revoked_reason VARCHAR(20)
+);
+
+-- tables created before the revocation reason was stored
+ALTER TABLE refresh_token ADD COLUMN IF NOT EXISTS revoked_reason VARCHAR(20);
+
+CREATE TABLE IF NOT EXISTS revoked_token (
+    token_id VARCHAR(255) PRIMARY KEY,
+    expires_at TIMESTAMP(6) WITH TIME ZONE NOT NULL
+);
+
 -- Insert the user if no existing user with the same id or email exists
 INSERT INTO "users" (id, email, password, role)
 SELECT '223e4567-e89b-12d3-a456-426614174006', 'testuser@test.com',
@@ -0,0 +1,55 @@
+package com.pm.concurrency;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VirtualThreadPinningMonitorTest {
+    private final Object lock = new Object();
+
+    @Test
+    void aVirtualThreadBlockingInsideSynchronizedIsRecordedByItsFrame() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        VirtualThreadPinningMonitor monitor = new VirtualThreadPinningMonitor(meterRegistry, 1);
+        monitor.start();
+        try {
+            Thread.ofVirtual().start(this::sleepWhileHoldingTheLock).join();
+
+            Timer pinned = awaitPinnedTimer(meterRegistry);
+            assertNotNull(pinned, "no jdk.VirtualThreadPinned event was recorded");
+            assertTrue(pinned.getId().getTag("frame").startsWith(VirtualThreadPinningMonitorTest.class.getName()),
+                    pinned.getId().getTag("frame"));
+            assertTrue(pinned.totalTime(TimeUnit.MILLISECONDS) >= 20);
+        } finally {
+            monitor.stop();
+        }
+    }
+
+    private void sleepWhileHoldingTheLock() {
+        synchronized (lock) {
+            try {
+                Thread.sleep(30);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // the JFR stream delivers events about once a second
+    private static Timer awaitPinnedTimer(SimpleMeterRegistry meterRegistry) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            Timer timer = meterRegistry.find("jvm.threads.virtual.pinned").timer();
+            if (timer != null) {
+                return timer;
+            }
+            Thread.sleep(50);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,56 @@
+package com.pm.controller;
+
+import com.pm.dto.LoginRequestDto;
+import com.pm.dto.LoginResponseDto;
+import com.pm.exceptions.LoginThrottledException;
+import com.pm.service.AuthService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AuthControllerTest {
+    private final AuthService authService = mock(AuthService.class);
+    private final AuthController authController = new AuthController();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(authController, "authService", authService);
+    }
+
+    @Test
+    void aSaturatedHashingPoolIs429WithRetryAfter() {
+        when(authService.authenticate(any())).thenThrow(new LoginThrottledException("busy"));
+
+        ResponseEntity<LoginResponseDto> response = authController.login(new LoginRequestDto());
+
+        assertEquals(429, response.getStatusCode().value());
+        assertEquals("1", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    void aWrongPasswordIs401() {
+        when(authService.authenticate(any())).thenReturn(Optional.empty());
+
+        assertEquals(401, authController.login(new LoginRequestDto()).getStatusCode().value());
+    }
+
+    @Test
+    void aValidLoginReturnsTheTokens() {
+        LoginResponseDto tokens = new LoginResponseDto("access", "refresh", 900);
+        when(authService.authenticate(any())).thenReturn(Optional.of(tokens));
+
+        ResponseEntity<LoginResponseDto> response = authController.login(new LoginRequestDto());
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(tokens, response.getBody());
+    }
+}
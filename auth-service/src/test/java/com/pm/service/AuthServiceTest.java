@@ -0,0 +1,158 @@
+package com.pm.service;
+
+import com.pm.dto.LoginRequestDto;
+import com.pm.dto.LoginResponseDto;
+import com.pm.exceptions.LoginThrottledException;
+import com.pm.model.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AuthServiceTest {
+    private static final int STRENGTH = 5;
+
+    private final UserService userService = mock(UserService.class);
+    private final TokenService tokenService = mock(TokenService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder(STRENGTH);
+    private final ThreadPoolExecutor passwordHashingExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(1), runnable -> new Thread(runnable, "password-hashing-test"));
+    private final User user = new User();
+    private final AuthService authService = new AuthService();
+
+    @BeforeEach
+    void setUp() {
+        user.setId(UUID.randomUUID());
+        user.setEmail("ann@test.com");
+        user.setPassword(passwordEncoder.encode("secret"));
+        when(userService.findByEmail("ann@test.com")).thenReturn(Optional.of(user));
+        when(tokenService.issue(user)).thenReturn(new LoginResponseDto("access", "refresh", 900));
+
+        ReflectionTestUtils.setField(authService, "userService", userService);
+        ReflectionTestUtils.setField(authService, "tokenService", tokenService);
+        ReflectionTestUtils.setField(authService, "passwordEncoder", passwordEncoder);
+        ReflectionTestUtils.setField(authService, "passwordHashingExecutor", passwordHashingExecutor);
+        ReflectionTestUtils.setField(authService, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(authService, "bcryptStrength", STRENGTH);
+    }
+
+    @AfterEach
+    void tearDown() {
+        passwordHashingExecutor.shutdownNow();
+    }
+
+    @Test
+    void theTokenIsIssuedOnTheCallersThreadNotOnTheHashingPool() {
+        AtomicReference<Thread> issuedOn = new AtomicReference<>();
+        when(tokenService.issue(user)).thenAnswer(invocation -> {
+            issuedOn.set(Thread.currentThread());
+            return new LoginResponseDto("access", "refresh", 900);
+        });
+
+        assertTrue(authService.authenticate(login("secret")).isPresent());
+
+        assertEquals(Thread.currentThread(), issuedOn.get());
+        assertEquals(1, meterRegistry.get("auth.login.latency").tag("outcome", "success").timer().count());
+    }
+
+    @Test
+    void aWrongPasswordIssuesNothing() {
+        assertFalse(authService.authenticate(login("wrong")).isPresent());
+        assertFalse(authService.authenticate(login("nobody@test.com", "secret")).isPresent());
+
+        verify(tokenService, never()).issue(any());
+        assertEquals(2, meterRegistry.get("auth.login.latency").tag("outcome", "failure").timer().count());
+    }
+
+    @Test
+    void aSaturatedPoolIsRejectedRightAway() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        passwordHashingExecutor.execute(() -> awaitQuietly(release));
+        passwordHashingExecutor.execute(() -> awaitQuietly(release));
+        try {
+            assertThrows(LoginThrottledException.class, () -> authService.authenticate(login("secret")));
+        } finally {
+            release.countDown();
+        }
+
+        verify(userService, never()).updatePassword(any(), anyString());
+        verify(tokenService, never()).issue(any());
+        assertEquals(1, meterRegistry.get("auth.login.latency").tag("outcome", "rejected").timer().count());
+    }
+
+    @Test
+    void aHashWithAnotherWorkFactorIsReplacedOnLoginOnTheCallersThread() {
+        user.setPassword(new BCryptPasswordEncoder(4).encode("secret"));
+        AtomicReference<String> rehashed = new AtomicReference<>();
+        AtomicReference<Thread> savedOn = new AtomicReference<>();
+        doAnswer(invocation -> {
+            rehashed.set(invocation.getArgument(1));
+            savedOn.set(Thread.currentThread());
+            return null;
+        }).when(userService).updatePassword(any(), anyString());
+
+        assertTrue(authService.authenticate(login("secret")).isPresent());
+
+        assertTrue(rehashed.get().startsWith("$2a$0" + STRENGTH + "$"), rehashed.get());
+        assertTrue(passwordEncoder.matches("secret", rehashed.get()));
+        assertEquals(Thread.currentThread(), savedOn.get());
+    }
+
+    @Test
+    void aHashWithTheConfiguredWorkFactorIsKept() {
+        assertTrue(authService.authenticate(login("secret")).isPresent());
+
+        verify(userService, never()).updatePassword(any(), anyString());
+    }
+
+    @Test
+    void aFailedRehashDoesNotFailTheLogin() {
+        user.setPassword(new BCryptPasswordEncoder(4).encode("secret"));
+        doThrow(new IllegalStateException("database down")).when(userService).updatePassword(any(), anyString());
+
+        assertTrue(authService.authenticate(login("secret")).isPresent());
+    }
+
+    private static LoginRequestDto login(String password) {
+        return login("ann@test.com", password);
+    }
+
+    private static LoginRequestDto login(String email, String password) {
+        LoginRequestDto request = new LoginRequestDto();
+        request.setEmail(email);
+        request.setPassword(password);
+        return request;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.pm.service;
+
+import com.pm.dto.LoginResponseDto;
+import com.pm.model.RefreshToken;
+import com.pm.model.RefreshToken.RevocationReason;
+import com.pm.model.User;
+import com.pm.repository.RefreshTokenRepository;
+import com.pm.repository.UserRepository;
+import com.pm.util.JwtUtil;
+import io.jsonwebtoken.Claims;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TokenServiceTest {
+    private final Map<String, RefreshToken> tokensByHash = new ConcurrentHashMap<>();
+    private final RefreshTokenRepository refreshTokenRepository = mock(RefreshTokenRepository.class);
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final JwtUtil jwtUtil = mock(JwtUtil.class);
+    private final RevocationService revocationService = mock(RevocationService.class);
+    private final User user = new User();
+    private TokenService tokenService;
+
+    @BeforeEach
+    void setUp() {
+        user.setId(UUID.randomUUID());
+        user.setEmail("ann@test.com");
+        user.setRole("USER");
+        when(userRepository.findById(user.getId())).thenReturn(Optional.of(user));
+        when(jwtUtil.generateToken(anyString(), anyString())).thenReturn("access-token");
+        when(jwtUtil.accessTokenTtlSeconds()).thenReturn(900L);
+
+        // the repository queries, on a map
+        when(refreshTokenRepository.save(any(RefreshToken.class))).thenAnswer(invocation -> {
+            RefreshToken token = invocation.getArgument(0);
+            ReflectionTestUtils.setField(token, "id", UUID.randomUUID());
+            tokensByHash.put(token.getTokenHash(), token);
+            return token;
+        });
+        when(refreshTokenRepository.findByTokenHash(anyString()))
+                .thenAnswer(invocation -> Optional.ofNullable(tokensByHash.get(invocation.<String>getArgument(0))));
+        when(refreshTokenRepository.revokeIfActive(any(), any())).thenAnswer(invocation -> (int) tokensByHash.values().stream()
+                .filter(token -> token.getId().equals(invocation.getArgument(0)) && !token.isRevoked())
+                .peek(token -> revoke(token, invocation.getArgument(1)))
+                .count());
+        when(refreshTokenRepository.revokeAllByUserId(any(), any())).thenAnswer(invocation -> (int) tokensByHash.values().stream()
+                .filter(token -> token.getUserId().equals(invocation.getArgument(0)) && !token.isRevoked())
+                .peek(token -> revoke(token, invocation.getArgument(1)))
+                .count());
+
+        tokenService = new TokenService(jwtUtil, refreshTokenRepository, userRepository, revocationService, 3600);
+    }
+
+    @Test
+    void refreshRotatesTheRefreshToken() {
+        LoginResponseDto login = tokenService.issue(user);
+
+        LoginResponseDto refreshed = tokenService.refresh(login.getRefreshToken()).orElseThrow();
+
+        assertNotEquals(login.getRefreshToken(), refreshed.getRefreshToken());
+        assertTrue(tokenService.refresh(refreshed.getRefreshToken()).isPresent());
+    }
+
+    @Test
+    void reusingARotatedTokenRevokesEveryRefreshTokenOfTheUser() {
+        LoginResponseDto stolen = tokenService.issue(user);
+        LoginResponseDto otherSession = tokenService.issue(user);
+        LoginResponseDto rotated = tokenService.refresh(stolen.getRefreshToken()).orElseThrow();
+
+        assertTrue(tokenService.refresh(stolen.getRefreshToken()).isEmpty());
+
+        assertTrue(tokenService.refresh(rotated.getRefreshToken()).isEmpty());
+        assertTrue(tokenService.refresh(otherSession.getRefreshToken()).isEmpty());
+    }
+
+    @Test
+    void replayingALoggedOutTokenDoesNotEndTheOtherSessions() {
+        LoginResponseDto loggedOut = tokenService.issue(user);
+        LoginResponseDto otherSession = tokenService.issue(user);
+        tokenService.logout(accessToken(), loggedOut.getRefreshToken());
+
+        assertTrue(tokenService.refresh(loggedOut.getRefreshToken()).isEmpty());
+
+        assertTrue(tokenService.refresh(otherSession.getRefreshToken()).isPresent());
+        assertTrue(tokensByHash.values().stream().anyMatch(token -> token.getRevokedReason() == RevocationReason.LOGOUT));
+    }
+
+    @Test
+    void unknownAndExpiredTokensAreRefused() {
+        TokenService expiring = new TokenService(jwtUtil, refreshTokenRepository, userRepository, revocationService, -1);
+        LoginResponseDto expired = expiring.issue(user);
+
+        assertTrue(tokenService.refresh("not-a-token").isEmpty());
+        assertTrue(tokenService.refresh(expired.getRefreshToken()).isEmpty());
+    }
+
+    private static void revoke(RefreshToken token, RevocationReason reason) {
+        ReflectionTestUtils.setField(token, "revoked", true);
+        ReflectionTestUtils.setField(token, "revokedReason", reason);
+    }
+
+    private static Claims accessToken() {
+        Claims claims = mock(Claims.class);
+        when(claims.getId()).thenReturn("jti-1");
+        when(claims.getExpiration()).thenReturn(new Date(System.currentTimeMillis() + 60_000));
+        return claims;
+    }
+}
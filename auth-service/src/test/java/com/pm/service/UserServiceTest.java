@@ -0,0 +1,95 @@
+package com.pm.service;
+
+import com.pm.model.User;
+import com.pm.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserServiceTest {
+    private final UserRepository userRepository = mock(UserRepository.class);
+
+    @Test
+    void aKnownUserIsLookedUpOnceAndEveryCallerGetsItsOwnCopy() {
+        when(userRepository.findByEmail("ann@test.com")).thenReturn(Optional.of(user("ann@test.com")));
+        UserService userService = userService(100);
+
+        User first = userService.findByEmail("ann@test.com").orElseThrow();
+        User second = userService.findByEmail("ann@test.com").orElseThrow();
+
+        assertNotSame(first, second);
+        assertEquals(first.getId(), second.getId());
+        verify(userRepository, times(1)).findByEmail("ann@test.com");
+    }
+
+    @Test
+    void anUnknownEmailIsRememberedToo() {
+        when(userRepository.findByEmail(anyString())).thenReturn(Optional.empty());
+        UserService userService = userService(100);
+
+        assertTrue(userService.findByEmail("nobody@test.com").isEmpty());
+        assertTrue(userService.findByEmail("nobody@test.com").isEmpty());
+
+        verify(userRepository, times(1)).findByEmail("nobody@test.com");
+    }
+
+    @Test
+    void aFloodOfUnknownEmailsDoesNotEvictKnownUsers() {
+        when(userRepository.findByEmail(anyString())).thenReturn(Optional.empty());
+        when(userRepository.findByEmail("ann@test.com")).thenReturn(Optional.of(user("ann@test.com")));
+        UserService userService = userService(4);
+        userService.findByEmail("ann@test.com");
+
+        for (int i = 0; i < 100; i++) {
+            userService.findByEmail("made-up-" + i + "@test.com");
+        }
+        userService.findByEmail("ann@test.com");
+
+        verify(userRepository, times(1)).findByEmail("ann@test.com");
+    }
+
+    @Test
+    void aPasswordChangeIsSeenByTheNextLookup() {
+        User stored = user("ann@test.com");
+        when(userRepository.findByEmail("ann@test.com")).thenAnswer(invocation -> Optional.of(copy(stored)));
+        UserService userService = userService(100);
+        User user = userService.findByEmail("ann@test.com").orElseThrow();
+
+        userService.updatePassword(user, "new-hash");
+        stored.setPassword("new-hash");
+
+        assertEquals("new-hash", userService.findByEmail("ann@test.com").orElseThrow().getPassword());
+        verify(userRepository, times(2)).findByEmail("ann@test.com");
+    }
+
+    private UserService userService(int maxSize) {
+        return new UserService(userRepository, new SimpleMeterRegistry(), maxSize, 300, 30);
+    }
+
+    private static User user(String email) {
+        User user = new User();
+        user.setId(UUID.randomUUID());
+        user.setEmail(email);
+        user.setPassword("hash");
+        user.setRole("USER");
+        return user;
+    }
+
+    private static User copy(User user) {
+        User copy = user(user.getEmail());
+        copy.setId(user.getId());
+        copy.setPassword(user.getPassword());
+        return copy;
+    }
+}
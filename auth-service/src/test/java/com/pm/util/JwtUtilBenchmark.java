@@ -0,0 +1,75 @@
+package com.pm.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+/*
+ Tokens per second: signing one at login (RS256 with a 2048 bit key), validating one on /validate, either
+ the first time (signature check) or again (ValidatedTokenCache hit). The GC profiler adds the bytes allocated
+ per token (gc.alloc.rate.norm).
+ Run from auth-service after `mvn test-compile`:
+
+   java -cp "target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)" \
+        com.pm.util.JwtUtilBenchmark
+
+ Results are also written to target/jmh-JwtUtilBenchmark.json, to compare between commits.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtUtilBenchmark {
+
+    private JwtUtil jwtUtil;
+    private String token;
+
+    @Setup
+    public void setUp() throws GeneralSecurityException {
+        jwtUtil = new JwtUtil(new SigningKeys(""), 10000, 900); // temporary generated key, as in local development
+        token = jwtUtil.generateToken("testuser@test.com", "ADMIN");
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtUtil.generateToken("testuser@test.com", "ADMIN");
+    }
+
+    // after the first call for a token, what every further /validate with it costs
+    @Benchmark
+    public String validateTokenCached() {
+        return jwtUtil.validateToken(token);
+    }
+
+    // the signature check a new token gets
+    @Benchmark
+    public Object validateTokenUncached() {
+        return jwtUtil.parseClaims(token);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JwtUtilBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-" + JwtUtilBenchmark.class.getSimpleName() + ".json")
+                .build()).run();
+    }
+}
@@ -0,0 +1,66 @@
+package com.pm.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RevocationListTest {
+
+    @Test
+    void revokedIdsAreFoundAndOthersAreNot() {
+        RevocationList list = new RevocationList();
+        list.add("jti-1", inAMinute());
+
+        assertTrue(list.isRevoked("jti-1"));
+        assertFalse(list.isRevoked("jti-2"));
+        assertFalse(list.isRevoked(null));
+    }
+
+    @Test
+    void bloomFilterFalsePositivesAreSettledByTheExactEntries() {
+        RevocationList list = new RevocationList();
+        Map<String, Long> revoked = new HashMap<>();
+        for (int i = 0; i < 5_000; i++) {
+            revoked.put(UUID.randomUUID().toString(), inAMinute());
+        }
+        list.addAll(revoked);
+
+        // ~1% of these hit all probed bits, the exact map must still answer "not revoked" for every one
+        for (int i = 0; i < 100_000; i++) {
+            assertFalse(list.isRevoked(UUID.randomUUID().toString()));
+        }
+        revoked.keySet().forEach(tokenId -> assertTrue(list.isRevoked(tokenId)));
+    }
+
+    @Test
+    void expiredEntriesAreDroppedOnTheNextChange() {
+        RevocationList list = new RevocationList();
+        list.addAll(Map.of("expired", System.currentTimeMillis() - 1, "live", inAMinute()));
+
+        assertFalse(list.isRevoked("expired"));
+        assertEquals(Map.of("live", list.entries().get("live")), list.entries());
+    }
+
+    @Test
+    void mergingNeverUndoesARevocation() {
+        RevocationList list = new RevocationList();
+        list.add("jti-1", inAMinute());
+
+        list.addAll(Map.of("jti-2", inAMinute()));
+        list.addAll(Map.of());
+
+        assertTrue(list.isRevoked("jti-1"));
+        assertTrue(list.isRevoked("jti-2"));
+        assertEquals(2, list.size());
+    }
+
+    private static long inAMinute() {
+        return System.currentTimeMillis() + 60_000;
+    }
+}
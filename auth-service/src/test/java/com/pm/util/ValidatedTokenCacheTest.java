@@ -0,0 +1,37 @@
+package com.pm.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ValidatedTokenCacheTest {
+
+    @Test
+    void aCachedTokenKeepsItsIdUntilItExpires() throws Exception {
+        ValidatedTokenCache cache = new ValidatedTokenCache(10);
+        cache.put("token-1", "jti-1", System.currentTimeMillis() + 60_000);
+        cache.put("token-2", "jti-2", System.currentTimeMillis() + 50);
+
+        assertEquals("jti-1", cache.validTokenId("token-1").orElseThrow());
+        assertTrue(cache.validTokenId("token-3").isEmpty());
+
+        Thread.sleep(60);
+        assertTrue(cache.validTokenId("token-2").isEmpty());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void fullCacheDropsExpiredTokensBeforeLiveOnes() throws Exception {
+        ValidatedTokenCache cache = new ValidatedTokenCache(2);
+        cache.put("live", "jti-1", System.currentTimeMillis() + 60_000);
+        cache.put("expiring", "jti-2", System.currentTimeMillis() + 20);
+        Thread.sleep(30);
+
+        cache.put("new", "jti-3", System.currentTimeMillis() + 60_000);
+
+        assertEquals("jti-1", cache.validTokenId("live").orElseThrow());
+        assertEquals("jti-3", cache.validTokenId("new").orElseThrow());
+        assertEquals(2, cache.size());
+    }
+}
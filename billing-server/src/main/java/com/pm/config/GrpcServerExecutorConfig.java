@@ -0,0 +1,62 @@
+package com.pm.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import net.devh.boot.grpc.server.serverfactory.GrpcServerConfigurer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ The executor every gRPC handler and listener callback of billing-server runs on (instead of grpc-java's
+ default unbounded cached pool).
+
+ - bounded: fixed number of threads, LoadSheddingInterceptor rejects new calls with RESOURCE_EXHAUSTED once
+   billing.grpc.executor.queue-capacity tasks are waiting
+ - virtual: one virtual thread per task, the store's fsync waits no longer hold a platform thread,
+   only billing.grpc.shed.max-in-flight limits the load
+
+ The queue itself never rejects: grpc-java hands a RejectedExecutionException back to the transport, the callback
+ (a message, onReady, the call's end) is dropped and the call hangs instead of failing. The capacity is enforced
+ when a call starts, in tasks, which is also what the queue holds. An admitted call never has more than one task
+ queued (grpc runs the callbacks of a call one after the other), so the queue stays below capacity + in-flight calls.
+*/
+@Configuration
+public class GrpcServerExecutorConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService grpcServerExecutor(@Value("${billing.grpc.executor.mode:bounded}") String mode,
+                                              @Value("${billing.grpc.executor.threads:16}") int threads,
+                                              MeterRegistry meterRegistry) {
+        if ("virtual".equals(mode)) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("billing-grpc-", 0).factory());
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), // bounded by LoadSheddingInterceptor, see above
+                runnable -> {
+                    Thread thread = new Thread(runnable, "billing-grpc-" + threadNumber.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+
+        // executor.queued, executor.active, executor.completed ... tagged name=billing-grpc
+        new ExecutorServiceMetrics(executor, "billing-grpc", Tags.empty()).bindTo(meterRegistry);
+        return executor;
+    }
+
+    @Bean
+    public GrpcServerConfigurer grpcServerExecutorConfigurer(ExecutorService grpcServerExecutor) {
+        return serverBuilder -> serverBuilder.executor(grpcServerExecutor);
+    }
+}
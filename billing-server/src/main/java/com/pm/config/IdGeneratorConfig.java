@@ -0,0 +1,21 @@
+package com.pm.config;
+
+import com.pm.id.SnowflakeIdGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class IdGeneratorConfig {
+
+    // every billing-server replica needs its own node id (0-1023), e.g. BILLING_ID_NODE_ID in the task definition.
+    // There is no default: two replicas falling back to the same one would hand out the same account ids
+    @Bean
+    public SnowflakeIdGenerator accountIdGenerator(@Value("${billing.id.node-id:}") String nodeId) {
+        if (nodeId.isBlank()) {
+            throw new IllegalStateException("billing.id.node-id (BILLING_ID_NODE_ID) is not set, every billing-server "
+                    + "replica needs its own node id between 0 and " + SnowflakeIdGenerator.MAX_NODE_ID);
+        }
+        return new SnowflakeIdGenerator(Integer.parseInt(nodeId.trim()));
+    }
+}
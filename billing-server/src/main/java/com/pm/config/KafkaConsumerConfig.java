@@ -0,0 +1,32 @@
+package com.pm.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.listener.CommonErrorHandler;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.util.backoff.ExponentialBackOff;
+
+/*
+ Error handling of PatientEventConsumer (picked up by Spring Boot's listener container factory).
+
+ Spring Kafka's default retries a failed batch 10 times back to back and then commits past it: a write-ahead log
+ outage of a few milliseconds would drop those accounts, and in billing.account-creation.mode=event nothing else
+ creates them. Here the batch is retried with an exponential backoff (initial-interval-ms doubling up to
+ max-interval-ms) for as long as it takes: the partition stays where it is, the consumer stays in its group
+ (paused between attempts), and creation is idempotent so a retry never creates an account twice.
+*/
+@Configuration
+@ConditionalOnProperty(name = "billing.account-creation.mode", havingValue = "event")
+public class KafkaConsumerConfig {
+
+    @Bean
+    public CommonErrorHandler patientEventErrorHandler(@Value("${billing.events.retry.initial-interval-ms:200}") long initialIntervalMs,
+                                                       @Value("${billing.events.retry.max-interval-ms:30000}") long maxIntervalMs) {
+        ExponentialBackOff backOff = new ExponentialBackOff(initialIntervalMs, 2.0);
+        backOff.setMaxInterval(maxIntervalMs);
+        backOff.setMaxElapsedTime(ExponentialBackOff.DEFAULT_MAX_ELAPSED_TIME); // unlimited, never skip a batch
+        return new DefaultErrorHandler(backOff);
+    }
+}
@@ -0,0 +1,7 @@
+package com.pm.exceptions;
+
+public class BillingStoreException extends RuntimeException{
+    public BillingStoreException(String message, Throwable cause){
+        super(message, cause);
+    }
+}
@@ -3,10 +3,27 @@ package com.pm.grpc;
 import billing.BillingRequest;
 import billing.BillingResponse;
 import billing.BillingServiceGrpc;
+import com.pm.exceptions.BillingStoreException;
+import com.pm.store.BillingAccount;
+import com.pm.store.BillingAccountStore;
+import com.pm.store.NewBillingAccount;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
+import jakarta.annotation.PreDestroy;
 import net.devh.boot.grpc.server.service.GrpcService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 /*
 ##############################################
@@ -16,32 +33,208 @@ import org.slf4j.LoggerFactory;
 ##############################################
 */
 
-@GrpcService 
+@GrpcService
 public class BillingServiceGrpcServer extends BillingServiceGrpc.BillingServiceImplBase {
 
     private static final Logger log = LoggerFactory.getLogger(BillingServiceGrpcServer.class);
+
+    private final BillingAccountStore billingAccountStore;
+    private final int bulkBatchSize;
+    private final long bulkLingerMs;
+    private final ExecutorService grpcServerExecutor;
+
+    // times the flush of partially filled bulk batches when the client pauses, the flush itself (a blocking
+    // store write) runs on the gRPC executor so one slow write does not hold up the linger of every other stream
+    private final ScheduledExecutorService lingerScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "billing-bulk-linger");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public BillingServiceGrpcServer(BillingAccountStore billingAccountStore,
+                                    @Value("${billing.grpc.bulk.batch-size:100}") int bulkBatchSize,
+                                    @Value("${billing.grpc.bulk.linger-ms:5}") long bulkLingerMs,
+                                    ExecutorService grpcServerExecutor) {
+        this.billingAccountStore = billingAccountStore;
+        this.bulkBatchSize = bulkBatchSize;
+        this.bulkLingerMs = bulkLingerMs;
+        this.grpcServerExecutor = grpcServerExecutor;
+    }
+
     @Override
     public void createBillingAccount(BillingRequest request, StreamObserver<BillingResponse> responseObserver) {
         log.info("createBillingAccount request receieved {}", request.toString());
 
-        // Business Logic - saving to db etc.
-
-        BillingResponse response = BillingResponse.newBuilder()
-                .setAccountId("1234")
-                .setStatus("ACTIVE")
-                .build();
-
-        BillingResponse response2 = BillingResponse.newBuilder()
-                .setAccountId("5678")
-                .setStatus("INACTIVE")
-                .build();
+        // Idempotent by patientId: a retried request gets back the account created the first time
+        BillingAccount account;
+        try {
+            account = billingAccountStore.createIfAbsent(request.getPatientId(), request.getName(), request.getEmail());
+        } catch (BillingStoreException e) {
+            log.error("Error while creating billing account for patient {}: {}", request.getPatientId(), e.getMessage());
+            responseObserver.onError(Status.UNAVAILABLE.withDescription(e.getMessage()).withCause(e).asRuntimeException());
+            return;
+        }
 
         // Send the response back to client (PatientService)
-        responseObserver.onNext(response);
-
-        responseObserver.onNext(response2 );
+        responseObserver.onNext(toResponse(account));
 
         // To tell that we are done sending responses (many responses can be sent simultaneously)
         responseObserver.onCompleted();
     }
+
+    /*
+     Bulk create: requests are collected into batches of bulkBatchSize (or whatever arrived within bulkLingerMs)
+     and each batch is persisted with a single log write. We only ask the client for the next batch once the
+     current one is stored and its responses can be sent (isReady), so neither a fast client nor a slow reader
+     of the responses can make this server buffer more than one batch per stream.
+
+     The callbacks of a stream (gRPC executor) and its linger flush (also handed to the gRPC executor) take turns
+     through a ReentrantLock, not synchronized: the lock is held across the store write, and a virtual thread
+     blocking inside synchronized would pin its carrier thread (billing.grpc.executor.mode=virtual).
+    */
+    @Override
+    public StreamObserver<BillingRequest> createBillingAccounts(StreamObserver<BillingResponse> responseObserver) {
+        return new BulkCreateObserver((ServerCallStreamObserver<BillingResponse>) responseObserver);
+    }
+
+    final class BulkCreateObserver implements StreamObserver<BillingRequest> {
+        private final ServerCallStreamObserver<BillingResponse> responseObserver;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final List<BillingRequest> batch = new ArrayList<>(bulkBatchSize);
+        private int outstanding = bulkBatchSize;
+        private boolean topUpPending;
+        private ScheduledFuture<?> lingerFlush;
+        private boolean failed;
+
+        BulkCreateObserver(ServerCallStreamObserver<BillingResponse> responseObserver) {
+            this.responseObserver = responseObserver;
+            responseObserver.disableAutoRequest();
+            // called when the client has read enough of our responses for the transport to take more
+            responseObserver.setOnReadyHandler(this::onReady);
+            responseObserver.request(bulkBatchSize);
+        }
+
+        @Override
+        public void onNext(BillingRequest request) {
+            lock.lock();
+            try {
+                batch.add(request);
+                outstanding--;
+
+                if (batch.size() >= bulkBatchSize || outstanding == 0) {
+                    flush();
+                } else if (lingerFlush == null) {
+                    lingerFlush = lingerScheduler.schedule(() -> grpcServerExecutor.execute(this::lingerElapsed),
+                            bulkLingerMs, TimeUnit.MILLISECONDS);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            lock.lock();
+            try {
+                cancelLingerFlush();
+                log.warn("createBillingAccounts stream cancelled by client: {}", t.getMessage());
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void onCompleted() {
+            lock.lock();
+            try {
+                flush();
+                if (!failed) {
+                    responseObserver.onCompleted();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // a flush that was already handed off when the next batch filled up only flushes that batch early
+        private void lingerElapsed() {
+            lock.lock();
+            try {
+                lingerFlush = null;
+                flush();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void onReady() {
+            lock.lock();
+            try {
+                if (topUpPending && responseObserver.isReady()) {
+                    topUpPending = false;
+                    requestNextBatch();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void flush() {
+            cancelLingerFlush();
+            if (batch.isEmpty() || failed || responseObserver.isCancelled()) {
+                return;
+            }
+
+            List<BillingAccount> accounts;
+            try {
+                accounts = billingAccountStore.createAllIfAbsent(batch.stream()
+                        .map(request -> new NewBillingAccount(request.getPatientId(), request.getName(), request.getEmail()))
+                        .toList());
+            } catch (BillingStoreException e) {
+                log.error("Error while creating a batch of billing accounts: {}", e.getMessage());
+                failed = true;
+                responseObserver.onError(Status.UNAVAILABLE.withDescription(e.getMessage()).withCause(e).asRuntimeException());
+                return;
+            }
+
+            // at most one batch of responses is written past isReady, the next batch waits for onReady
+            accounts.forEach(account -> responseObserver.onNext(toResponse(account)));
+            batch.clear();
+
+            if (responseObserver.isReady()) {
+                requestNextBatch();
+            } else {
+                topUpPending = true;
+            }
+        }
+
+        // ask for the next batch only now that this one is stored and answered
+        private void requestNextBatch() {
+            int next = bulkBatchSize - outstanding;
+            if (next > 0) {
+                outstanding += next;
+                responseObserver.request(next);
+            }
+        }
+
+        private void cancelLingerFlush() {
+            if (lingerFlush != null) {
+                lingerFlush.cancel(false);
+                lingerFlush = null;
+            }
+        }
+    }
+
+    private static BillingResponse toResponse(BillingAccount account) {
+        return BillingResponse.newBuilder()
+                .setAccountId(account.accountId())
+                .setStatus(account.status())
+                .setPatientId(account.patientId())
+                .build();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        lingerScheduler.shutdownNow();
+    }
 }
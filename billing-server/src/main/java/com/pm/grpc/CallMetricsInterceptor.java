@@ -0,0 +1,54 @@
+package com.pm.grpc;
+
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import net.devh.boot.grpc.server.interceptor.GrpcGlobalServerInterceptor;
+import org.springframework.core.annotation.Order;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ Per method metrics of every gRPC call:
+ - billing.grpc.server.latency (timer, tags method + status), from call start until it is closed
+ - billing.grpc.server.in-flight (gauge, tag method), calls started and not yet finished
+
+ Lowest order so it sees the calls rejected by LoadSheddingInterceptor too (status RESOURCE_EXHAUSTED).
+*/
+@GrpcGlobalServerInterceptor
+@Order(10)
+public class CallMetricsInterceptor implements ServerInterceptor {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, AtomicInteger> inFlightByMethod = new ConcurrentHashMap<>();
+
+    public CallMetricsInterceptor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        String method = call.getMethodDescriptor().getFullMethodName();
+        AtomicInteger inFlight = inFlightByMethod.computeIfAbsent(method,
+                name -> meterRegistry.gauge("billing.grpc.server.in-flight", Tags.of("method", name), new AtomicInteger()));
+
+        inFlight.incrementAndGet();
+        Timer.Sample sample = Timer.start(meterRegistry);
+
+        return ServerCallCompletion.startCall(call, headers, next, code -> {
+            inFlight.decrementAndGet();
+            sample.stop(Timer.builder("billing.grpc.server.latency")
+                    .tag("method", method)
+                    .tag("status", code.name())
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        });
+    }
+}
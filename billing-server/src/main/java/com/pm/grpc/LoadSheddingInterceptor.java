@@ -0,0 +1,77 @@
+package com.pm.grpc;
+
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.devh.boot.grpc.server.interceptor.GrpcGlobalServerInterceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ Rejects new calls with RESOURCE_EXHAUSTED instead of letting them pile up when billing-server is saturated:
+ - more than maxInFlight calls are already running, or
+ - queueCapacity tasks are waiting for a thread of the bounded gRPC executor. This is the only bound of that queue,
+   see GrpcServerExecutorConfig, the queue and this check count the same thing
+
+ A rejected call costs one status frame, the client can back off and retry it later.
+*/
+@GrpcGlobalServerInterceptor
+@Order(20)
+public class LoadSheddingInterceptor implements ServerInterceptor {
+    private static final Logger log = LoggerFactory.getLogger(LoadSheddingInterceptor.class);
+
+    private final ExecutorService grpcServerExecutor;
+    private final int maxInFlight;
+    private final int queueCapacity;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter shedCalls;
+
+    public LoadSheddingInterceptor(ExecutorService grpcServerExecutor,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${billing.grpc.shed.max-in-flight:256}") int maxInFlight,
+                                   @Value("${billing.grpc.executor.queue-capacity:200}") int queueCapacity) {
+        this.grpcServerExecutor = grpcServerExecutor;
+        this.maxInFlight = maxInFlight;
+        this.queueCapacity = queueCapacity;
+        this.shedCalls = meterRegistry.counter("billing.grpc.server.shed");
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        int queued = queuedTasks();
+        if (queued >= queueCapacity) {
+            return shed(call, "gRPC executor queue is full (" + queued + " tasks waiting, capacity " + queueCapacity + ")");
+        }
+        if (inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            return shed(call, "Too many calls in flight (max " + maxInFlight + ")");
+        }
+
+        return ServerCallCompletion.startCall(call, headers, next, code -> inFlight.decrementAndGet());
+    }
+
+    private <ReqT, RespT> ServerCall.Listener<ReqT> shed(ServerCall<ReqT, RespT> call, String reason) {
+        shedCalls.increment();
+        log.debug("Rejecting {}: {}", call.getMethodDescriptor().getFullMethodName(), reason);
+
+        call.close(Status.RESOURCE_EXHAUSTED.withDescription(reason), new Metadata());
+        return new ServerCall.Listener<>() {
+        };
+    }
+
+    // virtual thread executors have no queue, every task gets its own thread right away
+    private int queuedTasks() {
+        return grpcServerExecutor instanceof ThreadPoolExecutor pool ? pool.getQueue().size() : 0;
+    }
+}
@@ -0,0 +1,56 @@
+package com.pm.grpc;
+
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.Status;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/*
+ Starts a call and runs onFinish exactly once when it is over: either the server closed it (with its status)
+ or the client went away (onCancel, the server never gets to close it then).
+*/
+final class ServerCallCompletion {
+
+    private ServerCallCompletion() {
+    }
+
+    static <ReqT, RespT> ServerCall.Listener<ReqT> startCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                          ServerCallHandler<ReqT, RespT> next,
+                                                          Consumer<Status.Code> onFinish) {
+        AtomicBoolean finished = new AtomicBoolean();
+        Consumer<Status.Code> finishOnce = code -> {
+            if (finished.compareAndSet(false, true)) {
+                onFinish.accept(code);
+            }
+        };
+
+        ServerCall<ReqT, RespT> watchedCall = new ForwardingServerCall.SimpleForwardingServerCall<>(call) {
+            @Override
+            public void close(Status status, Metadata trailers) {
+                finishOnce.accept(status.getCode());
+                super.close(status, trailers);
+            }
+        };
+
+        ServerCall.Listener<ReqT> listener;
+        try {
+            listener = next.startCall(watchedCall, headers);
+        } catch (RuntimeException e) {
+            finishOnce.accept(Status.Code.UNKNOWN);
+            throw e;
+        }
+
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<>(listener) {
+            @Override
+            public void onCancel() {
+                finishOnce.accept(Status.Code.CANCELLED);
+                super.onCancel();
+            }
+        };
+    }
+}
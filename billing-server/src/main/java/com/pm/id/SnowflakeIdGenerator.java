@@ -0,0 +1,87 @@
+package com.pm.id;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/*
+ Snowflake style 64 bit ids, unique across billing-server replicas without asking a database for a sequence:
+
+   | 1 bit unused | 41 bits ms since EPOCH | 10 bits node id | 12 bits sequence within the ms |
+
+ - every replica is configured with its own node id, so two replicas can never produce the same id
+ - up to 4096 ids per ms per node, ids of one node are strictly increasing
+ - the last (timestamp, sequence) pair lives in a single AtomicLong and is advanced with compareAndSet,
+   so concurrent callers never block each other
+
+ Clock rollback: the timestamp part never goes below the last one handed out. If the wall clock moves
+ backwards (NTP step) or a ms runs out of sequence numbers, ids keep being issued from the last timestamp
+ onwards ("borrowing" ms) until the clock catches up again. Across restarts this only holds once the generator
+ is told the highest id already stored (advancePast), which BillingAccountStore does on recovery.
+*/
+public class SnowflakeIdGenerator {
+    // 2024-01-01T00:00:00Z, 41 bits of ms from here last until 2093
+    public static final long EPOCH = 1704067200000L;
+
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+    static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+
+    private final long nodeId;
+    private final LongSupplier clock;
+
+    // (ms since EPOCH << SEQUENCE_BITS) | sequence of the last id handed out
+    private final AtomicLong lastState = new AtomicLong();
+
+    public SnowflakeIdGenerator(int nodeId) {
+        this(nodeId, System::currentTimeMillis);
+    }
+
+    public SnowflakeIdGenerator(int nodeId, LongSupplier clock) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID + " but was " + nodeId);
+        }
+        this.nodeId = nodeId;
+        this.clock = clock;
+    }
+
+    public long nextId() {
+        while (true) {
+            long last = lastState.get();
+            long now = clock.getAsLong() - EPOCH;
+
+            long next;
+            if (now > (last >>> SEQUENCE_BITS)) {
+                next = now << SEQUENCE_BITS; // new ms, sequence starts again at 0
+            } else {
+                // same ms, or the clock went backwards: continue after the last id, a full sequence
+                // simply carries over into the next ms
+                next = last + 1;
+            }
+
+            if (lastState.compareAndSet(last, next)) {
+                long timestamp = next >>> SEQUENCE_BITS;
+                long sequence = next & MAX_SEQUENCE;
+                return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+            }
+        }
+    }
+
+    /*
+     Continues after id even if the clock is behind it: a restart after an NTP step back, or while the last
+     process was still borrowing ms after a burst, would otherwise hand out ids that already exist.
+     Never moves the generator backwards.
+    */
+    public void advancePast(long id) {
+        long state = ((id >>> (NODE_BITS + SEQUENCE_BITS)) << SEQUENCE_BITS) | (id & MAX_SEQUENCE);
+        lastState.accumulateAndGet(state, Math::max);
+    }
+
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH;
+    }
+
+    public static int nodeIdOf(long id) {
+        return (int) ((id >>> SEQUENCE_BITS) & MAX_NODE_ID);
+    }
+}
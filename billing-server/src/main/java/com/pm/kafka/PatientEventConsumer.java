@@ -0,0 +1,60 @@
+package com.pm.kafka;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.pm.store.BillingAccountStore;
+import com.pm.store.NewBillingAccount;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Service;
+import patient.events.PatientEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ Creates the billing accounts of new patients from the patient topic, so patient-service does not have to wait
+ for a gRPC call. Only runs with billing.account-creation.mode=event, the same setting patient-service reads:
+ in inline mode (the default of both) patient-service has already created the account over gRPC.
+
+ - one poll = one batch = one createAllIfAbsent call, i.e. one write-ahead log write for up to max.poll.records events
+ - offsets are committed after the listener returns, so an account is durable before its event counts as consumed
+ - a store error retries the whole batch until it succeeds, its offsets are never committed before that
+ - a redelivered event (store error, rebalance, restart) is harmless, creation is idempotent by patientId
+*/
+@Service
+@ConditionalOnProperty(name = "billing.account-creation.mode", havingValue = "event")
+public class PatientEventConsumer {
+    private static final Logger log = LoggerFactory.getLogger(PatientEventConsumer.class);
+    private static final String PATIENT_CREATED = "PATIENT_CREATED";
+
+    private final BillingAccountStore billingAccountStore;
+
+    public PatientEventConsumer(BillingAccountStore billingAccountStore) {
+        this.billingAccountStore = billingAccountStore;
+    }
+
+    // a BillingStoreException is rethrown: the batch is retried with backoff until the store takes it (KafkaConsumerConfig)
+    @KafkaListener(topics = "patient", groupId = "billing-service", batch = "true")
+    public void consumeEvents(List<ConsumerRecord<String, byte[]>> records) {
+        List<NewBillingAccount> newAccounts = new ArrayList<>(records.size());
+
+        for (ConsumerRecord<String, byte[]> record : records) {
+            try {
+                PatientEvent patientEvent = PatientEvent.parseFrom(record.value());
+                if (PATIENT_CREATED.equals(patientEvent.getEventType())) {
+                    newAccounts.add(new NewBillingAccount(patientEvent.getPatientId(), patientEvent.getName(), patientEvent.getEmail()));
+                }
+            } catch (InvalidProtocolBufferException e) {
+                log.error("Error while desrializing the message at offset {}: {}", record.offset(), e.getMessage());
+            }
+        }
+
+        if (!newAccounts.isEmpty()) {
+            billingAccountStore.createAllIfAbsent(newAccounts);
+            log.info("Processed {} patient created events", newAccounts.size());
+        }
+    }
+}
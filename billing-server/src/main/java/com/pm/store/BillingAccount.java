@@ -0,0 +1,35 @@
+package com.pm.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+public record BillingAccount(String accountId, String patientId, String name, String email, String status, long createdAt) {
+
+    // binary form used by the write-ahead log and the snapshot file
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(accountId);
+            out.writeUTF(patientId);
+            out.writeUTF(name);
+            out.writeUTF(email);
+            out.writeUTF(status);
+            out.writeLong(createdAt);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static BillingAccount fromBytes(byte[] data) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            return new BillingAccount(in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF(), in.readLong());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
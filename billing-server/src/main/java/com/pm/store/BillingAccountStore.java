@@ -0,0 +1,261 @@
+package com.pm.store;
+
+import com.pm.exceptions.BillingStoreException;
+import com.pm.id.SnowflakeIdGenerator;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ Billing accounts keyed by patientId, created at most once per patient.
+
+ - reads and repeated creates are served from an in-memory map without locking
+ - a create takes the lock of its stripe (patientId hash), so two concurrent creates of the same patient
+   cannot both write, while creates of different patients only contend 1 in STRIPES times
+ - an account becomes visible only after its record is durable in the write-ahead log (group commit)
+ - every snapshotEvery appends the whole map is written to a snapshot file and older log files are deleted
+*/
+@Component
+public class BillingAccountStore {
+    private static final Logger log = LoggerFactory.getLogger(BillingAccountStore.class);
+    private static final int STRIPES = 64;
+    private static final String ACTIVE = "ACTIVE";
+
+    private final Path snapshotFile;
+    private final WriteAheadLog writeAheadLog;
+    private final long snapshotEvery;
+    private final SnowflakeIdGenerator accountIdGenerator;
+
+    private final Map<String, BillingAccount> accountsByPatientId = new ConcurrentHashMap<>();
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    private final AtomicLong appendsSinceSnapshot = new AtomicLong();
+    private final AtomicBoolean snapshotRunning = new AtomicBoolean();
+    private final ExecutorService snapshotExecutor = Executors.newSingleThreadExecutor(
+            runnable -> {
+                Thread thread = new Thread(runnable, "billing-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    public BillingAccountStore(@Value("${billing.store.directory:./data/billing}") String directory,
+                               @Value("${billing.store.fsync:true}") boolean fsync,
+                               @Value("${billing.store.group-commit.max-batch:512}") int maxBatch,
+                               @Value("${billing.store.snapshot-every:10000}") long snapshotEvery,
+                               SnowflakeIdGenerator accountIdGenerator) {
+        Path storeDirectory = Path.of(directory);
+        this.snapshotFile = storeDirectory.resolve("accounts.snapshot");
+        this.writeAheadLog = new WriteAheadLog(storeDirectory, fsync, maxBatch);
+        this.snapshotEvery = snapshotEvery;
+        this.accountIdGenerator = accountIdGenerator;
+
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    @PostConstruct
+    void recover() throws IOException {
+        SnapshotFile.Snapshot snapshot = SnapshotFile.read(snapshotFile);
+        snapshot.accounts().forEach(account -> accountsByPatientId.put(account.patientId(), account));
+
+        writeAheadLog.open(snapshot.walGeneration(), record -> {
+            BillingAccount account = BillingAccount.fromBytes(record);
+            accountsByPatientId.putIfAbsent(account.patientId(), account);
+        });
+
+        accountsByPatientId.values().stream()
+                .mapToLong(account -> accountIdOf(account.accountId()))
+                .max()
+                .ifPresent(accountIdGenerator::advancePast);
+
+        log.info("Billing account store recovered {} accounts ({} from snapshot)",
+                accountsByPatientId.size(), snapshot.accounts().size());
+    }
+
+    // accounts created before snowflake ids have UUIDs, they cannot collide with generated ids
+    private static long accountIdOf(String accountId) {
+        try {
+            return Long.parseLong(accountId);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public Optional<BillingAccount> findByPatientId(String patientId) {
+        return Optional.ofNullable(accountsByPatientId.get(patientId));
+    }
+
+    // idempotent: a retry for the same patient returns the account created by the first call
+    public BillingAccount createIfAbsent(String patientId, String name, String email) {
+        BillingAccount existing = accountsByPatientId.get(patientId);
+        if (existing != null) {
+            return existing;
+        }
+
+        ReentrantLock stripe = stripeOf(patientId);
+        stripe.lock();
+        try {
+            existing = accountsByPatientId.get(patientId);
+            if (existing != null) {
+                return existing;
+            }
+
+            BillingAccount account = new BillingAccount(
+                    nextAccountId(), patientId, name, email, ACTIVE, System.currentTimeMillis());
+
+            writeAheadLog.append(account.toBytes()).join();
+            accountsByPatientId.put(patientId, account);
+            afterAppend(1);
+            return account;
+        } catch (CompletionException e) {
+            throw new BillingStoreException("Could not persist billing account for patient " + patientId, e.getCause());
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /*
+     Bulk version of createIfAbsent, returns one account per request in request order.
+     The new accounts of a batch share one log write and one fsync. Their stripes are locked in index order,
+     the same order snapshot() uses, so batches and snapshots cannot deadlock each other.
+    */
+    public List<BillingAccount> createAllIfAbsent(List<NewBillingAccount> requests) {
+        Map<String, BillingAccount> resolved = new HashMap<>();
+        SortedSet<Integer> stripeIndexes = new TreeSet<>();
+        for (NewBillingAccount request : requests) {
+            BillingAccount existing = accountsByPatientId.get(request.patientId());
+            if (existing != null) {
+                resolved.put(request.patientId(), existing);
+            } else {
+                stripeIndexes.add(stripeIndexOf(request.patientId()));
+            }
+        }
+
+        if (!stripeIndexes.isEmpty()) {
+            stripeIndexes.forEach(index -> stripes[index].lock());
+            try {
+                List<BillingAccount> created = new ArrayList<>();
+                for (NewBillingAccount request : requests) {
+                    if (resolved.containsKey(request.patientId())) {
+                        continue;
+                    }
+                    BillingAccount account = accountsByPatientId.get(request.patientId());
+                    if (account == null) {
+                        account = new BillingAccount(nextAccountId(), request.patientId(),
+                                request.name(), request.email(), ACTIVE, System.currentTimeMillis());
+                        created.add(account);
+                    }
+                    resolved.put(request.patientId(), account);
+                }
+
+                if (!created.isEmpty()) {
+                    writeAheadLog.appendAll(created.stream().map(BillingAccount::toBytes).toList()).join();
+                    created.forEach(account -> accountsByPatientId.put(account.patientId(), account));
+                    afterAppend(created.size());
+                }
+            } catch (CompletionException e) {
+                throw new BillingStoreException("Could not persist a batch of " + requests.size() + " billing accounts", e.getCause());
+            } finally {
+                stripeIndexes.forEach(index -> stripes[index].unlock());
+            }
+        }
+
+        return requests.stream().map(request -> resolved.get(request.patientId())).toList();
+    }
+
+    public int size() {
+        return accountsByPatientId.size();
+    }
+
+    private String nextAccountId() {
+        return Long.toString(accountIdGenerator.nextId());
+    }
+
+    private ReentrantLock stripeOf(String patientId) {
+        return stripes[stripeIndexOf(patientId)];
+    }
+
+    private static int stripeIndexOf(String patientId) {
+        return Math.floorMod(patientId.hashCode(), STRIPES);
+    }
+
+    private void afterAppend(int appended) {
+        if (appendsSinceSnapshot.addAndGet(appended) >= snapshotEvery && snapshotRunning.compareAndSet(false, true)) {
+            snapshotExecutor.execute(() -> {
+                try {
+                    snapshot();
+                } catch (IOException | RuntimeException e) {
+                    log.error("Error while writing billing snapshot: {}", e.getMessage());
+                } finally {
+                    snapshotRunning.set(false);
+                }
+            });
+        }
+    }
+
+    /*
+     Holding every stripe while rolling the log guarantees that each record in the old generations is already
+     in the map: a creator keeps its stripe from the log append until the map put. The stripes are released
+     as soon as the roll is done, the map copy and the file write happen without blocking creates.
+    */
+    void snapshot() throws IOException {
+        long generation;
+        lockAllStripes();
+        try {
+            generation = writeAheadLog.roll().join();
+        } finally {
+            unlockAllStripes();
+        }
+        appendsSinceSnapshot.set(0);
+
+        List<BillingAccount> accounts = List.copyOf(accountsByPatientId.values());
+        SnapshotFile.write(snapshotFile, generation, accounts);
+        writeAheadLog.deleteBefore(generation);
+
+        log.info("Wrote billing snapshot with {} accounts, replay starts at log generation {}", accounts.size(), generation);
+    }
+
+    private void lockAllStripes() {
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+    }
+
+    private void unlockAllStripes() {
+        for (int i = STRIPES - 1; i >= 0; i--) {
+            stripes[i].unlock();
+        }
+    }
+
+    @PreDestroy
+    void close() throws IOException, InterruptedException {
+        snapshotExecutor.shutdown();
+        snapshotExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        try {
+            snapshot();
+        } finally {
+            writeAheadLog.close();
+        }
+    }
+}
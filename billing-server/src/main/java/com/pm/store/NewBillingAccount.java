@@ -0,0 +1,5 @@
+package com.pm.store;
+
+// Input of a bulk create, one per patient
+public record NewBillingAccount(String patientId, String name, String email) {
+}
@@ -0,0 +1,73 @@
+package com.pm.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/*
+ Point in time copy of all accounts plus the write-ahead log generation to replay from.
+ Replaying the log on top of the snapshot is safe even if some records are in both, creates are keyed by patientId.
+*/
+final class SnapshotFile {
+    private static final int MAGIC = 0x42534E50; // "BSNP"
+
+    private SnapshotFile() {
+    }
+
+    record Snapshot(long walGeneration, List<BillingAccount> accounts) {
+    }
+
+    static void write(Path file, long walGeneration, Collection<BillingAccount> accounts) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(walGeneration);
+            out.writeInt(accounts.size());
+            for (BillingAccount account : accounts) {
+                byte[] record = account.toBytes();
+                out.writeInt(record.length);
+                out.write(record);
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    static Snapshot read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return new Snapshot(0, List.of());
+        }
+
+        try (InputStream fileIn = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(fileIn))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a billing snapshot: " + file);
+            }
+
+            long walGeneration = in.readLong();
+            int count = in.readInt();
+            List<BillingAccount> accounts = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] record = new byte[in.readInt()];
+                in.readFully(record);
+                accounts.add(BillingAccount.fromBytes(record));
+            }
+            return new Snapshot(walGeneration, accounts);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.pm.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/*
+ Append only log of records, split into generations (wal-<generation>.log).
+
+ Every record is framed as [int length][int crc32][payload] so a torn write at the end of the last file is
+ detected and cut off on recovery.
+
+ Group commit: callers only enqueue their records, a single writer thread drains everything queued so far,
+ writes it out followed by a single fsync, and then completes all the waiting futures. Under load many
+ creates share the cost of one fsync instead of paying for one each.
+
+ A batch whose write or fsync fails is cut off again (truncated back to the end of the last synced batch), so
+ no acknowledged record ever follows a partial frame that recovery would stop at. If even that fails, the log
+ refuses every further append until a restart recovers it.
+*/
+public class WriteAheadLog implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(WriteAheadLog.class);
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+
+    private final Path directory;
+    private final boolean fsync;
+    private final int maxBatch;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+
+    private volatile boolean closed;
+    private volatile IOException failure;
+    private FileChannel channel;
+    private long generation;
+    private long syncedPosition; // end of the last batch that is durable in the current generation
+
+    public WriteAheadLog(Path directory, boolean fsync, int maxBatch) {
+        this.directory = directory;
+        this.fsync = fsync;
+        this.maxBatch = maxBatch;
+        this.writerThread = new Thread(this::writeLoop, "billing-wal-writer");
+        this.writerThread.setDaemon(true);
+    }
+
+    /*
+     Replays every record of generation >= fromGeneration in order, then opens a fresh generation for new appends.
+     Must be called once before the first append.
+    */
+    public void open(long fromGeneration, Consumer<byte[]> replay) throws IOException {
+        Files.createDirectories(directory);
+
+        List<Path> files = listGenerations();
+        long lastGeneration = fromGeneration - 1;
+
+        for (Path file : files) {
+            long fileGeneration = generationOf(file);
+            lastGeneration = Math.max(lastGeneration, fileGeneration);
+            if (fileGeneration >= fromGeneration) {
+                replayFile(file, replay);
+            }
+        }
+
+        this.generation = Math.max(lastGeneration + 1, fromGeneration);
+        this.channel = openGeneration(generation);
+        this.syncedPosition = channel.size();
+        writerThread.start();
+    }
+
+    public CompletableFuture<Void> append(byte[] record) {
+        return appendAll(List.of(record));
+    }
+
+    // all records of one call end up in the same write and the same fsync
+    public CompletableFuture<Void> appendAll(List<byte[]> records) {
+        for (byte[] record : records) {
+            // replay would stop at it, and lose every record after it
+            if (record.length > MAX_RECORD_SIZE) {
+                return CompletableFuture.failedFuture(new IllegalArgumentException(
+                        "Record of " + record.length + " bytes is above the write-ahead log maximum of " + MAX_RECORD_SIZE));
+            }
+        }
+        Append append = new Append(records, new CompletableFuture<>());
+        enqueue(append);
+        return append.done;
+    }
+
+    /*
+     Switches appends to a new generation file and returns its number. Everything appended before the call
+     is in an older generation, so after a snapshot of the state those files can be deleted.
+    */
+    public CompletableFuture<Long> roll() {
+        Roll roll = new Roll(new CompletableFuture<>());
+        enqueue(roll);
+        return roll.done;
+    }
+
+    public void deleteBefore(long generation) throws IOException {
+        for (Path file : listGenerations()) {
+            if (generationOf(file) < generation) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            writerThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void enqueue(Request request) {
+        if (closed) {
+            throw new IllegalStateException("Write-ahead log is closed");
+        }
+        queue.add(request);
+    }
+
+    private void writeLoop() {
+        List<Request> batch = new ArrayList<>(maxBatch);
+
+        while (true) {
+            Request first;
+            try {
+                // no interrupts on close, an interrupt during a write would close the FileChannel
+                first = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (first == null) {
+                if (closed) {
+                    return;
+                }
+                continue;
+            }
+
+            batch.add(first);
+            queue.drainTo(batch, maxBatch - 1);
+
+            if (failure != null) {
+                IOException refused = new IOException("Write-ahead log refuses appends after an unrecoverable error", failure);
+                batch.forEach(request -> request.fail(refused));
+            } else {
+                try {
+                    process(batch);
+                } catch (IOException | RuntimeException e) {
+                    log.error("Error while writing to the write-ahead log: {}", e.getMessage());
+                    batch.forEach(request -> request.fail(e));
+                    discardUnsynced();
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void process(List<Request> batch) throws IOException {
+        List<Append> written = new ArrayList<>(batch.size());
+
+        for (Request request : batch) {
+            if (request instanceof Append append) {
+                write(append.records);
+                written.add(append);
+            } else if (request instanceof Roll roll) {
+                // a roll is a barrier: flush what was written before it into the old generation first
+                sync(written);
+                written.clear();
+
+                // the next file first: if it cannot be opened, appends go on in the current one
+                FileChannel next = openGeneration(generation + 1);
+                FileChannel previous = channel;
+                channel = next;
+                generation++;
+                syncedPosition = 0;
+                closeQuietly(previous);
+                roll.done.complete(generation);
+            }
+        }
+
+        sync(written);
+    }
+
+    private void sync(List<Append> written) throws IOException {
+        if (written.isEmpty()) {
+            return;
+        }
+        if (fsync) {
+            channel.force(false);
+        }
+        syncedPosition = channel.position();
+        written.forEach(append -> append.done.complete(null));
+    }
+
+    // after a failed batch: drop whatever part of it reached the file
+    private void discardUnsynced() {
+        try {
+            if (channel.size() > syncedPosition) {
+                channel.truncate(syncedPosition);
+                if (fsync) {
+                    channel.force(false);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            failure = e instanceof IOException io ? io : new IOException(e);
+            log.error("Could not cut the failed batch off the write-ahead log, refusing further appends: {}", e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(FileChannel previous) {
+        try {
+            previous.close();
+        } catch (IOException e) {
+            // everything in it was synced before the roll
+            log.warn("Error while closing a write-ahead log generation: {}", e.getMessage());
+        }
+    }
+
+    private void write(List<byte[]> records) throws IOException {
+        int size = 0;
+        for (byte[] record : records) {
+            size += 8 + record.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        CRC32 crc = new CRC32();
+        for (byte[] record : records) {
+            crc.reset();
+            crc.update(record);
+            buffer.putInt(record.length);
+            buffer.putInt((int) crc.getValue());
+            buffer.put(record);
+        }
+        buffer.flip();
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void replayFile(Path file, Consumer<byte[]> replay) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            CRC32 crc = new CRC32();
+            long position = 0;
+            long size = in.size();
+            int replayed = 0;
+
+            while (position + 8 <= size) {
+                header.clear();
+                readFully(in, header, position);
+                header.flip();
+                int length = header.getInt();
+                int checksum = header.getInt();
+
+                if (length < 0 || length > MAX_RECORD_SIZE || position + 8 + length > size) {
+                    break;
+                }
+
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                readFully(in, payload, position + 8);
+
+                crc.reset();
+                crc.update(payload.array());
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                replay.accept(payload.array());
+                replayed++;
+                position += 8 + length;
+            }
+
+            if (position < size) {
+                log.warn("Truncating torn tail of {} at byte {} (file size {})", file.getFileName(), position, size);
+                in.truncate(position);
+            }
+            log.info("Replayed {} records from {}", replayed, file.getFileName());
+        }
+    }
+
+    private static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of write-ahead log");
+            }
+        }
+    }
+
+    private FileChannel openGeneration(long generation) throws IOException {
+        return FileChannel.open(directory.resolve("wal-%016d.log".formatted(generation)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private List<Path> listGenerations() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().matches("wal-\\d{16}\\.log"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static long generationOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(4, name.length() - 4));
+    }
+
+    private sealed interface Request permits Append, Roll {
+        void fail(Throwable cause);
+    }
+
+    private record Append(List<byte[]> records, CompletableFuture<Void> done) implements Request {
+        @Override
+        public void fail(Throwable cause) {
+            done.completeExceptionally(cause);
+        }
+    }
+
+    private record Roll(CompletableFuture<Long> done) implements Request {
+        @Override
+        public void fail(Throwable cause) {
+            done.completeExceptionally(cause);
+        }
+    }
+}
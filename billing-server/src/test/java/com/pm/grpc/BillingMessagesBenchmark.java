@@ -0,0 +1,100 @@
+package com.pm.grpc;
+
+import billing.BillingRequest;
+import billing.BillingResponse;
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+ BillingRequest / BillingResponse messages per second, encoded and decoded the way gRPC does it for every
+ CreateBillingAccount call (and every message of a CreateBillingAccounts stream). The GC profiler adds the
+ bytes allocated per message (gc.alloc.rate.norm).
+ Run from billing-server after `mvn test-compile`:
+
+   java -cp "target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)" \
+        com.pm.grpc.BillingMessagesBenchmark
+
+ Results are also written to target/jmh-BillingMessagesBenchmark.json, to compare between commits.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BillingMessagesBenchmark {
+
+    private final String patientId = UUID.randomUUID().toString();
+    private byte[] request;
+    private byte[] response;
+
+    @Setup
+    public void setUp() {
+        request = encodeRequest();
+        response = encodeResponse();
+    }
+
+    @Benchmark
+    public byte[] encodeRequest() {
+        return BillingRequest.newBuilder()
+                .setPatientId(patientId)
+                .setName("John Doe")
+                .setEmail("john.doe@example.com")
+                .build()
+                .toByteArray();
+    }
+
+    // string fields are only decoded when read, so read them like the service does
+    @Benchmark
+    public void decodeRequest(Blackhole blackhole) throws InvalidProtocolBufferException {
+        BillingRequest billingRequest = BillingRequest.parseFrom(request);
+        blackhole.consume(billingRequest.getPatientId());
+        blackhole.consume(billingRequest.getName());
+        blackhole.consume(billingRequest.getEmail());
+    }
+
+    @Benchmark
+    public byte[] encodeResponse() {
+        return BillingResponse.newBuilder()
+                .setAccountId("1234567890123456789")
+                .setStatus("ACTIVE")
+                .setPatientId(patientId)
+                .build()
+                .toByteArray();
+    }
+
+    @Benchmark
+    public void decodeResponse(Blackhole blackhole) throws InvalidProtocolBufferException {
+        BillingResponse billingResponse = BillingResponse.parseFrom(response);
+        blackhole.consume(billingResponse.getAccountId());
+        blackhole.consume(billingResponse.getStatus());
+        blackhole.consume(billingResponse.getPatientId());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BillingMessagesBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-" + BillingMessagesBenchmark.class.getSimpleName() + ".json")
+                .build()).run();
+    }
+}
@@ -0,0 +1,179 @@
+package com.pm.grpc;
+
+import billing.BillingRequest;
+import billing.BillingResponse;
+import com.pm.store.BillingAccountStore;
+import com.pm.store.TestStores;
+import io.grpc.stub.ServerCallStreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BillingServiceGrpcServerTest {
+
+    @TempDir
+    Path directory;
+
+    private BillingAccountStore store;
+    private ExecutorService grpcServerExecutor;
+
+    @BeforeEach
+    void openStore() throws Exception {
+        store = TestStores.open(directory);
+        grpcServerExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "test-grpc"));
+    }
+
+    @AfterEach
+    void closeStore() throws Exception {
+        grpcServerExecutor.shutdownNow();
+        TestStores.close(store);
+    }
+
+    @Test
+    void nextBatchIsOnlyRequestedOnceTheResponsesCanBeSent() {
+        BillingServiceGrpcServer server = new BillingServiceGrpcServer(store, 2, 60_000, grpcServerExecutor);
+        FakeResponseObserver responses = new FakeResponseObserver();
+        var requests = server.createBillingAccounts(responses);
+        assertEquals(2, responses.requested);
+
+        requests.onNext(request("patient-1"));
+        requests.onNext(request("patient-2"));
+        assertEquals(2, responses.sent.size());
+        assertEquals(4, responses.requested);
+
+        // the client stops reading, the responses of the next batch are still sent but no more requests asked for
+        responses.ready = false;
+        requests.onNext(request("patient-3"));
+        requests.onNext(request("patient-4"));
+        assertEquals(4, responses.sent.size());
+        assertEquals(4, responses.requested);
+
+        responses.ready = true;
+        responses.onReadyHandler.run();
+        assertEquals(6, responses.requested);
+
+        requests.onCompleted();
+        assertTrue(responses.completed);
+        assertEquals(List.of("patient-1", "patient-2", "patient-3", "patient-4"),
+                responses.sent.stream().map(BillingResponse::getPatientId).toList());
+        server.shutdown();
+    }
+
+    @Test
+    void partialBatchIsWrittenAfterTheLingerOnTheGrpcExecutor() throws Exception {
+        BillingServiceGrpcServer server = new BillingServiceGrpcServer(store, 10, 5, grpcServerExecutor);
+        FakeResponseObserver responses = new FakeResponseObserver();
+        var requests = server.createBillingAccounts(responses);
+
+        requests.onNext(request("patient-1"));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (responses.sent.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, responses.sent.size());
+        assertEquals(List.of("test-grpc"), responses.sendingThreads);
+        // one request answered, so one more may come
+        assertEquals(11, responses.requested);
+        server.shutdown();
+    }
+
+    @Test
+    void repeatedPatientsGetTheirExistingAccount() {
+        BillingServiceGrpcServer server = new BillingServiceGrpcServer(store, 2, 60_000, grpcServerExecutor);
+        FakeResponseObserver first = new FakeResponseObserver();
+        var requests = server.createBillingAccounts(first);
+        requests.onNext(request("patient-1"));
+        requests.onCompleted();
+
+        FakeResponseObserver again = new FakeResponseObserver();
+        requests = server.createBillingAccounts(again);
+        requests.onNext(request("patient-1"));
+        requests.onCompleted();
+
+        assertEquals(first.sent.get(0).getAccountId(), again.sent.get(0).getAccountId());
+        assertEquals(1, store.size());
+        server.shutdown();
+    }
+
+    private static BillingRequest request(String patientId) {
+        return BillingRequest.newBuilder().setPatientId(patientId).setName("Ann").setEmail(patientId + "@test.com").build();
+    }
+
+    private static final class FakeResponseObserver extends ServerCallStreamObserver<BillingResponse> {
+        final List<BillingResponse> sent = new CopyOnWriteArrayList<>();
+        final List<String> sendingThreads = new CopyOnWriteArrayList<>();
+        volatile int requested;
+        volatile boolean ready = true;
+        volatile boolean completed;
+        volatile Throwable error;
+        Runnable onReadyHandler;
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public void setOnCancelHandler(Runnable onCancelHandler) {
+        }
+
+        @Override
+        public void setCompression(String compression) {
+        }
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void setOnReadyHandler(Runnable onReadyHandler) {
+            this.onReadyHandler = onReadyHandler;
+        }
+
+        @Override
+        public void disableAutoInboundFlowControl() {
+        }
+
+        @Override
+        public void disableAutoRequest() {
+        }
+
+        @Override
+        public void request(int count) {
+            requested += count;
+        }
+
+        @Override
+        public void setMessageCompression(boolean enable) {
+        }
+
+        @Override
+        public void onNext(BillingResponse value) {
+            sent.add(value);
+            sendingThreads.add(Thread.currentThread().getName());
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+        }
+
+        @Override
+        public void onCompleted() {
+            completed = true;
+        }
+    }
+}
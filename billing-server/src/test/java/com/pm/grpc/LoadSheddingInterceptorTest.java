@@ -0,0 +1,130 @@
+package com.pm.grpc;
+
+import billing.BillingRequest;
+import billing.BillingResponse;
+import billing.BillingServiceGrpc;
+import com.pm.config.GrpcServerExecutorConfig;
+import io.grpc.Attributes;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.Status;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadSheddingInterceptorTest {
+    private final ServerCallHandler<BillingRequest, BillingResponse> handler = (call, headers) -> new ServerCall.Listener<>() {
+    };
+
+    @Test
+    void callsOverMaxInFlightAreRejectedWithResourceExhausted() {
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        LoadSheddingInterceptor interceptor = new LoadSheddingInterceptor(executor, new SimpleMeterRegistry(), 1, 200);
+
+        FakeServerCall first = new FakeServerCall();
+        interceptor.interceptCall(first, new Metadata(), handler);
+        FakeServerCall second = new FakeServerCall();
+        interceptor.interceptCall(second, new Metadata(), handler);
+
+        assertNull(first.status);
+        assertEquals(Status.Code.RESOURCE_EXHAUSTED, second.status.getCode());
+        executor.shutdown();
+    }
+
+    @Test
+    void aFinishedCallMakesRoomForTheNextOne() {
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        LoadSheddingInterceptor interceptor = new LoadSheddingInterceptor(executor, new SimpleMeterRegistry(), 1, 200);
+        ServerCallHandler<BillingRequest, BillingResponse> closingHandler = (call, headers) -> {
+            call.close(Status.OK, new Metadata());
+            return new ServerCall.Listener<>() {
+            };
+        };
+
+        interceptor.interceptCall(new FakeServerCall(), new Metadata(), closingHandler);
+        FakeServerCall next = new FakeServerCall();
+        interceptor.interceptCall(next, new Metadata(), handler);
+
+        assertNull(next.status);
+        executor.shutdown();
+    }
+
+    @Test
+    void fullExecutorQueueRejectsNewCallsInsteadOfTheExecutorRejectingTasks() throws Exception {
+        ExecutorService executor = new GrpcServerExecutorConfig().grpcServerExecutor("bounded", 1, new SimpleMeterRegistry());
+        LoadSheddingInterceptor interceptor = new LoadSheddingInterceptor(executor, new SimpleMeterRegistry(), 256, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> awaitQuietly(release));
+
+        // tasks of calls that were already admitted are queued past the capacity, never rejected
+        for (int i = 0; i < 10; i++) {
+            executor.execute(() -> {
+            });
+        }
+        FakeServerCall shed = new FakeServerCall();
+        interceptor.interceptCall(shed, new Metadata(), handler);
+        assertEquals(Status.Code.RESOURCE_EXHAUSTED, shed.status.getCode());
+        assertTrue(shed.status.getDescription().contains("queue is full"));
+
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        FakeServerCall admitted = new FakeServerCall();
+        interceptor.interceptCall(admitted, new Metadata(), handler);
+        assertNull(admitted.status);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class FakeServerCall extends ServerCall<BillingRequest, BillingResponse> {
+        Status status;
+
+        @Override
+        public void request(int numMessages) {
+        }
+
+        @Override
+        public void sendHeaders(Metadata headers) {
+        }
+
+        @Override
+        public void sendMessage(BillingResponse message) {
+        }
+
+        @Override
+        public void close(Status status, Metadata trailers) {
+            this.status = status;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public Attributes getAttributes() {
+            return Attributes.EMPTY;
+        }
+
+        @Override
+        public MethodDescriptor<BillingRequest, BillingResponse> getMethodDescriptor() {
+            return BillingServiceGrpc.getCreateBillingAccountMethod();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.pm.id;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+ Ids per second of the account id generator, compared to the UUIDs it replaced.
+ Run from billing-server after `mvn test-compile`:
+
+   java -cp "target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)" \
+        com.pm.id.SnowflakeIdGeneratorBenchmark
+
+ Note: one node issues at most 4096 ids per wall clock ms (~4M/s) for long, faster runs like these
+ borrow future ms, so they measure the cost of the compareAndSet loop rather than a sustainable rate.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnowflakeIdGeneratorBenchmark {
+
+    private final SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1);
+
+    @Benchmark
+    @Threads(1)
+    public long snowflakeOneThread() {
+        return generator.nextId();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long snowflakeEightThreads() {
+        return generator.nextId();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public long snowflakeThirtyTwoThreads() {
+        return generator.nextId();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String randomUuidEightThreads() {
+        return UUID.randomUUID().toString();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SnowflakeIdGeneratorBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,111 @@
+package com.pm.id;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnowflakeIdGeneratorTest {
+
+    @Test
+    void idsAreUniqueAndIncreasingPerThreadUnderContention() throws Exception {
+        int threads = 16;
+        int idsPerThread = 200_000;
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(7);
+        Set<Long> ids = ConcurrentHashMap.newKeySet(threads * idsPerThread);
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(executor.submit(() -> {
+                start.await();
+                long previous = -1;
+                for (int i = 0; i < idsPerThread; i++) {
+                    long id = generator.nextId();
+                    assertTrue(id > previous, "ids of one thread must increase");
+                    assertTrue(ids.add(id), "duplicate id " + id);
+                    previous = id;
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        executor.shutdown();
+
+        assertEquals(threads * idsPerThread, ids.size());
+        ids.forEach(id -> assertEquals(7, SnowflakeIdGenerator.nodeIdOf(id)));
+    }
+
+    @Test
+    void clockMovingBackwardsNeverRepeatsIds() {
+        AtomicLong clock = new AtomicLong(SnowflakeIdGenerator.EPOCH + 10_000);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, clock::get);
+
+        long beforeRollback = generator.nextId();
+        clock.addAndGet(-5_000);
+        long afterRollback = generator.nextId();
+
+        assertTrue(afterRollback > beforeRollback);
+        assertEquals(SnowflakeIdGenerator.EPOCH + 10_000, SnowflakeIdGenerator.timestampOf(afterRollback));
+    }
+
+    @Test
+    void restartSeededWithTheLastStoredIdNeverRepeatsIt() {
+        AtomicLong clock = new AtomicLong(SnowflakeIdGenerator.EPOCH + 10_000);
+        SnowflakeIdGenerator beforeRestart = new SnowflakeIdGenerator(1, clock::get);
+        long lastStored = 0;
+        // a burst that borrows ms ahead of the clock
+        for (int i = 0; i < 3 * (SnowflakeIdGenerator.MAX_SEQUENCE + 1); i++) {
+            lastStored = beforeRestart.nextId();
+        }
+
+        clock.addAndGet(-5_000); // and the restart happens after an NTP step back
+        SnowflakeIdGenerator afterRestart = new SnowflakeIdGenerator(1, clock::get);
+        afterRestart.advancePast(lastStored);
+        afterRestart.advancePast(lastStored - 1); // never moves backwards
+
+        // exactly where the generator would have gone on without the restart
+        assertEquals(beforeRestart.nextId(), afterRestart.nextId());
+    }
+
+    @Test
+    void exhaustedSequenceCarriesOverIntoNextMillisecond() {
+        AtomicLong clock = new AtomicLong(SnowflakeIdGenerator.EPOCH + 1);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, clock::get);
+
+        long last = 0;
+        for (int i = 0; i <= SnowflakeIdGenerator.MAX_SEQUENCE + 1; i++) {
+            long id = generator.nextId();
+            assertTrue(id > last);
+            last = id;
+        }
+
+        assertEquals(SnowflakeIdGenerator.EPOCH + 2, SnowflakeIdGenerator.timestampOf(last));
+    }
+
+    @Test
+    void nodeIdsOfDifferentReplicasDoNotCollide() {
+        long fixedTime = SnowflakeIdGenerator.EPOCH + 42;
+        long first = new SnowflakeIdGenerator(1, () -> fixedTime).nextId();
+        long second = new SnowflakeIdGenerator(2, () -> fixedTime).nextId();
+
+        assertTrue(first != second);
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_NODE_ID + 1));
+    }
+}
@@ -0,0 +1,96 @@
+package com.pm.kafka;
+
+import com.pm.store.BillingAccountStore;
+import com.pm.store.TestStores;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import patient.events.PatientEvent;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class PatientEventConsumerTest {
+
+    @TempDir
+    Path directory;
+
+    private BillingAccountStore store;
+
+    @BeforeEach
+    void openStore() throws Exception {
+        store = TestStores.open(directory);
+    }
+
+    @AfterEach
+    void closeStore() throws Exception {
+        TestStores.close(store);
+    }
+
+    @Test
+    void createdEventsOfABatchBecomeAccountsOtherEventsAndGarbageAreSkipped() {
+        PatientEventConsumer consumer = new PatientEventConsumer(store);
+
+        consumer.consumeEvents(List.of(
+                record(0, event("patient-1", "PATIENT_CREATED")),
+                record(1, event("patient-2", "PATIENT_UPDATED")),
+                record(2, new byte[]{(byte) 0xff, 0x01}),
+                record(3, event("patient-3", "PATIENT_CREATED"))));
+
+        assertEquals(2, store.size());
+        assertTrue(store.findByPatientId("patient-1").isPresent());
+        assertTrue(store.findByPatientId("patient-2").isEmpty());
+        assertTrue(store.findByPatientId("patient-3").isPresent());
+    }
+
+    @Test
+    void aRedeliveredBatchKeepsTheAccountsItCreatedTheFirstTime() {
+        PatientEventConsumer consumer = new PatientEventConsumer(store);
+        List<ConsumerRecord<String, byte[]>> batch = List.of(
+                record(0, event("patient-1", "PATIENT_CREATED")),
+                record(1, event("patient-1", "PATIENT_CREATED")),
+                record(2, event("patient-2", "PATIENT_CREATED")));
+
+        consumer.consumeEvents(batch);
+        String firstAccountId = store.findByPatientId("patient-1").orElseThrow().accountId();
+        consumer.consumeEvents(batch);
+
+        assertEquals(2, store.size());
+        assertEquals(firstAccountId, store.findByPatientId("patient-1").orElseThrow().accountId());
+    }
+
+    @Test
+    void consumerOnlyRunsInEventMode() {
+        ApplicationContextRunner runner = new ApplicationContextRunner()
+                .withBean(BillingAccountStore.class, () -> mock(BillingAccountStore.class))
+                .withUserConfiguration(PatientEventConsumer.class);
+
+        runner.run(context -> assertThat(context).doesNotHaveBean(PatientEventConsumer.class));
+        runner.withPropertyValues("billing.account-creation.mode=inline")
+                .run(context -> assertThat(context).doesNotHaveBean(PatientEventConsumer.class));
+        runner.withPropertyValues("billing.account-creation.mode=event")
+                .run(context -> assertThat(context).hasSingleBean(PatientEventConsumer.class));
+    }
+
+    private static ConsumerRecord<String, byte[]> record(long offset, byte[] value) {
+        return new ConsumerRecord<>("patient", 0, offset, null, value);
+    }
+
+    private static byte[] event(String patientId, String eventType) {
+        return PatientEvent.newBuilder()
+                .setPatientId(patientId)
+                .setName("Ann")
+                .setEmail(patientId + "@test.com")
+                .setEventType(eventType)
+                .build()
+                .toByteArray();
+    }
+}
@@ -0,0 +1,40 @@
+package com.pm.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class SnapshotFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void missingSnapshotMeansReplayEverything() throws Exception {
+        SnapshotFile.Snapshot snapshot = SnapshotFile.read(directory.resolve("accounts.snapshot"));
+
+        assertEquals(0, snapshot.walGeneration());
+        assertEquals(List.of(), snapshot.accounts());
+    }
+
+    @Test
+    void writtenSnapshotReadsBackAndReplacesThePreviousOne() throws Exception {
+        Path file = directory.resolve("accounts.snapshot");
+        BillingAccount first = new BillingAccount("1", "patient-1", "Ann", "ann@test.com", "ACTIVE", 1L);
+        BillingAccount second = new BillingAccount("2", "patient-2", "Bob", "bob@test.com", "ACTIVE", 2L);
+
+        SnapshotFile.write(file, 3, List.of(first));
+        SnapshotFile.write(file, 7, List.of(first, second));
+
+        SnapshotFile.Snapshot snapshot = SnapshotFile.read(file);
+        assertEquals(7, snapshot.walGeneration());
+        assertEquals(List.of(first, second), snapshot.accounts());
+        assertFalse(Files.exists(directory.resolve("accounts.snapshot.tmp")));
+    }
+}
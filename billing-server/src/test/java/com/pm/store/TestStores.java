@@ -0,0 +1,22 @@
+package com.pm.store;
+
+import com.pm.id.SnowflakeIdGenerator;
+
+import java.nio.file.Path;
+
+// opens and closes a store the way Spring does (recover and close are package-private), for tests of other packages
+public final class TestStores {
+
+    private TestStores() {
+    }
+
+    public static BillingAccountStore open(Path directory) throws Exception {
+        BillingAccountStore store = new BillingAccountStore(directory.toString(), false, 64, 1_000, new SnowflakeIdGenerator(1));
+        store.recover();
+        return store;
+    }
+
+    public static void close(BillingAccountStore store) throws Exception {
+        store.close();
+    }
+}
@@ -0,0 +1,143 @@
+package com.pm.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class WriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // opens the log from fromGeneration and returns the replayed records as text
+    private WriteAheadLog open(long fromGeneration, List<String> replayed) throws Exception {
+        WriteAheadLog log = new WriteAheadLog(directory, true, 16);
+        log.open(fromGeneration, record -> replayed.add(new String(record, StandardCharsets.UTF_8)));
+        return log;
+    }
+
+    private Path onlyLogFile() throws Exception {
+        try (var files = Files.list(directory)) {
+            List<Path> logs = files.filter(file -> file.getFileName().toString().endsWith(".log")).toList();
+            assertEquals(1, logs.size(), "log files " + logs);
+            return logs.get(0);
+        }
+    }
+
+    @Test
+    void appendedRecordsAreReplayedInOrder() throws Exception {
+        try (WriteAheadLog log = open(0, new ArrayList<>())) {
+            log.append(bytes("a")).join();
+            log.appendAll(List.of(bytes("b"), bytes("c"))).join();
+        }
+
+        List<String> replayed = new ArrayList<>();
+        open(0, replayed).close();
+
+        assertEquals(List.of("a", "b", "c"), replayed);
+    }
+
+    @Test
+    void tornTailIsCutOffAndLaterAppendsSurviveTheNextRestart() throws Exception {
+        try (WriteAheadLog log = open(0, new ArrayList<>())) {
+            log.append(bytes("a")).join();
+            log.append(bytes("b")).join();
+        }
+        Path file = onlyLogFile();
+        long intact = Files.size(file);
+        // a crash in the middle of a frame: a full header but only part of its payload
+        Files.write(file, new byte[]{0, 0, 0, 10, 1, 2, 3, 4, 'x', 'y'}, StandardOpenOption.APPEND);
+
+        List<String> replayed = new ArrayList<>();
+        try (WriteAheadLog log = open(0, replayed)) {
+            assertEquals(List.of("a", "b"), replayed);
+            assertEquals(intact, Files.size(file));
+            log.append(bytes("c")).join();
+        }
+
+        replayed.clear();
+        open(0, replayed).close();
+        assertEquals(List.of("a", "b", "c"), replayed);
+    }
+
+    @Test
+    void corruptedRecordEndsTheReplay() throws Exception {
+        try (WriteAheadLog log = open(0, new ArrayList<>())) {
+            log.append(bytes("a")).join();
+            log.append(bytes("b")).join();
+        }
+        Path file = onlyLogFile();
+        byte[] content = Files.readAllBytes(file);
+        content[content.length - 1] ^= 0x7f; // last payload byte no longer matches its checksum
+        Files.write(file, content);
+
+        List<String> replayed = new ArrayList<>();
+        open(0, replayed).close();
+
+        assertEquals(List.of("a"), replayed);
+    }
+
+    @Test
+    void rollStartsANewGenerationAndOlderOnesCanBeDeleted() throws Exception {
+        long generation;
+        try (WriteAheadLog log = open(0, new ArrayList<>())) {
+            log.append(bytes("a")).join();
+            generation = log.roll().join();
+            log.append(bytes("b")).join();
+            log.deleteBefore(generation);
+        }
+
+        List<String> replayed = new ArrayList<>();
+        open(generation, replayed).close();
+
+        assertEquals(List.of("b"), replayed);
+    }
+
+    @Test
+    void failedRollKeepsAppendingToTheCurrentGeneration() throws Exception {
+        List<String> replayed = new ArrayList<>();
+        try (WriteAheadLog log = open(0, replayed)) {
+            log.append(bytes("a")).join();
+            // the next generation's file cannot be opened when a directory is in its place
+            Path current = onlyLogFile();
+            String next = "wal-%016d.log".formatted(Long.parseLong(current.getFileName().toString().substring(4, 20)) + 1);
+            Path blocker = Files.createDirectory(directory.resolve(next));
+
+            assertThrows(CompletionException.class, () -> log.roll().join());
+            log.append(bytes("b")).join();
+            Files.delete(blocker);
+        }
+
+        open(0, replayed).close();
+        assertEquals(List.of("a", "b"), replayed);
+    }
+
+    @Test
+    void recordsAboveTheMaximumSizeAreRejectedBeforeTheyReachTheFile() throws Exception {
+        try (WriteAheadLog log = open(0, new ArrayList<>())) {
+            CompletionException rejected = assertThrows(CompletionException.class,
+                    () -> log.append(new byte[(1 << 20) + 1]).join());
+            assertInstanceOf(IllegalArgumentException.class, rejected.getCause());
+            log.append(bytes("a")).join();
+        }
+
+        List<String> replayed = new ArrayList<>();
+        open(0, replayed).close();
+        assertEquals(List.of("a"), replayed);
+    }
+}
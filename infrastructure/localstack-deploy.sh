@@ -7,6 +7,14 @@ set -e # Stops the script if any command fails
 aws --endpoint-url=http://localhost:4566 cloudformation delete-stack \
     --stack-name patient-management
 
+# auth-service's JWT signing key, created once and kept across redeploys (the stack only reads it)
+if ! aws --endpoint-url=http://localhost:4566 secretsmanager describe-secret \
+    --secret-id patient-management/jwt-signing-keys > /dev/null 2>&1; then
+    aws --endpoint-url=http://localhost:4566 secretsmanager create-secret \
+        --name patient-management/jwt-signing-keys \
+        --secret-string "key-1:$(openssl genpkey -algorithm RSA -pkeyopt rsa_keygen_bits:2048 | openssl pkcs8 -topk8 -nocrypt -outform DER | base64 -w0)"
+fi
+
 aws --endpoint-url=http://localhost:4566 cloudformation deploy \
     --stack-name patient-management \
     --template-file "./cdk.out/localstack.template.json"
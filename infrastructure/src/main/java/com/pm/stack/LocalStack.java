@@ -11,6 +11,8 @@ import software.amazon.awscdk.services.logs.RetentionDays;
 import software.amazon.awscdk.services.msk.CfnCluster;
 import software.amazon.awscdk.services.rds.*;
 import software.amazon.awscdk.services.route53.CfnHealthCheck;
+import software.amazon.awscdk.services.secretsmanager.ISecret;
+import software.amazon.awscdk.services.secretsmanager.Secret;
 
 import java.util.HashMap;
 import java.util.List;
@@ -25,6 +27,9 @@ public class LocalStack extends Stack {
 
     private final String API_GATEWAY_IMAGE_NAME = "api-gateway";
 
+    // auth-service's RSA signing keys (<kid>:<base64 PKCS#8>,...), created once outside the stack by localstack-deploy.sh
+    private final String JWT_SIGNING_KEYS_SECRET_NAME = "patient-management/jwt-signing-keys";
+
     /*
     A stack is a collection of AWS resources (EC2, RDS, S3, VPC, IAM roles, etc.) that you create, manage, and delete as a single unit.
     You define the resources in a CloudFormation template (YAML/JSON).
@@ -47,24 +52,31 @@ public class LocalStack extends Stack {
 
         this.ecsCluster = createEcsCluster();
 
+        // the keys live outside the stack, so tokens stay valid across task restarts and redeploys, and every
+        // auth-service task signs with the same keys (the JWKS the gateway fetches through the load balancer has them all)
+        ISecret jwtSigningKeys = Secret.fromSecretNameV2(this, "JwtSigningKeys", JWT_SIGNING_KEYS_SECRET_NAME);
+
         // Auth-Service
         FargateService authService =
                 createFargateService("AuthService",
                 "auth-service",
                         List.of(4005),
                         authServiceDb,
-                        Map.of("JWT_SECRET", "fab944774cee4ca19a48f224a416b414575e6791d30dd7beeb7b3baa520c62fc"));
+                        Map.of("JWT_SIGNING_KEYS", jwtSigningKeys.getSecretValue().toString()));
 
         authService.getNode().addDependency(authServiceDb); // this ensures that authServiceDb is started before authService is start
         authService.getNode().addDependency(authDbHealthCheck);
 
         // Billing-Service
+        // the snowflake node id is part of the task definition, which every task of a service shares, so the
+        // service runs exactly one task. Another replica is another service with the next BILLING_ID_NODE_ID
         FargateService billingService =
                 createFargateService("BillingService",
                         "billing-service",
                         List.of(4001, 9001),
                         null,
-                        null);
+                        Map.of("BILLING_ID_NODE_ID", "0"),
+                        1);
 
         // Analytics-Service
         FargateService analyticsService =
@@ -112,6 +124,10 @@ public class LocalStack extends Stack {
     }
 
     private FargateService createFargateService(String id, String imageName, List<Integer> ports, DatabaseInstance db, Map<String, String> additionalEnvVars){
+        return createFargateService(id, imageName, ports, db, additionalEnvVars, null);
+    }
+
+    private FargateService createFargateService(String id, String imageName, List<Integer> ports, DatabaseInstance db, Map<String, String> additionalEnvVars, Integer desiredCount){
         // Each ECS service has ECS task running inside it
         FargateTaskDefinition taskDefinition =
                 FargateTaskDefinition.Builder.create(this, id + "Task")
@@ -173,6 +189,9 @@ public class LocalStack extends Stack {
                 .taskDefinition(taskDefinition)
                 .assignPublicIp(false) // not exposing the service to the internet
                 .serviceName(imageName)
+                .desiredCount(desiredCount) // null keeps the ECS default
+                .maxHealthyPercent(Objects.nonNull(desiredCount) ? 100 : null) // no second task with the same env during a deployment
+                .minHealthyPercent(Objects.nonNull(desiredCount) ? 0 : null)
                 .build();
     }
 
@@ -0,0 +1,9 @@
+package com.pm.load;
+
+// the calls a client makes through the gateway, each one request
+public enum Flow {
+    LOGIN,  // POST /auth/login
+    CREATE, // POST /api/patients
+    UPDATE, // PUT /api/patients/{id}, of a patient created by this run
+    LIST    // GET /api/patients
+}
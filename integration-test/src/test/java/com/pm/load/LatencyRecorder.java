@@ -0,0 +1,91 @@
+package com.pm.load;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ Latencies of one flow, in microseconds:
+
+ - response time: from when the request was due (its place in the arrival schedule) to its response. A request
+   that went out late, because the generator or the client fell behind, is charged the wait, so this is the
+   latency corrected for coordinated omission, what a user arriving at that moment would have seen
+ - service time: from when the request actually went out to its response, the uncorrected number most tools
+   report; the gap between the two shows how much queueing a plain closed-loop test would hide
+
+ Response times are also written to <flow>.hlog, one interval histogram per second (HdrHistogram log format,
+ e.g. for HistogramLogAnalyzer), so runs can be compared over time, not only as totals.
+*/
+final class LatencyRecorder implements AutoCloseable {
+    private static final long MAX_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    private final Recorder responseTimes = new Recorder(MAX_MICROS, 3);
+    private final Recorder serviceTimes = new Recorder(MAX_MICROS, 3);
+    private final Histogram totalResponseTimes = new Histogram(MAX_MICROS, 3);
+    private final Histogram totalServiceTimes = new Histogram(MAX_MICROS, 3);
+    private Histogram responseInterval;
+    private Histogram serviceInterval;
+
+    private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>(); // status code, "timeout" or "error"
+    private final PrintStream log;
+    private final HistogramLogWriter logWriter;
+
+    LatencyRecorder(Path hlog) throws FileNotFoundException {
+        log = new PrintStream(hlog.toFile());
+        logWriter = new HistogramLogWriter(log);
+    }
+
+    // called by the generator when the warmup is over, the log's time 0
+    synchronized void start() {
+        long now = System.currentTimeMillis();
+        logWriter.outputLogFormatVersion();
+        logWriter.outputStartTime(now);
+        logWriter.setBaseTime(now);
+        logWriter.outputLegend();
+        responseInterval = responseTimes.getIntervalHistogram(responseInterval); // nothing recorded, starts the first interval
+        serviceInterval = serviceTimes.getIntervalHistogram(serviceInterval);
+    }
+
+    void record(long responseNanos, long serviceNanos, String outcome) {
+        responseTimes.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(responseNanos), MAX_MICROS));
+        serviceTimes.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(serviceNanos), MAX_MICROS));
+        outcomes.computeIfAbsent(outcome, o -> new LongAdder()).increment();
+    }
+
+    // called once a second by the generator, and once at the end
+    synchronized void interval() {
+        responseInterval = responseTimes.getIntervalHistogram(responseInterval);
+        serviceInterval = serviceTimes.getIntervalHistogram(serviceInterval);
+        logWriter.outputIntervalHistogram(responseInterval);
+        totalResponseTimes.add(responseInterval);
+        totalServiceTimes.add(serviceInterval);
+    }
+
+    Histogram responseTimes() {
+        return totalResponseTimes;
+    }
+
+    Histogram serviceTimes() {
+        return totalServiceTimes;
+    }
+
+    Map<String, Long> outcomes() {
+        Map<String, Long> counts = new TreeMap<>();
+        outcomes.forEach((outcome, count) -> counts.put(outcome, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public void close() {
+        log.close();
+    }
+}
@@ -0,0 +1,152 @@
+package com.pm.load;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ The result of one run, in its own directory under load.report-dir:
+
+   report.txt    the summary printed at the end of the run
+   report.json   the same with the run's settings, the file to compare (or diff) between runs
+   <flow>.hgrm   response time percentile distribution in ms (HdrHistogram format, for the online plotter)
+   <flow>.hlog   response times per second, see LatencyRecorder
+   spans.jsonl   every span the services exported during the run, see TraceCollectorStandIn
+
+ With the trace collector running, the report also has the time spent per hop (service + span name) by the
+ requests of the measured part, e.g. how much of a create is the billing gRPC call or the Kafka publish.
+*/
+final class LoadReport {
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final LoadTestConfig config;
+    private final Map<Flow, LatencyRecorder> recorders;
+    private final OpenLoopGenerator generator;
+    private final Map<String, Histogram> hops;
+
+    LoadReport(LoadTestConfig config, Map<Flow, LatencyRecorder> recorders, OpenLoopGenerator generator,
+               Map<String, Histogram> hops) {
+        this.config = config;
+        this.recorders = recorders;
+        this.generator = generator;
+        this.hops = hops;
+    }
+
+    // share of measured requests that failed: 5xx, timeouts, connection errors (429s are the gateway working as intended)
+    double errorRate() {
+        long total = 0;
+        long errors = 0;
+        for (LatencyRecorder recorder : recorders.values()) {
+            for (Map.Entry<String, Long> outcome : recorder.outcomes().entrySet()) {
+                total += outcome.getValue();
+                if (isError(outcome.getKey())) {
+                    errors += outcome.getValue();
+                }
+            }
+        }
+        return total == 0 ? 0 : (double) errors / total;
+    }
+
+    void write(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        String text = text();
+        System.out.println(text);
+        Files.writeString(dir.resolve("report.txt"), text);
+        Files.writeString(dir.resolve("report.json"), json());
+        for (Map.Entry<Flow, LatencyRecorder> entry : recorders.entrySet()) {
+            try (PrintStream out = new PrintStream(dir.resolve(name(entry.getKey()) + ".hgrm").toFile())) {
+                entry.getValue().responseTimes().outputPercentileDistribution(out, 1000.0);
+            }
+        }
+    }
+
+    private String text() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.ROOT, "Open loop, %.1f req/s for %ds (after %ds warmup) against %s, mix %s%n",
+                config.rate(), config.duration().toSeconds(), config.warmup().toSeconds(), config.baseUri(), config.mix()));
+        text.append(String.format(Locale.ROOT, "sent %d, unanswered %d, max dispatch lag %.1f ms, error rate %.4f%n%n",
+                generator.sent(), generator.unanswered(), millis(TimeUnit.NANOSECONDS.toMicros(generator.maxDispatchLagNanos())), errorRate()));
+        text.append(String.format(Locale.ROOT, "%-8s %-9s %8s %9s %9s %9s %9s %9s  %s%n",
+                "flow", "latency", "count", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "outcomes"));
+        recorders.forEach((flow, recorder) -> {
+            appendRow(text, flow, "response", recorder.responseTimes(), recorder.outcomes().toString());
+            appendRow(text, flow, "service", recorder.serviceTimes(), "");
+        });
+        if (!hops.isEmpty()) {
+            int width = hops.keySet().stream().mapToInt(String::length).max().orElse(0);
+            text.append(String.format(Locale.ROOT, "%n%-" + width + "s %8s %9s %9s %9s %9s%n",
+                    "hop (spans)", "count", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+            hops.forEach((hop, histogram) -> text.append(String.format(Locale.ROOT, "%-" + width + "s %8d %9.2f %9.2f %9.2f %9.2f%n",
+                    hop, histogram.getTotalCount(), millis(histogram.getValueAtPercentile(50)),
+                    millis(histogram.getValueAtPercentile(90)), millis(histogram.getValueAtPercentile(99)),
+                    millis(histogram.getMaxValue()))));
+        }
+        return text.toString();
+    }
+
+    private static void appendRow(StringBuilder text, Flow flow, String kind, Histogram histogram, String outcomes) {
+        text.append(String.format(Locale.ROOT, "%-8s %-9s %8d", name(flow), kind, histogram.getTotalCount()));
+        for (double percentile : PERCENTILES) {
+            text.append(String.format(Locale.ROOT, " %9.2f", millis(histogram.getValueAtPercentile(percentile))));
+        }
+        text.append(String.format(Locale.ROOT, " %9.2f  %s%n", millis(histogram.getMaxValue()), outcomes));
+    }
+
+    private String json() {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append(String.format(Locale.ROOT,
+                "  \"config\": {\"rate\": %s, \"durationSeconds\": %d, \"warmupSeconds\": %d, \"baseUri\": \"%s\", \"standIns\": %s, \"billingLatencyMs\": %d, \"mix\": {%s}},%n",
+                config.rate(), config.duration().toSeconds(), config.warmup().toSeconds(), config.baseUri(),
+                config.standIns(), config.billingLatencyMs(), entries(config.mix())));
+        json.append(String.format(Locale.ROOT, "  \"sent\": %d, \"unanswered\": %d, \"maxDispatchLagMs\": %.3f, \"errorRate\": %.6f,%n",
+                generator.sent(), generator.unanswered(), millis(TimeUnit.NANOSECONDS.toMicros(generator.maxDispatchLagNanos())), errorRate()));
+        json.append("  \"flows\": {\n");
+        int i = 0;
+        for (Map.Entry<Flow, LatencyRecorder> entry : recorders.entrySet()) {
+            LatencyRecorder recorder = entry.getValue();
+            json.append(String.format(Locale.ROOT, "    \"%s\": {\"outcomes\": {%s}, \"responseTime\": %s, \"serviceTime\": %s}%s%n",
+                    name(entry.getKey()), entries(recorder.outcomes()), percentiles(recorder.responseTimes()),
+                    percentiles(recorder.serviceTimes()), ++i < recorders.size() ? "," : ""));
+        }
+        json.append("  },\n  \"hops\": {\n");
+        i = 0;
+        for (Map.Entry<String, Histogram> hop : hops.entrySet()) {
+            json.append(String.format(Locale.ROOT, "    \"%s\": %s%s%n",
+                    hop.getKey().replace("\"", "\\\""), percentiles(hop.getValue()), ++i < hops.size() ? "," : ""));
+        }
+        return json.append("  }\n}\n").toString();
+    }
+
+    private static String percentiles(Histogram histogram) {
+        return String.format(Locale.ROOT, "{\"count\": %d, \"p50\": %.3f, \"p90\": %.3f, \"p99\": %.3f, \"p999\": %.3f, \"max\": %.3f}",
+                histogram.getTotalCount(),
+                millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+                millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getMaxValue()));
+    }
+
+    private static String entries(Map<?, ?> map) {
+        StringBuilder entries = new StringBuilder();
+        map.forEach((key, value) -> entries.append(entries.isEmpty() ? "" : ", ")
+                .append('"').append(key instanceof Flow flow ? name(flow) : key).append("\": ").append(value));
+        return entries.toString();
+    }
+
+    private static boolean isError(String outcome) {
+        return outcome.equals("timeout") || outcome.equals("error") || outcome.startsWith("5");
+    }
+
+    private static String name(Flow flow) {
+        return flow.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
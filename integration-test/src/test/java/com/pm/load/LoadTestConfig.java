@@ -0,0 +1,67 @@
+package com.pm.load;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/*
+ Load test settings, from system properties (mvn test -Dtest=PatientFlowsLoadTest -Dload.rate=50 ...):
+
+   load.rate               requests per second, all flows together (required, the test is skipped without it)
+   load.duration-seconds   measured part of the run (60)
+   load.warmup-seconds     sent at the same rate before that but not recorded (10)
+   load.mix                weight of each flow (login:1,create:2,update:2,list:5)
+   load.timeout-ms         a request without a response by then counts as an error (10000)
+   load.max-error-rate     the test fails above this share of errors, 429s excluded (0.01)
+   load.base-uri           the gateway (http://localhost:4004)
+   load.email, load.password   the user the flows log in as (testuser@test.com / password123)
+   load.stand-ins          start the in-process Kafka broker and billing server (true)
+   load.kafka.port, load.billing.port, load.billing.latency-ms   stand-in ports and billing's answer delay (9092, 9001, 5)
+   load.collector.port     the trace collector stand-in, where the services export their spans (4318, 0 = none)
+   load.report-dir         where each run's report goes (target/load-reports)
+*/
+public record LoadTestConfig(double rate,
+                             Duration duration,
+                             Duration warmup,
+                             Map<Flow, Integer> mix,
+                             Duration timeout,
+                             double maxErrorRate,
+                             String baseUri,
+                             String email,
+                             String password,
+                             boolean standIns,
+                             int kafkaPort,
+                             int billingPort,
+                             long billingLatencyMs,
+                             int collectorPort,
+                             Path reportDir) {
+
+    public static LoadTestConfig fromSystemProperties() {
+        return new LoadTestConfig(
+                Double.parseDouble(System.getProperty("load.rate", "0")),
+                Duration.ofSeconds(Long.getLong("load.duration-seconds", 60)),
+                Duration.ofSeconds(Long.getLong("load.warmup-seconds", 10)),
+                mix(System.getProperty("load.mix", "login:1,create:2,update:2,list:5")),
+                Duration.ofMillis(Long.getLong("load.timeout-ms", 10000)),
+                Double.parseDouble(System.getProperty("load.max-error-rate", "0.01")),
+                System.getProperty("load.base-uri", "http://localhost:4004"),
+                System.getProperty("load.email", "testuser@test.com"),
+                System.getProperty("load.password", "password123"),
+                Boolean.parseBoolean(System.getProperty("load.stand-ins", "true")),
+                Integer.getInteger("load.kafka.port", 9092),
+                Integer.getInteger("load.billing.port", 9001),
+                Long.getLong("load.billing.latency-ms", 5),
+                Integer.getInteger("load.collector.port", 4318),
+                Path.of(System.getProperty("load.report-dir", "target/load-reports")));
+    }
+
+    private static Map<Flow, Integer> mix(String mix) {
+        Map<Flow, Integer> weights = new EnumMap<>(Flow.class);
+        for (String entry : mix.split(",")) {
+            String[] flowAndWeight = entry.trim().split(":");
+            weights.put(Flow.valueOf(flowAndWeight[0].trim().toUpperCase()), Integer.parseInt(flowAndWeight[1].trim()));
+        }
+        return weights;
+    }
+}
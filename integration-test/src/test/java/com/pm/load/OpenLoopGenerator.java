@@ -0,0 +1,115 @@
+package com.pm.load;
+
+import java.net.http.HttpTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ Sends requests on a fixed schedule, load.rate per second, whether or not earlier requests have been answered
+ (open loop). A closed loop, where each virtual user waits for its response before sending the next request,
+ slows down with the system under test and so never sees the queueing it would cause for real users.
+
+ Request i is due at start + i / rate. The generator thread sleeps until then, picks a flow by the mix weights
+ and sends it; latency is measured from the due time (see LatencyRecorder). If the generator itself falls
+ behind, the requests go out late but keep their due time, and maxDispatchLag shows by how much.
+*/
+final class OpenLoopGenerator {
+    private final LoadTestConfig config;
+    private final PatientFlows flows;
+    private final Map<Flow, LatencyRecorder> recorders;
+    private final Flow[] weightedFlows;
+
+    private final AtomicLong outstanding = new AtomicLong();
+    private long sent;
+    private long maxDispatchLagNanos;
+
+    OpenLoopGenerator(LoadTestConfig config, PatientFlows flows, Map<Flow, LatencyRecorder> recorders) {
+        this.config = config;
+        this.flows = flows;
+        this.recorders = recorders;
+
+        List<Flow> weighted = new ArrayList<>();
+        config.mix().forEach((flow, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                weighted.add(flow);
+            }
+        });
+        this.weightedFlows = weighted.toArray(new Flow[0]);
+    }
+
+    void run() throws InterruptedException {
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / config.rate());
+        long start = System.nanoTime();
+        long measuredFrom = start + config.warmup().toNanos();
+        long end = measuredFrom + config.duration().toNanos();
+        long nextInterval = measuredFrom + TimeUnit.SECONDS.toNanos(1);
+
+        for (long i = 0; ; i++) {
+            long due = start + i * intervalNanos;
+            if (due >= end) {
+                break;
+            }
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if (due >= measuredFrom && sent == 0) {
+                recorders.values().forEach(LatencyRecorder::start);
+            }
+            if (System.nanoTime() >= nextInterval) {
+                recorders.values().forEach(LatencyRecorder::interval);
+                nextInterval += TimeUnit.SECONDS.toNanos(1);
+            }
+            send(weightedFlows[ThreadLocalRandom.current().nextInt(weightedFlows.length)], due, due >= measuredFrom);
+        }
+
+        // the responses of the last requests, each is over after load.timeout-ms at the latest
+        long deadline = System.nanoTime() + config.timeout().toNanos() + TimeUnit.SECONDS.toNanos(1);
+        while (outstanding.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        recorders.values().forEach(LatencyRecorder::interval);
+    }
+
+    private void send(Flow flow, long due, boolean measured) {
+        long sentAt = System.nanoTime();
+        if (measured) {
+            sent++;
+            maxDispatchLagNanos = Math.max(maxDispatchLagNanos, sentAt - due);
+        }
+        outstanding.incrementAndGet();
+        flows.run(flow).whenComplete((status, error) -> {
+            outstanding.decrementAndGet();
+            if (measured) {
+                long now = System.nanoTime();
+                recorders.get(flow).record(now - due, now - sentAt, outcome(status, error));
+            }
+        });
+    }
+
+    private static String outcome(Integer status, Throwable error) {
+        if (error == null) {
+            return String.valueOf(status);
+        }
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof HttpTimeoutException ? "timeout" : "error";
+    }
+
+    long sent() {
+        return sent;
+    }
+
+    long maxDispatchLagNanos() {
+        return maxDispatchLagNanos;
+    }
+
+    long unanswered() {
+        return outstanding.get();
+    }
+}
@@ -0,0 +1,137 @@
+package com.pm.load;
+
+import io.restassured.path.json.JsonPath;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ Sends one request of a flow through the gateway and completes with its status code. Requests are asynchronous
+ (java.net.http), a slow response never holds back the next request.
+
+ - all flows run as one user, with the token of the last login (logged in again in the background when it
+   gets close to the access token lifetime)
+ - created patients go into a ring of UPDATE candidates, seeded before the run
+*/
+public final class PatientFlows {
+    private static final int UPDATE_CANDIDATES = 1024;
+    private static final long RELOGIN_AFTER_NANOS = TimeUnit.MINUTES.toNanos(10); // access tokens live 15 minutes
+
+    private final LoadTestConfig config;
+    private final HttpClient httpClient;
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong patientNumbers = new AtomicLong();
+
+    private volatile String token;
+    private volatile long tokenIssuedAt;
+    private final AtomicInteger relogins = new AtomicInteger();
+
+    private record CreatedPatient(String id, String email) {
+    }
+
+    private final AtomicReferenceArray<CreatedPatient> createdPatients = new AtomicReferenceArray<>(UPDATE_CANDIDATES);
+    private final AtomicInteger createdCount = new AtomicInteger();
+
+    public PatientFlows(LoadTestConfig config) {
+        this.config = config;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    // logs in and creates a few patients to update, none of it recorded
+    public void prepare(int seedPatients) {
+        int status = login().join();
+        if (status != 200) {
+            throw new IllegalStateException("Login as " + config.email() + " through " + config.baseUri() + " failed with " + status);
+        }
+        for (int i = 0; i < seedPatients; i++) {
+            create().join();
+        }
+        if (createdCount.get() == 0) {
+            throw new IllegalStateException("Could not create any patient through " + config.baseUri());
+        }
+    }
+
+    public CompletableFuture<Integer> run(Flow flow) {
+        if (System.nanoTime() - tokenIssuedAt > RELOGIN_AFTER_NANOS && relogins.compareAndSet(0, 1)) {
+            login().whenComplete((status, error) -> relogins.set(0));
+        }
+        return switch (flow) {
+            case LOGIN -> login();
+            case CREATE -> create();
+            case UPDATE -> update();
+            case LIST -> list();
+        };
+    }
+
+    private CompletableFuture<Integer> login() {
+        String body = """
+                {"email": "%s", "password": "%s"}""".formatted(config.email(), config.password());
+        return send(request("/auth/login").POST(HttpRequest.BodyPublishers.ofString(body)))
+                .thenApply(response -> {
+                    if (response.statusCode() == 200) {
+                        token = JsonPath.from(response.body()).getString("token");
+                        tokenIssuedAt = System.nanoTime();
+                    }
+                    return response.statusCode();
+                });
+    }
+
+    private CompletableFuture<Integer> create() {
+        String email = "load-" + runId + "-" + patientNumbers.incrementAndGet() + "@test.com";
+        return send(authorized("/api/patients").POST(HttpRequest.BodyPublishers.ofString(patient(email, true))))
+                .thenApply(response -> {
+                    if (response.statusCode() == 200 || response.statusCode() == 201) {
+                        String id = JsonPath.from(response.body()).getString("id");
+                        int slot = createdCount.getAndIncrement() % UPDATE_CANDIDATES;
+                        createdPatients.set(slot, new CreatedPatient(id, email));
+                    }
+                    return response.statusCode();
+                });
+    }
+
+    private CompletableFuture<Integer> update() {
+        int candidates = Math.min(createdCount.get(), UPDATE_CANDIDATES);
+        CreatedPatient patient = createdPatients.get(ThreadLocalRandom.current().nextInt(candidates));
+        return send(authorized("/api/patients/" + patient.id())
+                .PUT(HttpRequest.BodyPublishers.ofString(patient(patient.email(), false))))
+                .thenApply(HttpResponse::statusCode);
+    }
+
+    private CompletableFuture<Integer> list() {
+        return send(authorized("/api/patients").GET()).thenApply(HttpResponse::statusCode);
+    }
+
+    private static String patient(String email, boolean create) {
+        String registeredDate = create ? ", \"registeredDate\": \"2024-11-28\"" : "";
+        return """
+                {"name": "Load Test", "email": "%s", "address": "123 Main Street", "dateOfBirth": "1990-01-01"%s}"""
+                .formatted(email, registeredDate);
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create(config.baseUri() + path))
+                .timeout(config.timeout())
+                .header("Content-Type", "application/json")
+                .header("Accept", "application/json");
+    }
+
+    private HttpRequest.Builder authorized(String path) {
+        return request(path).header("Authorization", "Bearer " + token);
+    }
+
+    private CompletableFuture<HttpResponse<String>> send(HttpRequest.Builder request) {
+        return httpClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
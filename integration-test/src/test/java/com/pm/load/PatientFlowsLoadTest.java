@@ -0,0 +1,80 @@
+package com.pm.load;
+
+import org.junit.jupiter.api.Test;
+
+import org.HdrHistogram.Histogram;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/*
+ Drives login, create, update and list through the gateway at a fixed arrival rate and writes a latency report
+ (see LoadReport). Skipped unless load.rate is set, settings in LoadTestConfig.
+
+ 1. start auth-service, patient-service (no Kafka or billing-server needed, see StandIns) and the gateway locally
+ 2. mvn test -Dtest=PatientFlowsLoadTest -Dload.rate=50 -Dload.duration-seconds=60
+
+ Everything runs as one user: the gateway rate limits the patient route to 20 req/s per user and logins to
+ 5 req/s per IP (ClientRateLimit), above that the report shows 429s. Raise replenishRate/burstCapacity of the
+ routes to measure the services behind them instead.
+
+ The services export their spans to the trace collector stand-in (management.otlp.tracing.endpoint), the
+ report then also shows the time per hop.
+
+ Thread modes: run once with patient-service on platform threads and once with spring.threads.virtual.enabled=true,
+ with creates waiting on a slow billing (-Dload.mix=create:2,list:1 -Dload.billing.latency-ms=800). Platform threads
+ stop keeping up once rate x latency passes server.tomcat.threads.max (lower it to see that on a small machine).
+*/
+public class PatientFlowsLoadTest {
+
+    @Test
+    public void patientFlowsAtFixedArrivalRate() throws Exception {
+        LoadTestConfig config = LoadTestConfig.fromSystemProperties();
+        assumeTrue(config.rate() > 0, "load test not run, set -Dload.rate=<requests per second>");
+
+        Path reportDir = config.reportDir().resolve(
+                LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + "-" + (int) config.rate() + "rps");
+        reportDir.toFile().mkdirs();
+
+        Map<Flow, LatencyRecorder> recorders = new EnumMap<>(Flow.class);
+        try (StandIns standIns = config.standIns() ? StandIns.start(config, reportDir) : null) {
+            TraceCollectorStandIn traces = standIns != null ? standIns.traces() : null;
+            for (Flow flow : config.mix().keySet()) {
+                recorders.put(flow, new LatencyRecorder(reportDir.resolve(flow.name().toLowerCase() + ".hlog")));
+            }
+
+            PatientFlows flows = new PatientFlows(config);
+            flows.prepare(20);
+
+            OpenLoopGenerator generator = new OpenLoopGenerator(config, flows, recorders);
+            if (traces != null) {
+                long measuredFrom = System.currentTimeMillis() + config.warmup().toMillis();
+                traces.measure(measuredFrom, measuredFrom + config.duration().toMillis());
+            }
+            generator.run();
+
+            Map<String, Histogram> hops = Map.of();
+            if (traces != null) {
+                // the services send their spans in batches every 5s (the OpenTelemetry SDK's default)
+                Thread.sleep(TimeUnit.SECONDS.toMillis(6));
+                hops = traces.hops();
+            }
+
+            LoadReport report = new LoadReport(config, recorders, generator, hops);
+            report.write(reportDir);
+            System.out.println("Report written to " + reportDir.toAbsolutePath());
+
+            assertTrue(report.errorRate() <= config.maxErrorRate(),
+                    "error rate " + report.errorRate() + " above load.max-error-rate " + config.maxErrorRate());
+        } finally {
+            recorders.values().forEach(LatencyRecorder::close);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.pm.load;
+
+import billing.BillingRequest;
+import billing.BillingResponse;
+import billing.BillingServiceGrpc;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.springframework.kafka.test.EmbeddedKafkaZKBroker;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ What patient-service talks to besides its database, started in the load test's JVM so a run only needs
+ auth-service, patient-service and the gateway:
+
+ - a Kafka broker with the patient topic, on the port patient-service expects by default (the ZooKeeper based
+   embedded broker: the KRaft one of this spring-kafka-test version does not take a fixed port)
+ - a billing gRPC server that answers CreateBillingAccount(s) after billing.latency-ms, without a database,
+   so the run measures our services and not billing-server
+ - a trace collector on load.collector.port, see TraceCollectorStandIn
+*/
+public final class StandIns implements AutoCloseable {
+    private final EmbeddedKafkaZKBroker kafka;
+    private final Server billing;
+    private final ScheduledExecutorService billingDelays = Executors.newSingleThreadScheduledExecutor();
+    private final TraceCollectorStandIn traces;
+
+    private StandIns(LoadTestConfig config, Path reportDir) throws IOException {
+        kafka = new EmbeddedKafkaZKBroker(1, true, 1, "patient").kafkaPorts(config.kafkaPort());
+        kafka.afterPropertiesSet();
+
+        billing = ServerBuilder.forPort(config.billingPort())
+                .addService(new BillingStandIn(billingDelays, config.billingLatencyMs()))
+                .build()
+                .start();
+
+        traces = config.collectorPort() > 0
+                ? TraceCollectorStandIn.start(config.collectorPort(), reportDir.resolve("spans.jsonl"))
+                : null;
+    }
+
+    public static StandIns start(LoadTestConfig config, Path reportDir) throws IOException {
+        StandIns standIns = new StandIns(config, reportDir);
+        System.out.printf("Stand-ins up: Kafka on %s, billing gRPC on port %d, trace collector on port %d%n",
+                standIns.kafka.getBrokersAsString(), config.billingPort(), config.collectorPort());
+        return standIns;
+    }
+
+    // null when load.collector.port is 0
+    public TraceCollectorStandIn traces() {
+        return traces;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        billing.shutdown().awaitTermination(5, TimeUnit.SECONDS);
+        billingDelays.shutdownNow();
+        if (traces != null) {
+            traces.close();
+        }
+        kafka.destroy();
+    }
+
+    private static final class BillingStandIn extends BillingServiceGrpc.BillingServiceImplBase {
+        private final ScheduledExecutorService delays;
+        private final long latencyMs;
+        private final AtomicLong accountIds = new AtomicLong();
+
+        private BillingStandIn(ScheduledExecutorService delays, long latencyMs) {
+            this.delays = delays;
+            this.latencyMs = latencyMs;
+        }
+
+        @Override
+        public void createBillingAccount(BillingRequest request, StreamObserver<BillingResponse> responseObserver) {
+            delays.schedule(() -> {
+                responseObserver.onNext(response(request));
+                responseObserver.onCompleted();
+            }, latencyMs, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public StreamObserver<BillingRequest> createBillingAccounts(StreamObserver<BillingResponse> responseObserver) {
+            return new StreamObserver<>() {
+                @Override
+                public void onNext(BillingRequest request) {
+                    responseObserver.onNext(response(request));
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                }
+
+                @Override
+                public void onCompleted() {
+                    responseObserver.onCompleted();
+                }
+            };
+        }
+
+        private BillingResponse response(BillingRequest request) {
+            return BillingResponse.newBuilder()
+                    .setAccountId(String.valueOf(accountIds.incrementAndGet()))
+                    .setStatus("ACTIVE")
+                    .setPatientId(request.getPatientId())
+                    .build();
+        }
+    }
+}
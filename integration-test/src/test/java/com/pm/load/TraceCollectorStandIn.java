@@ -0,0 +1,201 @@
+package com.pm.load;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.trace.v1.ResourceSpans;
+import io.opentelemetry.proto.trace.v1.ScopeSpans;
+import io.opentelemetry.proto.trace.v1.Span;
+import org.HdrHistogram.Histogram;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/*
+ An OTLP/HTTP trace collector, enough to see where the time of a request goes without running Jaeger or an
+ OpenTelemetry collector. The services export to http://localhost:4318/v1/traces by default
+ (management.otlp.tracing.endpoint).
+
+ - every span is appended to spans.jsonl, one JSON object per line: grep a traceId to follow one request
+   through the gateway, auth-service, patient-service, the billing gRPC call and the Kafka publish/consume
+ - spans that start inside the measured part of a run are also recorded per hop (service + span name),
+   for the per hop table of the load report
+
+ Started with the other stand-ins, or on its own:
+   java -cp <test classpath> com.pm.load.TraceCollectorStandIn [port] [spans file]
+*/
+public final class TraceCollectorStandIn implements AutoCloseable {
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final HttpServer server;
+    private final BufferedWriter spans;
+    private final Map<String, Histogram> hops = new TreeMap<>();
+    private long measuredFromNanos = Long.MAX_VALUE; // epoch nanos, like the span start times
+    private long measuredUntilNanos = Long.MAX_VALUE;
+    private long received;
+
+    private TraceCollectorStandIn(int port, Path spansFile) throws IOException {
+        Files.createDirectories(spansFile.toAbsolutePath().getParent());
+        spans = Files.newBufferedWriter(spansFile);
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/v1/traces", this::export);
+        server.start();
+    }
+
+    public static TraceCollectorStandIn start(int port, Path spansFile) throws IOException {
+        return new TraceCollectorStandIn(port, spansFile);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 4318;
+        Path spansFile = Path.of(args.length > 1 ? args[1] : "target/spans.jsonl");
+        TraceCollectorStandIn collector = start(port, spansFile);
+        Runtime.getRuntime().addShutdownHook(new Thread(collector::close));
+        System.out.printf("Collecting OTLP spans on port %d into %s%n", port, spansFile.toAbsolutePath());
+    }
+
+    // spans starting between the two (wall clock millis) go into the per hop histograms
+    synchronized void measure(long fromMillis, long untilMillis) {
+        measuredFromNanos = TimeUnit.MILLISECONDS.toNanos(fromMillis);
+        measuredUntilNanos = TimeUnit.MILLISECONDS.toNanos(untilMillis);
+    }
+
+    // span durations in microseconds per "service span name", copies
+    synchronized Map<String, Histogram> hops() {
+        Map<String, Histogram> copies = new TreeMap<>();
+        hops.forEach((hop, histogram) -> copies.put(hop, histogram.copy()));
+        return copies;
+    }
+
+    synchronized long received() {
+        return received;
+    }
+
+    private void export(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            ExportTraceServiceRequest request;
+            try (InputStream body = "gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))
+                    ? new GZIPInputStream(exchange.getRequestBody()) : exchange.getRequestBody()) {
+                request = ExportTraceServiceRequest.parseFrom(body);
+            }
+            collect(request);
+
+            // an ExportTraceServiceResponse without partial_success serializes to no bytes at all
+            exchange.getResponseHeaders().set("Content-Type", "application/x-protobuf");
+            exchange.sendResponseHeaders(200, -1);
+        }
+    }
+
+    private synchronized void collect(ExportTraceServiceRequest request) throws IOException {
+        for (ResourceSpans resourceSpans : request.getResourceSpansList()) {
+            String service = stringAttribute(resourceSpans.getResource().getAttributesList(), "service.name");
+            for (ScopeSpans scopeSpans : resourceSpans.getScopeSpansList()) {
+                for (Span span : scopeSpans.getSpansList()) {
+                    received++;
+                    spans.write(json(service, span));
+                    spans.newLine();
+                    record(service, span);
+                }
+            }
+        }
+        spans.flush();
+    }
+
+    private void record(String service, Span span) {
+        long start = span.getStartTimeUnixNano();
+        if (start < measuredFromNanos || start >= measuredUntilNanos) {
+            return;
+        }
+        hops.computeIfAbsent(service + " " + span.getName(), hop -> new Histogram(3))
+                .recordValue(TimeUnit.NANOSECONDS.toMicros(Math.max(0, span.getEndTimeUnixNano() - start)));
+    }
+
+    private static String json(String service, Span span) {
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"traceId\": \"").append(HEX.formatHex(span.getTraceId().toByteArray()))
+                .append("\", \"spanId\": \"").append(HEX.formatHex(span.getSpanId().toByteArray()))
+                .append("\", \"parentSpanId\": \"").append(HEX.formatHex(span.getParentSpanId().toByteArray()))
+                .append("\", \"service\": ").append(quoted(service))
+                .append(", \"name\": ").append(quoted(span.getName()))
+                .append(", \"kind\": \"").append(span.getKind().name().replace("SPAN_KIND_", ""))
+                .append("\", \"startMicros\": ").append(TimeUnit.NANOSECONDS.toMicros(span.getStartTimeUnixNano()))
+                .append(String.format(Locale.ROOT, ", \"durationMs\": %.3f",
+                        (span.getEndTimeUnixNano() - span.getStartTimeUnixNano()) / 1_000_000.0))
+                .append(", \"status\": \"").append(span.getStatus().getCode().name().replace("STATUS_CODE_", ""))
+                .append("\", \"attributes\": {");
+        List<KeyValue> attributes = span.getAttributesList();
+        for (int i = 0; i < attributes.size(); i++) {
+            json.append(i == 0 ? "" : ", ").append(quoted(attributes.get(i).getKey())).append(": ")
+                    .append(quoted(text(attributes.get(i).getValue())));
+        }
+        return json.append("}}").toString();
+    }
+
+    private static String stringAttribute(List<KeyValue> attributes, String key) {
+        return attributes.stream()
+                .filter(attribute -> attribute.getKey().equals(key))
+                .map(attribute -> text(attribute.getValue()))
+                .findFirst()
+                .orElse("unknown");
+    }
+
+    private static String text(AnyValue value) {
+        return switch (value.getValueCase()) {
+            case STRING_VALUE -> value.getStringValue();
+            case BOOL_VALUE -> String.valueOf(value.getBoolValue());
+            case INT_VALUE -> String.valueOf(value.getIntValue());
+            case DOUBLE_VALUE -> String.valueOf(value.getDoubleValue());
+            default -> value.toString().strip();
+        };
+    }
+
+    private static String quoted(String text) {
+        StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+        for (char c : text.toCharArray()) {
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                case '\r' -> quoted.append("\\r");
+                case '\t' -> quoted.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        synchronized (this) {
+            try {
+                spans.close();
+            } catch (IOException e) {
+                // nothing more to write
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.pm.startup;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/*
+ Startup time of the services, packaged three ways:
+
+   jar        java -jar target/<service>.jar, the Spring Boot fat jar the images used to run
+   unpacked   java -jar target/cds/<service>.jar, the same classes from plain jars (mvn package -Pcds)
+   cds        the same with the class data sharing archive of the training run, as the images now start
+
+ Each is started startup.runs times, one after the other, and timed from launching the JVM to Spring Boot's
+ "Started ... in" line (web server and gRPC server listening). The services run with their cds-training profile,
+ so auth-service and patient-service need no Postgres; nothing else has to be running.
+
+ 1. mvn package -Pcds in every service module
+ 2. mvn test -Dtest=StartupTimeTest -Dstartup.services=auth-service,patient-service,billing-server,analytics-service,api-gateway
+
+   startup.runs             starts per service and packaging (3)
+   startup.jvm-args         added to every start, e.g. -XX:ActiveProcessorCount=1 for a quarter vCPU task
+   startup.max-cds-seconds  fail when a service's median cds startup is above this (0 = report only)
+   startup.project-dir      where the service modules are (..)
+   startup.report-dir       where the report goes (target/startup-reports)
+*/
+public class StartupTimeTest {
+    private static final Pattern STARTED = Pattern.compile("Started \\S+ in ([\\d.]+) seconds \\(process running for ([\\d.]+)\\)");
+    private static final long TIMEOUT_SECONDS = 180;
+
+    private record Start(double wallSeconds, double processSeconds) {
+    }
+
+    @Test
+    public void servicesStartWithClassDataSharing() throws Exception {
+        String services = System.getProperty("startup.services", "");
+        assumeTrue(!services.isBlank(), "startup benchmark not run, set -Dstartup.services=<service module>,...");
+        int runs = Integer.getInteger("startup.runs", 3);
+        List<String> jvmArgs = Arrays.stream(System.getProperty("startup.jvm-args", "").split(" "))
+                .filter(arg -> !arg.isBlank())
+                .toList();
+        double maxCdsSeconds = Double.parseDouble(System.getProperty("startup.max-cds-seconds", "0"));
+        Path projectDir = Path.of(System.getProperty("startup.project-dir", ".."));
+        Path reportDir = Path.of(System.getProperty("startup.report-dir", "target/startup-reports"));
+
+        StringBuilder report = new StringBuilder(String.format(Locale.ROOT,
+                "Startup to \"Started\", median of %d runs (min-max), jvm args %s%n%n%-18s %-9s %22s %22s%n",
+                runs, jvmArgs, "service", "packaging", "wall s", "process running s"));
+        Map<String, Double> cdsMedians = new LinkedHashMap<>();
+        for (String service : services.split(",")) {
+            Path target = projectDir.resolve(service.trim()).resolve("target");
+            Path fatJar = onlyJar(target);
+            Path cdsDir = target.resolve("cds");
+            Path cdsJar = onlyJar(cdsDir);
+
+            Map<String, List<String>> packagings = new LinkedHashMap<>();
+            packagings.put("jar", command(jvmArgs, List.of("-jar", fatJar.toAbsolutePath().toString())));
+            packagings.put("unpacked", command(jvmArgs, List.of("-jar", cdsJar.getFileName().toString())));
+            packagings.put("cds", command(jvmArgs, List.of("-XX:SharedArchiveFile=application.jsa", "-jar", cdsJar.getFileName().toString())));
+
+            for (Map.Entry<String, List<String>> packaging : packagings.entrySet()) {
+                List<Start> starts = new ArrayList<>();
+                for (int i = 0; i < runs; i++) {
+                    starts.add(start(packaging.getValue(), cdsDir));
+                }
+                report.append(String.format(Locale.ROOT, "%-18s %-9s %22s %22s%n", service.trim(), packaging.getKey(),
+                        summary(starts.stream().map(Start::wallSeconds).toList()),
+                        summary(starts.stream().map(Start::processSeconds).toList())));
+                if (packaging.getKey().equals("cds")) {
+                    cdsMedians.put(service.trim(), median(starts.stream().map(Start::wallSeconds).toList()));
+                }
+            }
+        }
+
+        System.out.println(report);
+        Path runDir = reportDir.resolve(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")));
+        Files.createDirectories(runDir);
+        Files.writeString(runDir.resolve("startup.txt"), report);
+
+        if (maxCdsSeconds > 0) {
+            cdsMedians.forEach((service, median) -> assertTrue(median <= maxCdsSeconds,
+                    service + " starts in " + median + "s with its archive, above startup.max-cds-seconds " + maxCdsSeconds));
+        }
+    }
+
+    private static List<String> command(List<String> jvmArgs, List<String> launch) {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.addAll(launch);
+        // no Postgres, and random ports so services already running locally do not get in the way
+        command.addAll(List.of("--spring.profiles.active=cds-training", "--server.port=0", "--grpc.server.port=0"));
+        return command;
+    }
+
+    private static Start start(List<String> command, Path dir) throws IOException, InterruptedException {
+        long launched = System.nanoTime();
+        Process process = new ProcessBuilder(command).directory(dir.toFile()).redirectErrorStream(true).start();
+        try {
+            CompletableFuture<Start> started = CompletableFuture.supplyAsync(() -> awaitStarted(process, launched));
+            Start start = started.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (start == null) {
+                throw new IllegalStateException("exited without starting: " + String.join(" ", command));
+            }
+            return start;
+        } catch (Exception e) {
+            throw new IllegalStateException("no \"Started\" line from " + String.join(" ", command), e);
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    // reads the output until the "Started" line, then keeps draining it so the process never blocks on a full pipe
+    private static Start awaitStarted(Process process, long launched) {
+        BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = output.readLine()) != null) {
+                Matcher matcher = STARTED.matcher(line);
+                if (matcher.find()) {
+                    Start start = new Start((System.nanoTime() - launched) / 1e9, Double.parseDouble(matcher.group(2)));
+                    CompletableFuture.runAsync(() -> drain(output));
+                    return start;
+                }
+            }
+        } catch (IOException e) {
+            // the process is gone
+        }
+        drain(output);
+        return null;
+    }
+
+    private static void drain(BufferedReader output) {
+        try (output) {
+            while (output.readLine() != null) {
+                // discarded
+            }
+        } catch (IOException e) {
+            // the process is gone
+        }
+    }
+
+    private static Path onlyJar(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> jars = files.filter(file -> file.toString().endsWith(".jar") && !file.toString().endsWith("-plain.jar"))
+                    .toList();
+            if (jars.size() != 1) {
+                throw new IllegalStateException("expected one jar in " + dir + " (mvn package -Pcds), found " + jars);
+            }
+            return jars.get(0);
+        }
+    }
+
+    private static String summary(List<Double> seconds) {
+        return String.format(Locale.ROOT, "%.2f (%.2f-%.2f)", median(seconds), Collections.min(seconds), Collections.max(seconds));
+    }
+
+    private static double median(List<Double> seconds) {
+        List<Double> sorted = seconds.stream().sorted().toList();
+        int middle = sorted.size() / 2;
+        return sorted.size() % 2 == 1 ? sorted.get(middle) : (sorted.get(middle - 1) + sorted.get(middle)) / 2;
+    }
+}
@@ -2,8 +2,10 @@ package com.pm;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling // retries the pending billing accounts, looks the billing replicas up again
 public class PatientServiceApplication {
     public static void main(String[] args) {
         SpringApplication.run(PatientServiceApplication.class, args);
@@ -0,0 +1,134 @@
+package com.pm.concurrency;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ With virtual threads (spring.threads.virtual.enabled) Tomcat's thread pool no longer caps how many requests run
+ at once: every request gets its own thread and they all queue up for the same few database connections, where
+ they wait up to Hikari's connectionTimeout (30s) before failing anyway.
+
+ - at most maximum-pool-size x requests-per-connection requests are let through at once (a request only holds
+   a connection during its transactions, not while it waits on billing)
+ - the next ones wait up to max-wait-ms for a slot and are then answered 503 with Retry-After, a fast rejection
+   the gateway's concurrency limit and retries can handle
+ - an async request keeps its slot until it completes
+ - /actuator is not limited, health checks have to get through under load
+ http.concurrency.limit, http.concurrency.in-flight, http.concurrency.rejected
+*/
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+@Order(Ordered.HIGHEST_PRECEDENCE + 2) // after the observation filter, rejected requests still show in http.server.requests
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+    private static final int DEFAULT_POOL_SIZE = 10; // Hikari's default maximum-pool-size
+
+    private final int limit;
+    private final Semaphore slots;
+    private final long maxWaitMs;
+    private final Counter rejected;
+
+    public ConcurrencyLimitFilter(DataSource dataSource,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${concurrency.limit.requests-per-connection:4}") int requestsPerConnection,
+                                  @Value("${concurrency.limit.max-wait-ms:100}") long maxWaitMs) {
+        // unset (-1) until the pool starts, Hikari then uses its default
+        int poolSize = dataSource instanceof HikariDataSource hikari && hikari.getMaximumPoolSize() > 0
+                ? hikari.getMaximumPoolSize() : DEFAULT_POOL_SIZE;
+        this.limit = poolSize * requestsPerConnection;
+        this.slots = new Semaphore(limit, true);
+        this.maxWaitMs = maxWaitMs;
+
+        this.rejected = meterRegistry.counter("http.concurrency.rejected");
+        Gauge.builder("http.concurrency.limit", () -> limit).register(meterRegistry);
+        Gauge.builder("http.concurrency.in-flight", slots, s -> limit - s.availablePermits()).register(meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getRequestURI().startsWith("/actuator");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (!acquire()) {
+            rejected.increment();
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getWriter().write("{\"message\":\"Too many requests in progress, retry shortly\"}");
+            return;
+        }
+
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                slots.release();
+            }
+        };
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleaseOnCompletion(release));
+            } else {
+                release.run();
+            }
+        }
+    }
+
+    private boolean acquire() {
+        try {
+            return slots.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private record ReleaseOnCompletion(Runnable release) implements AsyncListener {
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // a new cycle of the same request, still holding its slot
+        }
+    }
+}
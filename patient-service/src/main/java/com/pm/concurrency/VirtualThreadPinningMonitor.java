@@ -0,0 +1,102 @@
+package com.pm.concurrency;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/*
+ A virtual thread that blocks inside synchronized (or native code) stays pinned to its carrier thread, and there
+ are only as many carriers as cores: a few such waits stall every other request. The JVM reports each one longer
+ than threshold-ms as a jdk.VirtualThreadPinned JFR event, streamed here from the running JVM.
+
+ - jvm.threads.virtual.pinned{frame}: how long, by the first frame outside the JDK (usually the synchronized code)
+ - the stack of every new frame is logged once, at most MAX_FRAMES of them are told apart
+ For every occurrence start the JVM with -Djdk.tracePinnedThreads=full, or take a JFR recording (jcmd JFR.start).
+*/
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadPinningMonitor {
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int MAX_FRAMES = 100;
+
+    private final MeterRegistry meterRegistry;
+    private final Duration threshold;
+    private final Set<String> seenFrames = ConcurrentHashMap.newKeySet();
+    private RecordingStream recording;
+
+    public VirtualThreadPinningMonitor(MeterRegistry meterRegistry,
+                                       @Value("${concurrency.pinning.threshold-ms:20}") long thresholdMs) {
+        this.meterRegistry = meterRegistry;
+        this.threshold = Duration.ofMillis(thresholdMs);
+    }
+
+    @PostConstruct
+    void start() {
+        recording = new RecordingStream();
+        recording.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        recording.onEvent(PINNED_EVENT, this::pinned);
+        recording.startAsync();
+    }
+
+    private void pinned(RecordedEvent event) {
+        String frame = firstNonJdkFrame(event.getStackTrace());
+        if (!seenFrames.contains(frame) && seenFrames.size() >= MAX_FRAMES) {
+            frame = "other";
+        }
+
+        Timer.builder("jvm.threads.virtual.pinned")
+                .tag("frame", frame)
+                .register(meterRegistry)
+                .record(event.getDuration());
+
+        if (seenFrames.add(frame)) {
+            log.warn("Virtual thread pinned to its carrier for {} ms at {}:\n{}",
+                    event.getDuration().toMillis(), frame, stack(event.getStackTrace()));
+        }
+    }
+
+    private static String firstNonJdkFrame(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return "unknown";
+        }
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            String type = frame.getMethod().getType().getName();
+            if (!type.startsWith("java.") && !type.startsWith("jdk.") && !type.startsWith("sun.")) {
+                return type + "." + frame.getMethod().getName();
+            }
+        }
+        return "jdk";
+    }
+
+    private static String stack(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return "    (no stack trace)";
+        }
+        return stackTrace.getFrames().stream()
+                .map(frame -> "    at " + frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                        + ":" + frame.getLineNumber())
+                .collect(Collectors.joining("\n"));
+    }
+
+    @PreDestroy
+    void stop() {
+        recording.close();
+    }
+}
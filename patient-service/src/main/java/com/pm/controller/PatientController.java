@@ -1,5 +1,6 @@
 package com.pm.controller;
 
+import com.pm.dto.BulkPatientRequestDto;
 import com.pm.dto.PatientRequestDto;
 import com.pm.dto.PatientResponseDTO;
 import com.pm.dto.validators.CreatePatientValidators;
@@ -38,6 +39,15 @@ public class PatientController {
         return ResponseEntity.ok().body(patientResponseDTO);
     }
 
+    @PostMapping("/bulk")
+    @Operation(summary = "Create many patients at once")
+    public ResponseEntity<List<PatientResponseDTO>> createPatients(
+            @Validated({Default.class, CreatePatientValidators.class}) @RequestBody BulkPatientRequestDto bulkPatientRequestDto
+    ){
+        List<PatientResponseDTO> patientResponseDTOList = patientService.createPatients(bulkPatientRequestDto.getPatients());
+        return ResponseEntity.ok().body(patientResponseDTOList);
+    }
+
     @PutMapping("/{uid}")
     @Operation(summary = "Update patients")
     public ResponseEntity<PatientResponseDTO> updatePatient(
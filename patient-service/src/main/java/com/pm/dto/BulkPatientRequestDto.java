@@ -0,0 +1,21 @@
+package com.pm.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public class BulkPatientRequestDto {
+    @NotEmpty(message = "At least one patient is required")
+    @Size(max = 1000, message = "Maximum 1000 patients per request")
+    private List<@Valid PatientRequestDto> patients; // @Valid: every patient is validated with the same groups as the bulk request
+
+    public List<PatientRequestDto> getPatients() {
+        return patients;
+    }
+
+    public void setPatients(List<PatientRequestDto> patients) {
+        this.patients = patients;
+    }
+}
@@ -0,0 +1,8 @@
+package com.pm.exceptions;
+
+// billing-server did not create the account (deadline, error, open circuit or full bulkhead), safe to retry later
+public class BillingUnavailableException extends RuntimeException{
+    public BillingUnavailableException(String message, Throwable cause){
+        super(message, cause);
+    }
+}
@@ -0,0 +1,278 @@
+package com.pm.grpc;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ClientInterceptors;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.micrometer.core.instrument.binder.grpc.ObservationGrpcClientInterceptor;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/*
+ Channels to all billing-server replicas, and which replica a patient's calls go to.
+
+ - target: dns:///host:port (every A record of the name, e.g. an ECS service discovery name) or
+   static:///host1:port,host2:port, see BillingReplicas. Without billing.service.target, dns:///address:port is used.
+   The names are looked up again every resolve-interval-ms, channels of replicas that are gone are shut down
+ - every billing-server keeps its accounts in its own local store, creating an account is only idempotent on the
+   replica that has it. So every call for one patientId goes to the same replica (rendezvous hashing over the
+   resolved replicas), never "another replica" on a retry: a replica that is down makes the call fail and the
+   account goes to PendingBillingAccountService, which retries against the same replica. Adding or removing a
+   replica only moves the patients whose best replica changed (about 1/n of them)
+ - each replica's channel drops it while its grpc.health.v1 health check does not report SERVING
+ - poolSize channels = poolSize HTTP/2 connections per replica, so one connection's stream limit and single
+   event loop are not the ceiling; within a replica: round_robin, or least_request (the less busy of two channels)
+ - with virtual threads the callbacks of the async calls (CreateBillingAccounts) run on them too, instead of
+   grpc-java's own cached pool; blocking calls run on the calling (request) thread either way
+*/
+@Component
+public class BillingChannelPool {
+    private static final Logger log = LoggerFactory.getLogger(BillingChannelPool.class);
+
+    // a single round_robin address per channel, only to get the client side health check
+    private static final Map<String, Object> SERVICE_CONFIG = Map.of(
+            "loadBalancingConfig", List.of(Map.of("round_robin", Map.of())),
+            "healthCheckConfig", Map.of("serviceName", ""));
+
+    private final BillingReplicas billingReplicas;
+    private final int poolSize;
+    private final boolean leastRequest;
+    private final long keepAliveSeconds;
+    private final Executor callbackExecutor; // null: grpc-java's own pool
+    private final ObservationRegistry observationRegistry;
+    private volatile List<Replica> replicas = List.of();
+
+    public BillingChannelPool(
+            @Value("${billing.service.address:localhost}") String serverAddress,
+            @Value("${billing.service.grpc.port:9001}") int serverPort,
+            @Value("${billing.service.target:}") String target,
+            @Value("${billing.service.channels:2}") int poolSize,
+            @Value("${billing.service.load-balancing:round_robin}") String loadBalancing,
+            @Value("${billing.service.keepalive-seconds:30}") long keepAliveSeconds,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+            @Qualifier("applicationTaskExecutor") Executor applicationTaskExecutor,
+            ObservationRegistry observationRegistry
+    ) {
+        this(BillingReplicas.parse(target.isBlank() ? "dns:///" + serverAddress + ":" + serverPort : target), poolSize,
+                "least_request".equals(loadBalancing), keepAliveSeconds,
+                virtualThreads ? applicationTaskExecutor : null, // a virtual thread per task, see TaskExecutionAutoConfiguration
+                observationRegistry);
+        log.info("Connecting to Billing service GRPC Server at {} ({} channels per replica, {})",
+                target.isBlank() ? serverAddress + ":" + serverPort : target, poolSize, loadBalancing);
+    }
+
+    BillingChannelPool(BillingReplicas billingReplicas, int poolSize, boolean leastRequest, long keepAliveSeconds,
+                       Executor callbackExecutor, ObservationRegistry observationRegistry) {
+        this.billingReplicas = billingReplicas;
+        this.poolSize = poolSize;
+        this.leastRequest = leastRequest;
+        this.keepAliveSeconds = keepAliveSeconds;
+        this.callbackExecutor = callbackExecutor;
+        this.observationRegistry = observationRegistry;
+        refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${billing.service.resolve-interval-ms:30000}")
+    public synchronized void refresh() {
+        List<InetSocketAddress> resolved = billingReplicas.resolve();
+        if (resolved.isEmpty()) {
+            // a lookup failure must not move every patient, keep calling the replicas we know until they fail
+            log.warn("No billing-server replica resolved, keeping {}", replicas.stream().map(Replica::id).toList());
+            return;
+        }
+
+        Map<InetSocketAddress, Replica> current = new HashMap<>();
+        replicas.forEach(replica -> current.put(replica.address(), replica));
+
+        List<Replica> next = new ArrayList<>();
+        boolean added = false;
+        for (InetSocketAddress address : resolved) {
+            Replica replica = current.remove(address);
+            added |= replica == null;
+            next.add(replica != null ? replica : connect(address));
+        }
+        replicas = List.copyOf(next);
+
+        if (added || !current.isEmpty()) {
+            log.info("Billing-server replicas: {}", next.stream().map(Replica::id).toList());
+        }
+        current.values().forEach(gone -> gone.channels().forEach(ManagedChannel::shutdown));
+    }
+
+    // the channel for the calls of one patient, always to that patient's replica
+    public Channel forPatient(String patientId) {
+        return replicaOf(patientId).next(leastRequest);
+    }
+
+    // the items grouped by the replica of their patient, with one channel per replica
+    public <T> Map<Channel, List<T>> byReplica(List<T> items, Function<T, String> patientId) {
+        Map<Replica, List<T>> itemsByReplica = new LinkedHashMap<>();
+        for (T item : items) {
+            itemsByReplica.computeIfAbsent(replicaOf(patientId.apply(item)), replica -> new ArrayList<>()).add(item);
+        }
+
+        Map<Channel, List<T>> itemsByChannel = new LinkedHashMap<>();
+        itemsByReplica.forEach((replica, replicaItems) -> itemsByChannel.put(replica.next(leastRequest), replicaItems));
+        return itemsByChannel;
+    }
+
+    // host:port of the replica a patient's calls go to
+    String replicaIdOf(String patientId) {
+        return replicaOf(patientId).id();
+    }
+
+    private Replica replicaOf(String patientId) {
+        List<Replica> candidates = replicas;
+        if (candidates.isEmpty()) {
+            throw Status.UNAVAILABLE.withDescription("No billing-server replica resolved").asRuntimeException();
+        }
+
+        Replica best = null;
+        long bestScore = 0;
+        for (Replica replica : candidates) {
+            long score = score(replica.id(), patientId);
+            if (best == null || Long.compareUnsigned(score, bestScore) > 0) {
+                best = replica;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    // rendezvous hashing: every replica gets a score per patient, the highest wins (FNV-1a, then a murmur3 finalizer)
+    static long score(String replicaId, String patientId) {
+        long hash = 0xcbf29ce484222325L;
+        for (String part : new String[] {replicaId, "/", patientId}) {
+            for (int i = 0; i < part.length(); i++) {
+                hash ^= part.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private Replica connect(InetSocketAddress address) {
+        String host = address.getAddress().getHostAddress();
+        List<ManagedChannel> channels = new ArrayList<>();
+        List<Channel> countedChannels = new ArrayList<>();
+        List<AtomicInteger> activeCalls = new ArrayList<>();
+
+        for (int i = 0; i < poolSize; i++) {
+            ManagedChannelBuilder<?> builder = ManagedChannelBuilder.forAddress(host, address.getPort())
+                    .usePlaintext()
+                    .defaultServiceConfig(SERVICE_CONFIG)
+                    // detect dead connections (e.g. a stopped task) instead of waiting for TCP timeouts
+                    .keepAliveTime(keepAliveSeconds, TimeUnit.SECONDS)
+                    .keepAliveTimeout(10, TimeUnit.SECONDS)
+                    .keepAliveWithoutCalls(true);
+            if (callbackExecutor != null) {
+                builder.executor(callbackExecutor);
+            }
+            ManagedChannel channel = builder.build();
+            AtomicInteger active = new AtomicInteger();
+
+            channels.add(channel);
+            activeCalls.add(active);
+            // the observation interceptor makes a client span per call and puts the trace context in the metadata
+            countedChannels.add(ClientInterceptors.intercept(channel, new ActiveCallCounter(active),
+                    new ObservationGrpcClientInterceptor(observationRegistry)));
+        }
+        return new Replica(address, host + ":" + address.getPort(), channels, countedChannels, activeCalls, new AtomicInteger());
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        List<Replica> closing = replicas;
+        replicas = List.of();
+        closing.forEach(replica -> replica.channels().forEach(ManagedChannel::shutdown));
+        for (Replica replica : closing) {
+            for (ManagedChannel channel : replica.channels()) {
+                channel.awaitTermination(5, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private record Replica(InetSocketAddress address, String id, List<ManagedChannel> channels,
+                           List<Channel> countedChannels, List<AtomicInteger> activeCalls, AtomicInteger nextChannel) {
+        Channel next(boolean leastRequest) {
+            int size = countedChannels.size();
+            if (size == 1) {
+                return countedChannels.get(0);
+            }
+            if (!leastRequest) {
+                return countedChannels.get(Math.floorMod(nextChannel.getAndIncrement(), size));
+            }
+
+            // power of two choices: close to "least busy" without scanning or locking the whole pool
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(size);
+            int second = (first + 1 + random.nextInt(size - 1)) % size;
+            return countedChannels.get(activeCalls.get(first).get() <= activeCalls.get(second).get() ? first : second);
+        }
+    }
+
+    // counts the calls of one channel from start until the server closes them
+    private record ActiveCallCounter(AtomicInteger active) implements ClientInterceptor {
+        @Override
+        public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                                   CallOptions callOptions, Channel next) {
+            return new ForwardingClientCall.SimpleForwardingClientCall<>(next.newCall(method, callOptions)) {
+                @Override
+                public void start(Listener<RespT> responseListener, Metadata headers) {
+                    active.incrementAndGet();
+                    super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<>(responseListener) {
+                        @Override
+                        public void onClose(Status status, Metadata trailers) {
+                            active.decrementAndGet();
+                            super.onClose(status, trailers);
+                        }
+                    }, headers);
+                }
+            };
+        }
+    }
+}
+
+/*
+
+@Value("${billing.service.address:localhost}")
+
+@Value - Spring annotation that injects configuration values
+
+"${billing.service.address:localhost}" - Reads from application.properties/yml with fallback
+
+If property exists: Uses that value (e.g., billing-server-host)
+If property doesn't exist: Uses default value localhost
+
+*/
@@ -0,0 +1,88 @@
+package com.pm.grpc;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+ The billing-server replicas, from billing.service.target:
+
+   dns:///host:port                    every A record of host (e.g. an ECS service discovery name)
+   static:///billing-1:9001,billing-2:9001   a fixed list, for when the replicas are not behind one DNS name
+
+ resolve() looks the names up again every time, endpoints that do not resolve (not up yet) are left out.
+ The result is sorted, so the same replicas always come out in the same order.
+*/
+final class BillingReplicas {
+    static final String DNS_SCHEME = "dns";
+    static final String STATIC_SCHEME = "static";
+
+    interface Lookup {
+        InetAddress[] allByName(String host) throws UnknownHostException;
+    }
+
+    private final boolean allRecords;
+    private final List<String> endpoints;
+    private final Lookup lookup;
+
+    private BillingReplicas(boolean allRecords, List<String> endpoints, Lookup lookup) {
+        this.allRecords = allRecords;
+        this.endpoints = endpoints;
+        this.lookup = lookup;
+    }
+
+    static BillingReplicas parse(String target) {
+        return parse(target, InetAddress::getAllByName);
+    }
+
+    static BillingReplicas parse(String target, Lookup lookup) {
+        int separator = target.indexOf(":///");
+        String scheme = separator < 0 ? "" : target.substring(0, separator);
+        String path = separator < 0 ? "" : target.substring(separator + 4).trim();
+        if (DNS_SCHEME.equals(scheme)) {
+            return new BillingReplicas(true, List.of(endpoint(path)), lookup);
+        }
+        if (STATIC_SCHEME.equals(scheme)) {
+            List<String> endpoints = new ArrayList<>();
+            for (String endpoint : path.split(",")) {
+                endpoints.add(endpoint(endpoint.trim()));
+            }
+            return new BillingReplicas(false, List.copyOf(endpoints), lookup);
+        }
+        throw new IllegalArgumentException("Expected dns:///host:port or static:///host:port,... but got " + target);
+    }
+
+    List<InetSocketAddress> resolve() {
+        List<InetSocketAddress> replicas = new ArrayList<>();
+        for (String endpoint : endpoints) {
+            int colon = endpoint.lastIndexOf(':');
+            String host = endpoint.substring(0, colon);
+            int port = Integer.parseInt(endpoint.substring(colon + 1));
+            try {
+                InetAddress[] addresses = lookup.allByName(host);
+                for (int i = 0; i < (allRecords ? addresses.length : Math.min(1, addresses.length)); i++) {
+                    replicas.add(new InetSocketAddress(addresses[i], port));
+                }
+            } catch (UnknownHostException e) {
+                // not up (yet), the other replicas still get their patients
+            }
+        }
+        replicas.sort(Comparator.comparing(InetSocketAddress::toString));
+        return replicas.stream().distinct().toList();
+    }
+
+    private static String endpoint(String hostAndPort) {
+        int colon = hostAndPort.lastIndexOf(':');
+        try {
+            if (colon <= 0 || Integer.parseInt(hostAndPort.substring(colon + 1)) <= 0) {
+                throw new IllegalArgumentException("Expected host:port but got " + hostAndPort);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected host:port but got " + hostAndPort, e);
+        }
+        return hostAndPort;
+    }
+}
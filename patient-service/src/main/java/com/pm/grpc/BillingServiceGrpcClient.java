@@ -3,67 +3,196 @@ package com.pm.grpc;
 import billing.BillingRequest;
 import billing.BillingResponse;
 import billing.BillingServiceGrpc;
-import io.grpc.ManagedChannel;
-import io.grpc.ManagedChannelBuilder;
-import org.hibernate.service.spi.InjectService;
+import com.pm.exceptions.BillingUnavailableException;
+import com.pm.model.Patient;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.grpc.Channel;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.annotation.Bean;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class BillingServiceGrpcClient {
-    private final BillingServiceGrpc.BillingServiceBlockingStub blockingStub;
+    private final BillingChannelPool billingChannelPool;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final MeterRegistry meterRegistry;
+    private final long deadlineMs;
+    private final long bulkDeadlineMs;
 
     private static final Logger log = LoggerFactory.getLogger(BillingServiceGrpcClient.class);
 
     // gRPC server endpoint defined in proto: localhost:9001/BillingService/CreatePatientAccount
-    public BillingServiceGrpcClient(
-            @Value("${billing.service.address:localhost}") String serverAddress,
-            @Value("${billing.service.grpc.port:9001}") int serverPort
-            ) {
-        log.info("Connecting to Billing service GRPC Server at {}:{}", serverAddress, serverPort);
-
-        ManagedChannel managedChannel = ManagedChannelBuilder.forAddress(serverAddress, serverPort).usePlaintext().build();
-
-        blockingStub = BillingServiceGrpc.newBlockingStub(managedChannel);
+    public BillingServiceGrpcClient(BillingChannelPool billingChannelPool,
+                                    CircuitBreakerRegistry circuitBreakerRegistry,
+                                    BulkheadRegistry bulkheadRegistry,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${billing.service.deadline-ms:2000}") long deadlineMs,
+                                    @Value("${billing.service.bulk-deadline-ms:30000}") long bulkDeadlineMs) {
+        this.billingChannelPool = billingChannelPool;
+        // configured by resilience4j.circuitbreaker.instances.billing.* and resilience4j.bulkhead.instances.billing.*
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker("billing");
+        this.bulkhead = bulkheadRegistry.bulkhead("billing");
+        this.meterRegistry = meterRegistry;
+        this.deadlineMs = deadlineMs;
+        this.bulkDeadlineMs = bulkDeadlineMs;
     }
 
+    /*
+     Fails fast with BillingUnavailableException instead of waiting on a slow or dead billing-server:
+     - every call has a deadline, and goes to the patient's replica only (see BillingChannelPool)
+     - the bulkhead caps how many request threads can wait on billing at the same time
+     - the circuit breaker stops calling billing at all while most recent calls failed or were slow
+    */
     public List<BillingResponse> createBillingAccount(String patientId, String name, String email){
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            List<BillingResponse> responses = Bulkhead.decorateSupplier(bulkhead,
+                    CircuitBreaker.decorateSupplier(circuitBreaker, () -> callCreateBillingAccount(patientId, name, email))).get();
+            stopTimer(sample, "CreateBillingAccount", "success");
+            return responses;
+        } catch (CallNotPermittedException | BulkheadFullException e) {
+            stopTimer(sample, "CreateBillingAccount", "rejected");
+            throw new BillingUnavailableException("Billing service not called for patient " + patientId + ": " + e.getMessage(), e);
+        } catch (StatusRuntimeException e) {
+            stopTimer(sample, "CreateBillingAccount", "failed");
+            throw new BillingUnavailableException("Billing account creation failed for patient " + patientId + ": " + e.getStatus(), e);
+        }
+    }
+
+    private List<BillingResponse> callCreateBillingAccount(String patientId, String name, String email){
         BillingRequest billingRequest = BillingRequest.newBuilder()
                                             .setName(name)
                                             .setPatientId(patientId)
                                             .setEmail(email)
                                             .build();
-        
+
         List<BillingResponse> responseList = new ArrayList<>();
 
-        Iterator<BillingResponse> itr = blockingStub.createBillingAccount(billingRequest);
+        // stubs are cheap, every call picks its channel from the pool
+        Iterator<BillingResponse> itr = BillingServiceGrpc.newBlockingStub(billingChannelPool.forPatient(patientId))
+                .withDeadlineAfter(deadlineMs, TimeUnit.MILLISECONDS)
+                .createBillingAccount(billingRequest);
 
         while(itr.hasNext()){
             BillingResponse response = itr.next();
             responseList.add(response);
             log.info("Received response from gRPC server: \n{}\n", response);
         }
-        
+
         return responseList;
     }
-}
 
-/*
-
-@Value("${billing.service.address:localhost}")
-
-@Value - Spring annotation that injects configuration values
+    /*
+     Creates the billing accounts of many patients over one CreateBillingAccounts stream per billing replica instead
+     of one call each, every patient on the stream to its own replica. Requests are only written while the stream
+     is ready, so a large import is paced by the server instead of being buffered in memory. The future completes
+     with the responses keyed by patientId, or with a BillingUnavailableException if any stream failed. Goes through
+     the same circuit breaker as createBillingAccount.
+    */
+    public CompletableFuture<Map<String, BillingResponse>> createBillingAccounts(List<Patient> patients){
+        Timer.Sample sample = Timer.start(meterRegistry);
+        return circuitBreaker.decorateCompletionStage(() -> callCreateBillingAccounts(patients)).get()
+                .toCompletableFuture()
+                .handle((responses, error) -> {
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    if (cause == null) {
+                        stopTimer(sample, "CreateBillingAccounts", "success");
+                        return responses;
+                    }
+                    stopTimer(sample, "CreateBillingAccounts", cause instanceof CallNotPermittedException ? "rejected" : "failed");
+                    throw new BillingUnavailableException("Bulk billing account creation failed: " + cause.getMessage(), cause);
+                });
+    }
 
-"${billing.service.address:localhost}" - Reads from application.properties/yml with fallback
+    private CompletableFuture<Map<String, BillingResponse>> callCreateBillingAccounts(List<Patient> patients){
+        Map<String, BillingResponse> responses = new ConcurrentHashMap<>();
+        CompletableFuture<?>[] streams = billingChannelPool.byReplica(patients, patient -> patient.getId().toString())
+                .entrySet().stream()
+                .map(replica -> createOnReplica(replica.getKey(), replica.getValue(), responses))
+                .toArray(CompletableFuture[]::new);
+
+        return CompletableFuture.allOf(streams).thenApply(done -> {
+            log.info("Received {} billing accounts from gRPC server for {} patients", responses.size(), patients.size());
+            return responses;
+        });
+    }
 
-If property exists: Uses that value (e.g., billing-server-host)
-If property doesn't exist: Uses default value localhost
+    private CompletableFuture<Void> createOnReplica(Channel channel, List<Patient> patients, Map<String, BillingResponse> responses){
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        Iterator<Patient> pending = patients.iterator();
+
+        BillingServiceGrpc.newStub(channel)
+                .withDeadlineAfter(bulkDeadlineMs, TimeUnit.MILLISECONDS)
+                .createBillingAccounts(new ClientResponseObserver<BillingRequest, BillingResponse>() {
+            private boolean requestsCompleted;
+
+            @Override
+            public void beforeStart(ClientCallStreamObserver<BillingRequest> requestStream) {
+                // called again every time the transport can take more messages
+                requestStream.setOnReadyHandler(() -> {
+                    while (requestStream.isReady() && pending.hasNext()) {
+                        Patient patient = pending.next();
+                        requestStream.onNext(BillingRequest.newBuilder()
+                                .setPatientId(patient.getId().toString())
+                                .setName(patient.getName())
+                                .setEmail(patient.getEmail())
+                                .build());
+                    }
+                    if (!pending.hasNext() && !requestsCompleted) {
+                        requestsCompleted = true;
+                        requestStream.onCompleted();
+                    }
+                });
+            }
+
+            @Override
+            public void onNext(BillingResponse response) {
+                responses.put(response.getPatientId(), response);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                log.error("Error while creating billing accounts in bulk ({} patients on this replica): {}",
+                        patients.size(), t.getMessage());
+                result.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+                result.complete(null);
+            }
+        });
+
+        return result;
+    }
 
-*/
+    // billing.grpc.client.latency{method, outcome=success|failed|rejected}
+    private void stopTimer(Timer.Sample sample, String method, String outcome){
+        sample.stop(Timer.builder("billing.grpc.client.latency")
+                .tag("method", method)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+}
@@ -8,6 +8,8 @@ import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 import patient.events.PatientEvent;
 
+import java.util.concurrent.CompletableFuture;
+
 @Service
 public class KafkaProducer {
 
@@ -21,7 +23,8 @@ public class KafkaProducer {
         this.kafkaTemplate = kafkaTemplate;
     }
 
-    public void sendEvent(Patient patient){
+    // completes once the broker has the event, or exceptionally if it could not be sent
+    public CompletableFuture<?> sendEvent(Patient patient){
         PatientEvent patientEvent = PatientEvent.newBuilder()
                 .setPatientId(patient.getId().toString())
                 .setName(patient.getName())
@@ -30,9 +33,10 @@ public class KafkaProducer {
                 .build();
 
         try{
-            kafkaTemplate.send("patient", patientEvent.toByteArray());
+            return kafkaTemplate.send("patient", patientEvent.toByteArray());
         }catch (Exception e){
             log.error("Error sending PatientCreated event: {}", patientEvent);
+            return CompletableFuture.failedFuture(e);
         }
     }
 }
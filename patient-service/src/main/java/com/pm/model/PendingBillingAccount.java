@@ -0,0 +1,54 @@
+package com.pm.model;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+import java.util.UUID;
+
+// A patient whose billing account could not be created yet, retried by PendingBillingAccountService
+@Entity
+@Table(name = "pending_billing_account")
+public class PendingBillingAccount {
+
+    @Id
+    private UUID patientId;
+
+    private Instant queuedAt;
+
+    private int attempts;
+
+    private Instant nextAttemptAt;
+
+    protected PendingBillingAccount() {
+    }
+
+    public PendingBillingAccount(UUID patientId, Instant queuedAt) {
+        this.patientId = patientId;
+        this.queuedAt = queuedAt;
+        this.nextAttemptAt = queuedAt;
+    }
+
+    public UUID getPatientId() {
+        return patientId;
+    }
+
+    public Instant getQueuedAt() {
+        return queuedAt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public Instant getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(Instant nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+}
@@ -0,0 +1,15 @@
+package com.pm.repository;
+
+import com.pm.model.PendingBillingAccount;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface PendingBillingAccountRepository extends JpaRepository<PendingBillingAccount, UUID> {
+    // the oldest due entries first, at most one batch per retry run
+    List<PendingBillingAccount> findTop100ByNextAttemptAtLessThanEqualOrderByNextAttemptAt(Instant now);
+}
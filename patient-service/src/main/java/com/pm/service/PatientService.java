@@ -2,6 +2,7 @@ package com.pm.service;
 
 import com.pm.dto.PatientRequestDto;
 import com.pm.dto.PatientResponseDTO;
+import com.pm.exceptions.BillingUnavailableException;
 import com.pm.exceptions.PatientNotFoundException;
 import com.pm.grpc.BillingServiceGrpcClient;
 import com.pm.kafka.KafkaProducer;
@@ -9,12 +10,19 @@ import com.pm.mapper.PatientMapper;
 import com.pm.model.Patient;
 import com.pm.repository.PatientRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import com.pm.exceptions.EmailAlreadyExistException;
 
 import java.time.LocalDate;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 @Service
 public class PatientService {
@@ -23,11 +31,25 @@ public class PatientService {
     private final PatientRepository patientRepository;
     private final BillingServiceGrpcClient billingServiceGrpcClient;
     private final KafkaProducer kafkaProducer;
+    private final PendingBillingAccountService pendingBillingAccountService;
 
-    public PatientService(PatientRepository patientRepository, BillingServiceGrpcClient billingServiceGrpcClient, KafkaProducer kafkaProducer){
+    // inline: billing account created over gRPC before we answer
+    // event: billing-server creates it from the PATIENT_CREATED event, no billing round trip in the request
+    private final boolean inlineBillingAccountCreation;
+
+    // send results complete on the Kafka producer's I/O thread, which must not wait for the database
+    private final Executor callbackExecutor;
+
+    public PatientService(PatientRepository patientRepository, BillingServiceGrpcClient billingServiceGrpcClient, KafkaProducer kafkaProducer,
+                          PendingBillingAccountService pendingBillingAccountService,
+                          @Value("${billing.account-creation.mode:inline}") String billingAccountCreationMode,
+                          @Qualifier("applicationTaskExecutor") Executor callbackExecutor){
         this.patientRepository = patientRepository;
         this.billingServiceGrpcClient = billingServiceGrpcClient;
         this.kafkaProducer = kafkaProducer;
+        this.pendingBillingAccountService = pendingBillingAccountService;
+        this.inlineBillingAccountCreation = !"event".equals(billingAccountCreationMode);
+        this.callbackExecutor = callbackExecutor;
     }
 
     public List<PatientResponseDTO> getPatients(){
@@ -43,13 +65,62 @@ public class PatientService {
         Patient patient = PatientMapper.toModel(patientRequestDto);
         Patient savedPatient = patientRepository.save(patient);
 
-        billingServiceGrpcClient.createBillingAccount(patient.getId().toString(), patient.getName(), patient.getEmail());
+        if(inlineBillingAccountCreation){
+            try {
+                billingServiceGrpcClient.createBillingAccount(patient.getId().toString(), patient.getName(), patient.getEmail());
+            } catch (BillingUnavailableException e) {
+                // the patient is created anyway, its billing account follows once billing is back
+                pendingBillingAccountService.enqueue(savedPatient.getId());
+            }
+        }
 
-        kafkaProducer.sendEvent(savedPatient);
+        sendPatientCreatedEvent(savedPatient);
 
         return PatientMapper.getDto(savedPatient);
     }
 
+    // Large imports: all patients are saved together and their billing accounts are created over one gRPC stream
+    public List<PatientResponseDTO> createPatients(List<PatientRequestDto> patientRequestDtos){
+        Set<String> emails = new HashSet<>();
+        for(PatientRequestDto patientRequestDto : patientRequestDtos){
+            if(!emails.add(patientRequestDto.getEmail())){
+                throw new EmailAlreadyExistException("The email is repeated in the request " + patientRequestDto.getEmail());
+            }
+        }
+
+        if(patientRepository.existsByEmailIn(emails)){ // one query for the whole import
+            throw new EmailAlreadyExistException("One of the emails already exist");
+        }
+
+        List<Patient> savedPatients = patientRepository.saveAll(patientRequestDtos.stream().map(PatientMapper::toModel).toList());
+
+        if(inlineBillingAccountCreation){
+            try {
+                billingServiceGrpcClient.createBillingAccounts(savedPatients).join();
+            } catch (CompletionException e) {
+                if (!(e.getCause() instanceof BillingUnavailableException)) {
+                    throw e;
+                }
+                pendingBillingAccountService.enqueueAll(savedPatients.stream().map(Patient::getId).toList());
+            }
+        }
+
+        savedPatients.forEach(this::sendPatientCreatedEvent);
+
+        return savedPatients.stream().map(PatientMapper::getDto).toList();
+    }
+
+    private void sendPatientCreatedEvent(Patient patient){
+        CompletableFuture<?> eventSent = kafkaProducer.sendEvent(patient);
+        if(!inlineBillingAccountCreation){
+            // the event is the only trigger for the billing account, if it is lost fall back to the pending retries
+            eventSent.exceptionallyAsync(e -> {
+                pendingBillingAccountService.enqueue(patient.getId());
+                return null;
+            }, callbackExecutor);
+        }
+    }
+
     public PatientResponseDTO updatePatient(UUID uid, PatientRequestDto patientRequestDto){
         Patient patient = patientRepository.findById(uid).orElseThrow(() -> new PatientNotFoundException("Patient with given id:" + uid + " does not exist"));
 
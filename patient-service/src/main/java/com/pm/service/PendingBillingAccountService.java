@@ -0,0 +1,92 @@
+package com.pm.service;
+
+import com.pm.exceptions.BillingUnavailableException;
+import com.pm.grpc.BillingServiceGrpcClient;
+import com.pm.model.Patient;
+import com.pm.model.PendingBillingAccount;
+import com.pm.repository.PatientRepository;
+import com.pm.repository.PendingBillingAccountRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/*
+ Billing accounts that could not be created while the patient was created (billing slow, down or circuit open).
+ They are kept in the pending_billing_account table, so they survive a restart, and retried in the background
+ with exponential backoff. Creating a billing account is idempotent by patientId on the replica that has it, and
+ the retry goes to the same replica as the first attempt (BillingChannelPool routes by patientId), so it does
+ not create a second one. Only a replica set that changed in between (scaled, a task replaced) can move the
+ patient to another replica and give it a second account there.
+*/
+@Service
+public class PendingBillingAccountService {
+    private static final Logger log = LoggerFactory.getLogger(PendingBillingAccountService.class);
+
+    private final PendingBillingAccountRepository pendingBillingAccountRepository;
+    private final PatientRepository patientRepository;
+    private final BillingServiceGrpcClient billingServiceGrpcClient;
+    private final Duration retryInterval;
+    private final Duration maxBackoff;
+
+    public PendingBillingAccountService(PendingBillingAccountRepository pendingBillingAccountRepository,
+                                        PatientRepository patientRepository,
+                                        BillingServiceGrpcClient billingServiceGrpcClient,
+                                        MeterRegistry meterRegistry,
+                                        @Value("${billing.pending.retry-interval-ms:10000}") long retryIntervalMs,
+                                        @Value("${billing.pending.max-backoff-ms:600000}") long maxBackoffMs) {
+        this.pendingBillingAccountRepository = pendingBillingAccountRepository;
+        this.patientRepository = patientRepository;
+        this.billingServiceGrpcClient = billingServiceGrpcClient;
+        this.retryInterval = Duration.ofMillis(retryIntervalMs);
+        this.maxBackoff = Duration.ofMillis(maxBackoffMs);
+
+        Gauge.builder("billing.pending.accounts", pendingBillingAccountRepository, PendingBillingAccountRepository::count)
+                .register(meterRegistry);
+    }
+
+    public void enqueue(UUID patientId){
+        enqueueAll(List.of(patientId));
+    }
+
+    public void enqueueAll(Collection<UUID> patientIds){
+        Instant now = Instant.now();
+        pendingBillingAccountRepository.saveAll(patientIds.stream().map(id -> new PendingBillingAccount(id, now)).toList());
+        log.warn("Queued {} billing account(s) for later creation", patientIds.size());
+    }
+
+    @Scheduled(fixedDelayString = "${billing.pending.retry-interval-ms:10000}")
+    public void retryPending(){
+        for (PendingBillingAccount pending : pendingBillingAccountRepository.findTop100ByNextAttemptAtLessThanEqualOrderByNextAttemptAt(Instant.now())) {
+            Optional<Patient> patient = patientRepository.findById(pending.getPatientId());
+            if (patient.isEmpty()) { // deleted in the meantime, no account needed anymore
+                pendingBillingAccountRepository.delete(pending);
+                continue;
+            }
+
+            try {
+                billingServiceGrpcClient.createBillingAccount(patient.get().getId().toString(), patient.get().getName(), patient.get().getEmail());
+                pendingBillingAccountRepository.delete(pending);
+            } catch (BillingUnavailableException e) {
+                int attempts = pending.getAttempts() + 1;
+                Duration backoff = retryInterval.multipliedBy(1L << Math.min(attempts, 16));
+                pending.setAttempts(attempts);
+                pending.setNextAttemptAt(Instant.now().plus(backoff.compareTo(maxBackoff) > 0 ? maxBackoff : backoff));
+                pendingBillingAccountRepository.save(pending);
+
+                log.warn("Billing still unavailable for patient {} (attempt {}): {}", pending.getPatientId(), attempts, e.getMessage());
+                return; // the remaining ones would fail the same way, try again on the next run
+            }
+        }
+    }
+}
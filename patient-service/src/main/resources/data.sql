@@ -11,6 +11,15 @@ CREATE TABLE IF NOT EXISTS patient
     registered_date DATE                NOT NULL
     );
 
+-- Billing accounts still to be created (billing-server was unavailable when the patient was created)
+CREATE TABLE IF NOT EXISTS pending_billing_account
+(
+    patient_id      UUID PRIMARY KEY,
+    queued_at       TIMESTAMP(6) WITH TIME ZONE,
+    attempts        INTEGER             NOT NULL,
+    next_attempt_at TIMESTAMP(6) WITH TIME ZONE
+    );
+
 -- Insert well-known UUIDs for specific patients
 INSERT INTO patient (id, name, email, address, date_of_birth, registered_date)
 SELECT '123e4567-e89b-12d3-a456-426614174000',
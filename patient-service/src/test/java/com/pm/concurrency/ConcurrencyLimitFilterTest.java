@@ -0,0 +1,104 @@
+package com.pm.concurrency;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ConcurrencyLimitFilterTest {
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // a request that goes async keeps its slot until the async context completes
+    private final FilterChain goesAsync = (request, response) -> ((MockHttpServletRequest) request).startAsync();
+
+    @Test
+    void theLimitFollowsTheConnectionPoolAndFurtherRequestsGet503() throws Exception {
+        ConcurrencyLimitFilter filter = filter(1, 2);
+        MockHttpServletRequest first = request("/patients");
+        MockHttpServletRequest second = request("/patients");
+        filter.doFilter(first, new MockHttpServletResponse(), goesAsync);
+        filter.doFilter(second, new MockHttpServletResponse(), goesAsync);
+
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        filter.doFilter(request("/patients"), rejected, goesAsync);
+
+        assertEquals(503, rejected.getStatus());
+        assertEquals("1", rejected.getHeader("Retry-After"));
+        assertEquals(2, meterRegistry.get("http.concurrency.limit").gauge().value());
+        assertEquals(2, meterRegistry.get("http.concurrency.in-flight").gauge().value());
+        assertEquals(1, meterRegistry.get("http.concurrency.rejected").counter().count());
+
+        ((MockAsyncContext) first.getAsyncContext()).complete();
+        MockHttpServletResponse admitted = new MockHttpServletResponse();
+        filter.doFilter(request("/patients"), admitted, goesAsync);
+        assertEquals(200, admitted.getStatus());
+    }
+
+    @Test
+    void aSynchronousRequestGivesItsSlotBackWhenItReturns() throws Exception {
+        ConcurrencyLimitFilter filter = filter(1, 1);
+
+        for (int i = 0; i < 3; i++) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            filter.doFilter(request("/patients"), response, (request, resp) -> {
+            });
+            assertEquals(200, response.getStatus());
+        }
+        assertEquals(0, meterRegistry.get("http.concurrency.in-flight").gauge().value());
+    }
+
+    @Test
+    void actuatorIsNeverLimited() throws Exception {
+        ConcurrencyLimitFilter filter = filter(1, 1);
+        filter.doFilter(request("/patients"), new MockHttpServletResponse(), goesAsync);
+
+        MockHttpServletResponse health = new MockHttpServletResponse();
+        filter.doFilter(request("/actuator/health"), health, (request, response) -> {
+        });
+
+        assertEquals(200, health.getStatus());
+    }
+
+    @Test
+    void onlyActiveWithVirtualThreads() {
+        ApplicationContextRunner runner = new ApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(TaskExecutionAutoConfiguration.class))
+                .withBean(DataSource.class, () -> hikari(10))
+                .withBean(MeterRegistry.class, SimpleMeterRegistry::new)
+                .withUserConfiguration(ConcurrencyLimitFilter.class);
+
+        runner.run(context -> assertThat(context).doesNotHaveBean(ConcurrencyLimitFilter.class));
+        runner.withPropertyValues("spring.threads.virtual.enabled=true")
+                .run(context -> assertThat(context).hasSingleBean(ConcurrencyLimitFilter.class));
+    }
+
+    private ConcurrencyLimitFilter filter(int poolSize, int requestsPerConnection) {
+        return new ConcurrencyLimitFilter(hikari(poolSize), meterRegistry, requestsPerConnection, 10);
+    }
+
+    private static HikariDataSource hikari(int poolSize) {
+        HikariDataSource dataSource = mock(HikariDataSource.class);
+        when(dataSource.getMaximumPoolSize()).thenReturn(poolSize);
+        return dataSource;
+    }
+
+    private static MockHttpServletRequest request(String uri) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        request.setAsyncSupported(true);
+        return request;
+    }
+}
@@ -0,0 +1,122 @@
+package com.pm.grpc;
+
+import io.grpc.Channel;
+import io.grpc.StatusRuntimeException;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BillingChannelPoolTest {
+    private final Map<String, List<String>> dns = new HashMap<>();
+    private BillingChannelPool pool;
+
+    @AfterEach
+    void shutdown() throws Exception {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void everyCallOfAPatientGoesToTheSameReplica() {
+        pool = pool(List.of("10.0.0.1", "10.0.0.2", "10.0.0.3"));
+
+        for (String patientId : patientIds(100)) {
+            String replica = pool.replicaIdOf(patientId);
+            for (int i = 0; i < 5; i++) {
+                assertEquals(replica, pool.replicaIdOf(patientId));
+            }
+        }
+    }
+
+    @Test
+    void patientsAreSpreadOverTheReplicas() {
+        pool = pool(List.of("10.0.0.1", "10.0.0.2", "10.0.0.3"));
+
+        Map<String, Integer> patientsPerReplica = new HashMap<>();
+        patientIds(3000).forEach(patientId -> patientsPerReplica.merge(pool.replicaIdOf(patientId), 1, Integer::sum));
+
+        assertEquals(3, patientsPerReplica.size());
+        patientsPerReplica.values().forEach(count -> assertTrue(count > 800, patientsPerReplica.toString()));
+    }
+
+    @Test
+    void anAddedReplicaOnlyTakesOverItsShareOfThePatients() {
+        pool = pool(List.of("10.0.0.1", "10.0.0.2", "10.0.0.3"));
+        List<String> patientIds = patientIds(4000);
+        Map<String, String> before = new HashMap<>();
+        patientIds.forEach(patientId -> before.put(patientId, pool.replicaIdOf(patientId)));
+
+        dns.put("billing", List.of("10.0.0.1", "10.0.0.2", "10.0.0.3", "10.0.0.4"));
+        pool.refresh();
+
+        long moved = patientIds.stream().filter(patientId -> !before.get(patientId).equals(pool.replicaIdOf(patientId))).count();
+        patientIds.stream()
+                .filter(patientId -> !before.get(patientId).equals(pool.replicaIdOf(patientId)))
+                .forEach(patientId -> assertEquals("10.0.0.4:9001", pool.replicaIdOf(patientId)));
+        assertTrue(moved > 700 && moved < 1300, "moved " + moved);
+    }
+
+    @Test
+    void aFailedLookupKeepsTheKnownReplicas() {
+        pool = pool(List.of("10.0.0.1", "10.0.0.2"));
+        String patientId = UUID.randomUUID().toString();
+        String replica = pool.replicaIdOf(patientId);
+
+        dns.remove("billing");
+        pool.refresh();
+
+        assertEquals(replica, pool.replicaIdOf(patientId));
+    }
+
+    @Test
+    void noResolvedReplicaFailsTheCall() {
+        pool = pool(List.of());
+
+        assertThrows(StatusRuntimeException.class, () -> pool.forPatient(UUID.randomUUID().toString()));
+    }
+
+    @Test
+    void bulkItemsAreGroupedByTheirPatientsReplica() {
+        pool = pool(List.of("10.0.0.1", "10.0.0.2", "10.0.0.3"));
+        List<String> patientIds = patientIds(50);
+
+        Map<Channel, List<String>> byReplica = pool.byReplica(patientIds, patientId -> patientId);
+
+        assertEquals(50, byReplica.values().stream().mapToInt(List::size).sum());
+        byReplica.values().forEach(group -> group.forEach(patientId ->
+                assertEquals(pool.replicaIdOf(group.get(0)), pool.replicaIdOf(patientId))));
+        assertEquals(byReplica.size(), byReplica.values().stream().map(group -> pool.replicaIdOf(group.get(0))).distinct().count());
+    }
+
+    @Test
+    void singleChannelPerReplicaIsAlwaysThatChannel() {
+        pool = pool(List.of("10.0.0.1"));
+        String patientId = UUID.randomUUID().toString();
+
+        assertSame(pool.forPatient(patientId), pool.forPatient(patientId));
+    }
+
+    private BillingChannelPool pool(List<String> addresses) {
+        if (!addresses.isEmpty()) {
+            dns.put("billing", addresses);
+        }
+        BillingReplicas replicas = BillingReplicas.parse("dns:///billing:9001", host -> BillingReplicasTest.lookup(dns).allByName(host));
+        return new BillingChannelPool(replicas, 1, false, 30, null, ObservationRegistry.NOOP);
+    }
+
+    private static List<String> patientIds(int count) {
+        return IntStream.range(0, count).mapToObj(i -> UUID.randomUUID().toString()).toList();
+    }
+}
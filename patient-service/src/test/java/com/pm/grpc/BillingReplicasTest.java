@@ -0,0 +1,56 @@
+package com.pm.grpc;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BillingReplicasTest {
+
+    @Test
+    void dnsTargetIsEveryRecordOfTheName() throws Exception {
+        BillingReplicas replicas = BillingReplicas.parse("dns:///billing:9001",
+                lookup(Map.of("billing", List.of("10.0.0.2", "10.0.0.1"))));
+
+        assertEquals(List.of(address("10.0.0.1", 9001), address("10.0.0.2", 9001)), replicas.resolve());
+    }
+
+    @Test
+    void staticTargetIsOneReplicaPerEndpointSkippingTheUnresolved() throws Exception {
+        BillingReplicas replicas = BillingReplicas.parse("static:///billing-1:9001, billing-2:9002,billing-3:9003",
+                lookup(Map.of("billing-1", List.of("10.0.0.1", "10.0.0.9"), "billing-2", List.of("10.0.0.2"))));
+
+        assertEquals(List.of(address("10.0.0.1", 9001), address("10.0.0.2", 9002)), replicas.resolve());
+    }
+
+    @Test
+    void malformedTargetsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> BillingReplicas.parse("static:///billing-1"));
+        assertThrows(IllegalArgumentException.class, () -> BillingReplicas.parse("static:///billing-1:port"));
+        assertThrows(IllegalArgumentException.class, () -> BillingReplicas.parse("billing-1:9001"));
+    }
+
+    static BillingReplicas.Lookup lookup(Map<String, List<String>> addressesByHost) {
+        return host -> {
+            List<String> addresses = addressesByHost.get(host);
+            if (addresses == null) {
+                throw new UnknownHostException(host);
+            }
+            InetAddress[] resolved = new InetAddress[addresses.size()];
+            for (int i = 0; i < resolved.length; i++) {
+                resolved[i] = InetAddress.getByName(addresses.get(i));
+            }
+            return resolved;
+        };
+    }
+
+    private static InetSocketAddress address(String ip, int port) throws Exception {
+        return new InetSocketAddress(InetAddress.getByName(ip), port);
+    }
+}
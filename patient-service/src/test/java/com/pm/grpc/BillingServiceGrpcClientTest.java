@@ -0,0 +1,209 @@
+package com.pm.grpc;
+
+import billing.BillingRequest;
+import billing.BillingResponse;
+import com.pm.exceptions.BillingUnavailableException;
+import com.pm.model.Patient;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.grpc.Channel;
+import io.grpc.Status;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BillingServiceGrpcClientTest {
+    private final BillingChannelPool billingChannelPool = mock(BillingChannelPool.class);
+    private final CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+    private final BulkheadRegistry bulkheadRegistry = BulkheadRegistry.of(BulkheadConfig.custom()
+            .maxConcurrentCalls(1)
+            .maxWaitDuration(Duration.ZERO)
+            .build());
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final BillingServiceGrpcClient client = new BillingServiceGrpcClient(billingChannelPool,
+            circuitBreakerRegistry, bulkheadRegistry, meterRegistry, 2000, 30000);
+
+    @Test
+    void aSingleAccountIsCreatedOnThePatientsReplica() {
+        FakeBillingChannel replica = new FakeBillingChannel(request -> accountFor((BillingRequest) request));
+        when(billingChannelPool.forPatient("patient-1")).thenReturn(replica);
+
+        List<BillingResponse> responses = client.createBillingAccount("patient-1", "Ann", "ann@test.com");
+
+        assertEquals(List.of(accountFor(request("patient-1"))), responses);
+        assertEquals(1, timerCount("CreateBillingAccount", "success"));
+    }
+
+    @Test
+    void aFullBulkheadIsBillingUnavailableWithoutACall() {
+        Bulkhead bulkhead = bulkheadRegistry.bulkhead("billing");
+        assertTrue(bulkhead.tryAcquirePermission());
+        try {
+            assertThrows(BillingUnavailableException.class,
+                    () -> client.createBillingAccount("patient-1", "Ann", "ann@test.com"));
+        } finally {
+            bulkhead.releasePermission();
+        }
+
+        verify(billingChannelPool, never()).forPatient(any());
+        assertEquals(1, timerCount("CreateBillingAccount", "rejected"));
+    }
+
+    @Test
+    void anOpenCircuitIsBillingUnavailableWithoutACall() {
+        circuitBreakerRegistry.circuitBreaker("billing").transitionToForcedOpenState();
+
+        assertThrows(BillingUnavailableException.class,
+                () -> client.createBillingAccount("patient-1", "Ann", "ann@test.com"));
+        CompletionException bulk = assertThrows(CompletionException.class,
+                () -> client.createBillingAccounts(patients(2)).join());
+
+        assertInstanceOf(BillingUnavailableException.class, bulk.getCause());
+        verify(billingChannelPool, never()).forPatient(any());
+        verify(billingChannelPool, never()).byReplica(anyList(), any());
+        assertEquals(1, timerCount("CreateBillingAccounts", "rejected"));
+    }
+
+    @Test
+    void aFailedCallIsBillingUnavailable() {
+        FakeBillingChannel replica = new FakeBillingChannel(null);
+        when(billingChannelPool.forPatient("patient-1")).thenReturn(replica);
+
+        // the blocking stub sends right away, the failure arrives once it waits for the first response
+        CompletableFuture<Void> failLater = CompletableFuture.runAsync(() -> {
+            while (replica.calls.isEmpty() || replica.lastCall().halfCloses == 0) {
+                Thread.onSpinWait();
+            }
+            replica.lastCall().close(Status.UNAVAILABLE);
+        });
+
+        assertThrows(BillingUnavailableException.class,
+                () -> client.createBillingAccount("patient-1", "Ann", "ann@test.com"));
+        failLater.join();
+        assertEquals(1, timerCount("CreateBillingAccount", "failed"));
+    }
+
+    @Test
+    void bulkRequestsAreOnlyWrittenWhileTheStreamIsReady() {
+        FakeBillingChannel replica = new FakeBillingChannel(null);
+        List<Patient> patients = patients(5);
+        when(billingChannelPool.<Patient>byReplica(any(), any())).thenReturn(Map.<Channel, List<Patient>>of(replica, patients));
+
+        CompletableFuture<Map<String, BillingResponse>> accounts = client.createBillingAccounts(patients);
+        FakeBillingChannel.FakeCall<?, ?> stream = replica.lastCall();
+        assertEquals(0, stream.sent.size());
+
+        stream.ready(2);
+        assertEquals(2, stream.sent.size());
+        assertEquals(0, stream.halfCloses);
+
+        stream.ready(0);
+        assertEquals(2, stream.sent.size());
+
+        stream.ready(10);
+        assertEquals(5, stream.sent.size());
+        assertEquals(1, stream.halfCloses);
+
+        stream.ready(10);
+        assertEquals(1, stream.halfCloses);
+        assertFalse(accounts.isDone());
+    }
+
+    @Test
+    void bulkResponsesAreMatchedToTheirPatientsByIdAcrossReplicas() {
+        FakeBillingChannel first = new FakeBillingChannel(null);
+        FakeBillingChannel second = new FakeBillingChannel(null);
+        List<Patient> patients = patients(4);
+        Map<Channel, List<Patient>> byReplica = new LinkedHashMap<>();
+        byReplica.put(first, patients.subList(0, 2));
+        byReplica.put(second, patients.subList(2, 4));
+        when(billingChannelPool.<Patient>byReplica(any(), any())).thenReturn(byReplica);
+
+        CompletableFuture<Map<String, BillingResponse>> accounts = client.createBillingAccounts(patients);
+        first.lastCall().ready(10);
+        second.lastCall().ready(10);
+
+        // answered in a different order than asked, and the first replica finishes last
+        second.lastCall().respond(accountFor(request(id(patients.get(3)))));
+        second.lastCall().respond(accountFor(request(id(patients.get(2)))));
+        second.lastCall().close(Status.OK);
+        assertFalse(accounts.isDone());
+        first.lastCall().respond(accountFor(request(id(patients.get(1)))));
+        first.lastCall().respond(accountFor(request(id(patients.get(0)))));
+        first.lastCall().close(Status.OK);
+
+        Map<String, BillingResponse> responses = accounts.join();
+        assertEquals(4, responses.size());
+        patients.forEach(patient -> assertEquals("account-" + id(patient), responses.get(id(patient)).getAccountId()));
+        assertEquals(1, timerCount("CreateBillingAccounts", "success"));
+    }
+
+    @Test
+    void aFailedReplicaStreamFailsTheBulkCall() {
+        FakeBillingChannel first = new FakeBillingChannel(null);
+        FakeBillingChannel second = new FakeBillingChannel(null);
+        List<Patient> patients = patients(2);
+        when(billingChannelPool.<Patient>byReplica(any(), any()))
+                .thenReturn(Map.<Channel, List<Patient>>of(first, patients.subList(0, 1), second, patients.subList(1, 2)));
+
+        CompletableFuture<Map<String, BillingResponse>> accounts = client.createBillingAccounts(patients);
+        first.lastCall().close(Status.OK);
+        second.lastCall().close(Status.DEADLINE_EXCEEDED);
+
+        CompletionException failure = assertThrows(CompletionException.class, accounts::join);
+        assertInstanceOf(BillingUnavailableException.class, failure.getCause());
+        assertEquals(1, timerCount("CreateBillingAccounts", "failed"));
+    }
+
+    private long timerCount(String method, String outcome) {
+        return meterRegistry.get("billing.grpc.client.latency").tag("method", method).tag("outcome", outcome).timer().count();
+    }
+
+    private static List<Patient> patients(int count) {
+        return IntStream.range(0, count).mapToObj(i -> {
+            Patient patient = new Patient();
+            patient.setId(UUID.randomUUID());
+            patient.setName("Patient " + i);
+            patient.setEmail("patient" + i + "@test.com");
+            return patient;
+        }).toList();
+    }
+
+    private static String id(Patient patient) {
+        return patient.getId().toString();
+    }
+
+    private static BillingRequest request(String patientId) {
+        return BillingRequest.newBuilder().setPatientId(patientId).setName("Ann").setEmail("ann@test.com").build();
+    }
+
+    private static BillingResponse accountFor(BillingRequest request) {
+        return BillingResponse.newBuilder()
+                .setPatientId(request.getPatientId())
+                .setAccountId("account-" + request.getPatientId())
+                .setStatus("ACTIVE")
+                .build();
+    }
+}
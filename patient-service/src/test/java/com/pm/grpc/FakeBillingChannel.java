@@ -0,0 +1,114 @@
+package com.pm.grpc;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/*
+ A billing-server replica without a transport: records what the client writes, and lets the test decide when the
+ stream is ready and what comes back. Callbacks go through the call's executor like on a real channel, the
+ blocking stub waits on that one.
+
+ respondOnHalfClose: answers every request once the client half-closes, null leaves the answers to the test
+*/
+class FakeBillingChannel extends Channel {
+    private final Function<Object, Object> respondOnHalfClose;
+    final List<FakeCall<?, ?>> calls = new CopyOnWriteArrayList<>();
+
+    FakeBillingChannel(Function<Object, Object> respondOnHalfClose) {
+        this.respondOnHalfClose = respondOnHalfClose;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions) {
+        FakeCall<ReqT, RespT> call = new FakeCall<>(callOptions.getExecutor());
+        calls.add(call);
+        return call;
+    }
+
+    @Override
+    public String authority() {
+        return "billing-fake";
+    }
+
+    FakeCall<?, ?> lastCall() {
+        return calls.get(calls.size() - 1);
+    }
+
+    final class FakeCall<ReqT, RespT> extends ClientCall<ReqT, RespT> {
+        private final Executor executor;
+        final List<ReqT> sent = new CopyOnWriteArrayList<>();
+        volatile int credits;
+        volatile int halfCloses;
+        private Listener<RespT> listener;
+
+        private FakeCall(Executor executor) {
+            this.executor = executor != null ? executor : Runnable::run;
+        }
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+            this.listener = responseListener;
+        }
+
+        @Override
+        public void request(int numMessages) {
+        }
+
+        @Override
+        public void cancel(String message, Throwable cause) {
+        }
+
+        @Override
+        public void halfClose() {
+            halfCloses++;
+            if (respondOnHalfClose != null) {
+                List<RespT> responses = new ArrayList<>();
+                for (ReqT request : sent) {
+                    @SuppressWarnings("unchecked")
+                    RespT response = (RespT) respondOnHalfClose.apply(request);
+                    responses.add(response);
+                }
+                responses.forEach(this::respond);
+                close(Status.OK);
+            }
+        }
+
+        @Override
+        public void sendMessage(ReqT message) {
+            sent.add(message);
+            if (credits > 0) {
+                credits--;
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return credits > 0;
+        }
+
+        // the transport can take this many more messages
+        void ready(int messages) {
+            credits = messages;
+            executor.execute(listener::onReady);
+        }
+
+        @SuppressWarnings("unchecked")
+        void respond(Object response) {
+            executor.execute(() -> listener.onMessage((RespT) response));
+        }
+
+        void close(Status status) {
+            executor.execute(() -> listener.onClose(status, new Metadata()));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.pm.kafka;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import patient.events.PatientEvent;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+ PatientEvent messages per second: built and serialized here for every created patient (KafkaProducer), parsed
+ by billing-server and analytics-service for every record they consume. The GC profiler adds the bytes
+ allocated per message (gc.alloc.rate.norm).
+ Run from patient-service after `mvn test-compile`:
+
+   java -cp "target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)" \
+        com.pm.kafka.PatientEventBenchmark
+
+ Results are also written to target/jmh-PatientEventBenchmark.json, to compare between commits.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatientEventBenchmark {
+
+    private final String patientId = UUID.randomUUID().toString();
+    private byte[] serialized;
+
+    @Setup
+    public void setUp() {
+        serialized = serialize();
+    }
+
+    // what KafkaProducer.sendEvent does before handing the bytes to the producer
+    @Benchmark
+    public byte[] serialize() {
+        return PatientEvent.newBuilder()
+                .setPatientId(patientId)
+                .setName("John Doe")
+                .setEmail("john.doe@example.com")
+                .setEventType("PATIENT_CREATED")
+                .build()
+                .toByteArray();
+    }
+
+    // string fields are only decoded when read, so read them like the consumers do
+    @Benchmark
+    public void parse(Blackhole blackhole) throws InvalidProtocolBufferException {
+        PatientEvent event = PatientEvent.parseFrom(serialized);
+        blackhole.consume(event.getPatientId());
+        blackhole.consume(event.getName());
+        blackhole.consume(event.getEmail());
+        blackhole.consume(event.getEventType());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PatientEventBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-" + PatientEventBenchmark.class.getSimpleName() + ".json")
+                .build()).run();
+    }
+}
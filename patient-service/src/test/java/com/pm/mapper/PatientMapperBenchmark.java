@@ -0,0 +1,90 @@
+package com.pm.mapper;
+
+import com.pm.dto.PatientRequestDto;
+import com.pm.dto.PatientResponseDTO;
+import com.pm.model.Patient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+ Mappings per second between the patient entity and its DTOs, done for every patient in every response
+ (getDto) and every create/update (toModel, two LocalDate.parse calls). The GC profiler adds the bytes
+ allocated per mapping (gc.alloc.rate.norm), the number to watch for regressions.
+ Run from patient-service after `mvn test-compile`:
+
+   java -cp "target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)" \
+        com.pm.mapper.PatientMapperBenchmark
+
+ Results are also written to target/jmh-PatientMapperBenchmark.json, to compare between commits.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatientMapperBenchmark {
+
+    private Patient patient;
+    private PatientRequestDto request;
+
+    @Setup
+    public void setUp() {
+        patient = new Patient();
+        patient.setId(UUID.randomUUID());
+        patient.setName("John Doe");
+        patient.setEmail("john.doe@example.com");
+        patient.setAddress("123 Main Street, Springfield");
+        patient.setDateOfBirth(LocalDate.of(1985, 6, 15));
+        patient.setRegisteredDate(LocalDate.of(2024, 1, 10));
+
+        request = new PatientRequestDto();
+        request.setName("John Doe");
+        request.setEmail("john.doe@example.com");
+        request.setAddress("123 Main Street, Springfield");
+        request.setDateOfBirth("1985-06-15");
+        request.setRegisteredDate("2024-01-10");
+    }
+
+    @Benchmark
+    public PatientResponseDTO getDto() {
+        return PatientMapper.getDto(patient);
+    }
+
+    @Benchmark
+    public Patient toModel() {
+        return PatientMapper.toModel(request);
+    }
+
+    // the part of toModel that is not setters
+    @Benchmark
+    public LocalDate parseDate() {
+        return LocalDate.parse(request.getDateOfBirth());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PatientMapperBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-" + PatientMapperBenchmark.class.getSimpleName() + ".json")
+                .build()).run();
+    }
+}
@@ -0,0 +1,108 @@
+package com.pm.service;
+
+import com.pm.dto.PatientRequestDto;
+import com.pm.exceptions.BillingUnavailableException;
+import com.pm.grpc.BillingServiceGrpcClient;
+import com.pm.kafka.KafkaProducer;
+import com.pm.model.Patient;
+import com.pm.repository.PatientRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PatientServiceTest {
+    private final PatientRepository patientRepository = mock(PatientRepository.class);
+    private final BillingServiceGrpcClient billingServiceGrpcClient = mock(BillingServiceGrpcClient.class);
+    private final KafkaProducer kafkaProducer = mock(KafkaProducer.class);
+    private final PendingBillingAccountService pendingBillingAccountService = mock(PendingBillingAccountService.class);
+
+    @BeforeEach
+    void saveAssignsIds() {
+        when(patientRepository.save(any(Patient.class))).thenAnswer(invocation -> withId(invocation.getArgument(0)));
+        when(patientRepository.saveAll(anyList())).thenAnswer(invocation ->
+                invocation.<List<Patient>>getArgument(0).stream().map(PatientServiceTest::withId).toList());
+        when(kafkaProducer.sendEvent(any())).thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    @Test
+    void inlineModeCreatesTheBillingAccountOverGrpc() {
+        service("inline").createPatient(request("ann@test.com"));
+
+        verify(billingServiceGrpcClient).createBillingAccount(anyString(), anyString(), anyString());
+        verify(pendingBillingAccountService, never()).enqueue(any());
+    }
+
+    @Test
+    void inlineModeLeavesTheAccountToThePendingRetriesWhenBillingIsDown() {
+        when(billingServiceGrpcClient.createBillingAccount(anyString(), anyString(), anyString()))
+                .thenThrow(new BillingUnavailableException("down", null));
+
+        service("inline").createPatient(request("ann@test.com"));
+
+        verify(pendingBillingAccountService).enqueue(any(UUID.class));
+    }
+
+    @Test
+    void inlineBulkImportFallsBackToThePendingRetriesWhenBillingIsDown() {
+        when(billingServiceGrpcClient.createBillingAccounts(anyList()))
+                .thenReturn(CompletableFuture.failedFuture(new BillingUnavailableException("down", null)));
+
+        service("inline").createPatients(List.of(request("ann@test.com"), request("bob@test.com")));
+
+        verify(pendingBillingAccountService).enqueueAll(anyList());
+    }
+
+    @Test
+    void eventModeMakesNoBillingCall() {
+        when(billingServiceGrpcClient.createBillingAccounts(anyList())).thenReturn(CompletableFuture.completedFuture(Map.of()));
+        PatientService service = service("event");
+
+        service.createPatient(request("ann@test.com"));
+        service.createPatients(List.of(request("bob@test.com")));
+
+        verify(billingServiceGrpcClient, never()).createBillingAccount(anyString(), anyString(), anyString());
+        verify(billingServiceGrpcClient, never()).createBillingAccounts(anyList());
+        verify(pendingBillingAccountService, never()).enqueue(any());
+    }
+
+    @Test
+    void eventModeFallsBackToThePendingRetriesWhenTheEventIsLost() {
+        when(kafkaProducer.sendEvent(any())).thenReturn(CompletableFuture.failedFuture(new IllegalStateException("no broker")));
+
+        service("event").createPatient(request("ann@test.com"));
+
+        verify(pendingBillingAccountService).enqueue(any(UUID.class));
+    }
+
+    private PatientService service(String mode) {
+        return new PatientService(patientRepository, billingServiceGrpcClient, kafkaProducer, pendingBillingAccountService,
+                mode, Runnable::run);
+    }
+
+    private static Patient withId(Patient patient) {
+        patient.setId(UUID.randomUUID());
+        return patient;
+    }
+
+    private static PatientRequestDto request(String email) {
+        PatientRequestDto request = new PatientRequestDto();
+        request.setName("Ann");
+        request.setEmail(email);
+        request.setAddress("1 Main St");
+        request.setDateOfBirth("1990-01-01");
+        request.setRegisteredDate("2024-01-01");
+        return request;
+    }
+}
@@ -0,0 +1,132 @@
+package com.pm.service;
+
+import com.pm.exceptions.BillingUnavailableException;
+import com.pm.grpc.BillingServiceGrpcClient;
+import com.pm.model.Patient;
+import com.pm.model.PendingBillingAccount;
+import com.pm.repository.PatientRepository;
+import com.pm.repository.PendingBillingAccountRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PendingBillingAccountServiceTest {
+    private static final long RETRY_INTERVAL_MS = 10_000;
+    private static final long MAX_BACKOFF_MS = 600_000;
+
+    private final PendingBillingAccountRepository pendingBillingAccountRepository = mock(PendingBillingAccountRepository.class);
+    private final PatientRepository patientRepository = mock(PatientRepository.class);
+    private final BillingServiceGrpcClient billingServiceGrpcClient = mock(BillingServiceGrpcClient.class);
+    private final PendingBillingAccountService service = new PendingBillingAccountService(pendingBillingAccountRepository,
+            patientRepository, billingServiceGrpcClient, new SimpleMeterRegistry(), RETRY_INTERVAL_MS, MAX_BACKOFF_MS);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void queuedAccountsAreDueRightAway() {
+        UUID patientId = UUID.randomUUID();
+        ArgumentCaptor<List<PendingBillingAccount>> saved = ArgumentCaptor.forClass(List.class);
+
+        service.enqueue(patientId);
+
+        verify(pendingBillingAccountRepository).saveAll(saved.capture());
+        PendingBillingAccount pending = saved.getValue().get(0);
+        assertEquals(patientId, pending.getPatientId());
+        assertEquals(0, pending.getAttempts());
+        assertEquals(pending.getQueuedAt(), pending.getNextAttemptAt());
+    }
+
+    @Test
+    void aCreatedAccountLeavesTheQueue() {
+        Patient patient = patient();
+        PendingBillingAccount pending = due(patient.getId());
+
+        service.retryPending();
+
+        verify(billingServiceGrpcClient).createBillingAccount(patient.getId().toString(), "Ann", "ann@test.com");
+        verify(pendingBillingAccountRepository).delete(pending);
+    }
+
+    @Test
+    void aDeletedPatientNeedsNoAccountAnymore() {
+        PendingBillingAccount pending = due(UUID.randomUUID());
+
+        service.retryPending();
+
+        verify(billingServiceGrpcClient, never()).createBillingAccount(anyString(), anyString(), anyString());
+        verify(pendingBillingAccountRepository).delete(pending);
+    }
+
+    @Test
+    void aFailedRetryBacksOffExponentiallyAndStopsTheRun() {
+        Patient first = patient();
+        Patient second = patient();
+        PendingBillingAccount pending = new PendingBillingAccount(first.getId(), Instant.now());
+        pending.setAttempts(2);
+        when(pendingBillingAccountRepository.findTop100ByNextAttemptAtLessThanEqualOrderByNextAttemptAt(any()))
+                .thenReturn(List.of(pending, new PendingBillingAccount(second.getId(), Instant.now())));
+        when(billingServiceGrpcClient.createBillingAccount(anyString(), anyString(), anyString()))
+                .thenThrow(new BillingUnavailableException("circuit open", null));
+        Instant before = Instant.now();
+
+        service.retryPending();
+
+        assertEquals(3, pending.getAttempts());
+        assertBetween(before.plusMillis(RETRY_INTERVAL_MS * 8), Instant.now().plusMillis(RETRY_INTERVAL_MS * 8),
+                pending.getNextAttemptAt());
+        verify(pendingBillingAccountRepository).save(pending);
+        verify(pendingBillingAccountRepository, never()).delete(any());
+        // the second one would fail the same way
+        verify(billingServiceGrpcClient, times(1)).createBillingAccount(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void theBackoffIsCapped() {
+        Patient patient = patient();
+        PendingBillingAccount pending = due(patient.getId());
+        pending.setAttempts(40);
+        when(billingServiceGrpcClient.createBillingAccount(anyString(), anyString(), anyString()))
+                .thenThrow(new BillingUnavailableException("deadline exceeded", null));
+        Instant before = Instant.now();
+
+        service.retryPending();
+
+        assertEquals(41, pending.getAttempts());
+        assertBetween(before.plusMillis(MAX_BACKOFF_MS), Instant.now().plusMillis(MAX_BACKOFF_MS), pending.getNextAttemptAt());
+    }
+
+    private Patient patient() {
+        Patient patient = new Patient();
+        patient.setId(UUID.randomUUID());
+        patient.setName("Ann");
+        patient.setEmail("ann@test.com");
+        when(patientRepository.findById(patient.getId())).thenReturn(Optional.of(patient));
+        return patient;
+    }
+
+    private PendingBillingAccount due(UUID patientId) {
+        PendingBillingAccount pending = new PendingBillingAccount(patientId, Instant.now().minus(Duration.ofMinutes(1)));
+        when(pendingBillingAccountRepository.findTop100ByNextAttemptAtLessThanEqualOrderByNextAttemptAt(any()))
+                .thenReturn(List.of(pending));
+        return pending;
+    }
+
+    private static void assertBetween(Instant from, Instant to, Instant actual) {
+        assertTrue(!actual.isBefore(from) && !actual.isAfter(to), actual + " not in " + from + ".." + to);
+    }
+}